@@ -0,0 +1,92 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks on the standard hash functions and their truncations, per algorithm and input length. The cost of the
+ * truncation is the difference between the truncated and the plain hash.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = HashFunctionBenchmark.ITERATIONS)
+@Measurement(iterations = HashFunctionBenchmark.ITERATIONS)
+public class HashFunctionBenchmark {
+    /**
+     * The number of warmup and measurement iterations.
+     */
+    static final int ITERATIONS = 5;
+    /**
+     * The seed for the input bytes.
+     */
+    private static final long SEED = 42L;
+
+    /**
+     * The standard hash function.
+     */
+    @Param({"SHA1", "SHA224", "SHA256", "SHA384", "SHA512"})
+    private StandardHashFunction algorithm;
+    /**
+     * The bit length of the truncation.
+     */
+    @Param({"8", "32", "61"})
+    private int bitLength;
+    /**
+     * The length of the input in bytes.
+     */
+    @Param({"1", "8", "64"})
+    private int inputLength;
+
+    /**
+     * The input bytes.
+     */
+    private byte[] input;
+    /**
+     * The truncated hash function.
+     */
+    private TruncatedStandardHashFunction truncatedHashFunction;
+
+    /**
+     * Sets up the input bytes and the truncated hash function.
+     */
+    @Setup
+    public void setUp() {
+        input = new byte[inputLength];
+        new SplittableRandom(SEED).nextBytes(input);
+        truncatedHashFunction = new TruncatedStandardHashFunction(algorithm, bitLength);
+    }
+
+    /**
+     * Measures hashing with the standard hash function.
+     *
+     * @return The hash value.
+     */
+    @Benchmark
+    public byte[] hash() {
+        return algorithm.hash(input);
+    }
+
+    /**
+     * Measures hashing with the truncated hash function.
+     *
+     * @return The truncated hash value.
+     */
+    @Benchmark
+    public byte[] truncatedHash() {
+        return truncatedHashFunction.hash(input);
+    }
+}
@@ -0,0 +1,161 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks on the operations on points, per byte length. The points have their first quarter of bytes set to zero,
+ * such that they have an order like a distinguished point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = PointBenchmark.ITERATIONS)
+@Measurement(iterations = PointBenchmark.ITERATIONS)
+public class PointBenchmark {
+    /**
+     * The number of warmup and measurement iterations.
+     */
+    static final int ITERATIONS = 5;
+    /**
+     * The seed for the bytes of the points.
+     */
+    private static final long SEED = 42L;
+    /**
+     * The magic number four.
+     */
+    private static final int FOUR = 4;
+
+    /**
+     * The length of the points in bytes.
+     */
+    @Param({"1", "8", "20", "64"})
+    private int byteLength;
+
+    /**
+     * The bytes of the point.
+     */
+    private byte[] bytes;
+    /**
+     * A point with other bytes than the point.
+     */
+    private Point otherPoint;
+    /**
+     * The point.
+     */
+    private Point point;
+    /**
+     * A point with the same bytes as the point.
+     */
+    private Point samePoint;
+
+    /**
+     * Sets up the points.
+     */
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        bytes = createBytes(random);
+        point = new Point(bytes);
+        samePoint = new Point(bytes);
+        otherPoint = new Point(createBytes(random));
+    }
+
+    /**
+     * Creates random bytes with the first quarter set to zero.
+     *
+     * @param random The pseudorandom number generator.
+     * @return Random bytes with the first quarter set to zero.
+     */
+    private byte[] createBytes(final SplittableRandom random) {
+        byte[] result = new byte[byteLength];
+        random.nextBytes(result);
+        for (int i = 0; i < byteLength / FOUR; i++) {
+            result[i] = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Measures the formatting of a point as a hexadecimal string.
+     *
+     * @return The hexadecimal string.
+     */
+    @Benchmark
+    public String asHexadecimalString() {
+        return point.asHexadecimalString();
+    }
+
+    /**
+     * Measures the construction of a point.
+     *
+     * @return The point.
+     */
+    @Benchmark
+    public Point construct() {
+        return new Point(bytes);
+    }
+
+    /**
+     * Measures comparing a point to another point with other bytes.
+     *
+     * @return The result of the comparison.
+     */
+    @Benchmark
+    public boolean equalsOtherPoint() {
+        return point.equals(otherPoint);
+    }
+
+    /**
+     * Measures comparing a point to another point with the same bytes.
+     *
+     * @return The result of the comparison.
+     */
+    @Benchmark
+    public boolean equalsSamePoint() {
+        return point.equals(samePoint);
+    }
+
+    /**
+     * Measures the calculation of the Hamming distance between two points.
+     *
+     * @return The Hamming distance.
+     */
+    @Benchmark
+    public int hammingDistanceTo() {
+        return point.hammingDistanceTo(otherPoint);
+    }
+
+    /**
+     * Measures the calculation of the hash code of a point.
+     *
+     * @return The hash code.
+     */
+    @Benchmark
+    public int hashCodeOfPoint() {
+        return point.hashCode();
+    }
+
+    /**
+     * Measures the calculation of the order of a point.
+     *
+     * @return The order.
+     */
+    @Benchmark
+    public int order() {
+        return point.order();
+    }
+}
@@ -0,0 +1,158 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.filipvanlaenen.kolektoj.Collection;
+
+/**
+ * Benchmarks on the read operations of the segment repositories, for sizes from 10<sup>3</sup> to 10<sup>7</sup>
+ * segments. The segments are synthetic but valid, see <code>SyntheticSegments</code>. Lookups cycle through the start
+ * and end points of the segments in the repository, and through start points that aren't in the repository. Note that
+ * the largest sizes need a heap of several gigabytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = SegmentRepositoryBenchmark.ITERATIONS)
+@Measurement(iterations = SegmentRepositoryBenchmark.ITERATIONS)
+public class SegmentRepositoryBenchmark {
+    /**
+     * The number of warmup and measurement iterations.
+     */
+    static final int ITERATIONS = 5;
+    /**
+     * The number of start points that aren't in the repository.
+     */
+    private static final int NUMBER_OF_ABSENT_POINTS = 1024;
+
+    /**
+     * The type of the segment repository.
+     */
+    @Param({SyntheticSegments.IN_MEMORY, SyntheticSegments.FILE_BASED})
+    private String repositoryType;
+    /**
+     * The number of segments in the repository.
+     */
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int size;
+
+    /**
+     * Start points that aren't in the repository.
+     */
+    private Point[] absentPoints;
+    /**
+     * The cache file for the file-based segment repository.
+     */
+    private Path cacheFile;
+    /**
+     * The index of the next lookup.
+     */
+    private int index;
+    /**
+     * The segment repository.
+     */
+    private SegmentRepository repository;
+    /**
+     * The segments in the repository.
+     */
+    private Segment[] segments;
+
+    /**
+     * Sets up the segment repository and the points to look up.
+     *
+     * @throws IOException Thrown if the cache file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        segments = SyntheticSegments.createSegments(size, 0);
+        Segment[] absentSegments = SyntheticSegments.createSegments(NUMBER_OF_ABSENT_POINTS, size);
+        absentPoints = new Point[NUMBER_OF_ABSENT_POINTS];
+        for (int i = 0; i < NUMBER_OF_ABSENT_POINTS; i++) {
+            absentPoints[i] = absentSegments[i].getStartPoint();
+        }
+        cacheFile = Files.createTempFile("jcrk-benchmark-", ".rcf");
+        repository = SyntheticSegments.createRepository(repositoryType, cacheFile, segments);
+    }
+
+    /**
+     * Closes the segment repository, and deletes the cache file.
+     *
+     * @throws Exception Thrown if the segment repository can't be closed or the cache file can't be deleted.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SyntheticSegments.closeRepository(repository, cacheFile);
+        Files.deleteIfExists(cacheFile);
+    }
+
+    /**
+     * Returns the next segment to look up.
+     *
+     * @return The next segment to look up.
+     */
+    private Segment nextSegment() {
+        index = (index + 1) % size;
+        return segments[index];
+    }
+
+    /**
+     * Measures looking up a start point that's in the repository.
+     *
+     * @return Whether the repository contains a segment with the start point.
+     */
+    @Benchmark
+    public boolean containsSegmentWithStartPoint() {
+        return repository.containsSegmentWithStartPoint(nextSegment().getStartPoint());
+    }
+
+    /**
+     * Measures looking up a start point that isn't in the repository.
+     *
+     * @return Whether the repository contains a segment with the start point.
+     */
+    @Benchmark
+    public boolean containsSegmentWithAbsentStartPoint() {
+        index = (index + 1) % NUMBER_OF_ABSENT_POINTS;
+        return repository.containsSegmentWithStartPoint(absentPoints[index]);
+    }
+
+    /**
+     * Measures retrieving the segments with an end point.
+     *
+     * @return The segments with the end point.
+     */
+    @Benchmark
+    public Collection<Segment> getSegmentsWithEndPoint() {
+        return repository.getSegmentsWithEndPoint(nextSegment().getEndPoint());
+    }
+
+    /**
+     * Measures retrieving all collisions from the repository.
+     *
+     * @return The collisions.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Collection<Collision> getCollisions() {
+        return repository.getCollisions();
+    }
+}
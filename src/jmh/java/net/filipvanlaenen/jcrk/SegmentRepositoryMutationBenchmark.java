@@ -0,0 +1,160 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks on the operations changing the segment repositories and on loading a cache file, for sizes from
+ * 10<sup>3</sup> to 10<sup>7</sup> segments. The repository is rebuilt from the same synthetic segments before every
+ * iteration, such that every iteration starts from a repository of the same size. Note that the largest sizes need a
+ * heap of several gigabytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = SegmentRepositoryMutationBenchmark.ITERATIONS)
+@Measurement(iterations = SegmentRepositoryMutationBenchmark.ITERATIONS)
+public class SegmentRepositoryMutationBenchmark {
+    /**
+     * The number of warmup and measurement iterations.
+     */
+    static final int ITERATIONS = 3;
+    /**
+     * The number of segments added per iteration.
+     */
+    static final int NUMBER_OF_ADDED_SEGMENTS = 100;
+
+    /**
+     * The type of the segment repository.
+     */
+    @Param({SyntheticSegments.IN_MEMORY, SyntheticSegments.FILE_BASED})
+    private String repositoryType;
+    /**
+     * The number of segments in the repository.
+     */
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int size;
+
+    /**
+     * The segments to be added to the repository.
+     */
+    private Segment[] addedSegments;
+    /**
+     * The cache file for the file-based segment repository.
+     */
+    private Path cacheFile;
+    /**
+     * The file-based segment repository loaded from the cache file, or <code>null</code> if none was loaded.
+     */
+    private SegmentRepository loadedRepository;
+    /**
+     * The segment repository.
+     */
+    private SegmentRepository repository;
+    /**
+     * The segments in the repository.
+     */
+    private Segment[] segments;
+
+    /**
+     * Creates the synthetic segments and the cache file.
+     *
+     * @throws IOException Thrown if the cache file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        segments = SyntheticSegments.createSegments(size, 0);
+        addedSegments = SyntheticSegments.createSegments(NUMBER_OF_ADDED_SEGMENTS, size);
+        cacheFile = Files.createTempFile("jcrk-benchmark-", ".rcf");
+    }
+
+    /**
+     * Rebuilds the segment repository, and rewrites the cache file.
+     *
+     * @throws IOException Thrown if the cache file can't be written.
+     */
+    @Setup(Level.Iteration)
+    public void setUpIteration() throws IOException {
+        repository = null;
+        SyntheticSegments.writeCacheFile(cacheFile, segments);
+        repository = SyntheticSegments.createRepository(repositoryType, cacheFile, segments);
+    }
+
+    /**
+     * Closes the segment repository and the segment repository loaded from the cache file, such that their flushers
+     * don't outlive the iteration.
+     *
+     * @throws Exception Thrown if a segment repository can't be closed.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() throws Exception {
+        SyntheticSegments.closeRepository(repository, cacheFile);
+        SyntheticSegments.closeRepository(loadedRepository, cacheFile);
+        loadedRepository = null;
+    }
+
+    /**
+     * Deletes the cache file.
+     *
+     * @throws IOException Thrown if the cache file can't be deleted.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(cacheFile);
+    }
+
+    /**
+     * Measures adding a number of segments to the repository, until they're durable. The result is the time for all of
+     * them together.
+     *
+     * @return The segment repository.
+     */
+    @Benchmark
+    public SegmentRepository add() {
+        for (Segment segment : addedSegments) {
+            repository.add(segment);
+        }
+        repository.sync();
+        return repository;
+    }
+
+    /**
+     * Measures compressing the repository to the next order.
+     *
+     * @return The segment repository.
+     */
+    @Benchmark
+    public SegmentRepository compressToNextOrder() {
+        repository.compressToNextOrder();
+        return repository;
+    }
+
+    /**
+     * Measures loading a file-based segment repository from its cache file. This benchmark doesn't depend on the
+     * type of the segment repository.
+     *
+     * @return The segment repository.
+     */
+    @Benchmark
+    public SegmentRepository loadCacheFile() {
+        loadedRepository = new FileBasedSegmentRepository(cacheFile.toString(), SyntheticSegments.HASH_FUNCTION);
+        return loadedRepository;
+    }
+}
@@ -0,0 +1,142 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+/**
+ * Utility class producing synthetic but valid segments and segment repositories for the benchmarks. The segments are
+ * produced for SHA-1 truncated to 32 bits, from start points counting up from a given offset, and are extended until
+ * they're complete, such that they're exactly like the segments produced during a real search.
+ */
+final class SyntheticSegments {
+    /**
+     * The bit length of the hash function.
+     */
+    private static final int BIT_LENGTH = 32;
+    /**
+     * The stride by which a start point is moved up if it produces a cyclic segment.
+     */
+    private static final int CYCLIC_STRIDE = 1 << 28;
+    /**
+     * The hash function of the synthetic segments.
+     */
+    static final HashFunction HASH_FUNCTION = new TruncatedStandardHashFunction(StandardHashFunction.SHA1, BIT_LENGTH);
+    /**
+     * The order of the synthetic segments.
+     */
+    static final int ORDER = 4;
+    /**
+     * The name of the in-memory segment repository type.
+     */
+    static final String IN_MEMORY = "InMemory";
+    /**
+     * The name of the file-based segment repository type.
+     */
+    static final String FILE_BASED = "FileBased";
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private SyntheticSegments() {
+    }
+
+    /**
+     * Closes a segment repository if it holds resources, e.g. the flusher of a file-based segment repository, and
+     * deletes the snapshot it may have written next to the cache file.
+     *
+     * @param repository The segment repository, or <code>null</code>.
+     * @param cacheFile  The cache file for a file-based segment repository.
+     * @throws Exception Thrown if the segment repository can't be closed or the snapshot can't be deleted.
+     */
+    static void closeRepository(final SegmentRepository repository, final Path cacheFile) throws Exception {
+        if (repository instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+        Files.deleteIfExists(cacheFile.resolveSibling(cacheFile.getFileName() + ".snapshot"));
+    }
+
+    /**
+     * Creates a segment repository with the given segments, either in memory or backed by a cache file. The cache file
+     * is overwritten with the segments and loaded by the file-based segment repository.
+     *
+     * @param repositoryType The type of the segment repository, either <code>InMemory</code> or
+     *                       <code>FileBased</code>.
+     * @param cacheFile      The cache file for a file-based segment repository.
+     * @param segments       The segments.
+     * @return A segment repository with the segments.
+     * @throws IOException Thrown if the cache file can't be written.
+     */
+    static SegmentRepository createRepository(final String repositoryType, final Path cacheFile,
+            final Segment[] segments) throws IOException {
+        if (repositoryType.equals(FILE_BASED)) {
+            writeCacheFile(cacheFile, segments);
+            return new FileBasedSegmentRepository(cacheFile.toString(), HASH_FUNCTION);
+        }
+        InMemorySegmentRepository repository = new InMemorySegmentRepository(HASH_FUNCTION);
+        repository.setOrder(ORDER);
+        for (Segment segment : segments) {
+            repository.add(segment);
+        }
+        return repository;
+    }
+
+    /**
+     * Creates complete segments from consecutive start points, in parallel.
+     *
+     * @param numberOfSegments The number of segments.
+     * @param offset           The first start point, as an integer.
+     * @return An array with the segments.
+     */
+    static Segment[] createSegments(final int numberOfSegments, final int offset) {
+        return IntStream.range(offset, offset + numberOfSegments).parallel().mapToObj(SyntheticSegments::createSegment)
+                .toArray(Segment[]::new);
+    }
+
+    /**
+     * Creates a complete segment from a start point. Cyclic segments are extremely unlikely with a 32-bit hash
+     * function and short segments, but if one occurs, the start point is moved up by a stride beyond the range of
+     * start points used by the benchmarks until a complete segment is found.
+     *
+     * @param startPoint The start point, as an integer.
+     * @return The segment.
+     */
+    private static Segment createSegment(final int startPoint) {
+        int candidate = startPoint;
+        while (true) {
+            Segment segment = new Segment(new Point(ByteBuffer.allocate(Integer.BYTES).putInt(candidate).array()),
+                    ORDER, HASH_FUNCTION);
+            while (!segment.isComplete() && !segment.isCyclic()) {
+                segment.extend();
+            }
+            if (segment.isComplete()) {
+                return segment;
+            }
+            candidate += CYCLIC_STRIDE;
+        }
+    }
+
+    /**
+     * Writes segments to a cache file in the format of the file-based segment repository.
+     *
+     * @param cacheFile The cache file.
+     * @param segments  The segments.
+     * @throws IOException Thrown if the cache file can't be written.
+     */
+    static void writeCacheFile(final Path cacheFile, final Segment[] segments) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8)) {
+            writer.write(Integer.toString(ORDER));
+            writer.newLine();
+            writer.write(HASH_FUNCTION.toString());
+            writer.newLine();
+            for (Segment segment : segments) {
+                writer.write(FileBasedSegmentRepository.formatSegment(segment));
+                writer.newLine();
+            }
+        }
+    }
+}
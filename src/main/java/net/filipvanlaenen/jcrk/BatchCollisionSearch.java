@@ -0,0 +1,189 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class searching a collision in batches, without a segment repository. In every batch, the producers extend the
+ * segments from a range of start points at a fixed order, and only append them to their own spill file. At the end of
+ * the batch, the spill files are sorted by end point on disk and merged with the segments of the earlier batches,
+ * such that segments sharing an end point are found. Since no index on the segments is kept in memory, an order of
+ * magnitude more segments can be stored than in a segment repository on the same host, at the cost of only detecting
+ * collisions at the end of a batch. The sorted segments are kept in the directory, such that an interrupted search
+ * resumes with the batch that was interrupted.
+ */
+public final class BatchCollisionSearch {
+    /**
+     * The size of a batch, i.e. the number of start points between two detections.
+     */
+    private final int batchSize;
+    /**
+     * The directory with the spill files and the sorted segments.
+     */
+    private final Path directory;
+    /**
+     * The hash function.
+     */
+    private final HashFunction hashFunction;
+    /**
+     * The number of producer threads, which is also the number of threads sorting the spill files.
+     */
+    private final int numberOfThreads;
+    /**
+     * The order of the segments.
+     */
+    private final int order;
+    /**
+     * The maximum number of records held in memory while sorting.
+     */
+    private final int sortBufferSize;
+
+    /**
+     * Constructs a batch search.
+     *
+     * @param hashFunction    The hash function.
+     * @param order           The order of the segments.
+     * @param directory       The directory with the spill files and the sorted segments.
+     * @param batchSize       The number of start points between two detections.
+     * @param sortBufferSize  The maximum number of records held in memory while sorting.
+     * @param numberOfThreads The number of producer threads, which is also the number of threads sorting the spill
+     *                        files.
+     * @throws IllegalArgumentException Thrown if the order is negative or exceeds the bit length of the hash function,
+     *                                  or the batch size or the number of threads isn't positive.
+     */
+    public BatchCollisionSearch(final HashFunction hashFunction, final int order, final Path directory,
+            final int batchSize, final int sortBufferSize, final int numberOfThreads) throws IllegalArgumentException {
+        if (order < 0 || order > hashFunction.getBitLength()) {
+            throw new IllegalArgumentException(String.format("The order (%d) should be between 0 and %d.", order,
+                    hashFunction.getBitLength()));
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The batch size (%d) should be at least one.", batchSize));
+        }
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The number of threads (%d) should be at least one.", numberOfThreads));
+        }
+        this.hashFunction = hashFunction;
+        this.order = order;
+        this.directory = directory;
+        this.batchSize = batchSize;
+        this.sortBufferSize = sortBufferSize;
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * Searches a collision, batch by batch, until a collision is found or the start points are exhausted.
+     *
+     * @return The first collision found, or <code>null</code> if no collision was found.
+     * @throws IOException          Thrown if a spill file or the sorted segments can't be read or written.
+     * @throws InterruptedException Thrown if the search is interrupted while waiting for the producers.
+     */
+    public Collision findCollision() throws IOException, InterruptedException {
+        ExternalSortCollisionDetector detector =
+                new ExternalSortCollisionDetector(hashFunction, order, directory, sortBufferSize, numberOfThreads);
+        long numberOfStartPoints = StartPointRange.getNumberOfStartPoints(hashFunction) >> order;
+        long nextIndex = detector.getNumberOfSegments();
+        if (nextIndex > 0L) {
+            Laconic.LOGGER.logProgress("Resuming the batch search of order %d after %d segments.", order, nextIndex);
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            while (nextIndex < numberOfStartPoints) {
+                int rangeSize = (int) Math.min(batchSize, numberOfStartPoints - nextIndex);
+                StartPointRange range = new StartPointRange(order, nextIndex, rangeSize);
+                Collision collision = produceBatch(executorService, detector, range);
+                if (collision == null) {
+                    Collection<Collision> collisions = detector.detect();
+                    if (!collisions.isEmpty()) {
+                        collision = collisions.get();
+                    }
+                }
+                if (collision != null) {
+                    Laconic.LOGGER.logProgress("Found a collision.");
+                    return collision;
+                }
+                nextIndex += range.size();
+            }
+            Laconic.LOGGER.logProgress("Exhausted the start points of order %d.", order);
+            return null;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Produces the segments of a batch on the producer threads, each appending to its own spill file.
+     *
+     * @param executorService The executor service running the producers.
+     * @param detector        The detector.
+     * @param range           The range of start points of the batch.
+     * @return A collision found in a cyclic segment, or <code>null</code> if none was found.
+     * @throws IOException          Thrown if a spill file can't be written.
+     * @throws InterruptedException Thrown if the search is interrupted while waiting for the producers.
+     */
+    private Collision produceBatch(final ExecutorService executorService,
+            final ExternalSortCollisionDetector detector, final StartPointRange range)
+            throws IOException, InterruptedException {
+        List<Future<Collision>> futures = new ArrayList<Future<Collision>>();
+        for (int thread = 0; thread < numberOfThreads; thread++) {
+            int firstPosition = thread;
+            futures.add(executorService.submit(() -> produce(detector, range, firstPosition)));
+        }
+        Collision collision = null;
+        for (Future<Collision> future : futures) {
+            try {
+                Collision cyclicCollision = future.get();
+                if (collision == null) {
+                    collision = cyclicCollision;
+                }
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof IOException ioe) {
+                    throw ioe;
+                }
+                throw new IllegalStateException("A producer failed.", ee.getCause());
+            }
+        }
+        return collision;
+    }
+
+    /**
+     * Produces the segments from every n-th start point in a range, with n the number of producer threads, and
+     * appends them to a spill file.
+     *
+     * @param detector      The detector.
+     * @param range         The range of start points.
+     * @param firstPosition The position of the first start point in the range.
+     * @return A collision found in a cyclic segment, or <code>null</code> if none was found.
+     * @throws IOException Thrown if the spill file can't be written.
+     */
+    private Collision produce(final ExternalSortCollisionDetector detector, final StartPointRange range,
+            final int firstPosition) throws IOException {
+        try (ExternalSortCollisionDetector.SpillWriter spillWriter = detector.openSpillWriter()) {
+            for (int i = firstPosition; i < range.size(); i += numberOfThreads) {
+                Segment segment = range.produceSegment(i, hashFunction, 0);
+                if (segment.isCyclic()) {
+                    Laconic.LOGGER.logProgress("The segment of order %d with start point %s is cyclic.", order,
+                            segment.getStartPoint().asHexadecimalString());
+                    Collision collision = segment.asCyclicSegment().findCollision();
+                    if (collision != null) {
+                        return collision;
+                    }
+                } else {
+                    spillWriter.append(segment);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,261 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import javax.management.ObjectName;
+
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class searching collisions for a range of truncations of a number of standard hash functions. The jobs are scheduled
+ * on a shared thread pool with the smallest bit lengths first, such that all jobs run in the same, warmed-up process,
+ * and the short jobs don't have to wait for the long ones. The results can be formatted as rows for the tables in the
+ * README file.
+ */
+public final class BitLengthSweep {
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOSECONDS_IN_A_SECOND = 1_000_000_000D;
+    /**
+     * Comparator sorting jobs by bit length first, and then by hash function.
+     */
+    private static final Comparator<Job> SCHEDULING_COMPARATOR =
+            Comparator.comparingInt(Job::bitLength).thenComparing(Job::hashFunction);
+    /**
+     * Comparator sorting results by hash function first, and then by bit length.
+     */
+    private static final Comparator<Result> REPORTING_COMPARATOR =
+            Comparator.comparing(Result::hashFunction).thenComparingInt(Result::bitLength);
+
+    /**
+     * The standard hash functions.
+     */
+    private final StandardHashFunction[] hashFunctions;
+    /**
+     * The maximum bit length, inclusive.
+     */
+    private final int maximumBitLength;
+    /**
+     * The minimum bit length, inclusive.
+     */
+    private final int minimumBitLength;
+    /**
+     * The metrics server to which the metrics of the jobs are added while they run, or <code>null</code>.
+     */
+    private final MetricsHttpServer metricsServer;
+    /**
+     * The number of threads in the thread pool.
+     */
+    private final int numberOfThreads;
+    /**
+     * The factory creating a segment repository for a truncated hash function.
+     */
+    private final Function<TruncatedStandardHashFunction, SegmentRepository> segmentRepositoryFactory;
+
+    /**
+     * Constructs a sweep over a range of bit lengths for a number of standard hash functions.
+     *
+     * @param hashFunctions            The standard hash functions.
+     * @param minimumBitLength         The minimum bit length, inclusive.
+     * @param maximumBitLength         The maximum bit length, inclusive.
+     * @param numberOfThreads          The number of threads in the thread pool.
+     * @param segmentRepositoryFactory The factory creating a segment repository for a truncated hash function.
+     * @throws IllegalArgumentException Thrown if the range of bit lengths is empty or the number of threads isn't
+     *                                  positive.
+     */
+    public BitLengthSweep(final OrderedCollection<StandardHashFunction> hashFunctions, final int minimumBitLength,
+            final int maximumBitLength, final int numberOfThreads,
+            final Function<TruncatedStandardHashFunction, SegmentRepository> segmentRepositoryFactory)
+            throws IllegalArgumentException {
+        this(hashFunctions, minimumBitLength, maximumBitLength, numberOfThreads, segmentRepositoryFactory, null);
+    }
+
+    /**
+     * Constructs a sweep over a range of bit lengths for a number of standard hash functions, adding the metrics of
+     * the running jobs to a metrics server.
+     *
+     * @param hashFunctions            The standard hash functions.
+     * @param minimumBitLength         The minimum bit length, inclusive.
+     * @param maximumBitLength         The maximum bit length, inclusive.
+     * @param numberOfThreads          The number of threads in the thread pool.
+     * @param segmentRepositoryFactory The factory creating a segment repository for a truncated hash function.
+     * @param metricsServer            The metrics server, or <code>null</code>.
+     * @throws IllegalArgumentException Thrown if the range of bit lengths is empty or the number of threads isn't
+     *                                  positive.
+     */
+    public BitLengthSweep(final OrderedCollection<StandardHashFunction> hashFunctions, final int minimumBitLength,
+            final int maximumBitLength, final int numberOfThreads,
+            final Function<TruncatedStandardHashFunction, SegmentRepository> segmentRepositoryFactory,
+            final MetricsHttpServer metricsServer) throws IllegalArgumentException {
+        if (minimumBitLength < 1 || maximumBitLength < minimumBitLength) {
+            throw new IllegalArgumentException(String.format("The range of bit lengths (%d-%d) is invalid.",
+                    minimumBitLength, maximumBitLength));
+        }
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The number of threads (%d) should be at least one.", numberOfThreads));
+        }
+        this.hashFunctions = hashFunctions.toArray(new StandardHashFunction[hashFunctions.size()]);
+        this.minimumBitLength = minimumBitLength;
+        this.maximumBitLength = maximumBitLength;
+        this.numberOfThreads = numberOfThreads;
+        this.segmentRepositoryFactory = segmentRepositoryFactory;
+        this.metricsServer = metricsServer;
+    }
+
+    /**
+     * Returns the jobs of the sweep, in the order in which they should be scheduled.
+     *
+     * @return The jobs of the sweep, with the smallest bit lengths first.
+     */
+    OrderedCollection<Job> getJobs() {
+        Job[] jobs = new Job[hashFunctions.length * (maximumBitLength - minimumBitLength + 1)];
+        int i = 0;
+        for (StandardHashFunction hashFunction : hashFunctions) {
+            for (int bitLength = minimumBitLength; bitLength <= maximumBitLength; bitLength++) {
+                jobs[i++] = new Job(hashFunction, bitLength);
+            }
+        }
+        Arrays.sort(jobs, SCHEDULING_COMPARATOR);
+        return OrderedCollection.of(jobs);
+    }
+
+    /**
+     * Runs a job, i.e. searches a collision for a truncated hash function, and measures how long it takes. The segment
+     * repository of the job is closed afterwards if it holds resources, e.g. a cache file and its flusher.
+     *
+     * @param job The job to run.
+     * @return The result of the job.
+     */
+    private Result run(final Job job) {
+        TruncatedStandardHashFunction hashFunction =
+                new TruncatedStandardHashFunction(job.hashFunction(), job.bitLength());
+        long start = System.nanoTime();
+        SegmentRepository segmentRepository = segmentRepositoryFactory.apply(hashFunction);
+        CollisionFinder finder = new CollisionFinder(segmentRepository,
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+        ObjectName metricsName = finder.getMetrics().register(hashFunction.toString());
+        if (metricsServer != null) {
+            metricsServer.add(hashFunction.toString(), finder.getMetrics());
+        }
+        Collision collision;
+        try {
+            collision = finder.findCollision();
+        } finally {
+            SearchMetrics.unregister(metricsName);
+            if (metricsServer != null) {
+                metricsServer.remove(hashFunction.toString());
+            }
+            if (segmentRepository instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    Laconic.LOGGER.logError("Exception while trying to close the segment repository for %s: %s",
+                            hashFunction.toString(), e.getMessage());
+                }
+            }
+        }
+        Result result = new Result(job.hashFunction(), job.bitLength(), collision, System.nanoTime() - start);
+        Laconic.LOGGER.logProgress("Finished the sweep job for %s in %.3f s.", hashFunction.toString(),
+                result.getDurationInSeconds());
+        return result;
+    }
+
+    /**
+     * Runs the sweep on a thread pool, and returns the results sorted by hash function first, and then by bit length.
+     *
+     * @return The results of the sweep.
+     * @throws InterruptedException Thrown if the sweep is interrupted while waiting for the results.
+     */
+    public OrderedCollection<Result> run() throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            for (Job job : getJobs()) {
+                futures.add(executorService.submit(() -> run(job)));
+            }
+            Result[] results = new Result[futures.size()];
+            for (int i = 0; i < results.length; i++) {
+                try {
+                    results[i] = futures.get(i).get();
+                } catch (ExecutionException ee) {
+                    throw new IllegalStateException("A sweep job failed.", ee.getCause());
+                }
+            }
+            Arrays.sort(results, REPORTING_COMPARATOR);
+            return OrderedCollection.of(results);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * A job of the sweep, i.e. a standard hash function and the bit length it should be truncated to.
+     *
+     * @param hashFunction The standard hash function.
+     * @param bitLength    The bit length.
+     */
+    record Job(StandardHashFunction hashFunction, int bitLength) {
+    }
+
+    /**
+     * The result of a job of the sweep.
+     *
+     * @param hashFunction The standard hash function.
+     * @param bitLength    The bit length.
+     * @param collision    The collision found, or <code>null</code> if the hash function has a cyclic result space.
+     * @param duration     The duration of the job in nanoseconds.
+     */
+    public record Result(StandardHashFunction hashFunction, int bitLength, Collision collision, long duration) {
+        /**
+         * Returns the header of the table in the README file, extended with a column for the duration.
+         *
+         * @return The header of the table.
+         */
+        public static String getTableHeader() {
+            return "| Bit Length | Points | Hash Value | Hamming Distance between the Full Hash Values "
+                    + "| Duration (s) |\n"
+                    + "|------------|--------|------------|-----------------------------------------------"
+                    + "|--------------|";
+        }
+
+        /**
+         * Returns the duration of the job in seconds.
+         *
+         * @return The duration of the job in seconds.
+         */
+        public double getDurationInSeconds() {
+            return duration / NANOSECONDS_IN_A_SECOND;
+        }
+
+        /**
+         * Returns the result as a row for the table in the README file, extended with a column for the duration. If
+         * the collision has more than two points, only the first two points in hexadecimal order are reported.
+         *
+         * @return The result as a row for the table in the README file.
+         */
+        public String toTableRow() {
+            if (collision == null) {
+                return String.format("| %d | Cyclic result space | N/A | N/A | %.3f |", bitLength,
+                        getDurationInSeconds());
+            }
+            Point[] points = collision.points().toArray(new Point[collision.points().size()]);
+            Arrays.sort(points, Comparator.comparing(Point::asHexadecimalString));
+            int hammingDistance = points[0].hash(hashFunction).hammingDistanceTo(points[1].hash(hashFunction));
+            return String.format("| %d | `%s` and `%s` | `%s` | %d | %.3f |", bitLength,
+                    points[0].asHexadecimalString().toUpperCase(), points[1].asHexadecimalString().toUpperCase(),
+                    points[0].hash(collision.hashFunction()).asHexadecimalString().toUpperCase(), hammingDistance,
+                    getDurationInSeconds());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.Arrays;
+
+/**
+ * A blocked Bloom filter for points. The filter is divided into blocks of 512 bits, i.e. the size of a typical cache
+ * line, and all the bits for a point are set in the same block. A query therefore touches only one cache line. A
+ * negative answer is definite, while a positive answer may be a false positive.
+ */
+final class BlockedBloomFilter {
+    /**
+     * The number of bits in a long.
+     */
+    private static final int BITS_PER_WORD = 64;
+    /**
+     * The number of longs in a block.
+     */
+    private static final int WORDS_PER_BLOCK = 8;
+    /**
+     * The number of bits in a block.
+     */
+    private static final int BITS_PER_BLOCK = BITS_PER_WORD * WORDS_PER_BLOCK;
+    /**
+     * The mask to select a bit in a block.
+     */
+    private static final int BLOCK_BIT_MASK = BITS_PER_BLOCK - 1;
+    /**
+     * The shift to select the word in a block from the index of a bit in a block.
+     */
+    private static final int WORD_SHIFT = 6;
+    /**
+     * The mask to select a bit in a word.
+     */
+    private static final int WORD_BIT_MASK = BITS_PER_WORD - 1;
+    /**
+     * The shift to obtain the upper half of a 64-bit hash code.
+     */
+    private static final int HALF_LONG_SHIFT = 32;
+    /**
+     * The mask to obtain the lower half of a 64-bit hash code as an unsigned value.
+     */
+    private static final long LOWER_HALF_MASK = 0xffffffffL;
+    /**
+     * The shift used to derive the step between the bits of a point in a block.
+     */
+    private static final int STEP_SHIFT = 9;
+    /**
+     * The maximum number of hash functions.
+     */
+    private static final int MAX_NUMBER_OF_HASHES = 16;
+
+    /**
+     * The number of blocks.
+     */
+    private final int numberOfBlocks;
+    /**
+     * The number of bits set per point.
+     */
+    private final int numberOfHashes;
+    /**
+     * The bits of the filter.
+     */
+    private final long[] words;
+
+    /**
+     * Constructs a blocked Bloom filter with a given number of blocks and a number of bits to be set per point.
+     *
+     * @param numberOfBlocks The number of blocks of 512 bits.
+     * @param numberOfHashes The number of bits to be set per point.
+     */
+    BlockedBloomFilter(final int numberOfBlocks, final int numberOfHashes) {
+        if (numberOfBlocks < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The number of blocks (%d) should be at least one.", numberOfBlocks));
+        } else if (numberOfHashes < 1 || numberOfHashes > MAX_NUMBER_OF_HASHES) {
+            throw new IllegalArgumentException(String.format(
+                    "The number of hashes (%d) should be between 1 and %d.", numberOfHashes, MAX_NUMBER_OF_HASHES));
+        }
+        this.numberOfBlocks = numberOfBlocks;
+        this.numberOfHashes = numberOfHashes;
+        this.words = new long[numberOfBlocks * WORDS_PER_BLOCK];
+    }
+
+    /**
+     * Creates a blocked Bloom filter sized for an expected number of points and a target false positive rate.
+     *
+     * @param expectedInsertions The expected number of points to be added to the filter.
+     * @param falsePositiveRate  The target false positive rate.
+     * @return A blocked Bloom filter sized for the expected number of points.
+     */
+    static BlockedBloomFilter forExpectedInsertions(final long expectedInsertions, final double falsePositiveRate) {
+        long n = Math.max(1L, expectedInsertions);
+        double ln2 = Math.log(2);
+        double bits = -n * Math.log(falsePositiveRate) / (ln2 * ln2);
+        long blocks = Math.max(1L, (long) Math.ceil(bits / BITS_PER_BLOCK));
+        int hashes = (int) Math.round(bits / n * ln2);
+        return new BlockedBloomFilter((int) Math.min(blocks, Integer.MAX_VALUE / WORDS_PER_BLOCK),
+                Math.max(1, Math.min(hashes, MAX_NUMBER_OF_HASHES)));
+    }
+
+    /**
+     * Adds a point to the filter.
+     *
+     * @param point The point to be added.
+     */
+    void add(final Point point) {
+        long hash = point.longHashCode();
+        int offset = blockOffset(hash);
+        int bit = (int) hash;
+        int step = stepFor(hash);
+        for (int i = 0; i < numberOfHashes; i++) {
+            int blockBit = bit & BLOCK_BIT_MASK;
+            words[offset + (blockBit >>> WORD_SHIFT)] |= 1L << (blockBit & WORD_BIT_MASK);
+            bit += step;
+        }
+    }
+
+    /**
+     * Calculates the offset of the block for a hash code in the array of words.
+     *
+     * @param hash The 64-bit hash code of a point.
+     * @return The offset of the block in the array of words.
+     */
+    private int blockOffset(final long hash) {
+        return (int) (((hash >>> HALF_LONG_SHIFT) * numberOfBlocks) >>> HALF_LONG_SHIFT) * WORDS_PER_BLOCK;
+    }
+
+    /**
+     * Clears the filter.
+     */
+    void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Returns the size of the filter in bytes.
+     *
+     * @return The size of the filter in bytes.
+     */
+    long getByteSize() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    /**
+     * Returns false if the point definitely hasn't been added to the filter, and true if it may have been added.
+     *
+     * @param point The point to be tested.
+     * @return False if the point definitely hasn't been added to the filter, true otherwise.
+     */
+    boolean mightContain(final Point point) {
+        long hash = point.longHashCode();
+        int offset = blockOffset(hash);
+        int bit = (int) hash;
+        int step = stepFor(hash);
+        for (int i = 0; i < numberOfHashes; i++) {
+            int blockBit = bit & BLOCK_BIT_MASK;
+            if ((words[offset + (blockBit >>> WORD_SHIFT)] & (1L << (blockBit & WORD_BIT_MASK))) == 0L) {
+                return false;
+            }
+            bit += step;
+        }
+        return true;
+    }
+
+    /**
+     * Derives the odd step between the bits of a point in a block from its hash code.
+     *
+     * @param hash The 64-bit hash code of a point.
+     * @return The step between the bits of a point in a block.
+     */
+    private static int stepFor(final long hash) {
+        return (int) (((hash & LOWER_HALF_MASK) >>> STEP_SHIFT) | 1L);
+    }
+}
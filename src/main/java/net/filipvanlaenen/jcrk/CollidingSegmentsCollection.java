@@ -1,16 +1,32 @@
 package net.filipvanlaenen.jcrk;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
 
 import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.Map;
 import net.filipvanlaenen.kolektoj.ModifiableCollection;
+import net.filipvanlaenen.kolektoj.ModifiableMap;
 import net.filipvanlaenen.kolektoj.SortedCollection;
+import net.filipvanlaenen.kolektoj.hash.ModifiableHashMap;
 
 /**
  * Class representing a collection of two or more colliding segments. All the segments in the collection have to be
  * produced with the same hash function and share the same end point, but have different start points.
  */
 public final class CollidingSegmentsCollection {
+    /**
+     * Comparator to sort checkpoints by position.
+     */
+    private static final Comparator<SegmentCheckpoint> CHECKPOINT_COMPARATOR =
+            Comparator.comparingLong(SegmentCheckpoint::position);
+    /**
+     * Comparator to sort anchors from farthest to closest to the end point.
+     */
+    private static final Comparator<Anchor> ANCHOR_COMPARATOR = Comparator.comparingLong(Anchor::distance).reversed();
     /**
      * Comparator to sort segments from shortest to longest.
      */
@@ -80,31 +96,339 @@ public final class CollidingSegmentsCollection {
     }
 
     /**
-     * Finds a collision.
+     * Finds a collision between the two shortest segments.
      *
      * @return A collision.
      */
     Collision findCollision() {
-        Segment segment0 = segments.getAt(0);
-        Segment segment1 = segments.getAt(1);
-        long segmentLength0 = segment0.getLength();
-        long segmentLength1 = segment1.getLength();
-        long lengthDifference = segmentLength1 - segmentLength0;
-        Point p = segment1.getStartPoint();
-        for (int i = 0; i < lengthDifference; i++) {
+        return findCollision(segments.getAt(0), segments.getAt(1));
+    }
+
+    /**
+     * Finds all the collisions in the tree of segments feeding the end point, i.e. one collision for every merge point.
+     * The merge points are located by multi-way lock-step walks over the merge intervals of the tree, which are walked
+     * in parallel.
+     *
+     * @return A collection with a collision for every merge point.
+     */
+    Collection<Collision> findCollisions() {
+        ModifiableCollection<Collision> result = ModifiableCollection.empty();
+        walkInLockStep(preimages -> result.add(new Collision(hashFunction, preimages)));
+        return result;
+    }
+
+    /**
+     * Finds the collision involving a segment, e.g. a segment that was just added to the end point, i.e. the collision
+     * at the merge point where its path joins the paths of the other segments. The segment is backtracked against
+     * every other segment, and the merge point farthest from the end point is the one where its path joins the others.
+     * The collision contains the preimage of that merge point on the segment's path, and all the preimages on the
+     * paths of the other segments passing through it.
+     *
+     * @param segment The segment, which should be part of the collection.
+     * @return A collection with the collision involving the segment.
+     */
+    Collection<Collision> findCollisionsWith(final Segment segment) {
+        long joinDistance = -1L;
+        Point preimage = null;
+        ModifiableCollection<Point> otherPreimages = ModifiableCollection.empty();
+        for (Segment otherSegment : segments) {
+            if (otherSegment.getStartPoint().equals(segment.getStartPoint())) {
+                continue;
+            }
+            Merge merge = findMerge(segment, otherSegment);
+            if (merge.distance() > joinDistance) {
+                joinDistance = merge.distance();
+                preimage = merge.preimage0();
+                otherPreimages = ModifiableCollection.empty();
+            }
+            if (merge.distance() == joinDistance && !otherPreimages.contains(merge.preimage1())) {
+                otherPreimages.add(merge.preimage1());
+            }
+        }
+        if (preimage == null) {
+            return Collection.empty();
+        }
+        Point[] points = new Point[otherPreimages.size() + 1];
+        points[0] = preimage;
+        int i = 1;
+        for (Point otherPreimage : otherPreimages) {
+            points[i++] = otherPreimage;
+        }
+        return Collection.of(new Collision(hashFunction, points));
+    }
+
+    /**
+     * Finds the collision between two segments with the same end point.
+     *
+     * @param segment0 The first segment.
+     * @param segment1 The second segment.
+     * @return The collision between the two segments.
+     */
+    private Collision findCollision(final Segment segment0, final Segment segment1) {
+        Merge merge = findMerge(segment0, segment1);
+        return new Collision(hashFunction, merge.preimage0(), merge.preimage1());
+    }
+
+    /**
+     * The point where two paths merge, given as the preimages of the merge point on both paths, and the distance from
+     * the merge point to a point both paths have in common further on.
+     *
+     * @param preimage0 The preimage on the first path.
+     * @param preimage1 The preimage on the second path.
+     * @param distance  The distance from the merge point to the common point.
+     */
+    private record Merge(Point preimage0, Point preimage1, long distance) {
+    }
+
+    /**
+     * Finds the point where two segments with the same end point merge. If both segments carry checkpoints, the first
+     * checkpoint they have in common is located, and only the interval between the preceding checkpoints and that
+     * common checkpoint is walked again. Otherwise, the segments are walked again from their start points.
+     *
+     * @param segment0 The first segment.
+     * @param segment1 The second segment.
+     * @return The merge, with the distance from the merge point to the end point.
+     */
+    private Merge findMerge(final Segment segment0, final Segment segment1) {
+        int checkpointOrder = Math.max(segment0.getCheckpointOrder(), segment1.getCheckpointOrder());
+        SegmentCheckpoint[] checkpoints0 = getSortedCheckpoints(segment0, checkpointOrder);
+        SegmentCheckpoint[] checkpoints1 = getSortedCheckpoints(segment1, checkpointOrder);
+        ModifiableMap<Point, Long> positions0 = new ModifiableHashMap<Point, Long>();
+        for (SegmentCheckpoint checkpoint : checkpoints0) {
+            positions0.add(checkpoint.point(), checkpoint.position());
+        }
+        long mergePosition0 = segment0.getLength();
+        long mergePosition1 = segment1.getLength();
+        for (SegmentCheckpoint checkpoint : checkpoints1) {
+            if (positions0.containsKey(checkpoint.point())) {
+                mergePosition0 = positions0.get(checkpoint.point());
+                mergePosition1 = checkpoint.position();
+                break;
+            }
+        }
+        SegmentCheckpoint from0 = findLastCheckpointBefore(segment0, checkpoints0, mergePosition0);
+        SegmentCheckpoint from1 = findLastCheckpointBefore(segment1, checkpoints1, mergePosition1);
+        Merge merge = findMerge(from0.point(), mergePosition0 - from0.position(), from1.point(),
+                mergePosition1 - from1.position());
+        return new Merge(merge.preimage0(), merge.preimage1(),
+                merge.distance() + segment0.getLength() - mergePosition0);
+    }
+
+    /**
+     * Finds the collision with the most points among all the segments in the collection, using multi-way lock-step
+     * walks over the merge intervals of the tree.
+     *
+     * @return The collision with the most points.
+     */
+    Collision findMultiCollision() {
+        Collision[] result = new Collision[1];
+        walkInLockStep(preimages -> {
+            if (result[0] == null || preimages.length > result[0].points().size()) {
+                result[0] = new Collision(hashFunction, preimages);
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * A point on the tree of segments feeding the end point, i.e. the start point or a checkpoint of a segment, or the
+     * end point, with its distance to the end point.
+     *
+     * @param point    The point.
+     * @param distance The distance from the point to the end point.
+     */
+    private record Anchor(Point point, long distance) {
+    }
+
+    /**
+     * A merge interval, i.e. the anchors on the paths leading to the same next anchor, and the distance from that next
+     * anchor to the end point. Since the checkpoints are the points on the paths having at least the checkpoint order,
+     * any merge point is in the merge interval of the first checkpoint following it, or of the end point.
+     *
+     * @param anchors     The anchors on the paths leading to the next anchor, sorted from farthest to closest.
+     * @param endDistance The distance from the next anchor to the end point.
+     */
+    private record MergeInterval(Anchor[] anchors, long endDistance) {
+    }
+
+    /**
+     * Walks the merge intervals of the tree of segments feeding the end point in multi-way lock-step walks. The
+     * checkpoints all segments record, i.e. those having at least the highest checkpoint order among the segments,
+     * split the paths into intervals between two consecutive anchors, and the intervals leading to the same anchor
+     * from different anchors are walked together. Since the merge intervals are independent of each other, they're
+     * walked in parallel, after which the preimages of every merge point are handed to the consumer.
+     *
+     * @param mergePointConsumer The consumer of the preimages of every merge point.
+     */
+    private void walkInLockStep(final Consumer<Point[]> mergePointConsumer) {
+        int checkpointOrder = 0;
+        for (Segment segment : segments) {
+            checkpointOrder = Math.max(checkpointOrder, segment.getCheckpointOrder());
+        }
+        ModifiableMap<Point, Anchor> anchorsByNextPoint =
+                new ModifiableHashMap<Point, Anchor>(Map.KeyAndValueCardinality.DUPLICATE_KEYS_WITH_DISTINCT_VALUES);
+        ModifiableMap<Point, Long> distances = new ModifiableHashMap<Point, Long>();
+        for (Segment segment : segments) {
+            Anchor anchor = new Anchor(segment.getStartPoint(), segment.getLength());
+            for (SegmentCheckpoint checkpoint : getSortedCheckpoints(segment, checkpointOrder)) {
+                Anchor next = new Anchor(checkpoint.point(), segment.getLength() - checkpoint.position());
+                addAnchor(anchorsByNextPoint, distances, anchor, next);
+                anchor = next;
+            }
+            addAnchor(anchorsByNextPoint, distances, anchor, new Anchor(endPoint, 0L));
+        }
+        List<MergeInterval> mergeIntervals = new ArrayList<MergeInterval>();
+        for (Point nextPoint : anchorsByNextPoint.getKeys()) {
+            Collection<Anchor> anchors = anchorsByNextPoint.getAll(nextPoint);
+            if (anchors.size() > 1) {
+                Anchor[] sortedAnchors = anchors.toArray(new Anchor[anchors.size()]);
+                Arrays.sort(sortedAnchors, ANCHOR_COMPARATOR);
+                mergeIntervals.add(new MergeInterval(sortedAnchors, distances.get(nextPoint)));
+            }
+        }
+        List<List<Point[]>> mergePoints = mergeIntervals.parallelStream().map(this::walkInLockStep).toList();
+        for (List<Point[]> preimages : mergePoints) {
+            preimages.forEach(mergePointConsumer);
+        }
+    }
+
+    /**
+     * Adds an anchor to the anchors leading to the next anchor, unless they're at the same distance. Since the map only
+     * keeps distinct anchors per next point, the intervals shared by several segments are only added once.
+     *
+     * @param anchorsByNextPoint The anchors by the point of the next anchor.
+     * @param distances          The distances of the points of the next anchors to the end point.
+     * @param anchor             The anchor.
+     * @param next               The next anchor.
+     */
+    private static void addAnchor(final ModifiableMap<Point, Anchor> anchorsByNextPoint,
+            final ModifiableMap<Point, Long> distances, final Anchor anchor, final Anchor next) {
+        if (anchor.distance() == next.distance()) {
+            return;
+        }
+        anchorsByNextPoint.add(next.point(), anchor);
+        if (!distances.containsKey(next.point())) {
+            distances.add(next.point(), next.distance());
+        }
+    }
+
+    /**
+     * Walks a merge interval in a multi-way lock-step walk. The walk starts with the farthest anchors, and the other
+     * anchors join the walk once their distance to the end point equals the current distance. At every step, walkers
+     * hashing to the same point are merged, and their points are recorded as the preimages of a merge point. As long
+     * as a single walker remains, it's hashed without looking for merges. The walk stops as soon as all the anchors
+     * have joined and merged into a single walker.
+     *
+     * @param mergeInterval The merge interval.
+     * @return A list with the preimages of every merge point in the merge interval.
+     */
+    private List<Point[]> walkInLockStep(final MergeInterval mergeInterval) {
+        List<Point[]> result = new ArrayList<Point[]>();
+        Anchor[] anchors = mergeInterval.anchors();
+        ModifiableCollection<Point> walkers = ModifiableCollection.empty();
+        int index = 0;
+        long distance = anchors[0].distance();
+        while (distance > mergeInterval.endDistance() && (index < anchors.length || walkers.size() > 1)) {
+            while (index < anchors.length && anchors[index].distance() == distance) {
+                walkers.add(anchors[index].point());
+                index++;
+            }
+            if (walkers.size() == 1) {
+                walkers = ModifiableCollection.of(walkers.get().hash(hashFunction));
+            } else {
+                ModifiableMap<Point, Point> nextPoints = new ModifiableHashMap<Point, Point>(
+                        Map.KeyAndValueCardinality.DUPLICATE_KEYS_WITH_DISTINCT_VALUES);
+                for (Point walker : walkers) {
+                    nextPoints.add(walker.hash(hashFunction), walker);
+                }
+                walkers = ModifiableCollection.empty();
+                for (Point nextPoint : nextPoints.getKeys()) {
+                    walkers.add(nextPoint);
+                    Collection<Point> preimages = nextPoints.getAll(nextPoint);
+                    if (preimages.size() > 1) {
+                        result.add(preimages.toArray(new Point[preimages.size()]));
+                    }
+                }
+            }
+            distance--;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the point where two paths merge, given the start points of the paths and their lengths up to a point they
+     * have in common.
+     *
+     * @param startPoint0 The start point of the first path.
+     * @param length0     The length of the first path.
+     * @param startPoint1 The start point of the second path.
+     * @param length1     The length of the second path.
+     * @return The merge, with the distance from the merge point to the common point.
+     */
+    private Merge findMerge(final Point startPoint0, final long length0, final Point startPoint1,
+            final long length1) {
+        if (length0 > length1) {
+            Merge merge = findMerge(startPoint1, length1, startPoint0, length0);
+            return new Merge(merge.preimage1(), merge.preimage0(), merge.distance());
+        }
+        long lengthDifference = length1 - length0;
+        Point p = startPoint1;
+        for (long i = 0; i < lengthDifference; i++) {
             p = p.hash(hashFunction);
         }
-        Point segment0Point = segment0.getStartPoint();
+        Point segment0Point = startPoint0;
         Point nextSegment0Point = segment0Point.hash(hashFunction);
         Point segment1Point = p;
         Point nextSegment1Point = segment1Point.hash(hashFunction);
+        long distance = length0 - 1L;
         while (!nextSegment0Point.equals(nextSegment1Point)) {
             segment0Point = nextSegment0Point;
             nextSegment0Point = segment0Point.hash(hashFunction);
             segment1Point = nextSegment1Point;
             nextSegment1Point = segment1Point.hash(hashFunction);
+            distance--;
+        }
+        return new Merge(segment0Point, segment1Point, distance);
+    }
+
+    /**
+     * Finds the last checkpoint on a segment before a position. If there is no such checkpoint, the segment's start
+     * point is returned as a checkpoint at position zero.
+     *
+     * @param segment     The segment.
+     * @param checkpoints The segment's checkpoints, sorted by position.
+     * @param position    The position.
+     * @return The last checkpoint before the position.
+     */
+    private static SegmentCheckpoint findLastCheckpointBefore(final Segment segment,
+            final SegmentCheckpoint[] checkpoints, final long position) {
+        SegmentCheckpoint result = new SegmentCheckpoint(0L, segment.getStartPoint());
+        for (SegmentCheckpoint checkpoint : checkpoints) {
+            if (checkpoint.position() >= position) {
+                break;
+            }
+            result = checkpoint;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the checkpoints of a segment having at least a given order, sorted by position.
+     *
+     * @param segment         The segment.
+     * @param checkpointOrder The minimal order of the checkpoints.
+     * @return The checkpoints of the segment having at least the given order, sorted by position.
+     */
+    private static SegmentCheckpoint[] getSortedCheckpoints(final Segment segment, final int checkpointOrder) {
+        ModifiableCollection<SegmentCheckpoint> checkpoints = ModifiableCollection.empty();
+        for (SegmentCheckpoint checkpoint : segment.getCheckpoints()) {
+            if (checkpoint.point().order() >= checkpointOrder) {
+                checkpoints.add(checkpoint);
+            }
         }
-        return new Collision(hashFunction, segment0Point, segment1Point);
+        SegmentCheckpoint[] result = checkpoints.toArray(new SegmentCheckpoint[checkpoints.size()]);
+        Arrays.sort(result, CHECKPOINT_COMPARATOR);
+        return result;
     }
 
     /**
@@ -1,8 +1,17 @@
 package net.filipvanlaenen.jcrk;
 
-import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
 import net.filipvanlaenen.kolektoj.OrderedCollection;
 import net.filipvanlaenen.laconic.Laconic;
 
@@ -10,11 +19,63 @@ import net.filipvanlaenen.laconic.Laconic;
  * Class that can find a collision in a hash function provided enough time and that there is a collision.
  */
 public class CollisionFinder {
+    /**
+     * The mask on the length of a segment selecting the hashes after which is checked whether the segment being
+     * extended is due to be checkpointed, such that the clock isn't read after every single hash.
+     */
+    private static final int IN_FLIGHT_CHECK_MASK = (1 << 16) - 1;
+    /**
+     * The maximum number of collisions remembered by the stream of collisions.
+     */
+    private static final int MAXIMUM_NUMBER_OF_FOUND_COLLISIONS = 1 << 16;
+    /**
+     * The default segment producers.
+     */
+    private static final OrderedCollection<SegmentProducer> SEGMENT_PRODUCERS = OrderedCollection.<SegmentProducer>of(
+            StandardSegmentProducer.ZeroPointSegmentChainExtension, StandardSegmentProducer.Counter);
+    /**
+     * The checkpoint depth for the new segments.
+     */
+    private final int checkpointDepth;
+    /**
+     * The collisions found but not yet returned by the stream of collisions.
+     */
+    private final ModifiableCollection<Collision> pendingCollisions = ModifiableCollection.empty();
+    /**
+     * The collisions most recently found by the stream of collisions, such that they aren't returned twice.
+     */
+    private final Set<Collision> foundCollisions = Collections.newSetFromMap(new LinkedHashMap<Collision, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Collision, Boolean> eldest) {
+            return size() > MAXIMUM_NUMBER_OF_FOUND_COLLISIONS;
+        }
+    });
+    /**
+     * Whether the collisions already present in the segment repository have been added to the pending collisions.
+     */
+    private boolean repositoryCollisionsQueued;
+    /**
+     * The start points of the segments found to be cyclic while searching for a multi-collision or a stream of
+     * collisions.
+     */
+    private final ModifiableCollection<Point> cyclicStartPoints = ModifiableCollection.empty();
+    /**
+     * The view on the segment repository handed to the segment producers, on which the start points of cyclic segments
+     * are in use.
+     */
+    private final SegmentRepository producerView;
+    /**
+     * The metrics of the search.
+     */
+    private final SearchMetrics metrics = new SearchMetrics();
+    /**
+     * The number of points the collision should have.
+     */
+    private final int multiplicity;
     /**
      * The segment producers.
      */
-    private static final OrderedCollection<SegmentProducer> SEGMENT_PRODUCERS =
-            OrderedCollection.of(SegmentProducer.ZeroPointSegmentChainExtension, SegmentProducer.Counter);
+    private final OrderedCollection<SegmentProducer> segmentProducers;
     /**
      * The segment repository.
      */
@@ -23,6 +84,14 @@ public class CollisionFinder {
      * The segment repository compression condition.
      */
     private final SegmentRepositoryCompressionCondition segmentRepositoryCompressionCondition;
+    /**
+     * The store to which the segment being extended is checkpointed, or <code>null</code>.
+     */
+    private InFlightSegmentStore inFlightSegmentStore;
+    /**
+     * Whether the progress on every single segment should be logged.
+     */
+    private boolean traceEnabled;
 
     /**
      * Creates a collision finder that can find a collision.
@@ -32,66 +101,130 @@ public class CollisionFinder {
      */
     public CollisionFinder(final SegmentRepository segmentRepository,
             final SegmentRepositoryCompressionCondition segmentRepositoryCompressionCondition) {
+        this(segmentRepository, segmentRepositoryCompressionCondition, SEGMENT_PRODUCERS);
+    }
+
+    /**
+     * Creates a collision finder that can find a collision using the provided segment producers. The segment producers
+     * are tried in order until one of them finds a new start point.
+     *
+     * @param segmentRepository                     The repository to be used for the segments found.
+     * @param segmentRepositoryCompressionCondition The condition specifying when to compress the segment repository.
+     * @param segmentProducers                      The segment producers to find new start points.
+     */
+    public CollisionFinder(final SegmentRepository segmentRepository,
+            final SegmentRepositoryCompressionCondition segmentRepositoryCompressionCondition,
+            final OrderedCollection<SegmentProducer> segmentProducers) {
+        this(segmentRepository, segmentRepositoryCompressionCondition, segmentProducers, 0);
+    }
+
+    /**
+     * Creates a collision finder that can find a collision using the provided segment producers, recording checkpoints
+     * on the new segments down to the provided checkpoint depth. A checkpoint depth of d records on average 2^d - 1
+     * checkpoints per segment, and reduces the number of hashes needed to locate the collision once two segments
+     * with the same end point have been found by a factor of about 2^d.
+     *
+     * @param segmentRepository                     The repository to be used for the segments found.
+     * @param segmentRepositoryCompressionCondition The condition specifying when to compress the segment repository.
+     * @param segmentProducers                      The segment producers to find new start points.
+     * @param checkpointDepth                       The checkpoint depth for the new segments.
+     */
+    public CollisionFinder(final SegmentRepository segmentRepository,
+            final SegmentRepositoryCompressionCondition segmentRepositoryCompressionCondition,
+            final OrderedCollection<SegmentProducer> segmentProducers, final int checkpointDepth) {
+        this(segmentRepository, segmentRepositoryCompressionCondition, segmentProducers, checkpointDepth, 2);
+    }
+
+    /**
+     * Creates a collision finder that keeps searching until it finds a collision with at least the provided number of
+     * points, i.e. an r-collision for a multiplicity r. Segments with the same end point are kept in the repository
+     * until enough of them share an end point for their paths to merge in an r-collision.
+     *
+     * @param segmentRepository                     The repository to be used for the segments found.
+     * @param segmentRepositoryCompressionCondition The condition specifying when to compress the segment repository.
+     * @param segmentProducers                      The segment producers to find new start points.
+     * @param checkpointDepth                       The checkpoint depth for the new segments.
+     * @param multiplicity                          The number of points the collision should have.
+     */
+    public CollisionFinder(final SegmentRepository segmentRepository,
+            final SegmentRepositoryCompressionCondition segmentRepositoryCompressionCondition,
+            final OrderedCollection<SegmentProducer> segmentProducers, final int checkpointDepth,
+            final int multiplicity) {
+        if (checkpointDepth < 0) {
+            throw new IllegalArgumentException(
+                    String.format("The checkpoint depth (%d) is negative.", checkpointDepth));
+        } else if (multiplicity < 2) {
+            throw new IllegalArgumentException(
+                    String.format("The multiplicity (%d) should be at least two.", multiplicity));
+        }
+        this.checkpointDepth = checkpointDepth;
+        this.multiplicity = multiplicity;
         this.segmentRepository = segmentRepository;
         this.segmentRepositoryCompressionCondition = segmentRepositoryCompressionCondition;
+        this.segmentProducers = segmentProducers;
+        this.producerView = new CyclicStartPointsInUseView(segmentRepository, cyclicStartPoints);
+        metrics.updateRepositoryState(segmentRepository);
+    }
+
+    /**
+     * Adds a segment to the segment repository, and records the time it took and the new state of the segment
+     * repository in the metrics.
+     *
+     * @param segment The segment to be added.
+     */
+    private void addToRepository(final Segment segment) {
+        long start = System.nanoTime();
+        boolean added = segmentRepository.add(segment);
+        metrics.recordPersistence(System.nanoTime() - start);
+        if (!added) {
+            metrics.recordAbandonedSegment();
+        }
+        metrics.updateRepositoryState(segmentRepository);
     }
 
     /**
      * Finds a collision using the segment repository with the segment producer to add new segments and the segment
      * repository compression condition to determine when to compress the segment repository.
-     * 
-     * @param cacheFileName
      *
-     * @return The first collision found.
-     * @throws IOException
-     * @throws IllegalArgumentException
+     * @return The first collision found, or <code>null</code> if the segment repository is full or no new start
+     *         points can be found.
      */
-    public Collision findCollision() throws IllegalArgumentException {
+    public Collision findCollision() {
+        if (multiplicity > 2) {
+            return findMultiCollision();
+        }
         Collection<Collision> collisions = segmentRepository.getCollisions();
         if (!collisions.isEmpty()) {
             Laconic.LOGGER.logProgress(String.format("Found a collision."));
+            metrics.recordCollision();
             return collisions.get();
         }
         Collision collision = null;
         while (collision == null && !segmentRepository.isFull()) {
-            if (segmentRepositoryCompressionCondition.evaluate(segmentRepository)) {
-                Laconic.LOGGER.logProgress(String.format(
-                        "The segment repository has %d segments of order %d -- going to compress it to the next order.",
-                        segmentRepository.size(), segmentRepository.getOrder()));
-                segmentRepository.compressToNextOrder();
-                Laconic.LOGGER.logProgress(String.format(
-                        "Compressed the segment repository to order %d -- %d segments were retained and/or created.",
-                        segmentRepository.getOrder(), segmentRepository.size()));
-            }
-            Point newStartPoint = findNextStartPoint();
-            if (newStartPoint == null) {
+            compressIfNeeded();
+            Segment newSegment = produceNewSegment();
+            if (newSegment == null) {
                 return null;
             }
-            if (newStartPoint.order() < segmentRepository.getOrder()) {
-                Laconic.LOGGER.logProgress("No collision found -- the hash function has a cyclic result space.");
-                return null;
-            }
-            Laconic.LOGGER.logProgress(String.format("Starting on a new segment of order %d with start point %s.",
-                    segmentRepository.getOrder(), newStartPoint.asHexadecimalString()));
-            Segment newSegment =
-                    new Segment(newStartPoint, segmentRepository.getOrder(), segmentRepository.getHashFunction());
-            while (!newSegment.isComplete() && !newSegment.isCyclic()) {
-                newSegment.extend();
-            }
             if (newSegment.isCyclic()) {
                 Laconic.LOGGER.logProgress(String.format("The segment of order %d with start point %s is cyclic.",
                         segmentRepository.getOrder(), newSegment.getStartPoint().asHexadecimalString()));
+                metrics.recordCyclicSegment();
                 CyclicSegment cyclicSegment = newSegment.asCyclicSegment();
                 collision = cyclicSegment.findCollision();
             } else {
-                Laconic.LOGGER.logProgress(String.format(
-                        "Completed a segment of order %d with start point %s, end point %s and length %d.",
-                        segmentRepository.getOrder(), newSegment.getStartPoint().asHexadecimalString(),
-                        newSegment.getEndPoint().asHexadecimalString(), newSegment.getLength()));
-                segmentRepository.add(newSegment);
-                Laconic.LOGGER.logProgress(
-                        String.format("Added the new segment to the repository, which now contains %d segments.",
-                                segmentRepository.size()));
+                if (traceEnabled) {
+                    Laconic.LOGGER.logProgress(
+                            "Completed a segment of order %d with start point %s, end point %s and length %d.",
+                            segmentRepository.getOrder(), newSegment.getStartPoint().asHexadecimalString(),
+                            newSegment.getEndPoint().asHexadecimalString(), newSegment.getLength());
+                }
+                addToRepository(newSegment);
+                if (traceEnabled) {
+                    Laconic.LOGGER.logProgress(
+                            "Added the new segment to the repository, which now contains %d segments.",
+                            segmentRepository.size());
+                }
                 Collection<Segment> segmentsWithNewEndPoint =
                         segmentRepository.getSegmentsWithEndPoint(newSegment.getEndPoint());
                 if (segmentsWithNewEndPoint.size() > 1) {
@@ -103,22 +236,444 @@ public class CollisionFinder {
                 }
             }
         }
-        Laconic.LOGGER.logProgress(String.format("Found a collision."));
+        if (collision != null) {
+            Laconic.LOGGER.logProgress(String.format("Found a collision."));
+            metrics.recordCollision();
+        }
         return collision;
     }
 
     /**
-     * Finds a start point to produce a new segment.
+     * Returns a lazy stream of collisions. The segment repository is kept after every collision, such that new
+     * collisions can be found by adding segments to the same repository. For every new segment, only the collision
+     * where its path joins the paths of the segments with the same end point is searched. A collision isn't returned
+     * again as long as it's among the most recently found collisions, and the stream ends when the segment repository
+     * is full or no new start points can be found.
+     *
+     * @return A lazy stream of collisions.
+     */
+    public Stream<Collision> findCollisions() {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Collision>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(final Consumer<? super Collision> action) {
+                Collision collision = findNextCollision();
+                if (collision == null) {
+                    return false;
+                }
+                action.accept(collision);
+                return true;
+            }
+        }, false);
+    }
+
+    /**
+     * Finds the next collision for the stream of collisions.
+     *
+     * @return The next collision, or <code>null</code> if no new collision can be found.
+     */
+    private Collision findNextCollision() {
+        if (!repositoryCollisionsQueued) {
+            queueNewCollisions(segmentRepository.getCollisions());
+            repositoryCollisionsQueued = true;
+        }
+        while (pendingCollisions.isEmpty() && !segmentRepository.isFull()) {
+            compressIfNeeded();
+            Segment newSegment = produceNewSegment();
+            if (newSegment == null) {
+                break;
+            }
+            if (newSegment.isCyclic()) {
+                Laconic.LOGGER.logProgress(String.format("The segment of order %d with start point %s is cyclic.",
+                        segmentRepository.getOrder(), newSegment.getStartPoint().asHexadecimalString()));
+                metrics.recordCyclicSegment();
+                cyclicStartPoints.add(newSegment.getStartPoint());
+                queueNewCollisions(Collection.of(newSegment.asCyclicSegment().findCollision()));
+            } else {
+                addToRepository(newSegment);
+                Collection<Segment> segmentsWithNewEndPoint =
+                        segmentRepository.getSegmentsWithEndPoint(newSegment.getEndPoint());
+                if (segmentsWithNewEndPoint.size() > 1) {
+                    queueNewCollisions(
+                            new CollidingSegmentsCollection(segmentsWithNewEndPoint).findCollisionsWith(newSegment));
+                }
+            }
+        }
+        if (pendingCollisions.isEmpty()) {
+            return null;
+        }
+        Collision collision = pendingCollisions.get();
+        pendingCollisions.remove(collision);
+        metrics.recordCollision();
+        Laconic.LOGGER.logProgress(String.format("Found a collision with %d points.", collision.points().size()));
+        return collision;
+    }
+
+    /**
+     * Adds the collisions that haven't been found recently to the pending collisions.
+     *
+     * @param collisions The collisions.
+     */
+    private void queueNewCollisions(final Collection<Collision> collisions) {
+        for (Collision collision : collisions) {
+            if (foundCollisions.add(collision)) {
+                pendingCollisions.add(collision);
+            }
+        }
+    }
+
+    /**
+     * Compresses the segment repository to the next order if the segment repository compression condition is met, and
+     * checkpoints the compressed segment repository.
+     *
+     * @return True if the segment repository was compressed.
+     */
+    private boolean compressIfNeeded() {
+        if (segmentRepositoryCompressionCondition.evaluate(segmentRepository)) {
+            Laconic.LOGGER.logProgress(String.format(
+                    "The segment repository has %d segments of order %d -- going to compress it to the next order.",
+                    segmentRepository.size(), segmentRepository.getOrder()));
+            long start = System.nanoTime();
+            segmentRepository.compressToNextOrder();
+            metrics.recordCompression(System.nanoTime() - start);
+            metrics.updateRepositoryState(segmentRepository);
+            Laconic.LOGGER.logProgress(String.format(
+                    "Compressed the segment repository to order %d -- %d segments were retained and/or created.",
+                    segmentRepository.getOrder(), segmentRepository.size()));
+            segmentRepository.checkpoint();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds a multi-collision, i.e. a collision with at least as many points as the multiplicity. Segments are added to
+     * the repository until a multi-way lock-step walk over the segments sharing an end point finds such a collision.
+     * Collisions with fewer points are logged, but don't stop the search. Cyclic segments aren't added to the
+     * repository, but their start points are remembered in order not to produce them again. Since compressing the
+     * repository combines segments, and may add segments to an end point, the end points shared by enough segments
+     * are searched again after every compression.
+     *
+     * @return The first multi-collision found.
+     */
+    private Collision findMultiCollision() {
+        Collision repositoryCollision = findMultiCollisionInRepository();
+        if (repositoryCollision != null) {
+            return repositoryCollision;
+        }
+        while (!segmentRepository.isFull()) {
+            if (compressIfNeeded()) {
+                repositoryCollision = findMultiCollisionInRepository();
+                if (repositoryCollision != null) {
+                    return repositoryCollision;
+                }
+            }
+            Segment newSegment = produceNewSegment();
+            if (newSegment == null) {
+                return null;
+            }
+            if (newSegment.isCyclic()) {
+                Laconic.LOGGER.logProgress(String.format(
+                        "The segment of order %d with start point %s is cyclic -- skipping it.",
+                        segmentRepository.getOrder(), newSegment.getStartPoint().asHexadecimalString()));
+                metrics.recordCyclicSegment();
+                cyclicStartPoints.add(newSegment.getStartPoint());
+            } else {
+                addToRepository(newSegment);
+                Point endPoint = newSegment.getEndPoint();
+                if (segmentRepository.getSegmentsWithEndPoint(endPoint).size() >= multiplicity) {
+                    Collision collision = findMultiCollision(endPoint);
+                    if (collision != null) {
+                        return collision;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a multi-collision among the segments with an end point shared by at least as many segments as the
+     * multiplicity.
+     *
+     * @return A collision with at least as many points as the multiplicity, or <code>null</code> if none was found.
+     */
+    private Collision findMultiCollisionInRepository() {
+        for (Point endPoint : segmentRepository.getEndPointsWithMultipleSegments(multiplicity)) {
+            Collision collision = findMultiCollision(endPoint);
+            if (collision != null) {
+                return collision;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a multi-collision among the segments with a given end point.
+     *
+     * @param endPoint The end point.
+     * @return A collision with at least as many points as the multiplicity, or <code>null</code> if the segments don't
+     *         merge in such a collision.
+     */
+    private Collision findMultiCollision(final Point endPoint) {
+        Collection<Segment> segments = segmentRepository.getSegmentsWithEndPoint(endPoint);
+        Collision collision = new CollidingSegmentsCollection(segments).findMultiCollision();
+        int numberOfPoints = collision == null ? 0 : collision.points().size();
+        Laconic.LOGGER.logProgress(
+                String.format("Found %d colliding segments with end point %s, merging in at most %d points.",
+                        segments.size(), endPoint.asHexadecimalString(), numberOfPoints));
+        if (numberOfPoints >= multiplicity) {
+            Laconic.LOGGER.logProgress(String.format("Found a %d-collision.", numberOfPoints));
+            metrics.recordCollision();
+            return collision;
+        }
+        return null;
+    }
+
+    /**
+     * Produces a new segment from a new start point, extending it until it's complete or cyclic.
+     *
+     * @return A new segment, or <code>null</code> if no new segment can be produced.
+     */
+    private Segment produceNewSegment() {
+        Segment newSegment = resumeInFlightSegment();
+        if (newSegment == null) {
+            Point newStartPoint = findNextStartPoint();
+            if (newStartPoint == null) {
+                return null;
+            }
+            if (newStartPoint.order() < segmentRepository.getOrder()) {
+                Laconic.LOGGER.logProgress("No collision found -- the hash function has a cyclic result space.");
+                return null;
+            }
+            if (traceEnabled) {
+                Laconic.LOGGER.logProgress("Starting on a new segment of order %d with start point %s.",
+                        segmentRepository.getOrder(), newStartPoint.asHexadecimalString());
+            }
+            newSegment = new Segment(newStartPoint, segmentRepository.getOrder(),
+                    segmentRepository.getHashFunction(), checkpointDepth);
+        }
+        while (!newSegment.isComplete() && !newSegment.isCyclic()) {
+            newSegment.extend();
+            metrics.recordHash();
+            if (inFlightSegmentStore != null && (newSegment.getLength() & IN_FLIGHT_CHECK_MASK) == 0L
+                    && inFlightSegmentStore.isDue()) {
+                segmentRepository.sync();
+                inFlightSegmentStore.save(newSegment);
+            }
+        }
+        if (inFlightSegmentStore != null) {
+            inFlightSegmentStore.clear();
+        }
+        if (newSegment.isComplete()) {
+            metrics.recordSegment(segmentRepository.getOrder(), newSegment.getLength());
+        }
+        return newSegment;
+    }
+
+    /**
+     * Resumes the segment checkpointed to the in-flight segment store, if there is one for the current order and hash
+     * function, and its start point isn't used in the segment repository yet.
+     *
+     * @return The resumed segment, or <code>null</code> if there is no segment to resume.
+     */
+    private Segment resumeInFlightSegment() {
+        if (inFlightSegmentStore == null) {
+            return null;
+        }
+        Segment segment = inFlightSegmentStore.load(segmentRepository.getOrder(), segmentRepository.getHashFunction());
+        if (segment == null) {
+            return null;
+        }
+        if (segmentRepository.containsSegmentWithStartPoint(segment.getStartPoint())
+                || cyclicStartPoints.contains(segment.getStartPoint())) {
+            inFlightSegmentStore.clear();
+            return null;
+        }
+        Laconic.LOGGER.logProgress("Resuming the segment of order %d with start point %s at length %d.",
+                segment.getOrder(), segment.getStartPoint().asHexadecimalString(), segment.getLength());
+        return segment;
+    }
+
+    /**
+     * Returns the metrics of the search.
+     *
+     * @return The metrics of the search.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the store to which the segment being extended is checkpointed periodically. If the store contains a
+     * checkpoint for the current order and hash function, the next segment resumes from that checkpoint instead of
+     * starting from a new start point. Every collision finder running in parallel should have its own store. Before
+     * the segment being extended is checkpointed, the segments added to the segment repository are made durable.
+     *
+     * @param inFlightSegmentStore The in-flight segment store, or <code>null</code> to disable checkpointing.
+     */
+    public void setInFlightSegmentStore(final InFlightSegmentStore inFlightSegmentStore) {
+        this.inFlightSegmentStore = inFlightSegmentStore;
+    }
+
+    /**
+     * Sets whether the progress on every single segment should be logged. By default, only events that are rare, like
+     * compressions, cyclic segments and collisions, are logged, such that the search doesn't spend time formatting
+     * and writing log messages at low orders, where thousands of segments are completed per second. Periodic
+     * summaries can be logged by a <code>ProgressReporter</code> instead.
+     *
+     * @param traceEnabled Whether the progress on every single segment should be logged.
+     */
+    public void setTraceEnabled(final boolean traceEnabled) {
+        this.traceEnabled = traceEnabled;
+    }
+
+    /**
+     * Finds a start point to produce a new segment. The segment producers see the start points of the segments that
+     * were found to be cyclic as in use, such that producers consulting the repository, like the counter, move past
+     * them. Segment producers returning such a start point anyway are asked again, but no more times than there are
+     * such start points.
      *
      * @return A start point to produce a new segment.
      */
     private Point findNextStartPoint() {
-        for (SegmentProducer segmentProducer : SEGMENT_PRODUCERS) {
-            Point newStartPoint = segmentProducer.findNewStartPoint(segmentRepository);
-            if (newStartPoint != null) {
-                return newStartPoint;
+        for (SegmentProducer segmentProducer : segmentProducers) {
+            for (int i = 0; i <= cyclicStartPoints.size(); i++) {
+                Point newStartPoint = segmentProducer.findNewStartPoint(producerView);
+                if (newStartPoint == null) {
+                    break;
+                } else if (!cyclicStartPoints.contains(newStartPoint)) {
+                    return newStartPoint;
+                }
             }
         }
         return null;
     }
+
+    /**
+     * A view on a segment repository on which the start points of the cyclic segments are in use, handed to the
+     * segment producers. All other methods are delegated to the segment repository.
+     */
+    private static final class CyclicStartPointsInUseView implements SegmentRepository {
+        /**
+         * The start points of the cyclic segments.
+         */
+        private final Collection<Point> cyclicStartPoints;
+        /**
+         * The segment repository.
+         */
+        private final SegmentRepository segmentRepository;
+
+        /**
+         * Constructs a view on a segment repository.
+         *
+         * @param segmentRepository The segment repository.
+         * @param cyclicStartPoints The start points of the cyclic segments.
+         */
+        private CyclicStartPointsInUseView(final SegmentRepository segmentRepository,
+                final Collection<Point> cyclicStartPoints) {
+            this.segmentRepository = segmentRepository;
+            this.cyclicStartPoints = cyclicStartPoints;
+        }
+
+        @Override
+        public boolean add(final Segment segment) throws IllegalArgumentException {
+            return segmentRepository.add(segment);
+        }
+
+        @Override
+        public void checkpoint() {
+            segmentRepository.checkpoint();
+        }
+
+        @Override
+        public void sync() {
+            segmentRepository.sync();
+        }
+
+        @Override
+        public void compressToNextOrder() {
+            segmentRepository.compressToNextOrder();
+        }
+
+        @Override
+        public boolean contains(final Segment segment) {
+            return segmentRepository.contains(segment);
+        }
+
+        @Override
+        public boolean containsSegmentsWithEndPoint(final Point point) {
+            return segmentRepository.containsSegmentsWithEndPoint(point);
+        }
+
+        @Override
+        public boolean containsSegmentWithStartPoint(final Point point) {
+            return segmentRepository.containsSegmentWithStartPoint(point) || cyclicStartPoints.contains(point);
+        }
+
+        @Override
+        public Collection<Collision> getCollisions() {
+            return segmentRepository.getCollisions();
+        }
+
+        @Override
+        public Collection<Point> getEndPointsWithMultipleSegments(final int minimumNumberOfSegments) {
+            return segmentRepository.getEndPointsWithMultipleSegments(minimumNumberOfSegments);
+        }
+
+        @Override
+        public long getEstimatedDiskFootprint() {
+            return segmentRepository.getEstimatedDiskFootprint();
+        }
+
+        @Override
+        public long getEstimatedMemoryFootprint() {
+            return segmentRepository.getEstimatedMemoryFootprint();
+        }
+
+        @Override
+        public HashFunction getHashFunction() {
+            return segmentRepository.getHashFunction();
+        }
+
+        @Override
+        public int getOrder() {
+            return segmentRepository.getOrder();
+        }
+
+        @Override
+        public Collection<Segment> getSegments() {
+            return segmentRepository.getSegments();
+        }
+
+        @Override
+        public void forEachSegment(final Consumer<Segment> action) {
+            segmentRepository.forEachSegment(action);
+        }
+
+        @Override
+        public Collection<Segment> getSegmentsWithEndPoint(final Point point) {
+            return segmentRepository.getSegmentsWithEndPoint(point);
+        }
+
+        @Override
+        public Segment getSegmentWithStartPoint(final Point point) {
+            return segmentRepository.getSegmentWithStartPoint(point);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return segmentRepository.isEmpty();
+        }
+
+        @Override
+        public boolean isFull() {
+            return segmentRepository.isFull();
+        }
+
+        @Override
+        public int size() {
+            return segmentRepository.size();
+        }
+    }
 }
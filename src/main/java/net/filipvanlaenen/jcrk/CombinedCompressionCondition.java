@@ -0,0 +1,56 @@
+package net.filipvanlaenen.jcrk;
+
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+
+/**
+ * Condition combining other conditions. Depending on its mode, it evaluates to true if any or all of the combined
+ * conditions evaluate to true.
+ */
+public final class CombinedCompressionCondition implements SegmentRepositoryCompressionCondition {
+    /**
+     * Enumeration with the modes in which conditions can be combined.
+     */
+    public enum Mode {
+        /**
+         * The combined condition evaluates to true if all conditions evaluate to true.
+         */
+        ALL,
+        /**
+         * The combined condition evaluates to true if any of the conditions evaluates to true.
+         */
+        ANY
+    }
+
+    /**
+     * The combined conditions.
+     */
+    private final OrderedCollection<SegmentRepositoryCompressionCondition> conditions;
+    /**
+     * The mode in which the conditions are combined.
+     */
+    private final Mode mode;
+
+    /**
+     * Constructs a condition combining other conditions.
+     *
+     * @param mode       The mode in which the conditions are combined.
+     * @param conditions The conditions to be combined.
+     */
+    public CombinedCompressionCondition(final Mode mode, final SegmentRepositoryCompressionCondition... conditions) {
+        if (conditions.length == 0) {
+            throw new IllegalArgumentException("There should be at least one condition to combine.");
+        }
+        this.mode = mode;
+        this.conditions = OrderedCollection.of(conditions);
+    }
+
+    @Override
+    public boolean evaluate(final SegmentRepository segmentRepository) {
+        for (SegmentRepositoryCompressionCondition condition : conditions) {
+            if (condition.evaluate(segmentRepository) == (mode == Mode.ANY)) {
+                return mode == Mode.ANY;
+            }
+        }
+        return mode == Mode.ALL;
+    }
+}
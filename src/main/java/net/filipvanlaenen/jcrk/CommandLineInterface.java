@@ -1,7 +1,16 @@
 package net.filipvanlaenen.jcrk;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
 
+import javax.management.ObjectName;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+import net.filipvanlaenen.kolektoj.OrderedCollection;
 import net.filipvanlaenen.laconic.Laconic;
 
 /**
@@ -12,6 +21,67 @@ public final class CommandLineInterface {
      * The magic number eight.
      */
     private static final int EIGHT = 8;
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+
+    /**
+     * The number of bytes in a kibibyte.
+     */
+    private static final long KIBIBYTE = 1024L;
+    /**
+     * The default compression condition.
+     */
+    private static final String DEFAULT_COMPRESSION_CONDITION = "half-order";
+    /**
+     * The default durability policy of the cache file.
+     */
+    private static final String DEFAULT_DURABILITY = "flush";
+    /**
+     * The default interval between two progress summaries, in seconds.
+     */
+    private static final String DEFAULT_PROGRESS_INTERVAL = "10";
+    /**
+     * The default interval between two checkpoints of the segment being extended, in seconds.
+     */
+    private static final String DEFAULT_IN_FLIGHT_INTERVAL = "300";
+    /**
+     * The default port of the search coordinator.
+     */
+    private static final String DEFAULT_COORDINATOR_PORT = "4646";
+    /**
+     * The default number of start points in a range assigned to a worker.
+     */
+    private static final String DEFAULT_RANGE_SIZE = "64";
+    /**
+     * The default size of the batches of segments sent by a worker to the coordinator.
+     */
+    private static final String DEFAULT_BATCH_SIZE = "16";
+    /**
+     * The default number of start points between two detections in a batch search.
+     */
+    private static final String DEFAULT_DETECTION_INTERVAL = "1000000";
+    /**
+     * The default number of records held in memory while sorting in a batch search.
+     */
+    private static final String DEFAULT_SORT_BUFFER = "4000000";
+    /**
+     * The default number of work units exported at a time.
+     */
+    private static final String DEFAULT_NUMBER_OF_UNITS = "16";
+    /**
+     * The default number of pairs of points to be ranked by the Hamming distance between their full hash values.
+     */
+    private static final String DEFAULT_TOP = "10";
+    /**
+     * The prefix of an option.
+     */
+    private static final String OPTION_PREFIX = "--";
+    /**
+     * The binary size prefixes, in increasing order.
+     */
+    private static final String SIZE_PREFIXES = "KMGT";
 
     /**
      * Private constructor to prevent instantiation of this utility class.
@@ -19,6 +89,57 @@ public final class CommandLineInterface {
     private CommandLineInterface() {
     }
 
+    /**
+     * Returns the value of an option of the form <code>--name=value</code>, or the default value if the option isn't
+     * present among the arguments.
+     *
+     * @param args         The arguments from the command line.
+     * @param name         The name of the option.
+     * @param defaultValue The default value of the option.
+     * @return The value of the option, or the default value if the option isn't present.
+     */
+    static String getOption(final String[] args, final String name, final String defaultValue) {
+        String prefix = OPTION_PREFIX + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns true if a flag of the form <code>--name</code> is present among the arguments.
+     *
+     * @param args The arguments from the command line.
+     * @param name The name of the flag.
+     * @return True if the flag is present among the arguments, false otherwise.
+     */
+    static boolean hasFlag(final String[] args, final String name) {
+        for (String arg : args) {
+            if (arg.equals(OPTION_PREFIX + name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the positional arguments, i.e. the arguments that aren't options.
+     *
+     * @param args The arguments from the command line.
+     * @return The arguments that aren't options, in the order they were provided.
+     */
+    static String[] getPositionalArguments(final String[] args) {
+        ModifiableCollection<String> positionalArguments = ModifiableCollection.empty();
+        for (String arg : args) {
+            if (!arg.startsWith(OPTION_PREFIX)) {
+                positionalArguments.add(arg);
+            }
+        }
+        return positionalArguments.toArray(new String[positionalArguments.size()]);
+    }
+
     /**
      * The main entry point for the command line interface.
      *
@@ -37,12 +158,358 @@ public final class CommandLineInterface {
         }
     }
 
+    /**
+     * Returns the name of the cache file for a truncation of a standard hash function.
+     *
+     * @param hashFunction The standard hash function.
+     * @param numberOfBits The number of bits of the truncation.
+     * @return The name of the cache file.
+     */
+    private static String getCacheFileName(final StandardHashFunction hashFunction, final int numberOfBits) {
+        return hashFunction.toString() + "-" + numberOfBits + ".rcf";
+    }
+
+    /**
+     * Parses the name of a standard hash function, ignoring case and any characters other than letters and digits,
+     * such that e.g. both <code>SHA-1</code> and <code>sha1</code> are accepted.
+     *
+     * @param name The name of the standard hash function.
+     * @return The standard hash function.
+     * @throws IllegalArgumentException Thrown if the name doesn't match a standard hash function.
+     */
+    static StandardHashFunction parseHashFunction(final String name) throws IllegalArgumentException {
+        return StandardHashFunction.valueOf(name.toUpperCase().replaceAll("[^A-Z0-9]", ""));
+    }
+
+    /**
+     * Parses the hash function and the number of bits from the positional arguments, defaulting to SHA-1 and eight
+     * bits.
+     *
+     * @param positionalArgs The positional arguments from the command line, with the command at index zero.
+     * @return The truncated standard hash function.
+     */
+    private static TruncatedStandardHashFunction parseTruncatedHashFunction(final String[] positionalArgs) {
+        StandardHashFunction baseHashFunction = StandardHashFunction.SHA1;
+        if (positionalArgs.length > 1) {
+            baseHashFunction = parseHashFunction(positionalArgs[1]);
+        }
+        int numberOfBits = EIGHT;
+        if (positionalArgs.length > 2) {
+            numberOfBits = Integer.parseInt(positionalArgs[2]);
+        }
+        return new TruncatedStandardHashFunction(baseHashFunction, numberOfBits);
+    }
+
+    /**
+     * Opens the segment repository for a truncated standard hash function. The repository is persisted to a single
+     * cache file with the durability policy given by the option <code>--durability</code>, to a cache file per shard
+     * if the option <code>--shards</code> is present, or to a directory with sorted runs if the flag <code>--lsm</code>
+     * is present. If the option <code>--heap-budget</code> is present, the segments are kept in memory up to the
+     * budget and demoted to a run on disk beyond it, without being persisted. The repository is decorated with
+     * filters if the flag <code>--filter</code> is present.
+     *
+     * @param args         The arguments from the command line.
+     * @param hashFunction The truncated standard hash function.
+     * @return The segment repository.
+     */
+    private static SegmentRepository openSegmentRepository(final String[] args,
+            final TruncatedStandardHashFunction hashFunction) {
+        String cacheFileName = getCacheFileName(hashFunction.getStandardHashFunction(), hashFunction.getBitLength());
+        String shardBits = getOption(args, "shards", null);
+        String baseName = cacheFileName.substring(0, cacheFileName.length() - ".rcf".length());
+        SegmentRepository segmentRepository;
+        String heapBudget = getOption(args, "heap-budget", null);
+        if (heapBudget != null) {
+            try {
+                segmentRepository = new TieredSegmentRepository(hashFunction, Path.of(baseName + ".tier"),
+                        parseByteSize(heapBudget));
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        } else if (hasFlag(args, "lsm")) {
+            try {
+                segmentRepository = new LsmSegmentRepository(hashFunction, Path.of(baseName + ".lsm"));
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        } else if (shardBits == null) {
+            segmentRepository = openFileBasedSegmentRepository(cacheFileName, hashFunction,
+                    getOption(args, "durability", DEFAULT_DURABILITY));
+        } else {
+            segmentRepository = new ShardedSegmentRepository(hashFunction, Integer.parseInt(shardBits), baseName);
+        }
+        if (hasFlag(args, "filter")) {
+            segmentRepository = new FilteredSegmentRepository(segmentRepository);
+        }
+        return segmentRepository;
+    }
+
+    /**
+     * Opens a file-based segment repository with a durability policy. The durability policy is <code>none</code>,
+     * <code>fsync</code>, or <code>flush</code> optionally followed by the number of segments and the number of
+     * milliseconds between two flushes, separated by colons.
+     *
+     * @param cacheFileName The name of the cache file.
+     * @param hashFunction  The hash function.
+     * @param durability    The specification of the durability policy.
+     * @return The file-based segment repository.
+     * @throws IllegalArgumentException Thrown if the durability policy can't be parsed.
+     */
+    static FileBasedSegmentRepository openFileBasedSegmentRepository(final String cacheFileName,
+            final HashFunction hashFunction, final String durability) throws IllegalArgumentException {
+        String[] parts = durability.split(":");
+        FileBasedSegmentRepository.Durability policy;
+        try {
+            policy = FileBasedSegmentRepository.Durability.valueOf(parts[0].toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException(String.format("Unknown durability policy \"%s\".", durability));
+        }
+        if (parts.length > 1 && policy != FileBasedSegmentRepository.Durability.FLUSH || parts.length > THREE) {
+            throw new IllegalArgumentException(String.format("Unknown durability policy \"%s\".", durability));
+        }
+        int flushSegments = parts.length > 1 ? Integer.parseInt(parts[1])
+                : FileBasedSegmentRepository.DEFAULT_FLUSH_SEGMENTS;
+        Duration flushInterval = parts.length > 2 ? Duration.ofMillis(Long.parseLong(parts[2]))
+                : FileBasedSegmentRepository.DEFAULT_FLUSH_INTERVAL;
+        return new FileBasedSegmentRepository(cacheFileName, hashFunction, policy, flushSegments, flushInterval,
+                FileBasedSegmentRepository.DEFAULT_WRITE_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Parses a number of bytes, optionally followed by a binary size prefix K, M, G or T.
+     *
+     * @param value The number of bytes as a string.
+     * @return The number of bytes.
+     */
+    static long parseByteSize(final String value) {
+        String upperCaseValue = value.toUpperCase();
+        int prefixIndex = SIZE_PREFIXES.indexOf(upperCaseValue.charAt(upperCaseValue.length() - 1));
+        if (prefixIndex < 0) {
+            return Long.parseLong(upperCaseValue);
+        }
+        long multiplier = KIBIBYTE;
+        for (int i = 0; i < prefixIndex; i++) {
+            multiplier *= KIBIBYTE;
+        }
+        return Long.parseLong(upperCaseValue.substring(0, upperCaseValue.length() - 1)) * multiplier;
+    }
+
+    /**
+     * Parses a positive number of items, e.g. records or start points, given as a plain integer.
+     *
+     * @param value The number as a string.
+     * @param name  The name of the option, used in the error message.
+     * @param items The items counted, used in the error message.
+     * @return The number of items.
+     * @throws IllegalArgumentException Thrown if the value isn't an integer between 1 and the maximum integer.
+     */
+    static int parsePositiveNumber(final String value, final String name, final String items)
+            throws IllegalArgumentException {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            number = 0;
+        }
+        if (number < 1) {
+            throw new IllegalArgumentException(String.format("The %s (%s) should be a number of %s between 1 and %d.",
+                    name, value, items, Integer.MAX_VALUE));
+        }
+        return number;
+    }
+
+    /**
+     * Starts a metrics server on the port given by the option <code>--metrics-port</code>, if present. The server
+     * listens on the loopback interface, unless another address is given by the option <code>--metrics-host</code>.
+     *
+     * @param args The arguments from the command line.
+     * @return The metrics server, or <code>null</code> if the option isn't present or the server couldn't be started.
+     */
+    private static MetricsHttpServer startMetricsServer(final String[] args) {
+        String port = getOption(args, "metrics-port", null);
+        if (port == null) {
+            return null;
+        }
+        String host = getOption(args, "metrics-host", null);
+        try {
+            MetricsHttpServer metricsServer = host == null ? new MetricsHttpServer(Integer.parseInt(port))
+                    : new MetricsHttpServer(new InetSocketAddress(host, Integer.parseInt(port)));
+            Laconic.LOGGER.logProgress("Serving the metrics on port %d.", metricsServer.getPort());
+            return metricsServer;
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("Could not start the metrics server on port %s: %s", port, ioe.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parses a compression condition. Conditions separated by commas are combined such that any of them triggers
+     * compression, and conditions separated by plus signs are combined such that all of them have to trigger
+     * compression. The conditions themselves are <code>half-order</code>, <code>memory:&lt;bytes&gt;</code>,
+     * <code>disk:&lt;bytes&gt;</code> and <code>ratio:&lt;ratio&gt;</code>.
+     *
+     * @param specification The specification of the compression condition.
+     * @return The compression condition.
+     * @throws IllegalArgumentException Thrown if the specification can't be parsed.
+     */
+    static SegmentRepositoryCompressionCondition parseCompressionCondition(final String specification)
+            throws IllegalArgumentException {
+        if (specification.contains(",")) {
+            return new CombinedCompressionCondition(CombinedCompressionCondition.Mode.ANY,
+                    parseCompressionConditions(specification.split(",")));
+        } else if (specification.contains("+")) {
+            return new CombinedCompressionCondition(CombinedCompressionCondition.Mode.ALL,
+                    parseCompressionConditions(specification.split("\\+")));
+        }
+        String[] parts = specification.split(":", 2);
+        String name = parts[0].toLowerCase();
+        if (parts.length == 1 && name.equals(DEFAULT_COMPRESSION_CONDITION)) {
+            return StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo;
+        } else if (parts.length == 2 && name.equals("memory")) {
+            return new FootprintBudgetCompressionCondition(FootprintBudgetCompressionCondition.Resource.MEMORY,
+                    parseByteSize(parts[1]));
+        } else if (parts.length == 2 && name.equals("disk")) {
+            return new FootprintBudgetCompressionCondition(FootprintBudgetCompressionCondition.Resource.DISK,
+                    parseByteSize(parts[1]));
+        } else if (parts.length == 2 && name.equals("ratio")) {
+            return new ExpectedCollisionRatioCompressionCondition(Double.parseDouble(parts[1]));
+        }
+        throw new IllegalArgumentException(
+                String.format("Unknown compression condition \"%s\".", specification));
+    }
+
+    /**
+     * Parses an array of compression condition specifications.
+     *
+     * @param specifications The specifications of the compression conditions.
+     * @return An array with the compression conditions.
+     */
+    private static SegmentRepositoryCompressionCondition[] parseCompressionConditions(
+            final String[] specifications) {
+        SegmentRepositoryCompressionCondition[] conditions =
+                new SegmentRepositoryCompressionCondition[specifications.length];
+        for (int i = 0; i < specifications.length; i++) {
+            conditions[i] = parseCompressionCondition(specifications[i]);
+        }
+        return conditions;
+    }
+
+    /**
+     * Logs a collision, with the truncated and full hash values of its points, and the Hamming distance of the full
+     * hash values to the full hash value of the first point.
+     *
+     * @param collision        The collision.
+     * @param hashFunction     The (truncated) hash function of the collision.
+     * @param baseHashFunction The full hash function.
+     */
+    private static void logCollision(final Collision collision, final HashFunction hashFunction,
+            final HashFunction baseHashFunction) {
+        Laconic.LOGGER.logProgress("The following points have the same hash value under the hash function %s:",
+                hashFunction.toString());
+        Point firstPointFullHash = null;
+        for (Point point : collision.points()) {
+            Point fullHash = point.hash(baseHashFunction);
+            Laconic.LOGGER.logProgress(" - Point: %s", point.asHexadecimalString());
+            Laconic.LOGGER.logProgress("   Truncated hash value: %s", point.hash(hashFunction).asHexadecimalString());
+            Laconic.LOGGER.logProgress("   Full hash value: %s", fullHash.asHexadecimalString());
+            if (firstPointFullHash == null) {
+                firstPointFullHash = fullHash;
+            } else {
+                Laconic.LOGGER.logProgress(
+                        "   Hamming distance of the full hash value to the first point’s full hash value: %d",
+                        firstPointFullHash.hammingDistanceTo(fullHash));
+            }
+        }
+    }
+
     /**
      * Prints the usage to the command line.
      */
     private static void printUsage() {
         System.out.println("Usage:");
-        System.out.println("  analyze [<hash-function> [<number-of-bits>]]");
+        System.out.println("  analyze [<hash-function> [<number-of-bits>]] [--seed=<seed>] [--filter]");
+        System.out.println("          [--compression=<condition>[,<condition>...|+<condition>...]]");
+        System.out.println("          [--checkpoints=<depth>] [--multiplicity=<r>] [--collisions=<n> [--top=<k>]]");
+        System.out.println("          [--metrics-port=<port>] [--progress-interval=<seconds>] [--trace]");
+        System.out.println("          [--in-flight-interval=<seconds>] [--shards=<bits>] [--lsm]");
+        System.out.println("          [--heap-budget=<bytes>] [--durability=<policy>]");
+        System.out.println("  sweep <hash-function>[,<hash-function>...] <minimum-bits>[-<maximum-bits>]");
+        System.out.println("        [--threads=<n>] [--metrics-port=<port>]");
+        System.out.println("  coordinate [<hash-function> [<number-of-bits>]] [--port=<port>] [--range-size=<n>]");
+        System.out.println("             [--filter] [--compression=<condition>] [--metrics-port=<port>]");
+        System.out.println("             [--progress-interval=<seconds>] [--shards=<bits>] [--lsm]");
+        System.out.println("             [--durability=<policy>]");
+        System.out.println("  work [<hash-function> [<number-of-bits>]] [--host=<host>] [--port=<port>]");
+        System.out.println("       [--threads=<n>] [--batch-size=<n>] [--checkpoints=<depth>]");
+        System.out.println("  export [<hash-function> [<number-of-bits>]] [--directory=<directory>] [--units=<n>]");
+        System.out.println("         [--range-size=<n>] [--shards=<bits>] [--lsm]");
+        System.out.println("  process <work-unit-file>... [--checkpoints=<depth>]");
+        System.out.println("  import <result-file>... [--filter] [--compression=<condition>] [--shards=<bits>]");
+        System.out.println("         [--lsm]");
+        System.out.println("  merge <hash-function> <number-of-bits> <merged-file> <cache-file>...");
+        System.out.println("  batch [<hash-function> [<number-of-bits>]] [--order=<order>] [--threads=<n>]");
+        System.out.println("        [--detection-interval=<n>] [--sort-buffer=<records>]");
+        System.out.println("Options:");
+        System.out.println("  --checkpoints=<depth>  Record about 2^depth - 1 checkpoints per segment to speed up");
+        System.out.println("                         locating a collision (default 0, i.e. no checkpoints)");
+        System.out.println("  --multiplicity=<r>     Search for a collision with r points (default 2)");
+        System.out.println("  --shards=<bits>        Partition the segment repository into 2^bits shards by end");
+        System.out.println("                         point, each with its own cache file");
+        System.out.println("  --lsm                  Keep the segment repository in sorted runs on disk, for searches");
+        System.out.println("                         with more segments than fit in memory");
+        System.out.println("  --durability=<policy>  How the segments appended to the cache file are made durable");
+        System.out.println("                         (default flush)");
+        System.out.println("  --heap-budget=<bytes>  Keep the segments in memory up to the budget, and demote the");
+        System.out.println("                         least recently used ones to disk beyond it, without persisting");
+        System.out.println("                         the segment repository");
+        System.out.println("  --order=<order>        The order of the segments in a batch search (default a quarter");
+        System.out.println("                         of the number of bits)");
+        System.out.println("  --detection-interval=<n>");
+        System.out.println("                         Sort the segments and detect collisions every n start points in");
+        System.out.println("                         a batch search (default 1000000)");
+        System.out.println("  --sort-buffer=<records>");
+        System.out.println("                         The number of records held in memory while sorting in a batch");
+        System.out.println("                         search (default 4000000)");
+        System.out.println("  --collisions=<n>       Keep searching until n collisions are found, and rank the pairs");
+        System.out.println("                         by the Hamming distance between their full hash values");
+        System.out.println("  --top=<k>              The number of pairs to be ranked (default 10)");
+        System.out.println("  --threads=<n>          The number of threads of a sweep or workers (default the number");
+        System.out.println("                         of available processors)");
+        System.out.println("  --metrics-port=<port>  Serve the search metrics in the Prometheus text format on");
+        System.out.println("                         http://localhost:<port>/metrics");
+        System.out.println("  --metrics-host=<address>");
+        System.out.println("                         The address the metrics are served on instead of the loopback");
+        System.out.println("                         interface, e.g. 0.0.0.0 for all network interfaces");
+        System.out.println("  --progress-interval=<seconds>");
+        System.out.println("                         Log a progress summary every interval (default 10, 0 disables");
+        System.out.println("                         the summaries)");
+        System.out.println("  --trace                Log the progress on every single segment");
+        System.out.println("  --port=<port>          The port of the coordinator (default 4646)");
+        System.out.println("  --range-size=<n>       The number of start points assigned to a worker at a time, or");
+        System.out.println("                         in a work unit (default 64)");
+        System.out.println("  --directory=<directory>");
+        System.out.println("                         The directory to export the work units to (default the");
+        System.out.println("                         current directory)");
+        System.out.println("  --units=<n>            The number of work units to be exported (default 16)");
+        System.out.println("  --host=<host>          The host of the coordinator (default localhost)");
+        System.out.println("  --batch-size=<n>       The number of segments a worker sends to the coordinator at a");
+        System.out.println("                         time (default 16)");
+        System.out.println("  --in-flight-interval=<seconds>");
+        System.out.println("                         Checkpoint the segment being extended every interval, such that");
+        System.out.println("                         it's resumed after a restart (default 300, 0 disables the");
+        System.out.println("                         checkpoints)");
+        System.out.println("Compression conditions:");
+        System.out.println("  half-order        Compress when the size exceeds 2^(order/2) (default)");
+        System.out.println("  memory:<bytes>    Compress when the estimated memory footprint exceeds the budget");
+        System.out.println("  disk:<bytes>      Compress when the estimated disk footprint exceeds the budget");
+        System.out.println("  ratio:<ratio>     Compress when the size exceeds the ratio of the expected number of");
+        System.out.println("                    segments needed to find a collision");
+        System.out.println("Durability policies:");
+        System.out.println("  none              Write the segments when the write buffer is full");
+        System.out.println("  flush[:<n>[:<ms>]]");
+        System.out.println("                    Flush the segments every n segments (default 1024) or every ms");
+        System.out.println("                    milliseconds (default 1000), whichever comes first");
+        System.out.println("  fsync             Force the segments to the disk after every group commit");
     }
 
     /**
@@ -56,42 +523,391 @@ public final class CommandLineInterface {
         ANALYZE {
             @Override
             void execute(final String[] args) throws IllegalArgumentException {
+                String[] positionalArgs = getPositionalArguments(args);
                 StandardHashFunction baseHashFunction = StandardHashFunction.SHA1;
-                if (args.length > 1) {
-                    baseHashFunction = StandardHashFunction.valueOf(args[1].toUpperCase().replaceAll("[^A-Z0-9]", ""));
+                if (positionalArgs.length > 1) {
+                    baseHashFunction = parseHashFunction(positionalArgs[1]);
                 }
                 int numberOfBits = EIGHT;
-                if (args.length > 2) {
-                    numberOfBits = Integer.parseInt(args[2]);
-                }
-                HashFunction hashFunction = new TruncatedStandardHashFunction(baseHashFunction, numberOfBits);
-                String cacheFileName = baseHashFunction.toString() + "-" + numberOfBits + ".rcf";
-                SegmentRepository segmentRepository = new FileBasedSegmentRepository(cacheFileName, hashFunction);
-                CollisionFinder finder = new CollisionFinder(segmentRepository,
-                        SegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
-                Collision collision = finder.findCollision();
-                if (collision == null) {
-                    Laconic.LOGGER.logProgress("No collision found.");
+                if (positionalArgs.length > 2) {
+                    numberOfBits = Integer.parseInt(positionalArgs[2]);
+                }
+                TruncatedStandardHashFunction hashFunction =
+                        new TruncatedStandardHashFunction(baseHashFunction, numberOfBits);
+                SegmentRepository segmentRepository = openSegmentRepository(args, hashFunction);
+                SegmentRepositoryCompressionCondition compressionCondition =
+                        parseCompressionCondition(getOption(args, "compression", DEFAULT_COMPRESSION_CONDITION));
+                String seed = getOption(args, "seed", null);
+                OrderedCollection<SegmentProducer> segmentProducers;
+                if (seed == null) {
+                    segmentProducers = OrderedCollection.<SegmentProducer>of(
+                            StandardSegmentProducer.ZeroPointSegmentChainExtension, StandardSegmentProducer.Counter);
+                } else {
+                    segmentProducers = OrderedCollection.<SegmentProducer>of(
+                            new RandomSegmentProducer(Long.parseLong(seed), segmentRepository),
+                            StandardSegmentProducer.ZeroPointSegmentChainExtension, StandardSegmentProducer.Counter);
+                }
+                int checkpointDepth = Integer.parseInt(getOption(args, "checkpoints", "0"));
+                int multiplicity = Integer.parseInt(getOption(args, "multiplicity", "2"));
+                CollisionFinder finder = new CollisionFinder(segmentRepository, compressionCondition,
+                        segmentProducers, checkpointDepth, multiplicity);
+                finder.setTraceEnabled(hasFlag(args, "trace"));
+                long inFlightInterval =
+                        Long.parseLong(getOption(args, "in-flight-interval", DEFAULT_IN_FLIGHT_INTERVAL));
+                if (inFlightInterval > 0L) {
+                    finder.setInFlightSegmentStore(new InFlightSegmentStore(
+                            Path.of(getCacheFileName(baseHashFunction, numberOfBits) + ".inflight"),
+                            Duration.ofSeconds(inFlightInterval)));
+                }
+                ObjectName metricsName = finder.getMetrics().register(hashFunction.toString());
+                MetricsHttpServer metricsServer = startMetricsServer(args);
+                if (metricsServer != null) {
+                    metricsServer.add(hashFunction.toString(), finder.getMetrics());
+                }
+                long progressInterval =
+                        Long.parseLong(getOption(args, "progress-interval", DEFAULT_PROGRESS_INTERVAL));
+                ProgressReporter progressReporter = progressInterval <= 0L ? null
+                        : new ProgressReporter(hashFunction.toString(), finder.getMetrics(),
+                                Duration.ofSeconds(progressInterval));
+                try {
+                    findCollisions(args, finder, hashFunction, baseHashFunction);
+                } finally {
+                    if (progressReporter != null) {
+                        progressReporter.close();
+                    }
+                    SearchMetrics.unregister(metricsName);
+                    if (metricsServer != null) {
+                        metricsServer.stop();
+                    }
+                }
+            }
+
+            /**
+             * Finds one or more collisions, depending on the arguments, and logs them.
+             *
+             * @param args             The arguments from the command line.
+             * @param finder           The collision finder.
+             * @param hashFunction     The (truncated) hash function.
+             * @param baseHashFunction The full hash function.
+             */
+            private void findCollisions(final String[] args, final CollisionFinder finder,
+                    final HashFunction hashFunction, final StandardHashFunction baseHashFunction) {
+                String numberOfCollisions = getOption(args, "collisions", null);
+                if (numberOfCollisions == null) {
+                    Collision collision = finder.findCollision();
+                    if (collision == null) {
+                        Laconic.LOGGER.logProgress("No collision found.");
+                    } else {
+                        logCollision(collision, hashFunction, baseHashFunction);
+                    }
                 } else {
+                    NearCollisionRanking ranking = new NearCollisionRanking(baseHashFunction,
+                            Integer.parseInt(getOption(args, "top", DEFAULT_TOP)));
+                    finder.findCollisions().limit(Long.parseLong(numberOfCollisions)).forEach(collision -> {
+                        logCollision(collision, hashFunction, baseHashFunction);
+                        ranking.add(collision);
+                    });
                     Laconic.LOGGER.logProgress(
-                            "The following points have the same hash value under the hash function %s:",
-                            hashFunction.toString());
-                    Point firstPointFullHash = null;
-                    for (Point point : collision.points()) {
-                        Point fullHash = point.hash(baseHashFunction);
-                        Laconic.LOGGER.logProgress(" - Point: %s", point.asHexadecimalString());
-                        Laconic.LOGGER.logProgress("   Truncated hash value: %s",
-                                point.hash(hashFunction).asHexadecimalString());
-                        Laconic.LOGGER.logProgress("   Full hash value: %s", fullHash.asHexadecimalString());
-                        if (firstPointFullHash == null) {
-                            firstPointFullHash = fullHash;
+                            "The pairs of points with the lowest Hamming distance between their full hash values:");
+                    for (NearCollisionRanking.NearCollision nearCollision : ranking.getNearCollisions()) {
+                        Laconic.LOGGER.logProgress(" - %s and %s: %d", nearCollision.point0().asHexadecimalString(),
+                                nearCollision.point1().asHexadecimalString(), nearCollision.hammingDistance());
+                    }
+                }
+            }
+        },
+        /**
+         * Command to search collisions for a range of truncations of a number of standard hash functions in a single
+         * process, and print the results as tables in the format of the README file, with the duration of each search.
+         */
+        SWEEP {
+            @Override
+            void execute(final String[] args) throws IllegalArgumentException {
+                String[] positionalArgs = getPositionalArguments(args);
+                if (positionalArgs.length < THREE) {
+                    throw new IllegalArgumentException("The hash functions and the range of bit lengths are missing.");
+                }
+                String[] hashFunctionNames = positionalArgs[1].split(",");
+                StandardHashFunction[] hashFunctions = new StandardHashFunction[hashFunctionNames.length];
+                for (int i = 0; i < hashFunctionNames.length; i++) {
+                    hashFunctions[i] = parseHashFunction(hashFunctionNames[i]);
+                }
+                String[] bitLengths = positionalArgs[2].split("-", 2);
+                int minimumBitLength = Integer.parseInt(bitLengths[0]);
+                int maximumBitLength = bitLengths.length == 1 ? minimumBitLength : Integer.parseInt(bitLengths[1]);
+                int numberOfThreads = Integer.parseInt(
+                        getOption(args, "threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+                MetricsHttpServer metricsServer = startMetricsServer(args);
+                BitLengthSweep sweep = new BitLengthSweep(OrderedCollection.of(hashFunctions), minimumBitLength,
+                        maximumBitLength, numberOfThreads, hashFunction -> new FileBasedSegmentRepository(
+                                getCacheFileName(hashFunction.getStandardHashFunction(), hashFunction.getBitLength()),
+                                hashFunction),
+                        metricsServer);
+                OrderedCollection<BitLengthSweep.Result> results;
+                try {
+                    results = sweep.run();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    Laconic.LOGGER.logError("The sweep was interrupted.");
+                    return;
+                } finally {
+                    if (metricsServer != null) {
+                        metricsServer.stop();
+                    }
+                }
+                StandardHashFunction previousHashFunction = null;
+                for (BitLengthSweep.Result result : results) {
+                    if (result.hashFunction() != previousHashFunction) {
+                        System.out.println();
+                        System.out.println("### " + result.hashFunction());
+                        System.out.println();
+                        System.out.println(BitLengthSweep.Result.getTableHeader());
+                        previousHashFunction = result.hashFunction();
+                    }
+                    System.out.println(result.toTableRow());
+                }
+            }
+        },
+        /**
+         * Command to coordinate a search distributed over worker processes. The coordinator owns the segment
+         * repository, and waits until the workers have produced enough segments to find a collision.
+         */
+        COORDINATE {
+            @Override
+            void execute(final String[] args) throws IllegalArgumentException {
+                TruncatedStandardHashFunction hashFunction = parseTruncatedHashFunction(getPositionalArguments(args));
+                SegmentRepository segmentRepository = openSegmentRepository(args, hashFunction);
+                SegmentRepositoryCompressionCondition compressionCondition =
+                        parseCompressionCondition(getOption(args, "compression", DEFAULT_COMPRESSION_CONDITION));
+                int port = Integer.parseInt(getOption(args, "port", DEFAULT_COORDINATOR_PORT));
+                int rangeSize = Integer.parseInt(getOption(args, "range-size", DEFAULT_RANGE_SIZE));
+                try (SearchCoordinator coordinator =
+                        new SearchCoordinator(segmentRepository, compressionCondition, port, rangeSize)) {
+                    Laconic.LOGGER.logProgress("Coordinating the search for %s on port %d.", hashFunction.toString(),
+                            coordinator.getPort());
+                    MetricsHttpServer metricsServer = startMetricsServer(args);
+                    if (metricsServer != null) {
+                        metricsServer.add(hashFunction.toString(), coordinator.getMetrics());
+                    }
+                    long progressInterval =
+                            Long.parseLong(getOption(args, "progress-interval", DEFAULT_PROGRESS_INTERVAL));
+                    ProgressReporter progressReporter = progressInterval <= 0L ? null
+                            : new ProgressReporter(hashFunction.toString(), coordinator.getMetrics(),
+                                    Duration.ofSeconds(progressInterval));
+                    try {
+                        Collision collision = coordinator.awaitCollision();
+                        if (collision == null) {
+                            Laconic.LOGGER.logProgress("No collision found.");
                         } else {
-                            Laconic.LOGGER.logProgress(
-                                    "   Hamming distance of the full hash value to the first point’s full hash value:"
-                                            + " %d",
-                                    firstPointFullHash.hammingDistanceTo(fullHash));
+                            logCollision(collision, hashFunction, hashFunction.getStandardHashFunction());
+                        }
+                    } finally {
+                        if (progressReporter != null) {
+                            progressReporter.close();
+                        }
+                        if (metricsServer != null) {
+                            metricsServer.stop();
                         }
                     }
+                } catch (IOException ioe) {
+                    Laconic.LOGGER.logError("IOException while coordinating the search: %s", ioe.getMessage());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    Laconic.LOGGER.logError("The coordinator was interrupted.");
+                }
+            }
+        },
+        /**
+         * Command to produce segments for a search coordinator, with one worker per thread.
+         */
+        WORK {
+            @Override
+            void execute(final String[] args) throws IllegalArgumentException {
+                TruncatedStandardHashFunction hashFunction = parseTruncatedHashFunction(getPositionalArguments(args));
+                String host = getOption(args, "host", "localhost");
+                int port = Integer.parseInt(getOption(args, "port", DEFAULT_COORDINATOR_PORT));
+                int numberOfThreads = Integer.parseInt(
+                        getOption(args, "threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+                int batchSize = Integer.parseInt(getOption(args, "batch-size", DEFAULT_BATCH_SIZE));
+                int checkpointDepth = Integer.parseInt(getOption(args, "checkpoints", "0"));
+                Thread[] threads = new Thread[numberOfThreads];
+                for (int i = 0; i < numberOfThreads; i++) {
+                    threads[i] = new Thread(new SearchWorker(host, port, hashFunction, batchSize, checkpointDepth));
+                    threads[i].start();
+                }
+                try {
+                    for (Thread thread : threads) {
+                        thread.join();
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    Laconic.LOGGER.logError("The workers were interrupted.");
+                }
+            }
+        },
+        /**
+         * Command to export work units to a directory, to be processed by workers on a shared file system.
+         */
+        EXPORT {
+            @Override
+            void execute(final String[] args) throws IllegalArgumentException {
+                TruncatedStandardHashFunction hashFunction = parseTruncatedHashFunction(getPositionalArguments(args));
+                SegmentRepository segmentRepository = openSegmentRepository(args, hashFunction);
+                Path directory = Path.of(getOption(args, "directory", "."));
+                int numberOfUnits = Integer.parseInt(getOption(args, "units", DEFAULT_NUMBER_OF_UNITS));
+                int rangeSize = Integer.parseInt(getOption(args, "range-size", DEFAULT_RANGE_SIZE));
+                try {
+                    for (Path file : WorkUnit.export(directory, hashFunction, segmentRepository.getOrder(),
+                            numberOfUnits, rangeSize)) {
+                        Laconic.LOGGER.logProgress("Exported the work unit %s.", file.toString());
+                    }
+                } catch (IOException ioe) {
+                    Laconic.LOGGER.logError("IOException while exporting work units: %s", ioe.getMessage());
+                }
+            }
+        },
+        /**
+         * Command to process work units into result files. Work units that have been processed already are skipped,
+         * such that the command can safely be run again.
+         */
+        PROCESS {
+            @Override
+            void execute(final String[] args) throws IllegalArgumentException {
+                String[] positionalArgs = getPositionalArguments(args);
+                if (positionalArgs.length < 2) {
+                    throw new IllegalArgumentException("The work unit files are missing.");
+                }
+                int checkpointDepth = Integer.parseInt(getOption(args, "checkpoints", "0"));
+                for (int i = 1; i < positionalArgs.length; i++) {
+                    Path unitFile = Path.of(positionalArgs[i]);
+                    try {
+                        WorkUnit unit = WorkUnit.read(unitFile);
+                        if (unit == null) {
+                            Laconic.LOGGER.logError("The file %s isn't a work unit.", unitFile.toString());
+                        } else if (unit.process(WorkUnit.getResultFile(unitFile), checkpointDepth)) {
+                            Laconic.LOGGER.logProgress("Processed the work unit %s.", unitFile.toString());
+                        }
+                    } catch (IOException ioe) {
+                        Laconic.LOGGER.logError("IOException while processing the work unit %s: %s",
+                                unitFile.toString(), ioe.getMessage());
+                    }
+                }
+            }
+        },
+        /**
+         * Command to import result files into the segment repository of their hash function, and log the collisions
+         * found. Segments that have been imported already are ignored, such that the command can safely be run again.
+         */
+        IMPORT {
+            @Override
+            void execute(final String[] args) throws IllegalArgumentException {
+                String[] positionalArgs = getPositionalArguments(args);
+                if (positionalArgs.length < 2) {
+                    throw new IllegalArgumentException("The result files are missing.");
+                }
+                try {
+                    WorkUnit firstUnit = WorkUnit.read(Path.of(positionalArgs[1]));
+                    if (firstUnit == null) {
+                        throw new IllegalArgumentException(
+                                String.format("The file %s isn't a result file.", positionalArgs[1]));
+                    }
+                    TruncatedStandardHashFunction hashFunction = firstUnit.hashFunction();
+                    SegmentRepository segmentRepository = openSegmentRepository(args, hashFunction);
+                    SegmentImporter segmentImporter = new SegmentImporter(segmentRepository,
+                            parseCompressionCondition(getOption(args, "compression", DEFAULT_COMPRESSION_CONDITION)),
+                            new SearchMetrics());
+                    int numberOfCollisions = 0;
+                    for (int i = 1; i < positionalArgs.length; i++) {
+                        for (Collision collision : WorkUnit.importResult(Path.of(positionalArgs[i]), segmentImporter,
+                                hashFunction)) {
+                            logCollision(collision, hashFunction, hashFunction.getStandardHashFunction());
+                            numberOfCollisions++;
+                        }
+                        Laconic.LOGGER.logProgress("Imported the result file %s.", positionalArgs[i]);
+                    }
+                    if (numberOfCollisions == 0) {
+                        Laconic.LOGGER.logProgress("No collision found.");
+                    }
+                } catch (IOException ioe) {
+                    Laconic.LOGGER.logError("IOException while importing result files: %s", ioe.getMessage());
+                }
+            }
+        },
+        /**
+         * Command to merge the cache files of independent searches for the same hash function into a single cache
+         * file, and log the collisions found between them.
+         */
+        MERGE {
+            /**
+             * The magic number four.
+             */
+            private static final int FOUR = 4;
+
+            @Override
+            void execute(final String[] args) throws IllegalArgumentException {
+                String[] positionalArgs = getPositionalArguments(args);
+                if (positionalArgs.length <= FOUR) {
+                    throw new IllegalArgumentException(
+                            "The hash function, the number of bits, the merged file or the cache files are missing.");
+                }
+                TruncatedStandardHashFunction hashFunction = parseTruncatedHashFunction(positionalArgs);
+                Path[] cacheFiles = new Path[positionalArgs.length - FOUR];
+                for (int i = 0; i < cacheFiles.length; i++) {
+                    cacheFiles[i] = Path.of(positionalArgs[i + FOUR]);
+                }
+                try {
+                    Collection<Collision> collisions = new SegmentRepositoryMerger(hashFunction)
+                            .merge(OrderedCollection.of(cacheFiles), Path.of(positionalArgs[THREE]));
+                    for (Collision collision : collisions) {
+                        logCollision(collision, hashFunction, hashFunction.getStandardHashFunction());
+                    }
+                    if (collisions.isEmpty()) {
+                        Laconic.LOGGER.logProgress("No collision found.");
+                    }
+                } catch (IOException ioe) {
+                    Laconic.LOGGER.logError("IOException while merging cache files: %s", ioe.getMessage());
+                }
+            }
+        },
+        /**
+         * Command to search a collision in batches, sorting the segments on disk instead of keeping them in a segment
+         * repository.
+         */
+        BATCH {
+            /**
+             * The magic number four.
+             */
+            private static final int FOUR = 4;
+
+            @Override
+            void execute(final String[] args) throws IllegalArgumentException {
+                TruncatedStandardHashFunction hashFunction = parseTruncatedHashFunction(getPositionalArguments(args));
+                String cacheFileName =
+                        getCacheFileName(hashFunction.getStandardHashFunction(), hashFunction.getBitLength());
+                int order = Integer.parseInt(
+                        getOption(args, "order", Integer.toString(hashFunction.getBitLength() / FOUR)));
+                String baseName = cacheFileName.substring(0, cacheFileName.length() - ".rcf".length());
+                Path directory = Path.of(baseName + ".batch-" + order);
+                int detectionInterval = parsePositiveNumber(
+                        getOption(args, "detection-interval", DEFAULT_DETECTION_INTERVAL), "detection interval",
+                        "start points");
+                int sortBuffer = parsePositiveNumber(getOption(args, "sort-buffer", DEFAULT_SORT_BUFFER),
+                        "sort buffer", "records");
+                int numberOfThreads = Integer.parseInt(
+                        getOption(args, "threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+                try {
+                    Collision collision = new BatchCollisionSearch(hashFunction, order, directory, detectionInterval,
+                            sortBuffer, numberOfThreads).findCollision();
+                    if (collision == null) {
+                        Laconic.LOGGER.logProgress("No collision found.");
+                    } else {
+                        logCollision(collision, hashFunction, hashFunction.getStandardHashFunction());
+                    }
+                } catch (IOException ioe) {
+                    Laconic.LOGGER.logError("IOException during the batch search: %s", ioe.getMessage());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    Laconic.LOGGER.logError("The batch search was interrupted.");
                 }
             }
         };
@@ -2,19 +2,52 @@ package net.filipvanlaenen.jcrk;
 
 /**
  * A segment on a path in Pollard's rho collision search that has been found to contain a cycle. A cyclic segment has a
- * start point, a cyclic point and a hash function.
+ * start point, a cyclic point and a hash function. If the cyclic segment was exported from a segment, it also carries
+ * the length of the cycle, a lower bound for the length of the tail, and the points at that lower bound on the tail and
+ * one cycle further, such that the collision can be found by walking in lock step from these points only.
  *
- * @param startPoint   The start point of the cyclic segment.
- * @param cyclicPoint  One of the points on the cyclic segment's cycle.
- * @param hashFunction The hash function for the segment.
+ * @param startPoint           The start point of the cyclic segment.
+ * @param cyclicPoint          One of the points on the cyclic segment's cycle.
+ * @param hashFunction         The hash function for the segment.
+ * @param cycleLength          The length of the cycle, or zero if unknown.
+ * @param tailLengthLowerBound A lower bound for the length of the tail, i.e. the number of hashes before entering the
+ *                             cycle.
+ * @param tailBoundPoint       The point at the lower bound of the tail's length, or <code>null</code> if unknown.
+ * @param cycleBoundPoint      The point one cycle length after the tail bound point, or <code>null</code> if unknown.
  */
-public record CyclicSegment(Point startPoint, Point cyclicPoint, HashFunction hashFunction) {
+public record CyclicSegment(Point startPoint, Point cyclicPoint, HashFunction hashFunction, long cycleLength,
+        long tailLengthLowerBound, Point tailBoundPoint, Point cycleBoundPoint) {
     /**
-     * Finds the collision in the cyclic segment.
+     * Constructs a cyclic segment using only a start point, a cyclic point and a hash function.
+     *
+     * @param startPoint   The start point of the cyclic segment.
+     * @param cyclicPoint  One of the points on the cyclic segment's cycle.
+     * @param hashFunction The hash function for the segment.
+     */
+    public CyclicSegment(final Point startPoint, final Point cyclicPoint, final HashFunction hashFunction) {
+        this(startPoint, cyclicPoint, hashFunction, 0L, 0L, null, null);
+    }
+
+    /**
+     * Finds the collision in the cyclic segment. If the cycle's bounds are known, the collision is found by walking in
+     * lock step from the tail bound point and the cycle bound point. Otherwise, the cycle is measured first.
      *
      * @return The collision in the cycle segment.
      */
     Collision findCollision() {
+        if (tailBoundPoint == null) {
+            return findCollisionByMeasuringCycle();
+        }
+        return findCollisionInLockStep(tailBoundPoint, cycleBoundPoint);
+    }
+
+    /**
+     * Finds the collision in the cyclic segment by walking from the start point to the cyclic point, measuring the
+     * cycle's length, and then walking in lock step from the start point and the cyclic point.
+     *
+     * @return The collision in the cycle segment.
+     */
+    Collision findCollisionByMeasuringCycle() {
         Point p = startPoint;
         long startLength = 0;
         while (!p.equals(cyclicPoint)) {
@@ -39,6 +72,20 @@ public record CyclicSegment(Point startPoint, Point cyclicPoint, HashFunction ha
                 startP = startP.hash(hashFunction);
             }
         }
+        return findCollisionInLockStep(startP, cyclicP);
+    }
+
+    /**
+     * Finds the collision by walking in lock step from a point on the tail and a point that is a multiple of the
+     * cycle's length further, until the next points of both walks are equal.
+     *
+     * @param tailPoint  The point on the tail.
+     * @param cyclePoint The point a multiple of the cycle's length further.
+     * @return The collision in the cycle segment.
+     */
+    private Collision findCollisionInLockStep(final Point tailPoint, final Point cyclePoint) {
+        Point startP = tailPoint;
+        Point cyclicP = cyclePoint;
         Point nextStartP = startP.hash(hashFunction);
         Point nextCyclicP = cyclicP.hash(hashFunction);
         while (!nextStartP.equals(nextCyclicP)) {
@@ -0,0 +1,44 @@
+package net.filipvanlaenen.jcrk;
+
+/**
+ * Condition evaluating to true if the size of the segment repository exceeds a ratio of the expected number of
+ * segments of the repository's order needed to find a collision. By the birthday paradox, about the square root of
+ * π/2 times 2 to the power of the bit length points have to be visited to find a collision, and a segment of order
+ * <i>k</i> visits 2 to the power of <i>k</i> points on average.
+ */
+public final class ExpectedCollisionRatioCompressionCondition implements SegmentRepositoryCompressionCondition {
+    /**
+     * The ratio of the expected number of segments needed to find a collision.
+     */
+    private final double ratio;
+
+    /**
+     * Constructs a condition using a ratio.
+     *
+     * @param ratio The ratio of the expected number of segments needed to find a collision.
+     */
+    public ExpectedCollisionRatioCompressionCondition(final double ratio) {
+        if (!(ratio > 0D)) {
+            throw new IllegalArgumentException(String.format("The ratio (%s) should be positive.", ratio));
+        }
+        this.ratio = ratio;
+    }
+
+    /**
+     * Calculates the expected number of segments of a given order needed to find a collision in a hash function with
+     * a given bit length.
+     *
+     * @param bitLength The bit length of the hash function.
+     * @param order     The order of the segments.
+     * @return The expected number of segments needed to find a collision.
+     */
+    static double calculateExpectedNumberOfSegments(final int bitLength, final int order) {
+        return Math.sqrt(Math.PI / 2D * Math.pow(2D, bitLength)) / Math.pow(2D, order);
+    }
+
+    @Override
+    public boolean evaluate(final SegmentRepository segmentRepository) {
+        return segmentRepository.size() > ratio * calculateExpectedNumberOfSegments(
+                segmentRepository.getHashFunction().getBitLength(), segmentRepository.getOrder());
+    }
+}
@@ -0,0 +1,663 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class detecting collisions by sorting segments on disk instead of indexing them. Producers only append the start
+ * point, end point and length of their segments to spill files. On detection, the spill files are sorted by end point
+ * in parallel, in chunks that together fit in the sort buffer, and the sorted runs are merged into a new sorted level.
+ * The levels sorted during earlier detections are streamed alongside, but not rewritten, such that segments sharing an
+ * end point are adjacent in the merge, and are backtracked if at least one of them is new. The levels are merged in
+ * tiers: whenever the newest level is at least as large as the level before it, the two are merged, such that there
+ * are only logarithmically many levels and every segment is rewritten only logarithmically many times. The memory use
+ * is bounded by the sort buffer, whatever the number of segments, at the cost of only detecting collisions when the
+ * spill files are sorted.
+ */
+final class ExternalSortCollisionDetector {
+    /**
+     * The maximum number of runs merged at once.
+     */
+    private static final int MAXIMUM_FAN_IN = 64;
+    /**
+     * The prefix of the names of the sorted levels.
+     */
+    private static final String LEVEL_FILE_PREFIX = "sorted-";
+    /**
+     * The extension of the sorted levels, spill files and runs.
+     */
+    private static final String FILE_EXTENSION = ".bin";
+    /**
+     * The extension of temporary files.
+     */
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+    /**
+     * The prefix of the names of the spill files.
+     */
+    private static final String SPILL_FILE_PREFIX = "spill-";
+    /**
+     * The prefix of the names of the sorted runs.
+     */
+    private static final String RUN_FILE_PREFIX = "run-";
+    /**
+     * Comparator sorting records by end point first, and then by start point.
+     */
+    private static final Comparator<SegmentRecord> END_POINT_COMPARATOR =
+            Comparator.comparing(SegmentRecord::endPoint).thenComparing(SegmentRecord::startPoint);
+
+    /**
+     * The directory with the spill files and the sorted segments.
+     */
+    private final Path directory;
+    /**
+     * The sorted levels, oldest first.
+     */
+    private final List<Level> levels = new ArrayList<Level>();
+    /**
+     * The sequence number of the next detection.
+     */
+    private long nextDetectionNumber;
+    /**
+     * The hash function of the segments.
+     */
+    private final HashFunction hashFunction;
+    /**
+     * The sequence number of the next spill file or run.
+     */
+    private final AtomicLong nextFileNumber = new AtomicLong();
+    /**
+     * The number of segments sorted so far.
+     */
+    private long numberOfSegments;
+    /**
+     * The number of threads sorting the spill files.
+     */
+    private final int numberOfThreads;
+    /**
+     * The order of the segments.
+     */
+    private final int order;
+    /**
+     * The maximum number of records held in memory while sorting, over all threads.
+     */
+    private final int sortBufferSize;
+    /**
+     * The spill files that have been closed, and haven't been sorted yet.
+     */
+    private final List<Path> spillFiles = new ArrayList<Path>();
+
+    /**
+     * Constructs a detector in a directory. Segments sorted by an earlier detector in the directory are kept, and
+     * spill files, runs and temporary files left behind by an interrupted detection are deleted, as well as levels
+     * that were merged into another level already.
+     *
+     * @param hashFunction    The hash function of the segments.
+     * @param order           The order of the segments.
+     * @param directory       The directory with the spill files and the sorted segments.
+     * @param sortBufferSize  The maximum number of records held in memory while sorting, over all threads.
+     * @param numberOfThreads The number of threads sorting the spill files.
+     * @throws IOException              Thrown if the directory can't be created or cleaned up.
+     * @throws IllegalArgumentException Thrown if the number of threads isn't positive, or the sort buffer is smaller
+     *                                  than the number of threads.
+     */
+    ExternalSortCollisionDetector(final HashFunction hashFunction, final int order, final Path directory,
+            final int sortBufferSize, final int numberOfThreads) throws IOException, IllegalArgumentException {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The number of threads (%d) should be at least one.", numberOfThreads));
+        }
+        if (sortBufferSize < numberOfThreads) {
+            throw new IllegalArgumentException(String.format(
+                    "The sort buffer (%d) should hold at least one record per thread (%d).", sortBufferSize,
+                    numberOfThreads));
+        }
+        this.hashFunction = hashFunction;
+        this.order = order;
+        this.directory = directory;
+        this.sortBufferSize = sortBufferSize;
+        this.numberOfThreads = numberOfThreads;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                "{" + SPILL_FILE_PREFIX + "*," + RUN_FILE_PREFIX + "*,*" + TEMPORARY_FILE_EXTENSION + "}")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        loadLevels();
+    }
+
+    /**
+     * Merges the newest levels in tiers, i.e. as long as the newest level is at least as large as the level before it.
+     * The merged level replaces the two levels atomically, in the sense that a level left behind by an interruption is
+     * recognized as merged already by the detections it covers.
+     *
+     * @throws IOException Thrown if a level can't be read or written.
+     */
+    private void compactLevels() throws IOException {
+        while (levels.size() > 1 && Files.size(levels.get(levels.size() - 1).file())
+                >= Files.size(levels.get(levels.size() - 2).file())) {
+            Level older = levels.get(levels.size() - 2);
+            Level newer = levels.remove(levels.size() - 1);
+            Level merged = createLevel(older.firstDetection(), newer.lastDetection());
+            Path temporaryFile = getTemporaryFile(merged.file());
+            merge(List.of(), List.of(older.file(), newer.file()), temporaryFile, null);
+            Files.move(temporaryFile, merged.file(), StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(older.file());
+            Files.delete(newer.file());
+            levels.set(levels.size() - 1, merged);
+        }
+    }
+
+    /**
+     * Creates a level covering a range of detections.
+     *
+     * @param firstDetection The sequence number of the first detection covered by the level.
+     * @param lastDetection  The sequence number of the last detection covered by the level.
+     * @return The level.
+     */
+    private Level createLevel(final long firstDetection, final long lastDetection) {
+        return new Level(directory.resolve(LEVEL_FILE_PREFIX + firstDetection + "-" + lastDetection + FILE_EXTENSION),
+                firstDetection, lastDetection);
+    }
+
+    /**
+     * Sorts the spill files closed since the last detection into a new level, streaming the levels sorted earlier
+     * alongside, and returns the collisions between the new segments and any other segments. The levels are merged in
+     * tiers afterwards.
+     *
+     * @return The collisions found.
+     * @throws IOException Thrown if a spill file, run or level can't be read or written.
+     */
+    Collection<Collision> detect() throws IOException {
+        List<Path> filesToSort;
+        synchronized (spillFiles) {
+            filesToSort = new ArrayList<Path>(spillFiles);
+            spillFiles.clear();
+        }
+        List<Path> runs = sortInParallel(filesToSort);
+        while (runs.size() >= MAXIMUM_FAN_IN) {
+            List<Path> runsToMerge = runs.subList(0, MAXIMUM_FAN_IN);
+            Path mergedRun = createFile(RUN_FILE_PREFIX);
+            merge(List.of(), runsToMerge, mergedRun, null);
+            for (Path run : runsToMerge) {
+                Files.delete(run);
+            }
+            runsToMerge.clear();
+            runs.add(mergedRun);
+        }
+        ModifiableCollection<Collision> collisions = ModifiableCollection.empty();
+        long numberOfNewSegments = 0L;
+        if (!runs.isEmpty()) {
+            long detectionNumber = nextDetectionNumber++;
+            Level level = createLevel(detectionNumber, detectionNumber);
+            Path temporaryFile = getTemporaryFile(level.file());
+            List<Path> levelFiles = new ArrayList<Path>();
+            for (Level earlierLevel : levels) {
+                levelFiles.add(earlierLevel.file());
+            }
+            numberOfNewSegments = merge(levelFiles, runs, temporaryFile, collisions);
+            Files.move(temporaryFile, level.file(), StandardCopyOption.ATOMIC_MOVE);
+            for (Path run : runs) {
+                Files.delete(run);
+            }
+            levels.add(level);
+            numberOfSegments += numberOfNewSegments;
+            compactLevels();
+        }
+        Laconic.LOGGER.logProgress("Sorted %d new segments of order %d into %d segments, and found %d collisions.",
+                numberOfNewSegments, order, numberOfSegments, collisions.size());
+        return collisions;
+    }
+
+    /**
+     * Creates the name of a new spill file or run.
+     *
+     * @param prefix The prefix of the name.
+     * @return The new file.
+     */
+    private Path createFile(final String prefix) {
+        return directory.resolve(prefix + nextFileNumber.getAndIncrement() + FILE_EXTENSION);
+    }
+
+    /**
+     * Returns the number of segments sorted so far.
+     *
+     * @return The number of segments sorted so far.
+     */
+    long getNumberOfSegments() {
+        return numberOfSegments;
+    }
+
+    /**
+     * Returns the number of sorted levels.
+     *
+     * @return The number of sorted levels.
+     */
+    int getNumberOfLevels() {
+        return levels.size();
+    }
+
+    /**
+     * Returns the length of a record, i.e. a start point, an end point and a length.
+     *
+     * @return The length of a record.
+     */
+    private int getRecordLength() {
+        return 2 * hashFunction.getByteLength() + Long.BYTES;
+    }
+
+    /**
+     * Merges runs sorted by end point into a new sorted file, streaming the levels sorted earlier alongside without
+     * writing them. Segments occurring more than once, or occurring in a level already, are written only once. If a
+     * collection for the collisions is provided, groups of segments sharing an end point are backtracked if at least
+     * one of them comes from the runs.
+     *
+     * @param levelFiles The files of the levels sorted earlier.
+     * @param runs       The runs.
+     * @param mergedFile The merged file.
+     * @param collisions The collection to add the collisions to, or <code>null</code> if no collisions are detected.
+     * @return The number of segments in the merged file.
+     * @throws IOException Thrown if a run or level can't be read or the merged file can't be written.
+     */
+    private long merge(final List<Path> levelFiles, final List<Path> runs, final Path mergedFile,
+            final ModifiableCollection<Collision> collisions) throws IOException {
+        long numberOfMergedSegments = 0L;
+        PriorityQueue<RecordReader> queue = new PriorityQueue<RecordReader>(
+                Comparator.comparing(RecordReader::getRecord, END_POINT_COMPARATOR)
+                        .thenComparing(RecordReader::isNew));
+        try (DataOutputStream output = openOutput(mergedFile)) {
+            for (Path levelFile : levelFiles) {
+                addOrClose(queue, new RecordReader(levelFile, false));
+            }
+            for (Path run : runs) {
+                addOrClose(queue, new RecordReader(run, true));
+            }
+            List<SegmentRecord> group = new ArrayList<SegmentRecord>();
+            boolean groupHasNewRecords = false;
+            while (!queue.isEmpty()) {
+                RecordReader reader = queue.poll();
+                SegmentRecord record = reader.getRecord();
+                if (!group.isEmpty() && !group.get(0).endPoint().equals(record.endPoint())) {
+                    backtrackIfNew(group, groupHasNewRecords, collisions);
+                    group.clear();
+                    groupHasNewRecords = false;
+                }
+                if (group.isEmpty() || !group.get(group.size() - 1).startPoint().equals(record.startPoint())) {
+                    group.add(record);
+                    if (reader.isNew()) {
+                        groupHasNewRecords = true;
+                        writeRecord(output, record);
+                        numberOfMergedSegments++;
+                    }
+                }
+                reader.advance();
+                addOrClose(queue, reader);
+            }
+            backtrackIfNew(group, groupHasNewRecords, collisions);
+        } finally {
+            for (RecordReader reader : queue) {
+                reader.close();
+            }
+        }
+        return numberOfMergedSegments;
+    }
+
+    /**
+     * Returns the temporary file a file is written to before it's moved into place.
+     *
+     * @param file The file.
+     * @return The temporary file.
+     */
+    private static Path getTemporaryFile(final Path file) {
+        return file.resolveSibling(file.getFileName() + TEMPORARY_FILE_EXTENSION);
+    }
+
+    /**
+     * Loads the levels sorted by an earlier detector in the directory. A level covering detections that are covered by
+     * another level too was merged into that level already, and is deleted.
+     *
+     * @throws IOException Thrown if the directory can't be read or a level can't be deleted.
+     */
+    private void loadLevels() throws IOException {
+        List<Level> foundLevels = new ArrayList<Level>();
+        try (DirectoryStream<Path> files =
+                Files.newDirectoryStream(directory, LEVEL_FILE_PREFIX + "*" + FILE_EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String[] detections = fileName
+                        .substring(LEVEL_FILE_PREFIX.length(), fileName.length() - FILE_EXTENSION.length()).split("-");
+                foundLevels.add(new Level(file, Long.parseLong(detections[0]), Long.parseLong(detections[1])));
+            }
+        }
+        foundLevels.sort(Comparator.comparingLong(Level::firstDetection)
+                .thenComparing(Comparator.comparingLong(Level::lastDetection).reversed()));
+        for (Level level : foundLevels) {
+            if (!levels.isEmpty() && level.lastDetection() <= levels.get(levels.size() - 1).lastDetection()) {
+                Files.delete(level.file());
+            } else {
+                levels.add(level);
+                numberOfSegments += Files.size(level.file()) / getRecordLength();
+                nextDetectionNumber = level.lastDetection() + 1L;
+            }
+        }
+    }
+
+    /**
+     * Adds a reader to a queue if it has a current record, and closes it otherwise.
+     *
+     * @param queue  The queue.
+     * @param reader The reader.
+     * @throws IOException Thrown if the reader can't be closed.
+     */
+    private static void addOrClose(final PriorityQueue<RecordReader> queue, final RecordReader reader)
+            throws IOException {
+        if (reader.getRecord() == null) {
+            reader.close();
+        } else {
+            queue.add(reader);
+        }
+    }
+
+    /**
+     * Backtracks a group of segments sharing an end point if it contains more than one segment and at least one new
+     * segment, and adds the collisions found.
+     *
+     * @param group         The group of segments sharing an end point.
+     * @param hasNewRecords Whether the group contains at least one new segment.
+     * @param collisions    The collection to add the collisions to, or <code>null</code> if no collisions are
+     *                      detected.
+     */
+    private void backtrackIfNew(final List<SegmentRecord> group, final boolean hasNewRecords,
+            final ModifiableCollection<Collision> collisions) {
+        if (collisions == null || !hasNewRecords || group.size() < 2) {
+            return;
+        }
+        Laconic.LOGGER.logProgress("Found %d colliding segments with end point %s.", group.size(),
+                group.get(0).endPoint().asHexadecimalString());
+        Segment[] segments = new Segment[group.size()];
+        for (int i = 0; i < segments.length; i++) {
+            SegmentRecord record = group.get(i);
+            segments[i] = new Segment(record.startPoint(), record.endPoint(), record.length(), order, hashFunction);
+        }
+        collisions.addAll(new CollidingSegmentsCollection(Collection.of(segments)).findCollisions());
+    }
+
+    /**
+     * Opens a spill file for a producer. The spill file is included in the next detection once the writer is
+     * closed.
+     *
+     * @return A writer appending segments to a new spill file.
+     * @throws IOException Thrown if the spill file can't be created.
+     */
+    SpillWriter openSpillWriter() throws IOException {
+        return new SpillWriter(createFile(SPILL_FILE_PREFIX));
+    }
+
+    /**
+     * Opens a buffered output stream to a file.
+     *
+     * @param file The file.
+     * @return A buffered output stream to the file.
+     * @throws IOException Thrown if the file can't be created.
+     */
+    private static DataOutputStream openOutput(final Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+    }
+
+    /**
+     * Reads a record.
+     *
+     * @param input The input to read from.
+     * @return The record.
+     * @throws IOException Thrown if the input can't be read.
+     */
+    private SegmentRecord readRecord(final DataInputStream input) throws IOException {
+        int byteLength = hashFunction.getByteLength();
+        byte[] startPoint = new byte[byteLength];
+        byte[] endPoint = new byte[byteLength];
+        input.readFully(startPoint);
+        input.readFully(endPoint);
+        return new SegmentRecord(new Point(startPoint), new Point(endPoint), input.readLong());
+    }
+
+    /**
+     * Sorts a spill file into runs, one chunk at a time, and deletes the spill file.
+     *
+     * @param spillFile The spill file.
+     * @param chunkSize The maximum number of records in a chunk.
+     * @return The runs.
+     * @throws IOException Thrown if the spill file can't be read or a run can't be written.
+     */
+    private List<Path> sort(final Path spillFile, final int chunkSize) throws IOException {
+        List<Path> runs = new ArrayList<Path>();
+        long remaining = Files.size(spillFile) / getRecordLength();
+        try (DataInputStream input =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile)))) {
+            while (remaining > 0L) {
+                SegmentRecord[] chunk = new SegmentRecord[(int) Math.min(chunkSize, remaining)];
+                for (int i = 0; i < chunk.length; i++) {
+                    chunk[i] = readRecord(input);
+                }
+                remaining -= chunk.length;
+                Arrays.sort(chunk, END_POINT_COMPARATOR);
+                Path run = createFile(RUN_FILE_PREFIX);
+                try (DataOutputStream output = openOutput(run)) {
+                    for (SegmentRecord record : chunk) {
+                        writeRecord(output, record);
+                    }
+                }
+                runs.add(run);
+            }
+        }
+        Files.delete(spillFile);
+        return runs;
+    }
+
+    /**
+     * Sorts spill files into runs on a thread pool, each thread holding at most its share of the sort buffer.
+     *
+     * @param filesToSort The spill files.
+     * @return The runs.
+     * @throws IOException Thrown if a spill file can't be read or a run can't be written.
+     */
+    private List<Path> sortInParallel(final List<Path> filesToSort) throws IOException {
+        int chunkSize = sortBufferSize / numberOfThreads;
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<Future<List<Path>>> futures = new ArrayList<Future<List<Path>>>();
+            for (Path spillFile : filesToSort) {
+                futures.add(executorService.submit(() -> sort(spillFile, chunkSize)));
+            }
+            List<Path> runs = new ArrayList<Path>();
+            for (Future<List<Path>> future : futures) {
+                runs.addAll(future.get());
+            }
+            return runs;
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IllegalStateException("Sorting a spill file failed.", ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sorting the spill files was interrupted.", ie);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes a record.
+     *
+     * @param output The output to write to.
+     * @param record The record.
+     * @throws IOException Thrown if the output can't be written.
+     */
+    private static void writeRecord(final DataOutputStream output, final SegmentRecord record) throws IOException {
+        output.write(record.startPoint().getBytes());
+        output.write(record.endPoint().getBytes());
+        output.writeLong(record.length());
+    }
+
+    /**
+     * Reader streaming the records of a level or run.
+     */
+    private final class RecordReader implements AutoCloseable {
+        /**
+         * The input stream.
+         */
+        private final DataInputStream input;
+        /**
+         * Whether the records are new, i.e. come from a run rather than from a level sorted earlier.
+         */
+        private final boolean isNew;
+        /**
+         * The current record, or <code>null</code> if the file is exhausted.
+         */
+        private SegmentRecord record;
+        /**
+         * The number of records that remain to be read.
+         */
+        private long remaining;
+
+        /**
+         * Opens a level or run, and reads its first record.
+         *
+         * @param file  The file.
+         * @param isNew Whether the records are new.
+         * @throws IOException Thrown if the file can't be read.
+         */
+        private RecordReader(final Path file, final boolean isNew) throws IOException {
+            this.remaining = Files.size(file) / getRecordLength();
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            this.isNew = isNew;
+            advance();
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @throws IOException Thrown if the file can't be read.
+         */
+        private void advance() throws IOException {
+            if (remaining == 0L) {
+                record = null;
+            } else {
+                record = readRecord(input);
+                remaining--;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+
+        /**
+         * Returns the current record.
+         *
+         * @return The current record, or <code>null</code> if the file is exhausted.
+         */
+        private SegmentRecord getRecord() {
+            return record;
+        }
+
+        /**
+         * Returns whether the records are new.
+         *
+         * @return True if the records come from a run, false if they come from a level sorted earlier.
+         */
+        private boolean isNew() {
+            return isNew;
+        }
+    }
+
+    /**
+     * A level with the segments sorted during a range of detections.
+     *
+     * @param file           The file of the level.
+     * @param firstDetection The sequence number of the first detection covered by the level.
+     * @param lastDetection  The sequence number of the last detection covered by the level.
+     */
+    private record Level(Path file, long firstDetection, long lastDetection) {
+    }
+
+    /**
+     * The record of a segment in a spill file or run.
+     *
+     * @param startPoint The start point.
+     * @param endPoint   The end point.
+     * @param length     The length.
+     */
+    private record SegmentRecord(Point startPoint, Point endPoint, long length) {
+    }
+
+    /**
+     * Writer appending segments to a spill file. A writer is meant to be used by a single producer.
+     */
+    final class SpillWriter implements AutoCloseable {
+        /**
+         * The output stream.
+         */
+        private final DataOutputStream output;
+        /**
+         * The spill file.
+         */
+        private final Path spillFile;
+
+        /**
+         * Creates a writer for a new spill file.
+         *
+         * @param spillFile The spill file.
+         * @throws IOException Thrown if the spill file can't be created.
+         */
+        private SpillWriter(final Path spillFile) throws IOException {
+            this.spillFile = spillFile;
+            this.output = openOutput(spillFile);
+        }
+
+        /**
+         * Appends a segment to the spill file.
+         *
+         * @param segment The segment.
+         * @throws IOException Thrown if the spill file can't be written.
+         */
+        void append(final Segment segment) throws IOException {
+            writeRecord(output, new SegmentRecord(segment.getStartPoint(), segment.getEndPoint(), segment.getLength()));
+        }
+
+        /**
+         * Closes the spill file, and includes it in the next detection.
+         *
+         * @throws IOException Thrown if the spill file can't be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            output.close();
+            synchronized (spillFiles) {
+                spillFiles.add(spillFile);
+            }
+        }
+    }
+}
@@ -1,76 +1,446 @@
 package net.filipvanlaenen.jcrk;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
 import net.filipvanlaenen.laconic.Laconic;
 
-public final class FileBasedSegmentRepository implements SegmentRepository {
-    private final InMemorySegmentRepository inMemorySegmentRepository;
+/**
+ * A segment repository kept in memory and persisted to a cache file. The cache file starts with the order and the
+ * hash function, followed by a line per segment. Persistence is asynchronous: new segments are handed to a background
+ * flusher through a bounded write queue, and the flusher appends them to the cache file in group commits, such that
+ * producers only wait on the disk when the write queue is full. When the repository is compressed, the flusher
+ * replaces the cache file atomically. How often the appended segments are flushed to the operating system or forced
+ * to the disk depends on the durability policy. The write queue is drained when the repository is closed, and by a
+ * shutdown hook when the virtual machine shuts down. If the flusher fails to write to the cache file, it stops
+ * writing, and the failure is thrown to the producers as an <code>UncheckedIOException</code>.
+ * <p>
+ * When the repository is closed, or on request, a memory-mapped snapshot with the segments and their hash indexes is
+ * written next to the cache file, streaming the segments into it. A repository with a snapshot opens by mapping the
+ * snapshot and only reading the header of the cache file and the segments appended after the snapshot, which are kept
+ * in memory. The cache file itself remains complete, and a snapshot is ignored if it doesn't match the cache file
+ * anymore, i.e. if the checksum of the last block of the cache file it covers doesn't match.
+ */
+public final class FileBasedSegmentRepository implements SegmentRepository, AutoCloseable {
+    /**
+     * Enumeration with the durability policies for the segments appended to the cache file.
+     */
+    public enum Durability {
+        /**
+         * The segments are written to the cache file when the write buffer is full or the repository is closed.
+         */
+        NONE,
+        /**
+         * The segments are flushed to the operating system every number of segments or every interval, whichever
+         * comes first.
+         */
+        FLUSH,
+        /**
+         * The segments are flushed and forced to the disk after every group commit.
+         */
+        FSYNC
+    }
+
+    /**
+     * The default number of segments after which they're flushed with the durability policy <code>FLUSH</code>.
+     */
+    public static final int DEFAULT_FLUSH_SEGMENTS = 1024;
+    /**
+     * The default interval after which the segments are flushed with the durability policy <code>FLUSH</code>.
+     */
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1L);
+    /**
+     * The default capacity of the write queue.
+     */
+    public static final int DEFAULT_WRITE_QUEUE_CAPACITY = 1 << 16;
+    /**
+     * The index of the checkpoint depth in a line of a cache file.
+     */
+    private static final int CHECKPOINT_DEPTH_PART = 3;
+    /**
+     * The index of the checkpoints in a line of a cache file.
+     */
+    private static final int CHECKPOINTS_PART = 4;
+    /**
+     * The number of lines in the header of a cache file.
+     */
+    private static final int HEADER_LINES = 2;
+    /**
+     * The maximum number of bytes read to find the header lines of a cache file.
+     */
+    private static final int MAXIMUM_HEADER_LENGTH = 1024;
+    /**
+     * The extension appended to the name of the cache file for the name of the snapshot.
+     */
+    private static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    /**
+     * The channel of the cache file the segments are appended to, or <code>null</code> if it isn't open.
+     */
+    private FileChannel cacheFileChannel;
+    /**
+     * The name of the cache file.
+     */
     private final String cacheFileName;
+    /**
+     * The writer appending the segments to the cache file, or <code>null</code> if it isn't open.
+     */
+    private BufferedWriter cacheFileWriter;
+    /**
+     * Whether the repository is closed.
+     */
+    private volatile boolean closed;
+    /**
+     * The durability policy.
+     */
+    private final Durability durability;
+    /**
+     * The interval after which the segments are flushed with the durability policy <code>FLUSH</code>.
+     */
+    private final Duration flushInterval;
+    /**
+     * The number of segments after which they're flushed with the durability policy <code>FLUSH</code>.
+     */
+    private final int flushSegments;
+    /**
+     * The background thread appending the segments to the cache file, or <code>null</code> if nothing has been
+     * written yet.
+     */
+    private Thread flusher;
+    /**
+     * The failure that made the flusher stop writing to the cache file, or <code>null</code> if it didn't fail.
+     */
+    private volatile IOException flushFailure;
+    /**
+     * The in-memory repository with the segments.
+     */
+    private final InMemorySegmentRepository inMemorySegmentRepository;
+    /**
+     * The hook draining the write queue when the virtual machine shuts down, or <code>null</code> if nothing has been
+     * written yet.
+     */
+    private Thread shutdownHook;
+    /**
+     * The memory-mapped snapshot, or <code>null</code> if the repository wasn't opened from a snapshot, or has been
+     * compressed since.
+     */
+    private SegmentSnapshot snapshot;
+    /**
+     * The end points shared by a segment in the snapshot and a segment in memory.
+     */
+    private final ModifiableCollection<Point> snapshotCollidingEndPoints = ModifiableCollection.empty();
+    /**
+     * Whether the snapshot on disk contains all the segments of the repository.
+     */
+    private boolean snapshotCurrent;
+    /**
+     * The queue with the writes that haven't been handled by the flusher yet.
+     */
+    private final BlockingQueue<PendingWrite> writeQueue;
+
+    /**
+     * A write handed to the flusher: a segment to be appended, a temporary file replacing the cache file, or a barrier
+     * that's released once all earlier writes are flushed and forced to the disk. A write without any of these only
+     * wakes up the flusher.
+     *
+     * @param segment     The segment to be appended, or <code>null</code>.
+     * @param replacement The temporary file replacing the cache file, or <code>null</code>.
+     * @param barrier     The barrier to be released, or <code>null</code>.
+     */
+    private record PendingWrite(Segment segment, Path replacement, CountDownLatch barrier) {
+    }
 
+    /**
+     * Constructs a repository persisted to a cache file with the default durability policy, i.e. flushing every
+     * default number of segments or default interval, and loads the segments from the cache file if it exists.
+     *
+     * @param cacheFileName The name of the cache file.
+     * @param hashFunction  The hash function.
+     */
     public FileBasedSegmentRepository(final String cacheFileName, final HashFunction hashFunction) {
+        this(cacheFileName, hashFunction, Durability.FLUSH, DEFAULT_FLUSH_SEGMENTS, DEFAULT_FLUSH_INTERVAL,
+                DEFAULT_WRITE_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructs a repository persisted to a cache file, and loads the segments from the cache file if it exists.
+     *
+     * @param cacheFileName      The name of the cache file.
+     * @param hashFunction       The hash function.
+     * @param durability         The durability policy.
+     * @param flushSegments      The number of segments after which they're flushed with the durability policy
+     *                           <code>FLUSH</code>.
+     * @param flushInterval      The interval after which the segments are flushed with the durability policy
+     *                           <code>FLUSH</code>.
+     * @param writeQueueCapacity The capacity of the write queue, beyond which producers wait for the flusher.
+     * @throws IllegalArgumentException Thrown if the number of segments, the interval or the capacity isn't positive.
+     */
+    public FileBasedSegmentRepository(final String cacheFileName, final HashFunction hashFunction,
+            final Durability durability, final int flushSegments, final Duration flushInterval,
+            final int writeQueueCapacity) throws IllegalArgumentException {
+        if (flushSegments < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The number of segments per flush (%d) should be at least one.", flushSegments));
+        }
+        if (flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException(
+                    String.format("The flush interval (%s) should be positive.", flushInterval));
+        }
+        if (writeQueueCapacity < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The capacity of the write queue (%d) should be at least one.", writeQueueCapacity));
+        }
         this.cacheFileName = cacheFileName;
+        this.durability = durability;
+        this.flushSegments = flushSegments;
+        this.flushInterval = flushInterval;
+        this.writeQueue = new ArrayBlockingQueue<PendingWrite>(writeQueueCapacity);
         this.inMemorySegmentRepository = new InMemorySegmentRepository(hashFunction);
-        loadFromCache();
+        if (!loadFromCache()) {
+            rewriteCacheFile();
+        }
     }
 
     @Override
     public boolean add(final Segment segment) throws IllegalArgumentException {
+        if (snapshot != null && segment.equals(snapshot.getSegmentWithStartPoint(segment.getStartPoint()))) {
+            return false;
+        }
         boolean result = inMemorySegmentRepository.add(segment);
-        try {
-            writeFile(cacheFileName, calculateCacheContent());
-        } catch (IOException ioe) {
-            Laconic.LOGGER.logError("IOException while trying to write a segment repository to a file: %s",
-                    ioe.getMessage());
+        if (result) {
+            addSnapshotCollidingEndPoint(segment.getEndPoint());
+            snapshotCurrent = false;
+            enqueue(new PendingWrite(segment, null, null));
         }
         return result;
     }
 
-    private String calculateCacheContent() {
-        StringBuffer sb = new StringBuffer();
-        sb.append(getOrder());
-        sb.append("\n");
-        sb.append(getHashFunction().toString());
-        sb.append("\n");
-        for (Segment segment : inMemorySegmentRepository.getSegments()) {
-            sb.append(segment.getStartPoint().asHexadecimalString());
-            sb.append(".");
-            sb.append(segment.getEndPoint().asHexadecimalString());
-            sb.append(".");
-            sb.append(segment.getLength());
-            sb.append("\n");
+    /**
+     * Keeps an end point as shared by a segment in the snapshot and a segment in memory, if the snapshot contains a
+     * segment with the end point.
+     *
+     * @param endPoint The end point of a segment in memory.
+     */
+    private void addSnapshotCollidingEndPoint(final Point endPoint) {
+        if (snapshot != null && snapshot.containsSegmentsWithEndPoint(endPoint)
+                && !snapshotCollidingEndPoints.contains(endPoint)) {
+            snapshotCollidingEndPoints.add(endPoint);
+        }
+    }
+
+    /**
+     * Throws the failure that made the flusher stop writing to the cache file, if any.
+     *
+     * @throws UncheckedIOException Thrown if the flusher failed to write to the cache file.
+     */
+    private void checkFlushFailure() throws UncheckedIOException {
+        IOException failure = flushFailure;
+        if (failure != null) {
+            throw new UncheckedIOException(
+                    String.format("The cache file %s couldn't be written anymore.", cacheFileName), failure);
+        }
+    }
+
+    /**
+     * Writes a snapshot unless the snapshot on disk is current, drains the write queue, forces the cache file to the
+     * disk and stops the flusher. Segments added after the repository is closed are kept in memory only. If the
+     * flusher failed, no snapshot is written, since the cache file is incomplete.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            checkpoint();
+        } catch (UncheckedIOException uioe) {
+            // The flusher failed, and logged the failure already.
+        }
+        if (flusher == null) {
+            closed = true;
+            return;
+        }
+        closed = true;
+        writeQueue.offer(new PendingWrite(null, null, null));
+        try {
+            flusher.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ise) {
+            // The virtual machine is shutting down, and this is the shutdown hook.
         }
-        return sb.toString();
     }
 
+    /**
+     * Compresses the repository to the next order. If the repository was opened from a snapshot, the segments of the
+     * next order are combined from the segments streamed from the snapshot and the segments in memory, and kept in
+     * memory, such that the snapshot is no longer used. The cache file is replaced, and the snapshot on disk deleted.
+     */
     @Override
     public void compressToNextOrder() {
-        inMemorySegmentRepository.compressToNextOrder();
+        if (snapshot == null) {
+            inMemorySegmentRepository.compressToNextOrder();
+        } else {
+            int newOrder = getOrder() + 1;
+            ModifiableCollection<Segment> newSegments = ModifiableCollection.empty();
+            for (Segment segment : getSegmentIterable()) {
+                Segment newSegment =
+                        InMemorySegmentRepository.combineToOrder(segment, newOrder, this::getSegmentWithStartPoint);
+                if (newSegment != null) {
+                    newSegments.add(newSegment);
+                }
+            }
+            snapshot = null;
+            snapshotCollidingEndPoints.clear();
+            inMemorySegmentRepository.setOrder(newOrder);
+            for (Segment newSegment : newSegments) {
+                inMemorySegmentRepository.add(newSegment);
+            }
+        }
+        snapshotCurrent = false;
+        rewriteCacheFile();
+    }
+
+    /**
+     * Hands a write to the flusher, waiting only if the write queue is full. Writes are dropped once the repository
+     * is closed.
+     *
+     * @param pendingWrite The write.
+     * @throws UncheckedIOException Thrown if the flusher failed to write to the cache file.
+     */
+    private void enqueue(final PendingWrite pendingWrite) throws UncheckedIOException {
+        checkFlushFailure();
+        if (!startFlusher()) {
+            return;
+        }
+        try {
+            while (!writeQueue.offer(pendingWrite, flushInterval.toNanos(), TimeUnit.NANOSECONDS)) {
+                if (closed) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            Laconic.LOGGER.logError("Interrupted while waiting for the write queue of the cache file %s.",
+                    cacheFileName);
+        }
     }
 
     @Override
     public boolean contains(final Segment segment) {
-        return inMemorySegmentRepository.contains(segment);
+        return segment.equals(getSegmentWithStartPoint(segment.getStartPoint()));
     }
 
     @Override
     public boolean containsSegmentsWithEndPoint(final Point point) {
-        return inMemorySegmentRepository.containsSegmentsWithEndPoint(point);
+        return inMemorySegmentRepository.containsSegmentsWithEndPoint(point)
+                || snapshot != null && snapshot.containsSegmentsWithEndPoint(point);
     }
 
     @Override
     public boolean containsSegmentWithStartPoint(final Point point) {
-        return inMemorySegmentRepository.containsSegmentWithStartPoint(point);
+        return getSegmentWithStartPoint(point) != null;
+    }
+
+    /**
+     * Returns the end points shared by more than one segment, in the snapshot, in memory, or between both.
+     *
+     * @return A collection with the end points shared by more than one segment.
+     */
+    private Collection<Point> getCollidingEndPoints() {
+        ModifiableCollection<Point> endPoints = ModifiableCollection.empty();
+        endPoints.addAll(snapshot.getCollidingEndPoints());
+        for (Point endPoint : inMemorySegmentRepository.getEndPointsWithMultipleSegments(2)) {
+            if (!endPoints.contains(endPoint)) {
+                endPoints.add(endPoint);
+            }
+        }
+        for (Point endPoint : snapshotCollidingEndPoints) {
+            if (!endPoints.contains(endPoint)) {
+                endPoints.add(endPoint);
+            }
+        }
+        return endPoints;
     }
 
     @Override
     public Collection<Collision> getCollisions() {
-        return inMemorySegmentRepository.getCollisions();
+        if (snapshot == null) {
+            return inMemorySegmentRepository.getCollisions();
+        }
+        ModifiableCollection<Collision> collisions = ModifiableCollection.empty();
+        for (Point point : getCollidingEndPoints()) {
+            Collection<Segment> segments = getSegmentsWithEndPoint(point);
+            Laconic.LOGGER.logProgress("Found %d colliding segments with end point %s.", segments.size(),
+                    point.asHexadecimalString());
+            collisions.addAll(new CollidingSegmentsCollection(segments).findCollisions());
+        }
+        return collisions;
+    }
+
+    @Override
+    public Collection<Point> getEndPointsWithMultipleSegments(final int minimumNumberOfSegments) {
+        if (snapshot == null) {
+            return inMemorySegmentRepository.getEndPointsWithMultipleSegments(minimumNumberOfSegments);
+        }
+        ModifiableCollection<Point> result = ModifiableCollection.empty();
+        for (Point point : getCollidingEndPoints()) {
+            if (getSegmentsWithEndPoint(point).size() >= minimumNumberOfSegments) {
+                result.add(point);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the estimated disk footprint, i.e. the size of the cache file and the snapshot.
+     *
+     * @return The estimated number of bytes the repository occupies on disk.
+     */
+    @Override
+    public long getEstimatedDiskFootprint() {
+        long footprint = 0L;
+        for (Path file : new Path[] {Paths.get(cacheFileName), getSnapshotPath()}) {
+            try {
+                footprint += Files.size(file);
+            } catch (IOException ioe) {
+                // The file doesn't exist (yet).
+            }
+        }
+        return footprint;
+    }
+
+    @Override
+    public long getEstimatedMemoryFootprint() {
+        return inMemorySegmentRepository.getEstimatedMemoryFootprint();
     }
 
     @Override
@@ -83,73 +453,578 @@ public final class FileBasedSegmentRepository implements SegmentRepository {
         return inMemorySegmentRepository.getOrder();
     }
 
+    @Override
+    public Collection<Segment> getSegments() {
+        if (snapshot == null) {
+            return inMemorySegmentRepository.getSegments();
+        }
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        segments.addAll(snapshot.getSegments());
+        segments.addAll(inMemorySegmentRepository.getSegments());
+        return segments;
+    }
+
+    @Override
+    public void forEachSegment(final Consumer<Segment> action) {
+        getSegmentIterable().forEach(action);
+    }
+
     @Override
     public Collection<Segment> getSegmentsWithEndPoint(final Point point) {
-        return inMemorySegmentRepository.getSegmentsWithEndPoint(point);
+        if (snapshot == null) {
+            return inMemorySegmentRepository.getSegmentsWithEndPoint(point);
+        }
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        segments.addAll(snapshot.getSegmentsWithEndPoint(point));
+        segments.addAll(inMemorySegmentRepository.getSegmentsWithEndPoint(point));
+        return segments;
     }
 
     @Override
     public Segment getSegmentWithStartPoint(final Point point) {
-        return inMemorySegmentRepository.getSegmentWithStartPoint(point);
+        Segment segment = inMemorySegmentRepository.getSegmentWithStartPoint(point);
+        if (segment == null && snapshot != null) {
+            segment = snapshot.getSegmentWithStartPoint(point);
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the segments of the repository as an iterable, streaming the segments in the snapshot, if any, instead
+     * of reading them all into memory, followed by the segments in memory.
+     *
+     * @return An iterable over the segments of the repository.
+     */
+    private Iterable<Segment> getSegmentIterable() {
+        Iterable<Segment> segmentsInMemory = inMemorySegmentRepository.getSegments();
+        if (snapshot == null) {
+            return segmentsInMemory;
+        }
+        SegmentSnapshot currentSnapshot = snapshot;
+        return () -> Stream.concat(StreamSupport.stream(currentSnapshot.spliterator(), false),
+                StreamSupport.stream(segmentsInMemory.spliterator(), false)).iterator();
+    }
+
+    /**
+     * Returns the path of the snapshot.
+     *
+     * @return The path of the snapshot.
+     */
+    private Path getSnapshotPath() {
+        return Paths.get(cacheFileName + SNAPSHOT_EXTENSION);
+    }
+
+    /**
+     * Returns whether the repository is closed.
+     *
+     * @return True if the repository is closed, false otherwise.
+     */
+    boolean isClosed() {
+        return closed;
     }
 
     @Override
     public boolean isEmpty() {
-        return inMemorySegmentRepository.isEmpty();
+        return size() == 0;
     }
 
     @Override
     public boolean isFull() {
-        return inMemorySegmentRepository.isFull();
+        if (snapshot == null) {
+            return inMemorySegmentRepository.isFull();
+        }
+        return new BigDecimal(2).pow(getHashFunction().getBitLength() - getOrder()).equals(new BigDecimal(size()));
     }
 
-    private void loadFromCache() {
-        try {
-            String[] lines = readFile(cacheFileName);
+    /**
+     * Returns true if the byte before an offset in the cache file is a newline.
+     *
+     * @param channel The channel of the cache file.
+     * @param offset  The offset.
+     * @return True if the byte before the offset is a newline, false otherwise.
+     * @throws IOException Thrown if the cache file can't be read.
+     */
+    private static boolean endsWithNewline(final FileChannel channel, final long offset) throws IOException {
+        if (offset < 1L || offset > channel.size()) {
+            return false;
+        }
+        ByteBuffer lastByte = ByteBuffer.allocate(1);
+        channel.read(lastByte, offset - 1L);
+        return lastByte.get(0) == '\n';
+    }
+
+    /**
+     * Loads the segments from the cache file, if it exists and is for the hash function. Only the header lines are
+     * read if there's a snapshot matching the cache file, after which the segments appended after the snapshot are
+     * read from the offset covered by the snapshot. If the cache file doesn't end with a newline, the last line was
+     * only partially appended, and is discarded even if it can be parsed, since it may have been cut off in the middle
+     * of a field. Other lines that can't be parsed are skipped.
+     *
+     * @return True if the cache file exists, is for the hash function and could be parsed completely, such that
+     *         segments can be appended to it.
+     */
+    private boolean loadFromCache() {
+        Path cacheFile = Paths.get(cacheFileName);
+        if (!Files.exists(cacheFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            String header = readHeader(channel);
             HashFunction hashFunction = getHashFunction();
-            if (lines[1].equals(hashFunction.toString())) {
-                int order = Integer.parseInt(lines[0]);
-                inMemorySegmentRepository.setOrder(order);
-                for (int i = 2; i < lines.length; i++) {
-                    String[] parts = lines[i].split("\\.");
-                    Point startPoint = new Point(HexFormat.of().parseHex(parts[0]));
-                    Point endPoint = new Point(HexFormat.of().parseHex(parts[1]));
-                    long length = Long.parseLong(parts[2]);
-                    Segment segment = new Segment(startPoint, endPoint, length, order, hashFunction);
-                    inMemorySegmentRepository.add(segment);
+            String[] headerLines = header == null ? null : header.split("\n");
+            if (headerLines == null || !headerLines[1].equals(hashFunction.toString())) {
+                return false;
+            }
+            int order = Integer.parseInt(headerLines[0]);
+            inMemorySegmentRepository.setOrder(order);
+            snapshot = openSnapshot(order, channel, header.length());
+            long deltaOffset = snapshot == null ? header.length() : snapshot.getCacheFileOffset();
+            snapshotCurrent = snapshot != null && deltaOffset == channel.size();
+            boolean complete = endsWithNewline(channel, channel.size());
+            boolean malformed = false;
+            BufferedReader reader =
+                    new BufferedReader(Channels.newReader(channel.position(deltaOffset), StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            while (line != null) {
+                String nextLine = reader.readLine();
+                if (nextLine == null && !complete) {
+                    Laconic.LOGGER.logError("Discarded the partially appended line \"%s\" in the cache file %s.", line,
+                            cacheFileName);
+                } else if (!line.isEmpty()) {
+                    try {
+                        Segment segment = parseSegment(line, order, hashFunction);
+                        if (snapshot == null
+                                || !segment.equals(snapshot.getSegmentWithStartPoint(segment.getStartPoint()))) {
+                            inMemorySegmentRepository.add(segment);
+                            addSnapshotCollidingEndPoint(segment.getEndPoint());
+                        }
+                    } catch (RuntimeException re) {
+                        Laconic.LOGGER.logError("Skipped the malformed line \"%s\" in the cache file %s.", line,
+                                cacheFileName);
+                        malformed = true;
+                    }
                 }
+                line = nextLine;
             }
+            return complete && !malformed;
         } catch (IOException ioe) {
             Laconic.LOGGER.logError("IOException while trying to load a segment repository from a file: %s",
                     ioe.getMessage());
+            return false;
         }
     }
 
     /**
-     * Utility method to read a file into an array of strings.
+     * Opens the snapshot next to the cache file, if it exists and matches the cache file, i.e. it has the same order,
+     * the part of the cache file covered by the snapshot extends beyond the header and ends with a complete line, and
+     * the checksum of its last block matches the checksum recorded in the snapshot.
      *
-     * @param fileName The name of the file to read from.
-     * @return The content of the file, as an array of strings.
-     * @throws IOException Thrown if an exception occurs related to IO.
+     * @param order        The order of the cache file.
+     * @param channel      The channel of the cache file.
+     * @param headerLength The length of the header of the cache file.
+     * @return The snapshot, or <code>null</code> if there's no snapshot matching the cache file.
      */
-    private static String[] readFile(final String fileName) throws IOException {
-        return Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8).toArray(new String[] {});
+    private SegmentSnapshot openSnapshot(final int order, final FileChannel channel, final long headerLength) {
+        try {
+            SegmentSnapshot candidate = SegmentSnapshot.open(getSnapshotPath(), getHashFunction());
+            if (candidate == null || candidate.getOrder() != order) {
+                return null;
+            }
+            long offset = candidate.getCacheFileOffset();
+            if (offset < headerLength || !endsWithNewline(channel, offset)
+                    || SegmentSnapshot.calculateChecksum(channel, offset) != candidate.getCacheFileChecksum()) {
+                Laconic.LOGGER.logProgress("Ignored the snapshot of the cache file %s, since it doesn't match the cache"
+                        + " file anymore.", cacheFileName);
+                return null;
+            }
+            return candidate;
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to open the snapshot of the cache file %s: %s",
+                    cacheFileName, ioe.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the header of the cache file, i.e. the line with the order and the line with the hash function. Since the
+     * content of a cache file is ASCII, the length of the header in characters is also its length in bytes.
+     *
+     * @param channel The channel of the cache file.
+     * @return The header lines including their newlines, or <code>null</code> if the cache file doesn't start with
+     *         complete header lines.
+     * @throws IOException Thrown if the cache file can't be read.
+     */
+    private static String readHeader(final FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), MAXIMUM_HEADER_LENGTH));
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // Keep on reading until the buffer is full.
+        }
+        String start = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        int end = -1;
+        for (int i = 0; i < HEADER_LINES; i++) {
+            end = start.indexOf('\n', end + 1);
+            if (end < 0) {
+                return null;
+            }
+        }
+        return start.substring(0, end + 1);
+    }
+
+    /**
+     * Formats a segment as a line for a cache file. The line consists of the start point, the end point and the
+     * length, separated by dots. If the segment records checkpoints, the checkpoint depth and the checkpoints are
+     * appended, with the checkpoints formatted as their position and point separated by a colon, and separated from
+     * each other by commas.
+     *
+     * @param segment The segment.
+     * @return A line representing the segment.
+     */
+    static String formatSegment(final Segment segment) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(segment.getStartPoint().asHexadecimalString());
+        sb.append(".");
+        sb.append(segment.getEndPoint().asHexadecimalString());
+        sb.append(".");
+        sb.append(segment.getLength());
+        if (segment.getCheckpointDepth() > 0) {
+            sb.append(".");
+            sb.append(segment.getCheckpointDepth());
+            sb.append(".");
+            boolean first = true;
+            for (SegmentCheckpoint checkpoint : segment.getCheckpoints()) {
+                if (!first) {
+                    sb.append(",");
+                }
+                sb.append(checkpoint.position());
+                sb.append(":");
+                sb.append(checkpoint.point().asHexadecimalString());
+                first = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a line from a cache file into a segment.
+     *
+     * @param line         The line.
+     * @param order        The order of the segment.
+     * @param hashFunction The hash function of the segment.
+     * @return The segment represented by the line.
+     */
+    static Segment parseSegment(final String line, final int order, final HashFunction hashFunction) {
+        String[] parts = line.split("\\.");
+        Point startPoint = new Point(HexFormat.of().parseHex(parts[0]));
+        Point endPoint = new Point(HexFormat.of().parseHex(parts[1]));
+        long length = Long.parseLong(parts[2]);
+        int checkpointDepth = parts.length > CHECKPOINT_DEPTH_PART ? Integer.parseInt(parts[CHECKPOINT_DEPTH_PART]) : 0;
+        ModifiableCollection<SegmentCheckpoint> checkpoints = ModifiableCollection.empty();
+        if (parts.length > CHECKPOINTS_PART) {
+            for (String checkpoint : parts[CHECKPOINTS_PART].split(",")) {
+                String[] checkpointParts = checkpoint.split(":");
+                checkpoints.add(new SegmentCheckpoint(Long.parseLong(checkpointParts[0]),
+                        new Point(HexFormat.of().parseHex(checkpointParts[1]))));
+            }
+        }
+        return new Segment(startPoint, endPoint, length, order, hashFunction, checkpointDepth, checkpoints);
     }
 
     @Override
     public int size() {
-        return inMemorySegmentRepository.size();
+        return inMemorySegmentRepository.size() + (snapshot == null ? 0 : snapshot.getNumberOfSegments());
     }
 
     /**
-     * Utility method to write a string to a file.
+     * Writes a snapshot of the repository atomically next to the cache file, unless the snapshot on disk is current,
+     * such that the repository can be opened from the snapshot later on. The writes handed to the flusher are forced
+     * to the disk first, such that the snapshot covers the cache file on the disk, and the segments are then streamed
+     * from the repository into the snapshot. A snapshot that can't be written is only logged, since the cache file
+     * remains complete.
      *
-     * @param fileName The name for the file.
-     * @param content  The string to be written to the file.
-     * @throws IOException Thrown if an exception occurs related to IO.
+     * @throws UncheckedIOException Thrown if the flusher failed to write to the cache file.
      */
-    private static void writeFile(final String fileName, final String content) throws IOException {
-        Files.writeString(Paths.get(fileName), content, StandardCharsets.UTF_8);
+    @Override
+    public void checkpoint() throws UncheckedIOException {
+        if (closed || snapshotCurrent) {
+            return;
+        }
+        sync();
+        try {
+            writeSnapshot();
+            snapshotCurrent = true;
+        } catch (IOException | IllegalArgumentException e) {
+            Laconic.LOGGER.logError("Exception while trying to write the snapshot of the cache file %s: %s",
+                    cacheFileName, e.getMessage());
+        }
     }
 
+    /**
+     * Waits until all the writes handed to the flusher so far have been handled, and the cache file has been forced to
+     * the disk.
+     *
+     * @throws UncheckedIOException Thrown if the flusher failed to write to the cache file.
+     */
+    @Override
+    public void sync() throws UncheckedIOException {
+        if (closed) {
+            return;
+        }
+        CountDownLatch barrier = new CountDownLatch(1);
+        enqueue(new PendingWrite(null, null, barrier));
+        try {
+            barrier.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        checkFlushFailure();
+    }
+
+    /**
+     * Starts the flusher and registers the shutdown hook, unless this has been done already. This is postponed until
+     * the first write, such that a repository that's only read from doesn't start any threads.
+     *
+     * @return True if the flusher is running, false if the repository is closed.
+     */
+    private synchronized boolean startFlusher() {
+        if (closed) {
+            return false;
+        }
+        if (flusher == null) {
+            flusher = new Thread(this::runFlusher, "jcrk-cache-file-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+            shutdownHook = new Thread(this::close, "jcrk-cache-file-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+        return true;
+    }
+
+    /**
+     * Runs the flusher: takes the pending writes from the write queue in batches, and handles every batch as a group
+     * commit according to the durability policy, until the repository is closed and the write queue is drained. Once
+     * a write fails, the rest of the batch and all later writes are dropped, such that no segments are appended after
+     * a gap, and only the barriers are released.
+     */
+    private void runFlusher() {
+        List<PendingWrite> batch = new ArrayList<PendingWrite>();
+        int unflushedSegments = 0;
+        long lastFlushTime = System.nanoTime();
+        while (!closed || !writeQueue.isEmpty()) {
+            try {
+                PendingWrite first = writeQueue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            writeQueue.drainTo(batch);
+            if (flushFailure != null) {
+                discard(batch);
+                batch.clear();
+                continue;
+            }
+            boolean forced = false;
+            try {
+                for (PendingWrite pendingWrite : batch) {
+                    if (pendingWrite.segment() != null) {
+                        append(pendingWrite.segment());
+                        unflushedSegments++;
+                    } else if (pendingWrite.replacement() != null) {
+                        replaceCacheFile(pendingWrite.replacement());
+                        unflushedSegments = 0;
+                    } else if (pendingWrite.barrier() != null) {
+                        force();
+                        forced = true;
+                        unflushedSegments = 0;
+                        pendingWrite.barrier().countDown();
+                    }
+                }
+                boolean due = unflushedSegments >= flushSegments
+                        || System.nanoTime() - lastFlushTime >= flushInterval.toNanos();
+                if (unflushedSegments > 0 && (durability == Durability.FSYNC
+                        || durability == Durability.FLUSH && due)) {
+                    flush();
+                    unflushedSegments = 0;
+                }
+                if (forced || unflushedSegments == 0) {
+                    lastFlushTime = System.nanoTime();
+                }
+            } catch (IOException ioe) {
+                Laconic.LOGGER.logError("IOException while trying to write a segment repository to a file, stopped"
+                        + " writing to it: %s", ioe.getMessage());
+                flushFailure = ioe;
+                discard(batch);
+            }
+            batch.clear();
+        }
+        try {
+            closeCacheFile();
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to close the file %s: %s", cacheFileName,
+                    ioe.getMessage());
+        }
+    }
+
+    /**
+     * Discards a batch of writes that won't be handled because the flusher failed: the barriers are released, and the
+     * temporary files that would have replaced the cache file are deleted.
+     *
+     * @param batch The batch of writes.
+     */
+    private static void discard(final List<PendingWrite> batch) {
+        for (PendingWrite pendingWrite : batch) {
+            if (pendingWrite.barrier() != null) {
+                pendingWrite.barrier().countDown();
+            }
+            if (pendingWrite.replacement() != null) {
+                try {
+                    Files.deleteIfExists(pendingWrite.replacement());
+                } catch (IOException ioe) {
+                    Laconic.LOGGER.logError("IOException while trying to delete the file %s: %s",
+                            pendingWrite.replacement(), ioe.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a segment to the cache file, opening it if needed.
+     *
+     * @param segment The segment.
+     * @throws IOException Thrown if the cache file can't be opened or written.
+     */
+    private void append(final Segment segment) throws IOException {
+        if (cacheFileWriter == null) {
+            cacheFileChannel = FileChannel.open(Paths.get(cacheFileName), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            cacheFileWriter =
+                    new BufferedWriter(Channels.newWriter(cacheFileChannel, StandardCharsets.UTF_8.newEncoder(), -1));
+        }
+        cacheFileWriter.write(formatSegment(segment));
+        cacheFileWriter.write("\n");
+    }
+
+    /**
+     * Flushes the segments appended to the cache file to the operating system, and forces them to the disk if the
+     * durability policy is <code>FSYNC</code>.
+     *
+     * @throws IOException Thrown if the cache file can't be written.
+     */
+    private void flush() throws IOException {
+        if (cacheFileWriter != null) {
+            cacheFileWriter.flush();
+            if (durability == Durability.FSYNC) {
+                cacheFileChannel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Flushes the segments appended to the cache file and forces them to the disk, regardless of the durability
+     * policy.
+     *
+     * @throws IOException Thrown if the cache file can't be written.
+     */
+    private void force() throws IOException {
+        if (cacheFileWriter != null) {
+            cacheFileWriter.flush();
+            cacheFileChannel.force(false);
+        }
+    }
+
+    /**
+     * Closes the cache file if it's open, forcing the appended segments to the disk, unless the flusher failed, in
+     * which case the segments still buffered are dropped.
+     *
+     * @throws IOException Thrown if the cache file can't be written or closed.
+     */
+    private void closeCacheFile() throws IOException {
+        if (cacheFileWriter != null && flushFailure != null) {
+            cacheFileChannel.close();
+            cacheFileWriter = null;
+            cacheFileChannel = null;
+        } else if (cacheFileWriter != null) {
+            force();
+            cacheFileWriter.close();
+            cacheFileWriter = null;
+            cacheFileChannel = null;
+        }
+    }
+
+    /**
+     * Writes a snapshot with the segments of the repository, which have all been forced to the cache file, streaming
+     * the segments in the current snapshot, if any, and the segments in memory into the new snapshot.
+     *
+     * @throws IOException Thrown if the cache file can't be read or the snapshot can't be written.
+     */
+    private void writeSnapshot() throws IOException {
+        Path cacheFile = Paths.get(cacheFileName);
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            long offset = channel.size();
+            SegmentSnapshot.write(getSegmentIterable(), size(), getOrder(), getHashFunction(), offset,
+                    SegmentSnapshot.calculateChecksum(channel, offset), getSnapshotPath());
+        }
+    }
+
+    /**
+     * Replaces the cache file atomically with a temporary file, and deletes the snapshot, since it doesn't match the
+     * new cache file. The segments appended later on are appended to the new cache file.
+     *
+     * @param temporaryFile The temporary file with the new content of the cache file.
+     * @throws IOException Thrown if the cache file can't be replaced.
+     */
+    private void replaceCacheFile(final Path temporaryFile) throws IOException {
+        closeCacheFile();
+        Files.deleteIfExists(getSnapshotPath());
+        Files.move(temporaryFile, Paths.get(cacheFileName), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the header and the segments of the repository to a new temporary file next to the cache file, streaming
+     * the segments through a buffered writer, and hands the temporary file to the flusher to replace the cache file.
+     * If the temporary file can't be written, the flusher stops writing to the cache file, and the failure is thrown
+     * to the producers.
+     */
+    private void rewriteCacheFile() {
+        if (closed) {
+            return;
+        }
+        Path cacheFile = Paths.get(cacheFileName).toAbsolutePath();
+        Path temporaryFile = null;
+        try {
+            temporaryFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                    BufferedWriter writer = new BufferedWriter(
+                            Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1))) {
+                writer.write(Integer.toString(getOrder()));
+                writer.write("\n");
+                writer.write(getHashFunction().toString());
+                writer.write("\n");
+                for (Segment segment : getSegmentIterable()) {
+                    writer.write(formatSegment(segment));
+                    writer.write("\n");
+                }
+                writer.flush();
+                if (durability != Durability.NONE) {
+                    channel.force(false);
+                }
+            }
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to write a segment repository to a file, stopped"
+                    + " writing to it: %s", ioe.getMessage());
+            flushFailure = ioe;
+            if (temporaryFile != null) {
+                discard(List.of(new PendingWrite(null, temporaryFile, null)));
+            }
+            return;
+        }
+        enqueue(new PendingWrite(null, temporaryFile, null));
+    }
 }
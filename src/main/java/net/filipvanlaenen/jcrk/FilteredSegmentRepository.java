@@ -0,0 +1,287 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import net.filipvanlaenen.kolektoj.Collection;
+
+/**
+ * A segment repository decorating another segment repository with blocked Bloom filters on the start points and end
+ * points. Lookups for points that aren't present in the repository are answered by the filters, such that the
+ * decorated repository only has to be consulted when a point may be present. The filters are built from the decorated
+ * repository's segments when the filtered repository is created, and rebuilt when the repository is compressed or
+ * outgrows the filters. The segments are streamed from the decorated repository while the filters are built, such
+ * that a repository opened from a snapshot doesn't have to read all its segments into memory.
+ */
+public final class FilteredSegmentRepository implements SegmentRepository {
+    /**
+     * The minimal number of segments the filters are sized for.
+     */
+    private static final int MINIMAL_CAPACITY = 1024;
+    /**
+     * The target false positive rate of the filters.
+     */
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * The number of segments the filters are currently sized for.
+     */
+    private long capacity;
+    /**
+     * The filter on the end points.
+     */
+    private BlockedBloomFilter endPointFilter;
+    /**
+     * The number of lookups answered by the filters as a definite negative.
+     */
+    private final LongAdder numberOfDefiniteNegatives = new LongAdder();
+    /**
+     * The number of lookups passed on to the decorated repository that turned out negative.
+     */
+    private final LongAdder numberOfFalsePositives = new LongAdder();
+    /**
+     * The number of lookups.
+     */
+    private final LongAdder numberOfLookups = new LongAdder();
+    /**
+     * The decorated segment repository.
+     */
+    private final SegmentRepository segmentRepository;
+    /**
+     * The filter on the start points.
+     */
+    private BlockedBloomFilter startPointFilter;
+
+    /**
+     * Constructor decorating a segment repository with filters.
+     *
+     * @param segmentRepository The segment repository to be decorated.
+     */
+    public FilteredSegmentRepository(final SegmentRepository segmentRepository) {
+        this.segmentRepository = segmentRepository;
+        rebuildFilters();
+    }
+
+    @Override
+    public boolean add(final Segment segment) throws IllegalArgumentException {
+        boolean result = segmentRepository.add(segment);
+        if (result) {
+            if (segmentRepository.size() > capacity) {
+                rebuildFilters();
+            } else {
+                startPointFilter.add(segment.getStartPoint());
+                endPointFilter.add(segment.getEndPoint());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void checkpoint() {
+        segmentRepository.checkpoint();
+    }
+
+    @Override
+    public void sync() {
+        segmentRepository.sync();
+    }
+
+    @Override
+    public void compressToNextOrder() {
+        segmentRepository.compressToNextOrder();
+        rebuildFilters();
+    }
+
+    @Override
+    public boolean contains(final Segment segment) {
+        return startPointFilter.mightContain(segment.getStartPoint()) && segmentRepository.contains(segment);
+    }
+
+    @Override
+    public boolean containsSegmentsWithEndPoint(final Point point) {
+        return passesFilter(endPointFilter, point)
+                && recordOutcome(segmentRepository.containsSegmentsWithEndPoint(point));
+    }
+
+    @Override
+    public boolean containsSegmentWithStartPoint(final Point point) {
+        return passesFilter(startPointFilter, point)
+                && recordOutcome(segmentRepository.containsSegmentWithStartPoint(point));
+    }
+
+    @Override
+    public Collection<Collision> getCollisions() {
+        return segmentRepository.getCollisions();
+    }
+
+    @Override
+    public Collection<Point> getEndPointsWithMultipleSegments(final int minimumNumberOfSegments) {
+        return segmentRepository.getEndPointsWithMultipleSegments(minimumNumberOfSegments);
+    }
+
+    /**
+     * Returns the false positive rate of the filters, i.e. the share of the lookups passed on to the decorated
+     * repository that turned out negative.
+     *
+     * @return The false positive rate of the filters.
+     */
+    public double getFalsePositiveRate() {
+        long passed = numberOfLookups.sum() - numberOfDefiniteNegatives.sum();
+        return passed == 0L ? 0D : (double) numberOfFalsePositives.sum() / passed;
+    }
+
+    /**
+     * Returns the rate at which the filters answered lookups as a definite negative.
+     *
+     * @return The rate at which the filters answered lookups as a definite negative.
+     */
+    public double getFilterHitRate() {
+        long lookups = numberOfLookups.sum();
+        return lookups == 0L ? 0D : (double) numberOfDefiniteNegatives.sum() / lookups;
+    }
+
+    /**
+     * Returns the size of the filters in bytes.
+     *
+     * @return The size of the filters in bytes.
+     */
+    public long getFilterByteSize() {
+        return startPointFilter.getByteSize() + endPointFilter.getByteSize();
+    }
+
+    @Override
+    public long getEstimatedDiskFootprint() {
+        return segmentRepository.getEstimatedDiskFootprint();
+    }
+
+    @Override
+    public long getEstimatedMemoryFootprint() {
+        return segmentRepository.getEstimatedMemoryFootprint() + getFilterByteSize();
+    }
+
+    @Override
+    public HashFunction getHashFunction() {
+        return segmentRepository.getHashFunction();
+    }
+
+    /**
+     * Returns the number of lookups answered by the filters as a definite negative.
+     *
+     * @return The number of lookups answered by the filters as a definite negative.
+     */
+    public long getNumberOfDefiniteNegatives() {
+        return numberOfDefiniteNegatives.sum();
+    }
+
+    /**
+     * Returns the number of lookups passed on to the decorated repository that turned out negative.
+     *
+     * @return The number of false positives of the filters.
+     */
+    public long getNumberOfFalsePositives() {
+        return numberOfFalsePositives.sum();
+    }
+
+    /**
+     * Returns the number of lookups.
+     *
+     * @return The number of lookups.
+     */
+    public long getNumberOfLookups() {
+        return numberOfLookups.sum();
+    }
+
+    @Override
+    public int getOrder() {
+        return segmentRepository.getOrder();
+    }
+
+    @Override
+    public Collection<Segment> getSegments() {
+        return segmentRepository.getSegments();
+    }
+
+    @Override
+    public void forEachSegment(final Consumer<Segment> action) {
+        segmentRepository.forEachSegment(action);
+    }
+
+    @Override
+    public Collection<Segment> getSegmentsWithEndPoint(final Point point) {
+        if (!passesFilter(endPointFilter, point)) {
+            return Collection.empty();
+        }
+        Collection<Segment> segments = segmentRepository.getSegmentsWithEndPoint(point);
+        recordOutcome(!segments.isEmpty());
+        return segments;
+    }
+
+    @Override
+    public Segment getSegmentWithStartPoint(final Point point) {
+        if (!passesFilter(startPointFilter, point)) {
+            return null;
+        }
+        Segment segment = segmentRepository.getSegmentWithStartPoint(point);
+        recordOutcome(segment != null);
+        return segment;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return segmentRepository.isEmpty();
+    }
+
+    @Override
+    public boolean isFull() {
+        return segmentRepository.isFull();
+    }
+
+    /**
+     * Checks a point against a filter, and records the lookup.
+     *
+     * @param filter The filter.
+     * @param point  The point to be looked up.
+     * @return False if the point definitely isn't present, true if it may be present.
+     */
+    private boolean passesFilter(final BlockedBloomFilter filter, final Point point) {
+        numberOfLookups.increment();
+        if (filter.mightContain(point)) {
+            return true;
+        } else {
+            numberOfDefiniteNegatives.increment();
+            return false;
+        }
+    }
+
+    /**
+     * Rebuilds the filters from the segments streamed from the decorated repository, sized for twice the current
+     * number of segments.
+     */
+    private void rebuildFilters() {
+        capacity = Math.max(MINIMAL_CAPACITY, 2L * segmentRepository.size());
+        startPointFilter = BlockedBloomFilter.forExpectedInsertions(capacity, FALSE_POSITIVE_RATE);
+        endPointFilter = BlockedBloomFilter.forExpectedInsertions(capacity, FALSE_POSITIVE_RATE);
+        segmentRepository.forEachSegment(segment -> {
+            startPointFilter.add(segment.getStartPoint());
+            endPointFilter.add(segment.getEndPoint());
+        });
+    }
+
+    /**
+     * Records the outcome of a lookup passed on to the decorated repository.
+     *
+     * @param found Whether the decorated repository found the point.
+     * @return The outcome of the lookup.
+     */
+    private boolean recordOutcome(final boolean found) {
+        if (!found) {
+            numberOfFalsePositives.increment();
+        }
+        return found;
+    }
+
+    @Override
+    public int size() {
+        return segmentRepository.size();
+    }
+}
@@ -0,0 +1,105 @@
+package net.filipvanlaenen.jcrk;
+
+/**
+ * Condition evaluating to true if the estimated footprint of the segment repository in memory or on disk exceeds a
+ * budget. Since the condition is evaluated before every new segment, the footprint on disk, which is measured on the
+ * file system, is only sampled once per interval, or when the order of the segment repository changes.
+ */
+public final class FootprintBudgetCompressionCondition implements SegmentRepositoryCompressionCondition {
+    /**
+     * Enumeration with the resources a footprint budget can be configured for.
+     */
+    public enum Resource {
+        /**
+         * The disk.
+         */
+        DISK(1_000_000_000L) {
+            @Override
+            long getFootprint(final SegmentRepository segmentRepository) {
+                return segmentRepository.getEstimatedDiskFootprint();
+            }
+        },
+        /**
+         * The memory.
+         */
+        MEMORY(0L) {
+            @Override
+            long getFootprint(final SegmentRepository segmentRepository) {
+                return segmentRepository.getEstimatedMemoryFootprint();
+            }
+        };
+
+        /**
+         * The minimal interval between two samples of the footprint, in nanoseconds.
+         */
+        private final long sampleInterval;
+
+        /**
+         * Constructs a resource with the minimal interval between two samples of its footprint.
+         *
+         * @param sampleInterval The minimal interval between two samples of the footprint, in nanoseconds.
+         */
+        Resource(final long sampleInterval) {
+            this.sampleInterval = sampleInterval;
+        }
+
+        /**
+         * Returns the estimated footprint of the segment repository for the resource.
+         *
+         * @param segmentRepository The segment repository.
+         * @return The estimated footprint of the segment repository in bytes.
+         */
+        abstract long getFootprint(SegmentRepository segmentRepository);
+    }
+
+    /**
+     * A sample of the footprint of a segment repository.
+     *
+     * @param segmentRepository The segment repository.
+     * @param order             The order of the segment repository when it was sampled.
+     * @param time              The moment of the sample, as a value of <code>System.nanoTime()</code>.
+     * @param footprint         The estimated footprint in bytes.
+     */
+    private record Sample(SegmentRepository segmentRepository, int order, long time, long footprint) {
+    }
+
+    /**
+     * The budget in bytes.
+     */
+    private final long budget;
+    /**
+     * The last sample of the footprint, or <code>null</code> if none was taken yet.
+     */
+    private volatile Sample lastSample;
+    /**
+     * The resource the budget applies to.
+     */
+    private final Resource resource;
+
+    /**
+     * Constructs a condition using a resource and a budget.
+     *
+     * @param resource The resource the budget applies to.
+     * @param budget   The budget in bytes.
+     */
+    public FootprintBudgetCompressionCondition(final Resource resource, final long budget) {
+        if (budget < 0L) {
+            throw new IllegalArgumentException(String.format("The budget (%d) is negative.", budget));
+        }
+        this.resource = resource;
+        this.budget = budget;
+    }
+
+    @Override
+    public boolean evaluate(final SegmentRepository segmentRepository) {
+        int order = segmentRepository.getOrder();
+        long now = System.nanoTime();
+        Sample sample = lastSample;
+        if (sample == null || sample.segmentRepository() != segmentRepository || sample.order() != order
+                || now - sample.time() >= resource.sampleInterval) {
+            sample = new Sample(segmentRepository, order, now, resource.getFootprint(segmentRepository));
+            lastSample = sample;
+        }
+        return sample.footprint() > budget;
+    }
+}
@@ -0,0 +1,207 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+
+import net.filipvanlaenen.kolektoj.Map;
+import net.filipvanlaenen.kolektoj.ModifiableMap;
+import net.filipvanlaenen.kolektoj.hash.ModifiableHashMap;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class checkpointing the segment a worker is extending to a file, such that a long walk at a high order can be resumed
+ * after a restart instead of being thrown away. The file contains the order and the hash function, the segment in the
+ * format of the cache files of the file-based segment repository, and the points tracked to detect whether the segment
+ * is cyclic. Every worker should have its own store, and thus its own file. The file is forced to the disk and replaced
+ * atomically, such that an interruption while checkpointing leaves the previous checkpoint intact.
+ */
+public final class InFlightSegmentStore {
+    /**
+     * The index of the line with the order.
+     */
+    private static final int ORDER_LINE = 0;
+    /**
+     * The index of the line with the hash function.
+     */
+    private static final int HASH_FUNCTION_LINE = 1;
+    /**
+     * The index of the line with the segment.
+     */
+    private static final int SEGMENT_LINE = 2;
+    /**
+     * The index of the line with the tracked points.
+     */
+    private static final int TRACKED_POSITIONS_LINE = 3;
+    /**
+     * The number of lines in a checkpoint file.
+     */
+    private static final int NUMBER_OF_LINES = 4;
+
+    /**
+     * The checkpoint file.
+     */
+    private final Path file;
+    /**
+     * The minimal interval between two checkpoints, in nanoseconds.
+     */
+    private final long intervalNanos;
+    /**
+     * The time of the last checkpoint, as a value of <code>System.nanoTime()</code>.
+     */
+    private long lastSaveTime = System.nanoTime();
+    /**
+     * Whether the checkpoint file may exist, such that clearing the store only touches the file system after a
+     * checkpoint was saved or found.
+     */
+    private boolean saved;
+
+    /**
+     * Constructs a store checkpointing to a file at most once per interval.
+     *
+     * @param file     The checkpoint file.
+     * @param interval The minimal interval between two checkpoints.
+     */
+    public InFlightSegmentStore(final Path file, final Duration interval) {
+        this.file = file;
+        this.intervalNanos = interval.toNanos();
+        this.saved = Files.exists(file);
+    }
+
+    /**
+     * Removes the checkpoint, e.g. because the segment was completed. Nothing is done if no checkpoint was saved or
+     * found since the store was last cleared.
+     */
+    void clear() {
+        if (!saved) {
+            return;
+        }
+        saved = false;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to delete the in-flight segment checkpoint %s: %s",
+                    file.toString(), ioe.getMessage());
+        }
+    }
+
+    /**
+     * Returns the checkpoint file.
+     *
+     * @return The checkpoint file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns whether a new checkpoint is due, i.e. whether the interval has passed since the last checkpoint.
+     *
+     * @return True if a new checkpoint is due, false otherwise.
+     */
+    boolean isDue() {
+        return System.nanoTime() - lastSaveTime >= intervalNanos;
+    }
+
+    /**
+     * Loads the checkpointed segment if there is one for the order and the hash function.
+     *
+     * @param order        The order of the segment repository.
+     * @param hashFunction The hash function of the segment repository.
+     * @return The checkpointed segment, or <code>null</code> if there is no checkpoint for the order and the hash
+     *         function.
+     */
+    Segment load(final int order, final HashFunction hashFunction) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.size() != NUMBER_OF_LINES || Integer.parseInt(lines.get(ORDER_LINE)) != order
+                    || !lines.get(HASH_FUNCTION_LINE).equals(hashFunction.toString())) {
+                return null;
+            }
+            Segment segment = FileBasedSegmentRepository.parseSegment(lines.get(SEGMENT_LINE), order, hashFunction);
+            return new Segment(segment.getStartPoint(), segment.getEndPoint(), segment.getLength(), order,
+                    hashFunction, segment.getCheckpointDepth(), segment.getCheckpoints(),
+                    parseTrackedPositions(lines.get(TRACKED_POSITIONS_LINE)));
+        } catch (IOException | RuntimeException e) {
+            Laconic.LOGGER.logError("Could not load the in-flight segment checkpoint %s: %s", file.toString(),
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Formats the tracked points as a line, with the positions and points separated by colons, and the tracked points
+     * separated by commas.
+     *
+     * @param trackedPositions The tracked points, mapped to their positions.
+     * @return A line representing the tracked points.
+     */
+    static String formatTrackedPositions(final Map<Point, Long> trackedPositions) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Point, Long> entry : trackedPositions) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(entry.value());
+            sb.append(":");
+            sb.append(entry.key().asHexadecimalString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a line with tracked points.
+     *
+     * @param line The line.
+     * @return The tracked points, mapped to their positions.
+     */
+    static Map<Point, Long> parseTrackedPositions(final String line) {
+        ModifiableMap<Point, Long> trackedPositions = new ModifiableHashMap<Point, Long>();
+        if (!line.isEmpty()) {
+            for (String trackedPosition : line.split(",")) {
+                String[] parts = trackedPosition.split(":");
+                trackedPositions.add(new Point(HexFormat.of().parseHex(parts[1])), Long.parseLong(parts[0]));
+            }
+        }
+        return trackedPositions;
+    }
+
+    /**
+     * Checkpoints a segment, replacing the previous checkpoint.
+     *
+     * @param segment The segment being extended.
+     */
+    void save(final Segment segment) {
+        String content = segment.getOrder() + "\n" + segment.getHashFunction().toString() + "\n"
+                + FileBasedSegmentRepository.formatSegment(segment) + "\n"
+                + formatTrackedPositions(segment.getTrackedPositions()) + "\n";
+        try {
+            Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            saved = true;
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to checkpoint an in-flight segment to %s: %s",
+                    file.toString(), ioe.getMessage());
+        }
+        lastSaveTime = System.nanoTime();
+    }
+}
@@ -1,9 +1,13 @@
 package net.filipvanlaenen.jcrk;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
 
 import net.filipvanlaenen.kolektoj.Collection;
 import net.filipvanlaenen.kolektoj.Map;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
 import net.filipvanlaenen.kolektoj.ModifiableMap;
 import net.filipvanlaenen.kolektoj.hash.ModifiableHashMap;
 import net.filipvanlaenen.laconic.Laconic;
@@ -12,6 +16,20 @@ import net.filipvanlaenen.laconic.Laconic;
  * An in-memory implementation of the segment repository.
  */
 public final class InMemorySegmentRepository implements SegmentRepository {
+    /**
+     * The estimated number of bytes per segment, not including its points: the segment object, its collection of
+     * tracked points and its entries in the start point and end point maps.
+     */
+    private static final long SEGMENT_OVERHEAD = 208L;
+    /**
+     * The estimated number of bytes per point, not including the bytes of the point: the point object and the header
+     * of its byte array.
+     */
+    private static final long POINT_OVERHEAD = 32L;
+    /**
+     * The alignment of objects in memory.
+     */
+    private static final long OBJECT_ALIGNMENT = 8L;
     /**
      * The hash function for this segment repository.
      */
@@ -25,6 +43,10 @@ public final class InMemorySegmentRepository implements SegmentRepository {
      */
     private final ModifiableMap<Point, Segment> endPointMap =
             new ModifiableHashMap<Point, Segment>(Map.KeyAndValueCardinality.DUPLICATE_KEYS_WITH_DISTINCT_VALUES);
+    /**
+     * The end points shared by more than one segment.
+     */
+    private final ModifiableCollection<Point> collidingEndPoints = ModifiableCollection.empty();
     /**
      * The order of the segment repository.
      */
@@ -64,6 +86,9 @@ public final class InMemorySegmentRepository implements SegmentRepository {
         } else {
             startPointMap.add(segment.getStartPoint(), segment);
             endPointMap.add(segment.getEndPoint(), segment);
+            if (endPointMap.getAll(segment.getEndPoint()).size() == 2) {
+                collidingEndPoints.add(segment.getEndPoint());
+            }
             return true;
         }
     }
@@ -123,36 +148,105 @@ public final class InMemorySegmentRepository implements SegmentRepository {
         maxSize = new BigDecimal(2).pow(hashFunction.getBitLength() - order);
         startPointMap.clear();
         endPointMap.clear();
+        collidingEndPoints.clear();
         for (Segment segment : lowerOrderStartPointMap.getValues()) {
-            if (segment.getStartPoint().order() >= order) {
-                Segment lastSegment = segment;
-                long newLength = segment.getLength();
-                while (lastSegment.getEndPoint().order() < order
-                        && lowerOrderStartPointMap.containsKey(lastSegment.getEndPoint())) {
-                    lastSegment = lowerOrderStartPointMap.get(lastSegment.getEndPoint());
-                    newLength += lastSegment.getLength();
+            Segment newSegment = combineToOrder(segment, order,
+                    point -> lowerOrderStartPointMap.containsKey(point) ? lowerOrderStartPointMap.get(point) : null);
+            if (newSegment != null) {
+                add(newSegment);
+            }
+        }
+    }
+
+    /**
+     * Combines a segment with the chain of lower order segments following it into a segment of a higher order. The
+     * segment is dropped if its start point isn't distinguished at the higher order, or if the chain ends before
+     * reaching an end point that is distinguished at the higher order. The combined segment gets the minimum
+     * checkpoint depth of the segments in the chain, such that its checkpoints don't have gaps, and records the
+     * junctions between the segments as checkpoints too.
+     *
+     * @param segment            The segment.
+     * @param order              The higher order.
+     * @param lowerOrderSegments A function returning the lower order segment with a start point, or <code>null</code>.
+     * @return The segment of the higher order, or <code>null</code> if the segment is dropped.
+     */
+    static Segment combineToOrder(final Segment segment, final int order,
+            final Function<Point, Segment> lowerOrderSegments) {
+        if (segment.getStartPoint().order() < order) {
+            return null;
+        }
+        List<Segment> chain = new ArrayList<Segment>();
+        chain.add(segment);
+        Segment lastSegment = segment;
+        int checkpointDepth = segment.getCheckpointDepth();
+        while (lastSegment.getEndPoint().order() < order) {
+            lastSegment = lowerOrderSegments.apply(lastSegment.getEndPoint());
+            if (lastSegment == null) {
+                return null;
+            }
+            chain.add(lastSegment);
+            checkpointDepth = Math.min(checkpointDepth, lastSegment.getCheckpointDepth());
+        }
+        long newLength = 0L;
+        ModifiableCollection<SegmentCheckpoint> checkpoints = ModifiableCollection.empty();
+        for (Segment chainedSegment : chain) {
+            if (checkpointDepth > 0) {
+                if (newLength > 0L) {
+                    checkpoints.add(new SegmentCheckpoint(newLength, chainedSegment.getStartPoint()));
                 }
-                if (lastSegment.getEndPoint().order() >= order) {
-                    Segment newSegment = new Segment(segment.getStartPoint(), lastSegment.getEndPoint(), newLength,
-                            order, hashFunction);
-                    add(newSegment);
+                for (SegmentCheckpoint checkpoint : chainedSegment.getCheckpoints()) {
+                    checkpoints.add(new SegmentCheckpoint(newLength + checkpoint.position(), checkpoint.point()));
                 }
             }
+            newLength += chainedSegment.getLength();
         }
+        return new Segment(segment.getStartPoint(), lastSegment.getEndPoint(), newLength, order,
+                segment.getHashFunction(), checkpointDepth, checkpoints);
     }
 
     @Override
     public Collection<Collision> getCollisions() {
-        for (Point point : endPointMap.getKeys()) {
+        ModifiableCollection<Collision> collisions = ModifiableCollection.empty();
+        for (Point point : collidingEndPoints) {
             Collection<Segment> segments = endPointMap.getAll(point);
-            if (segments.size() > 1) {
-                CollidingSegmentsCollection collidingSegments = new CollidingSegmentsCollection(segments);
-                Laconic.LOGGER.logProgress("Found two colliding segments with end point %s.",
-                        point.asHexadecimalString());
-                return Collection.of(collidingSegments.findCollision());
+            CollidingSegmentsCollection collidingSegments = new CollidingSegmentsCollection(segments);
+            Laconic.LOGGER.logProgress("Found %d colliding segments with end point %s.", segments.size(),
+                    point.asHexadecimalString());
+            collisions.addAll(collidingSegments.findCollisions());
+        }
+        return collisions;
+    }
+
+    @Override
+    public Collection<Point> getEndPointsWithMultipleSegments(final int minimumNumberOfSegments) {
+        ModifiableCollection<Point> result = ModifiableCollection.empty();
+        for (Point point : collidingEndPoints) {
+            if (endPointMap.getAll(point).size() >= minimumNumberOfSegments) {
+                result.add(point);
             }
         }
-        return Collection.empty();
+        return result;
+    }
+
+    @Override
+    public long getEstimatedDiskFootprint() {
+        return 0L;
+    }
+
+    /**
+     * Returns the estimated number of bytes a segment of this repository occupies in memory.
+     *
+     * @return The estimated number of bytes a segment occupies in memory.
+     */
+    long getEstimatedMemoryFootprintPerSegment() {
+        long alignedPointBytes = (hashFunction.getByteLength() + OBJECT_ALIGNMENT - 1L) / OBJECT_ALIGNMENT
+                * OBJECT_ALIGNMENT;
+        return SEGMENT_OVERHEAD + 2L * (POINT_OVERHEAD + alignedPointBytes);
+    }
+
+    @Override
+    public long getEstimatedMemoryFootprint() {
+        return size() * getEstimatedMemoryFootprintPerSegment();
     }
 
     @Override
@@ -160,7 +254,8 @@ public final class InMemorySegmentRepository implements SegmentRepository {
         return hashFunction;
     }
 
-    Collection<Segment> getSegments() {
+    @Override
+    public Collection<Segment> getSegments() {
         return startPointMap.getValues();
     }
 
@@ -174,5 +269,6 @@ public final class InMemorySegmentRepository implements SegmentRepository {
         maxSize = new BigDecimal(2).pow(hashFunction.getBitLength() - order);
         startPointMap.clear();
         endPointMap.clear();
+        collidingEndPoints.clear();
     }
 }
@@ -0,0 +1,771 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * A log-structured merge segment repository for searches with more segments than fit in memory. Recent segments are
+ * kept in a memtable, i.e. an in-memory segment repository, and appended to a log such that they survive a restart.
+ * When the memtable is full, it's flushed to an immutable run on disk, sorted by end point and with an index on the
+ * start points. Every run has a sparse index and filters in memory, such that a lookup touches at most one block of
+ * every run that may contain the point. Runs of similar sizes are merged in the background, and segments sharing an
+ * end point are detected while merging, such that collisions between segments in different runs surface when their
+ * runs are compacted. A manifest lists the live runs and the colliding end points found so far, and is replaced
+ * atomically whenever the runs change. Compressing the repository to the next order is a streaming rewrite: the runs
+ * are compacted into a single run, and its segments are combined one by one into new runs of the next order.
+ */
+public final class LsmSegmentRepository implements SegmentRepository, AutoCloseable {
+    /**
+     * The default number of segments in the memtable before it's flushed to a run.
+     */
+    public static final int DEFAULT_MEMTABLE_CAPACITY = 1 << 20;
+    /**
+     * The number of runs of similar sizes that triggers a compaction.
+     */
+    private static final int COMPACTION_FAN_IN = 4;
+    /**
+     * The name of the log of the memtable.
+     */
+    private static final String LOG_FILE_NAME = "memtable.log";
+    /**
+     * The name of the manifest.
+     */
+    private static final String MANIFEST_FILE_NAME = "manifest";
+    /**
+     * The keyword for a colliding end point in the manifest.
+     */
+    private static final String COLLISION_KEYWORD = "collision";
+    /**
+     * The keyword for a run in the manifest.
+     */
+    private static final String RUN_KEYWORD = "run";
+    /**
+     * The extension of the files of the runs.
+     */
+    private static final String RUN_EXTENSION = ".run";
+
+    /**
+     * The end points shared by more than one segment in different runs or in a run and the memtable, found while
+     * adding segments, flushing the memtable and compacting.
+     */
+    private final ModifiableCollection<Point> collidingEndPoints = ModifiableCollection.empty();
+    /**
+     * Whether a compaction is running in the background.
+     */
+    private boolean compacting;
+    /**
+     * The executor service running the compactions in the background.
+     */
+    private final ExecutorService compactionExecutorService;
+    /**
+     * The directory of the repository.
+     */
+    private final Path directory;
+    /**
+     * The hash function.
+     */
+    private final HashFunction hashFunction;
+    /**
+     * The writer appending the segments added to the memtable to the log.
+     */
+    private BufferedWriter logWriter;
+    /**
+     * The memtable, i.e. the in-memory repository with the segments that haven't been flushed yet.
+     */
+    private InMemorySegmentRepository memtable;
+    /**
+     * The number of segments in the memtable before it's flushed to a run.
+     */
+    private final int memtableCapacity;
+    /**
+     * The sequence number of the next run.
+     */
+    private long nextRunNumber;
+    /**
+     * The order of the segment repository.
+     */
+    private int order;
+    /**
+     * The runs, oldest first.
+     */
+    private final List<SegmentRun> runs = new ArrayList<SegmentRun>();
+
+    /**
+     * Constructs a repository in a directory with the default memtable capacity, and loads the runs and the log
+     * found in the directory.
+     *
+     * @param hashFunction The hash function.
+     * @param directory    The directory of the repository.
+     * @throws IOException Thrown if the directory can't be created or read.
+     */
+    public LsmSegmentRepository(final HashFunction hashFunction, final Path directory) throws IOException {
+        this(hashFunction, directory, DEFAULT_MEMTABLE_CAPACITY);
+    }
+
+    /**
+     * Constructs a repository in a directory, and loads the runs and the log found in the directory.
+     *
+     * @param hashFunction     The hash function.
+     * @param directory        The directory of the repository.
+     * @param memtableCapacity The number of segments in the memtable before it's flushed to a run.
+     * @throws IOException              Thrown if the directory can't be created or read.
+     * @throws IllegalArgumentException Thrown if the memtable capacity isn't positive, or the directory contains a
+     *                                  repository for another hash function.
+     */
+    public LsmSegmentRepository(final HashFunction hashFunction, final Path directory, final int memtableCapacity)
+            throws IOException, IllegalArgumentException {
+        if (memtableCapacity < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The memtable capacity (%d) should be at least one.", memtableCapacity));
+        }
+        this.hashFunction = hashFunction;
+        this.directory = directory;
+        this.memtableCapacity = memtableCapacity;
+        Files.createDirectories(directory);
+        loadManifest();
+        deleteOrphanedFiles();
+        this.memtable = new InMemorySegmentRepository(hashFunction);
+        memtable.setOrder(order);
+        replayLog();
+        this.compactionExecutorService = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jcrk-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleCompaction();
+    }
+
+    @Override
+    public synchronized boolean add(final Segment segment) throws IllegalArgumentException {
+        if (contains(segment)) {
+            return false;
+        }
+        addCollidingEndPointIfInRuns(segment.getEndPoint());
+        memtable.add(segment);
+        try {
+            logWriter.write(FileBasedSegmentRepository.formatSegment(segment));
+            logWriter.write("\n");
+            logWriter.flush();
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to append a segment to the log: %s", ioe.getMessage());
+        }
+        if (memtable.size() >= memtableCapacity) {
+            try {
+                flushMemtable();
+            } catch (IOException ioe) {
+                Laconic.LOGGER.logError("IOException while trying to flush the memtable: %s", ioe.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the compaction running in the background to finish, and stops the background compactions.
+     *
+     * @throws IOException Thrown if the log or a run can't be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        awaitCompaction();
+        compactionExecutorService.shutdown();
+        logWriter.close();
+        for (SegmentRun run : runs) {
+            run.close();
+        }
+    }
+
+    /**
+     * Compacts runs into a single run. The compacted run only becomes live once it's listed in the manifest, so it's
+     * deleted again if the compaction fails.
+     *
+     * @param runsToCompact The runs to be compacted.
+     * @param compactedRun  The file of the compacted run.
+     * @param runOrder      The order of the runs.
+     * @return The compacted run.
+     * @throws IOException Thrown if a run can't be read or the compacted run can't be written.
+     */
+    private SegmentRun compact(final List<SegmentRun> runsToCompact, final Path compactedRun, final int runOrder)
+            throws IOException {
+        try {
+            return SegmentRun.merge(runsToCompact, compactedRun, runOrder, hashFunction, group -> {
+                Point endPoint = group.get(0).getEndPoint();
+                Laconic.LOGGER.logProgress("Found %d colliding segments with end point %s while compacting.",
+                        group.size(), endPoint.asHexadecimalString());
+                addCollidingEndPoints(Collection.of(endPoint));
+            });
+        } catch (IOException ioe) {
+            Files.deleteIfExists(compactedRun);
+            throw ioe;
+        }
+    }
+
+    /**
+     * Compacts runs of similar sizes in the background. When the compaction is finished, the runs are replaced by the
+     * compacted run, and the next compaction is scheduled if needed.
+     *
+     * @param runsToCompact The runs to be compacted.
+     * @param compactedRun  The file of the compacted run.
+     * @param runOrder      The order of the runs.
+     */
+    private void compactInBackground(final List<SegmentRun> runsToCompact, final Path compactedRun,
+            final int runOrder) {
+        SegmentRun newRun = null;
+        try {
+            newRun = compact(runsToCompact, compactedRun, runOrder);
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while compacting the runs: %s", ioe.getMessage());
+        }
+        synchronized (this) {
+            compacting = false;
+            if (newRun != null) {
+                try {
+                    replaceRuns(runsToCompact, newRun);
+                } catch (IOException ioe) {
+                    Laconic.LOGGER.logError("IOException while replacing the compacted runs: %s", ioe.getMessage());
+                }
+                scheduleCompaction();
+            }
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void compressToNextOrder() {
+        try {
+            awaitCompaction();
+            if (!memtable.isEmpty()) {
+                flushMemtable();
+            }
+            SegmentRun lowerOrderRun = null;
+            if (runs.size() == 1) {
+                lowerOrderRun = runs.get(0);
+            } else if (!runs.isEmpty()) {
+                lowerOrderRun = compact(List.copyOf(runs), createRunFile(order), order);
+                replaceRuns(List.copyOf(runs), lowerOrderRun);
+            }
+            int newOrder = order + 1;
+            InMemorySegmentRepository newMemtable = new InMemorySegmentRepository(hashFunction);
+            newMemtable.setOrder(newOrder);
+            List<SegmentRun> newRuns = new ArrayList<SegmentRun>();
+            ModifiableCollection<Point> newCollidingEndPoints = ModifiableCollection.empty();
+            if (lowerOrderRun != null) {
+                SegmentRun lookupRun = lowerOrderRun;
+                try (SegmentRun.Cursor<Segment> cursor = lowerOrderRun.openSegmentCursor()) {
+                    while (cursor.getCurrent() != null) {
+                        Segment newSegment = InMemorySegmentRepository.combineToOrder(cursor.getCurrent(), newOrder,
+                                point -> getSegmentWithStartPoint(lookupRun, point));
+                        if (newSegment != null) {
+                            if (containsSegmentsWithEndPoint(newRuns, newSegment.getEndPoint())) {
+                                newCollidingEndPoints.add(newSegment.getEndPoint());
+                            }
+                            newMemtable.add(newSegment);
+                            if (newMemtable.size() >= memtableCapacity) {
+                                newCollidingEndPoints.addAll(newMemtable.getEndPointsWithMultipleSegments(2));
+                                newRuns.add(SegmentRun.write(newMemtable.getSegments(), createRunFile(newOrder),
+                                        newOrder, hashFunction));
+                                newMemtable.setOrder(newOrder);
+                            }
+                        }
+                        cursor.advance();
+                    }
+                }
+            }
+            List<SegmentRun> lowerOrderRuns = List.copyOf(runs);
+            runs.clear();
+            runs.addAll(newRuns);
+            order = newOrder;
+            memtable = newMemtable;
+            synchronized (collidingEndPoints) {
+                collidingEndPoints.clear();
+            }
+            addCollidingEndPoints(newCollidingEndPoints);
+            writeManifest();
+            rewriteLog();
+            for (SegmentRun run : lowerOrderRuns) {
+                run.close();
+                Files.delete(run.getFile());
+            }
+            scheduleCompaction();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(final Segment segment) {
+        return segment.equals(getSegmentWithStartPoint(segment.getStartPoint()));
+    }
+
+    @Override
+    public synchronized boolean containsSegmentsWithEndPoint(final Point point) {
+        if (memtable.containsSegmentsWithEndPoint(point)) {
+            return true;
+        }
+        try {
+            return containsSegmentsWithEndPoint(runs, point);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Checks whether any of the runs contains segments with the given end point.
+     *
+     * @param runsToSearch The runs to search.
+     * @param point        The end point.
+     * @return True if any of the runs contains segments with the given end point.
+     * @throws IOException Thrown if a run can't be read.
+     */
+    private static boolean containsSegmentsWithEndPoint(final List<SegmentRun> runsToSearch, final Point point)
+            throws IOException {
+        for (SegmentRun run : runsToSearch) {
+            if (!run.getSegmentsWithEndPoint(point).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds end points to the colliding end points, unless they're already there.
+     *
+     * @param endPoints The end points.
+     */
+    private void addCollidingEndPoints(final Collection<Point> endPoints) {
+        synchronized (collidingEndPoints) {
+            for (Point endPoint : endPoints) {
+                if (!collidingEndPoints.contains(endPoint)) {
+                    collidingEndPoints.add(endPoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an end point to the colliding end points if a run already contains segments with that end point, such that
+     * collisions between the memtable and the runs are found before the runs are compacted.
+     *
+     * @param endPoint The end point.
+     */
+    private void addCollidingEndPointIfInRuns(final Point endPoint) {
+        try {
+            if (containsSegmentsWithEndPoint(runs, endPoint)) {
+                addCollidingEndPoints(Collection.of(endPoint));
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Override
+    public synchronized boolean containsSegmentWithStartPoint(final Point point) {
+        return getSegmentWithStartPoint(point) != null;
+    }
+
+    /**
+     * Creates the file name for a new run.
+     *
+     * @param runOrder The order of the run.
+     * @return The file for the new run.
+     */
+    private Path createRunFile(final int runOrder) {
+        return directory.resolve(String.format("%d-%d%s", runOrder, nextRunNumber++, RUN_EXTENSION));
+    }
+
+    /**
+     * Deletes the runs and temporary files in the directory that aren't listed in the manifest, left behind by an
+     * interrupted flush, compaction or compression.
+     *
+     * @throws IOException Thrown if the directory can't be read or a file can't be deleted.
+     */
+    private void deleteOrphanedFiles() throws IOException {
+        ModifiableCollection<Path> liveFiles = ModifiableCollection.empty();
+        for (SegmentRun run : runs) {
+            liveFiles.add(run.getFile().getFileName());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*{" + RUN_EXTENSION + ",.tmp}")) {
+            for (Path file : files) {
+                if (!liveFiles.contains(file.getFileName())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the compaction running in the background, if any, has finished.
+     */
+    private void awaitCompaction() {
+        boolean interrupted = false;
+        while (compacting) {
+            try {
+                wait();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Flushes the memtable to a new run, and empties the memtable and the log. The end points shared by segments in
+     * the memtable are kept as colliding end points.
+     *
+     * @throws IOException Thrown if the run, the manifest or the log can't be written.
+     */
+    private void flushMemtable() throws IOException {
+        SegmentRun run = SegmentRun.write(memtable.getSegments(), createRunFile(order), order, hashFunction);
+        runs.add(run);
+        addCollidingEndPoints(memtable.getEndPointsWithMultipleSegments(2));
+        writeManifest();
+        memtable.setOrder(order);
+        rewriteLog();
+        scheduleCompaction();
+    }
+
+    /**
+     * Returns the colliding end points found so far, i.e. those recorded while adding segments, flushing the memtable
+     * and compacting, and those in the memtable.
+     *
+     * @return A collection with the colliding end points found so far.
+     */
+    private Collection<Point> getCollidingEndPoints() {
+        ModifiableCollection<Point> endPoints = ModifiableCollection.empty();
+        synchronized (collidingEndPoints) {
+            endPoints.addAll(collidingEndPoints);
+        }
+        for (Point endPoint : memtable.getEndPointsWithMultipleSegments(2)) {
+            if (!endPoints.contains(endPoint)) {
+                endPoints.add(endPoint);
+            }
+        }
+        return endPoints;
+    }
+
+    @Override
+    public synchronized Collection<Collision> getCollisions() {
+        ModifiableCollection<Collision> collisions = ModifiableCollection.empty();
+        for (Point point : getCollidingEndPoints()) {
+            Collection<Segment> segments = getSegmentsWithEndPoint(point);
+            if (segments.size() > 1) {
+                Laconic.LOGGER.logProgress("Found %d colliding segments with end point %s.", segments.size(),
+                        point.asHexadecimalString());
+                collisions.addAll(new CollidingSegmentsCollection(segments).findCollisions());
+            }
+        }
+        return collisions;
+    }
+
+    @Override
+    public synchronized Collection<Point> getEndPointsWithMultipleSegments(final int minimumNumberOfSegments) {
+        ModifiableCollection<Point> result = ModifiableCollection.empty();
+        for (Point point : getCollidingEndPoints()) {
+            if (getSegmentsWithEndPoint(point).size() >= minimumNumberOfSegments) {
+                result.add(point);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized long getEstimatedDiskFootprint() {
+        long footprint = 0L;
+        try {
+            for (SegmentRun run : runs) {
+                footprint += Files.size(run.getFile());
+            }
+            footprint += Files.size(directory.resolve(LOG_FILE_NAME));
+        } catch (IOException ioe) {
+            return footprint;
+        }
+        return footprint;
+    }
+
+    @Override
+    public synchronized long getEstimatedMemoryFootprint() {
+        long footprint = memtable.getEstimatedMemoryFootprint();
+        for (SegmentRun run : runs) {
+            footprint += run.getEstimatedMemoryFootprint();
+        }
+        return footprint;
+    }
+
+    @Override
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Returns the number of runs.
+     *
+     * @return The number of runs.
+     */
+    synchronized int getNumberOfRuns() {
+        return runs.size();
+    }
+
+    @Override
+    public synchronized int getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns all the segments in the repository. Note that this reads all the runs into memory.
+     *
+     * @return A collection with all the segments in the repository.
+     */
+    @Override
+    public synchronized Collection<Segment> getSegments() {
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        segments.addAll(memtable.getSegments());
+        try {
+            for (SegmentRun run : runs) {
+                try (SegmentRun.Cursor<Segment> cursor = run.openSegmentCursor()) {
+                    while (cursor.getCurrent() != null) {
+                        segments.add(cursor.getCurrent());
+                        cursor.advance();
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return segments;
+    }
+
+    @Override
+    public synchronized Collection<Segment> getSegmentsWithEndPoint(final Point point) {
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        segments.addAll(memtable.getSegmentsWithEndPoint(point));
+        try {
+            for (SegmentRun run : runs) {
+                segments.addAll(run.getSegmentsWithEndPoint(point));
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return segments;
+    }
+
+    @Override
+    public synchronized Segment getSegmentWithStartPoint(final Point point) {
+        Segment segment = memtable.getSegmentWithStartPoint(point);
+        for (int i = runs.size() - 1; segment == null && i >= 0; i--) {
+            segment = getSegmentWithStartPoint(runs.get(i), point);
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the segment with a start point from a run.
+     *
+     * @param run   The run.
+     * @param point The start point.
+     * @return The segment with the start point, or <code>null</code> if the run doesn't contain such a segment.
+     */
+    private static Segment getSegmentWithStartPoint(final SegmentRun run, final Point point) {
+        try {
+            return run.getSegmentWithStartPoint(point);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Returns the level of a run, i.e. the base four logarithm of its size in memtables.
+     *
+     * @param run The run.
+     * @return The level of the run.
+     */
+    private int getLevel(final SegmentRun run) {
+        long numberOfMemtables = Math.max(1L, run.getNumberOfSegments() / memtableCapacity);
+        return (Long.SIZE - 1 - Long.numberOfLeadingZeros(numberOfMemtables)) / 2;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return memtable.isEmpty() && runs.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean isFull() {
+        BigDecimal maxSize = new BigDecimal(2).pow(hashFunction.getBitLength() - order);
+        return maxSize.equals(new BigDecimal(getNumberOfSegments()));
+    }
+
+    /**
+     * Returns the number of segments in the repository.
+     *
+     * @return The number of segments in the repository.
+     */
+    private long getNumberOfSegments() {
+        long numberOfSegments = memtable.size();
+        for (SegmentRun run : runs) {
+            numberOfSegments += run.getNumberOfSegments();
+        }
+        return numberOfSegments;
+    }
+
+    /**
+     * Loads the order, the runs and the colliding end points from the manifest, if it exists.
+     *
+     * @throws IOException              Thrown if the manifest or a run can't be read.
+     * @throws IllegalArgumentException Thrown if the manifest is for another hash function.
+     */
+    private void loadManifest() throws IOException, IllegalArgumentException {
+        Path manifest = directory.resolve(MANIFEST_FILE_NAME);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        if (!lines.get(1).equals(hashFunction.toString())) {
+            throw new IllegalArgumentException(String.format("The directory %s contains a segment repository for %s.",
+                    directory.toString(), lines.get(1)));
+        }
+        order = Integer.parseInt(lines.get(0));
+        for (String line : lines.subList(2, lines.size())) {
+            String[] parts = line.split(" ");
+            if (parts[0].equals(RUN_KEYWORD)) {
+                runs.add(SegmentRun.open(directory.resolve(parts[1]), order, hashFunction));
+                String runNumber = parts[1].substring(parts[1].indexOf('-') + 1, parts[1].indexOf('.'));
+                nextRunNumber = Math.max(nextRunNumber, Long.parseLong(runNumber) + 1L);
+            } else if (parts[0].equals(COLLISION_KEYWORD)) {
+                collidingEndPoints.add(new Point(HexFormat.of().parseHex(parts[1])));
+            }
+        }
+    }
+
+    /**
+     * Replaces runs by a compacted run, and updates the manifest before the runs are deleted.
+     *
+     * @param replacedRuns The runs to be replaced.
+     * @param newRun       The compacted run.
+     * @throws IOException Thrown if the manifest can't be written or a run can't be deleted.
+     */
+    private void replaceRuns(final List<SegmentRun> replacedRuns, final SegmentRun newRun) throws IOException {
+        int index = runs.indexOf(replacedRuns.get(0));
+        runs.removeAll(replacedRuns);
+        runs.add(index, newRun);
+        writeManifest();
+        for (SegmentRun run : replacedRuns) {
+            run.close();
+            Files.delete(run.getFile());
+        }
+    }
+
+    /**
+     * Replays the log into the memtable if it was written at the current order, and reopens the log for appending.
+     *
+     * @throws IOException Thrown if the log can't be read or written.
+     */
+    private void replayLog() throws IOException {
+        Path log = directory.resolve(LOG_FILE_NAME);
+        if (Files.exists(log)) {
+            List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && Integer.parseInt(lines.get(0)) == order) {
+                for (String line : lines.subList(1, lines.size())) {
+                    Segment segment = FileBasedSegmentRepository.parseSegment(line, order, hashFunction);
+                    if (!contains(segment)) {
+                        addCollidingEndPointIfInRuns(segment.getEndPoint());
+                        memtable.add(segment);
+                    }
+                }
+            }
+        }
+        rewriteLog();
+    }
+
+    /**
+     * Rewrites the log with the segments in the memtable, and reopens it for appending.
+     *
+     * @throws IOException Thrown if the log can't be written.
+     */
+    private void rewriteLog() throws IOException {
+        if (logWriter != null) {
+            logWriter.close();
+        }
+        Path log = directory.resolve(LOG_FILE_NAME);
+        Path temporaryFile = directory.resolve(LOG_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writer.write(order + "\n");
+            for (Segment segment : memtable.getSegments()) {
+                writer.write(FileBasedSegmentRepository.formatSegment(segment));
+                writer.write("\n");
+            }
+        }
+        Files.move(temporaryFile, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logWriter = Files.newBufferedWriter(log, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Schedules a compaction in the background if no compaction is running yet, and there are enough runs at the
+     * same level. The runs at the lowest such level are compacted.
+     */
+    private void scheduleCompaction() {
+        if (compacting) {
+            return;
+        }
+        for (int level = 0; level < Long.SIZE; level++) {
+            List<SegmentRun> runsAtLevel = new ArrayList<SegmentRun>();
+            for (SegmentRun run : runs) {
+                if (getLevel(run) == level) {
+                    runsAtLevel.add(run);
+                }
+            }
+            if (runsAtLevel.size() >= COMPACTION_FAN_IN) {
+                compacting = true;
+                Path compactedRun = createRunFile(order);
+                int runOrder = order;
+                compactionExecutorService.execute(() -> compactInBackground(runsAtLevel, compactedRun, runOrder));
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return (int) Math.min(Integer.MAX_VALUE, getNumberOfSegments());
+    }
+
+    /**
+     * Writes the manifest with the order, the hash function, the runs and the colliding end points, replacing the
+     * previous manifest atomically.
+     *
+     * @throws IOException Thrown if the manifest can't be written.
+     */
+    private void writeManifest() throws IOException {
+        Path temporaryFile = directory.resolve(MANIFEST_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writer.write(order + "\n" + hashFunction.toString() + "\n");
+            for (SegmentRun run : runs) {
+                writer.write(RUN_KEYWORD + " " + run.getFile().getFileName() + "\n");
+            }
+            synchronized (collidingEndPoints) {
+                for (Point endPoint : collidingEndPoints) {
+                    writer.write(COLLISION_KEYWORD + " " + endPoint.asHexadecimalString() + "\n");
+                }
+            }
+        }
+        Files.move(temporaryFile, directory.resolve(MANIFEST_FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
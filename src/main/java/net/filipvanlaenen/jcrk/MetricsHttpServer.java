@@ -0,0 +1,282 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.ToDoubleFunction;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded HTTP server serving the metrics of one or more collision searches in the Prometheus text exposition
+ * format on the path <code>/metrics</code>, such that a search can be scraped by Prometheus and charted next to the
+ * host metrics. Every sample carries the name of its search as the label <code>search</code>.
+ */
+public final class MetricsHttpServer {
+    /**
+     * The content type of the Prometheus text exposition format.
+     */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /**
+     * The HTTP status code for OK.
+     */
+    private static final int HTTP_OK = 200;
+    /**
+     * The HTTP status code for Method Not Allowed.
+     */
+    private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOSECONDS_IN_A_SECOND = 1_000_000_000D;
+    /**
+     * The path on which the metrics are served.
+     */
+    static final String PATH = "/metrics";
+
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer server;
+    /**
+     * The metrics of the searches, mapped by the name of the search.
+     */
+    private final SortedMap<String, SearchMetrics> searches = new ConcurrentSkipListMap<String, SearchMetrics>();
+
+    /**
+     * Constructs and starts a metrics server listening on a port on the loopback interface, such that the metrics are
+     * only served to the local host.
+     *
+     * @param port The port, or 0 to have a free port assigned.
+     * @throws IOException Thrown if the server can't be bound to the port.
+     */
+    public MetricsHttpServer(final int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Constructs and starts a metrics server listening on an address, e.g. the wildcard address to serve the metrics
+     * on all network interfaces.
+     *
+     * @param address The address to listen on.
+     * @throws IOException Thrown if the server can't be bound to the address.
+     */
+    public MetricsHttpServer(final InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    /**
+     * Adds the metrics of a search to the metrics served.
+     *
+     * @param name    The name of the search, e.g. the name of the hash function.
+     * @param metrics The metrics of the search.
+     */
+    public void add(final String name, final SearchMetrics metrics) {
+        searches.put(name, metrics);
+    }
+
+    /**
+     * Appends a metric family of the searches to the exposition.
+     *
+     * @param sb       The string builder to append to.
+     * @param searches The metrics of the searches, mapped by name.
+     * @param name     The name of the metric.
+     * @param type     The type of the metric.
+     * @param help     The help text of the metric.
+     * @param value    The function returning the value of the metric for a search.
+     */
+    private static void appendMetric(final StringBuilder sb, final SortedMap<String, SearchMetrics> searches,
+            final String name, final String type, final String help, final ToDoubleFunction<SearchMetrics> value) {
+        appendHeader(sb, name, type, help);
+        for (Map.Entry<String, SearchMetrics> search : searches.entrySet()) {
+            appendSample(sb, name, "search=\"" + escape(search.getKey()) + "\"",
+                    value.applyAsDouble(search.getValue()));
+        }
+    }
+
+    /**
+     * Appends the help and type lines of a metric family to the exposition.
+     *
+     * @param sb   The string builder to append to.
+     * @param name The name of the metric.
+     * @param type The type of the metric.
+     * @param help The help text of the metric.
+     */
+    private static void appendHeader(final StringBuilder sb, final String name, final String type,
+            final String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Appends a sample to the exposition.
+     *
+     * @param sb     The string builder to append to.
+     * @param name   The name of the sample.
+     * @param labels The labels of the sample.
+     * @param value  The value of the sample.
+     */
+    private static void appendSample(final StringBuilder sb, final String name, final String labels,
+            final double value) {
+        sb.append(name).append('{').append(labels).append("} ");
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Appends the histograms of the segment lengths per order of the searches to the exposition.
+     *
+     * @param sb       The string builder to append to.
+     * @param searches The metrics of the searches, mapped by name.
+     */
+    private static void appendSegmentLengthHistograms(final StringBuilder sb,
+            final SortedMap<String, SearchMetrics> searches) {
+        String name = "jcrk_segment_length";
+        appendHeader(sb, name, "histogram", "The lengths of the completed segments, per order.");
+        for (Map.Entry<String, SearchMetrics> search : searches.entrySet()) {
+            for (Map.Entry<Integer, SegmentLengthHistogram> histogram : search.getValue()
+                    .getSegmentLengthHistograms().entrySet()) {
+                String labels = "search=\"" + escape(search.getKey()) + "\",order=\"" + histogram.getKey() + "\"";
+                long[] upperBounds = histogram.getValue().getUpperBounds();
+                long[] cumulativeCounts = histogram.getValue().getCumulativeCounts();
+                for (int i = 0; i < upperBounds.length; i++) {
+                    appendSample(sb, name + "_bucket", labels + ",le=\"" + upperBounds[i] + "\"", cumulativeCounts[i]);
+                }
+                long count = cumulativeCounts[upperBounds.length];
+                appendSample(sb, name + "_bucket", labels + ",le=\"+Inf\"", count);
+                appendSample(sb, name + "_sum", labels, histogram.getValue().getSum());
+                appendSample(sb, name + "_count", labels, count);
+            }
+        }
+    }
+
+    /**
+     * Escapes a label value for the exposition format.
+     *
+     * @param value The label value.
+     * @return The escaped label value.
+     */
+    private static String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Formats the metrics of the searches in the Prometheus text exposition format.
+     *
+     * @param searches The metrics of the searches, mapped by name.
+     * @return The metrics in the Prometheus text exposition format.
+     */
+    static String format(final SortedMap<String, SearchMetrics> searches) {
+        StringBuilder sb = new StringBuilder();
+        appendMetric(sb, searches, "jcrk_hashes_total", "counter", "The number of hashes calculated.",
+                SearchMetrics::getNumberOfHashes);
+        appendMetric(sb, searches, "jcrk_hashes_per_second", "gauge",
+                "The average number of hashes calculated per second since the search started.",
+                SearchMetrics::getHashesPerSecond);
+        appendMetric(sb, searches, "jcrk_segments_total", "counter", "The number of segments completed.",
+                SearchMetrics::getNumberOfSegments);
+        appendMetric(sb, searches, "jcrk_cyclic_segments_total", "counter",
+                "The number of segments that turned out to be cyclic.", SearchMetrics::getNumberOfCyclicSegments);
+        appendMetric(sb, searches, "jcrk_abandoned_segments_total", "counter",
+                "The number of completed segments the repository already contained.",
+                SearchMetrics::getNumberOfAbandonedSegments);
+        appendMetric(sb, searches, "jcrk_collisions_total", "counter", "The number of collisions found.",
+                SearchMetrics::getNumberOfCollisions);
+        appendMetric(sb, searches, "jcrk_order", "gauge", "The current order of the segment repository.",
+                SearchMetrics::getCurrentOrder);
+        appendMetric(sb, searches, "jcrk_repository_segments", "gauge",
+                "The number of segments in the segment repository.", SearchMetrics::getRepositorySize);
+        appendMetric(sb, searches, "jcrk_repository_memory_bytes", "gauge",
+                "The estimated memory footprint of the segment repository.",
+                SearchMetrics::getRepositoryMemoryFootprint);
+        appendMetric(sb, searches, "jcrk_repository_disk_bytes", "gauge",
+                "The estimated disk footprint of the segment repository.", SearchMetrics::getRepositoryDiskFootprint);
+        appendMetric(sb, searches, "jcrk_compressions_total", "counter",
+                "The number of compressions of the segment repository.", SearchMetrics::getNumberOfCompressions);
+        appendMetric(sb, searches, "jcrk_compression_seconds_total", "counter",
+                "The total time spent compressing the segment repository.",
+                metrics -> metrics.getCompressionTimeNanos() / NANOSECONDS_IN_A_SECOND);
+        appendHeader(sb, "jcrk_persistence_seconds", "summary",
+                "The time spent adding segments to the segment repository, including persisting them.");
+        for (Map.Entry<String, SearchMetrics> search : searches.entrySet()) {
+            String labels = "search=\"" + escape(search.getKey()) + "\"";
+            appendSample(sb, "jcrk_persistence_seconds_sum", labels,
+                    search.getValue().getPersistenceTimeNanos() / NANOSECONDS_IN_A_SECOND);
+            appendSample(sb, "jcrk_persistence_seconds_count", labels,
+                    search.getValue().getNumberOfPersistedSegments());
+        }
+        appendSegmentLengthHistograms(sb, searches);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the address the server listens on.
+     *
+     * @return The address the server listens on.
+     */
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles a request for the metrics.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException Thrown if the response can't be written.
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(HTTP_METHOD_NOT_ALLOWED, -1);
+                return;
+            }
+            byte[] body = format(searches).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(HTTP_OK, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(HTTP_OK, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * Removes the metrics of a search from the metrics served.
+     *
+     * @param name The name of the search.
+     */
+    public void remove(final String name) {
+        searches.remove(name);
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+}
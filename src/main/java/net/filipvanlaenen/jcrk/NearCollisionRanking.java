@@ -0,0 +1,102 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+
+/**
+ * Class retaining the pairs of colliding points with the lowest Hamming distance between their hash values under a
+ * full hash function. Collisions found for a truncated hash function are near-collisions for the full hash function,
+ * and the lower the Hamming distance between their full hash values, the nearer they are to a full collision.
+ */
+public final class NearCollisionRanking {
+    /**
+     * Comparator sorting near-collisions from the highest to the lowest Hamming distance.
+     */
+    private static final Comparator<NearCollision> DESCENDING_DISTANCE_COMPARATOR =
+            Comparator.comparingInt(NearCollision::hammingDistance).reversed();
+
+    /**
+     * The maximum number of near-collisions retained.
+     */
+    private final int capacity;
+    /**
+     * The full hash function.
+     */
+    private final HashFunction fullHashFunction;
+    /**
+     * The retained near-collisions, with the one with the highest Hamming distance at the head.
+     */
+    private final PriorityQueue<NearCollision> nearCollisions;
+
+    /**
+     * Constructs a ranking retaining a given number of near-collisions for a full hash function.
+     *
+     * @param fullHashFunction The full hash function.
+     * @param capacity         The maximum number of near-collisions to be retained.
+     */
+    public NearCollisionRanking(final HashFunction fullHashFunction, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(String.format("The capacity (%d) should be at least one.", capacity));
+        }
+        this.fullHashFunction = fullHashFunction;
+        this.capacity = capacity;
+        this.nearCollisions = new PriorityQueue<NearCollision>(capacity + 1, DESCENDING_DISTANCE_COMPARATOR);
+    }
+
+    /**
+     * Adds all the pairs of points of a collision to the ranking, retaining only the pairs with the lowest Hamming
+     * distance between their full hash values.
+     *
+     * @param collision The collision to be added.
+     */
+    public void add(final Collision collision) {
+        Point[] points = collision.points().toArray(new Point[collision.points().size()]);
+        Point[] fullHashValues = new Point[points.length];
+        for (int i = 0; i < points.length; i++) {
+            fullHashValues[i] = points[i].hash(fullHashFunction);
+        }
+        for (int i = 0; i < points.length; i++) {
+            for (int j = i + 1; j < points.length; j++) {
+                add(new NearCollision(points[i], points[j], fullHashValues[i].hammingDistanceTo(fullHashValues[j])));
+            }
+        }
+    }
+
+    /**
+     * Adds a near-collision to the ranking, dropping the near-collision with the highest Hamming distance if the
+     * capacity is exceeded.
+     *
+     * @param nearCollision The near-collision to be added.
+     */
+    private void add(final NearCollision nearCollision) {
+        nearCollisions.add(nearCollision);
+        if (nearCollisions.size() > capacity) {
+            nearCollisions.poll();
+        }
+    }
+
+    /**
+     * Returns the retained near-collisions, sorted from the lowest to the highest Hamming distance.
+     *
+     * @return The retained near-collisions, sorted from the lowest to the highest Hamming distance.
+     */
+    public OrderedCollection<NearCollision> getNearCollisions() {
+        NearCollision[] result = nearCollisions.toArray(new NearCollision[nearCollisions.size()]);
+        Arrays.sort(result, DESCENDING_DISTANCE_COMPARATOR.reversed());
+        return OrderedCollection.of(result);
+    }
+
+    /**
+     * A pair of points colliding under a truncated hash function, with the Hamming distance between their full hash
+     * values.
+     *
+     * @param point0          The first point.
+     * @param point1          The second point.
+     * @param hammingDistance The Hamming distance between the full hash values of the points.
+     */
+    public record NearCollision(Point point0, Point point1, int hammingDistance) {
+    }
+}
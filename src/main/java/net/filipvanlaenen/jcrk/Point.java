@@ -1,11 +1,44 @@
 package net.filipvanlaenen.jcrk;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
- * A point in Pollard's rho collision search.
+ * A point in Pollard's rho collision search. Points are ordered by the unsigned values of their bytes.
  */
-public final class Point {
+public final class Point implements Comparable<Point> {
+    /**
+     * The mask to convert a byte to an unsigned value.
+     */
+    private static final int BYTE_MASK = 0xff;
+    /**
+     * The offset basis of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    /**
+     * The prime of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /**
+     * The first multiplier of the SplitMix64 finalizer.
+     */
+    private static final long MIX_MULTIPLIER_1 = 0xbf58476d1ce4e5b9L;
+    /**
+     * The second multiplier of the SplitMix64 finalizer.
+     */
+    private static final long MIX_MULTIPLIER_2 = 0x94d049bb133111ebL;
+    /**
+     * The first shift of the SplitMix64 finalizer.
+     */
+    private static final int MIX_SHIFT_1 = 30;
+    /**
+     * The second shift of the SplitMix64 finalizer.
+     */
+    private static final int MIX_SHIFT_2 = 27;
+    /**
+     * The third shift of the SplitMix64 finalizer.
+     */
+    private static final int MIX_SHIFT_3 = 31;
     /**
      * The bytes of this point.
      */
@@ -52,6 +85,11 @@ public final class Point {
         return bytes[i];
     }
 
+    @Override
+    public int compareTo(final Point other) {
+        return Arrays.compareUnsigned(bytes, other.bytes);
+    }
+
     @Override
     public boolean equals(final Object other) {
         return other instanceof Point && Arrays.equals(bytes, ((Point) other).bytes);
@@ -67,22 +105,25 @@ public final class Point {
     }
 
     /**
-     * Calculates the Hamming distance between this point and another point.
+     * Calculates the Hamming distance between this point and another point. The bytes are compared eight at a time,
+     * counting the differing bits with a population count.
      *
      * @param other The other point.
      * @return The Hamming distance between this point and the other.
      */
     public int hammingDistanceTo(final Point other) {
-        String binaryString = asBinaryString();
-        String otherBinaryString = other.asBinaryString();
-        if (binaryString.length() != otherBinaryString.length()) {
-            throw new IllegalArgumentException();
+        if (bytes.length != other.bytes.length) {
+            throw new IllegalArgumentException(
+                    String.format("The points have different lengths (%d ≠ %d).", bytes.length, other.bytes.length));
         }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        ByteBuffer otherBuffer = ByteBuffer.wrap(other.bytes);
         int distance = 0;
-        for (int i = 0; i < binaryString.length(); i++) {
-            if (binaryString.charAt(i) != otherBinaryString.charAt(i)) {
-                distance++;
-            }
+        while (buffer.remaining() >= Long.BYTES) {
+            distance += Long.bitCount(buffer.getLong() ^ otherBuffer.getLong());
+        }
+        while (buffer.hasRemaining()) {
+            distance += Integer.bitCount((buffer.get() ^ otherBuffer.get()) & BYTE_MASK);
         }
         return distance;
     }
@@ -102,6 +143,23 @@ public final class Point {
         return Arrays.hashCode(bytes);
     }
 
+    /**
+     * Returns a well-mixed 64-bit hash code for this point, to be used by probabilistic data structures like Bloom
+     * filters.
+     *
+     * @return A 64-bit hash code for this point.
+     */
+    long longHashCode() {
+        long h = FNV_OFFSET_BASIS;
+        for (byte b : bytes) {
+            h ^= b & BYTE_MASK;
+            h *= FNV_PRIME;
+        }
+        h = (h ^ (h >>> MIX_SHIFT_1)) * MIX_MULTIPLIER_1;
+        h = (h ^ (h >>> MIX_SHIFT_2)) * MIX_MULTIPLIER_2;
+        return h ^ (h >>> MIX_SHIFT_3);
+    }
+
     /**
      * Returns the order of this point.
      *
@@ -0,0 +1,98 @@
+package net.filipvanlaenen.jcrk;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class logging periodic summaries of the progress of a collision search on a background thread. The summaries are
+ * calculated from the search metrics, such that the search itself only has to increment counters, and doesn't spend
+ * any time formatting or writing log messages. A last summary is logged when the reporter is closed.
+ */
+public final class ProgressReporter implements AutoCloseable {
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOSECONDS_IN_A_SECOND = 1_000_000_000D;
+
+    /**
+     * The executor service running the periodic reports.
+     */
+    private final ScheduledExecutorService executorService;
+    /**
+     * The number of hashes at the time of the previous report.
+     */
+    private long lastNumberOfHashes;
+    /**
+     * The number of segments at the time of the previous report.
+     */
+    private long lastNumberOfSegments;
+    /**
+     * The time of the previous report, as a value of <code>System.nanoTime()</code>.
+     */
+    private long lastReportTime = System.nanoTime();
+    /**
+     * The metrics of the search.
+     */
+    private final SearchMetrics metrics;
+    /**
+     * The name of the search.
+     */
+    private final String name;
+
+    /**
+     * Constructs a progress reporter, and starts logging summaries at the given interval.
+     *
+     * @param name     The name of the search, e.g. the name of the hash function.
+     * @param metrics  The metrics of the search.
+     * @param interval The interval between two summaries.
+     * @throws IllegalArgumentException Thrown if the interval isn't positive.
+     */
+    public ProgressReporter(final String name, final SearchMetrics metrics, final Duration interval)
+            throws IllegalArgumentException {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException(
+                    String.format("The reporting interval (%s) should be positive.", interval));
+        }
+        this.name = name;
+        this.metrics = metrics;
+        this.executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jcrk-progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = interval.toNanos();
+        executorService.scheduleAtFixedRate(this::report, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops logging summaries, and logs a last summary.
+     */
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+        report();
+    }
+
+    /**
+     * Logs a summary of the progress since the previous summary.
+     */
+    synchronized void report() {
+        long now = System.nanoTime();
+        long numberOfHashes = metrics.getNumberOfHashes();
+        long numberOfSegments = metrics.getNumberOfSegments();
+        double seconds = Math.max(now - lastReportTime, 1L) / NANOSECONDS_IN_A_SECOND;
+        Laconic.LOGGER.logProgress(
+                "%s: %d segments completed (%.1f per second), %d hashes (%.1f per second), order %d, %d segments in"
+                        + " the repository, %d collisions found.",
+                name, numberOfSegments, (numberOfSegments - lastNumberOfSegments) / seconds, numberOfHashes,
+                (numberOfHashes - lastNumberOfHashes) / seconds, metrics.getCurrentOrder(),
+                metrics.getRepositorySize(), metrics.getNumberOfCollisions());
+        lastReportTime = now;
+        lastNumberOfHashes = numberOfHashes;
+        lastNumberOfSegments = numberOfSegments;
+    }
+}
@@ -0,0 +1,166 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.SplittableRandom;
+
+/**
+ * A segment producer drawing random start points of the repository's order from a seeded pseudorandom number
+ * generator. Start points that were handed out before, or that are already in use in the segment repository when the
+ * producer is constructed, are remembered in a compact Bloom filter, such that a resumed run with the same seed doesn't
+ * recompute the segments of an earlier run. Independent producers for other workers can be split off, such that a
+ * parallel run can be reproduced from a single seed.
+ */
+public final class RandomSegmentProducer implements SegmentProducer {
+    /**
+     * The number of bits in a byte.
+     */
+    private static final int BITS_IN_A_BYTE = 8;
+    /**
+     * The byte 0xFF.
+     */
+    private static final int BYTE_0XFF = 0xff;
+    /**
+     * The byte 0x80.
+     */
+    private static final int BYTE_0X80 = 0x80;
+    /**
+     * The default number of start points the Bloom filter is sized for.
+     */
+    private static final long DEFAULT_EXPECTED_START_POINTS = 1L << 16;
+    /**
+     * The target false positive rate of the Bloom filter.
+     */
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * The maximum number of candidates drawn before giving up.
+     */
+    private static final int MAX_ATTEMPTS = 64;
+
+    /**
+     * The number of start points the Bloom filter is sized for.
+     */
+    private final long expectedStartPoints;
+    /**
+     * The pseudorandom number generator.
+     */
+    private final SplittableRandom random;
+    /**
+     * The number of candidates that may still be rejected by the Bloom filter without counting as an attempt, such
+     * that a resumed run can skip the start points of the earlier run it replays.
+     */
+    private long skippableStartPoints;
+    /**
+     * The Bloom filter with the start points handed out by this producer.
+     */
+    private final BlockedBloomFilter seenStartPoints;
+
+    /**
+     * Constructs a random segment producer using a seed.
+     *
+     * @param seed The seed for the pseudorandom number generator.
+     */
+    public RandomSegmentProducer(final long seed) {
+        this(seed, DEFAULT_EXPECTED_START_POINTS);
+    }
+
+    /**
+     * Constructs a random segment producer using a seed and the number of start points it's expected to hand out.
+     *
+     * @param seed                The seed for the pseudorandom number generator.
+     * @param expectedStartPoints The number of start points the producer is expected to hand out.
+     */
+    public RandomSegmentProducer(final long seed, final long expectedStartPoints) {
+        this(new SplittableRandom(seed), expectedStartPoints);
+    }
+
+    /**
+     * Constructs a random segment producer using a seed, remembering the start points already in use in a segment
+     * repository, e.g. when a run is resumed. The Bloom filter is sized for the segments in the repository and the
+     * start points the producer is expected to hand out.
+     *
+     * @param seed              The seed for the pseudorandom number generator.
+     * @param segmentRepository The segment repository.
+     */
+    public RandomSegmentProducer(final long seed, final SegmentRepository segmentRepository) {
+        this(new SplittableRandom(seed),
+                Math.max(DEFAULT_EXPECTED_START_POINTS, 2L * segmentRepository.size()));
+        for (Segment segment : segmentRepository.getSegments()) {
+            seenStartPoints.add(segment.getStartPoint());
+            skippableStartPoints++;
+        }
+    }
+
+    /**
+     * Constructs a random segment producer using a pseudorandom number generator and the number of start points it's
+     * expected to hand out.
+     *
+     * @param random              The pseudorandom number generator.
+     * @param expectedStartPoints The number of start points the producer is expected to hand out.
+     */
+    private RandomSegmentProducer(final SplittableRandom random, final long expectedStartPoints) {
+        this.random = random;
+        this.expectedStartPoints = expectedStartPoints;
+        this.seenStartPoints = BlockedBloomFilter.forExpectedInsertions(expectedStartPoints, FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Draws a random point with at least the given order.
+     *
+     * @param byteLength The byte length of the hash function.
+     * @param bitLength  The bit length of the hash function.
+     * @param order      The minimal order of the point.
+     * @return A random point with at least the given order.
+     */
+    private Point drawPoint(final int byteLength, final int bitLength, final int order) {
+        byte[] bytes = new byte[byteLength];
+        random.nextBytes(bytes);
+        int unusedBits = byteLength * BITS_IN_A_BYTE - bitLength;
+        bytes[byteLength - 1] = (byte) (bytes[byteLength - 1] & (BYTE_0XFF << unusedBits));
+        for (int i = 0; i < Math.min(order, bitLength); i++) {
+            bytes[i / BITS_IN_A_BYTE] = (byte) (bytes[i / BITS_IN_A_BYTE] & ~(BYTE_0X80 >>> (i % BITS_IN_A_BYTE)));
+        }
+        return new Point(bytes);
+    }
+
+    /**
+     * Returns a random start point of the repository's order. A candidate is only accepted if it wasn't handed out
+     * before according to the Bloom filter, and the segment repository doesn't contain a segment with it either, since
+     * other producers may have added segments to the repository in the meantime. Candidates rejected by the Bloom
+     * filter don't count as an attempt as long as start points remembered from the repository may be replayed.
+     *
+     * @param segmentRepository A segment repository.
+     * @return A new start point to produce a segment from, or <code>null</code> if no unused start point was drawn
+     *         within a limited number of attempts.
+     */
+    @Override
+    public Point findNewStartPoint(final SegmentRepository segmentRepository) {
+        HashFunction hashFunction = segmentRepository.getHashFunction();
+        int order = segmentRepository.getOrder();
+        int attempts = 0;
+        while (attempts < MAX_ATTEMPTS) {
+            Point candidate = drawPoint(hashFunction.getByteLength(), hashFunction.getBitLength(), order);
+            if (!seenStartPoints.mightContain(candidate)) {
+                if (!segmentRepository.containsSegmentWithStartPoint(candidate)) {
+                    seenStartPoints.add(candidate);
+                    return candidate;
+                }
+            } else if (skippableStartPoints > 0L) {
+                skippableStartPoints--;
+                continue;
+            }
+            attempts++;
+        }
+        return null;
+    }
+
+    /**
+     * Splits off a new random segment producer, e.g. for another worker. The new producer has its own stream of
+     * pseudorandom numbers and its own, empty Bloom filter, and relies on the segment repository for the start points
+     * in use before it was split off. Splitting off producers in the same order from producers
+     * constructed with the same seed results in the same streams.
+     *
+     * @return A new, independent random segment producer.
+     */
+    public RandomSegmentProducer split() {
+        return new RandomSegmentProducer(random.split(), expectedStartPoints);
+    }
+}
@@ -0,0 +1,408 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class coordinating a search for a collision distributed over worker processes, in the spirit of the MD5CRK project.
+ * The coordinator owns the segment repository, assigns ranges of start points to the workers, and adds the segments
+ * the workers stream back in batches to the repository. When two segments share an end point, the coordinator
+ * backtracks them to find the collision. Ranges of workers that disconnect before completing them are reassigned to
+ * the next worker asking for work.
+ *
+ * <p>The workers connect over TCP, and the protocol is line-based:</p>
+ * <ul>
+ * <li>On connection, the coordinator sends <code>HELLO &lt;hash-function&gt;</code>.</li>
+ * <li>A worker asks for work with <code>NEXT</code>, to which the coordinator replies with
+ * <code>RANGE &lt;order&gt; &lt;first-index&gt; &lt;size&gt;</code>, or with <code>STOP</code> if the search is
+ * over.</li>
+ * <li>A worker sends a batch of completed segments as <code>BATCH &lt;n&gt;</code> followed by <code>n</code> lines
+ * in the format of the cache files, a collision found in a cyclic segment as
+ * <code>COLLISION &lt;point&gt;,&lt;point&gt;</code>, and <code>DONE</code> when it has completed its range, or
+ * <code>ABANDON</code> if it couldn't complete its range, such that the range is reassigned.</li>
+ * </ul>
+ */
+public final class SearchCoordinator implements AutoCloseable {
+    /**
+     * The keyword of the message sent on connection.
+     */
+    static final String HELLO = "HELLO";
+    /**
+     * The keyword of the message asking for work.
+     */
+    static final String NEXT = "NEXT";
+    /**
+     * The keyword of the message telling a worker the search is over.
+     */
+    static final String STOP = "STOP";
+    /**
+     * The keyword of the message introducing a batch of segments.
+     */
+    static final String BATCH = "BATCH";
+    /**
+     * The keyword of the message reporting a completed range.
+     */
+    static final String DONE = "DONE";
+    /**
+     * The keyword of the message reporting a range that couldn't be completed.
+     */
+    static final String ABANDON = "ABANDON";
+
+    /**
+     * The collision found, or <code>null</code>.
+     */
+    private Collision collision;
+    /**
+     * The executor service running the thread accepting connections and a thread per worker.
+     */
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    /**
+     * Whether the exhaustion of the start points has been reported.
+     */
+    private boolean exhaustionReported;
+    /**
+     * The metrics of the search.
+     */
+    private final SearchMetrics metrics = new SearchMetrics();
+    /**
+     * The index of the first start point that hasn't been assigned yet.
+     */
+    private long nextIndex;
+    /**
+     * The number of ranges assigned to workers that haven't been completed yet.
+     */
+    private int numberOfAssignedRanges;
+    /**
+     * The number of start points in a range.
+     */
+    private final int rangeSize;
+    /**
+     * The ranges that were abandoned by a worker and should be reassigned.
+     */
+    private final Deque<StartPointRange> reassignableRanges = new ArrayDeque<StartPointRange>();
+    /**
+     * The segment repository.
+     */
+    private final SegmentRepository segmentRepository;
+    /**
+     * The importer adding the segments from the workers to the segment repository.
+     */
+    private final SegmentImporter segmentImporter;
+    /**
+     * The server socket.
+     */
+    private final ServerSocket serverSocket;
+    /**
+     * The sockets of the connected workers.
+     */
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs a coordinator listening for workers on a port, and starts accepting connections.
+     *
+     * @param segmentRepository                     The segment repository.
+     * @param segmentRepositoryCompressionCondition The condition specifying when to compress the segment repository.
+     * @param port                                  The port, or zero to let the system pick a free port.
+     * @param rangeSize                             The number of start points in a range.
+     * @throws IOException Thrown if the server socket can't be opened.
+     */
+    public SearchCoordinator(final SegmentRepository segmentRepository,
+            final SegmentRepositoryCompressionCondition segmentRepositoryCompressionCondition, final int port,
+            final int rangeSize) throws IOException {
+        if (rangeSize < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The size of the ranges (%d) should be at least one.", rangeSize));
+        }
+        this.segmentRepository = segmentRepository;
+        this.segmentImporter = new SegmentImporter(segmentRepository, segmentRepositoryCompressionCondition, metrics);
+        this.rangeSize = rangeSize;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(port));
+        executorService.submit(this::acceptConnections);
+    }
+
+    /**
+     * Accepts connections from workers until the server socket is closed, serving every worker on its own thread.
+     */
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                executorService.submit(() -> serve(socket));
+            } catch (IOException ioe) {
+                if (!serverSocket.isClosed()) {
+                    Laconic.LOGGER.logError("IOException while accepting a connection from a worker: %s",
+                            ioe.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a batch of segments produced by a worker to the segment repository, and backtracks the segments sharing an
+     * end point with a new segment.
+     *
+     * @param lines The segments, in the format of the cache files.
+     * @param range The range the segments were produced for.
+     */
+    private synchronized void addSegments(final List<String> lines, final StartPointRange range) {
+        for (String line : lines) {
+            Collision newCollision = segmentImporter.importLine(line, range.order());
+            if (collision == null) {
+                setCollision(newCollision);
+            }
+        }
+        segmentImporter.compressIfNeeded();
+    }
+
+    /**
+     * Assigns a range of start points to a worker, reassigning abandoned ranges first. The ranges are capped to the
+     * start points that are valid at the current order of the segment repository, such that abandoned ranges may
+     * shrink or be dropped after a compression.
+     *
+     * @return A range of start points, or <code>null</code> if the search is over.
+     */
+    private synchronized StartPointRange assignRange() {
+        if (collision != null || segmentRepository.isFull()) {
+            return null;
+        }
+        int order = segmentRepository.getOrder();
+        long numberOfStartPoints = getNumberOfStartPoints();
+        StartPointRange range = null;
+        while (range == null && !reassignableRanges.isEmpty()) {
+            StartPointRange abandonedRange = reassignableRanges.pollFirst();
+            long size = Math.min(abandonedRange.size(), numberOfStartPoints - abandonedRange.firstIndex());
+            if (size > 0L) {
+                range = new StartPointRange(order, abandonedRange.firstIndex(), (int) size);
+            }
+        }
+        if (range == null) {
+            if (nextIndex >= numberOfStartPoints) {
+                if (!exhaustionReported) {
+                    Laconic.LOGGER.logProgress("Exhausted the start points of order %d.", order);
+                    exhaustionReported = true;
+                }
+                notifyAll();
+                return null;
+            }
+            int size = (int) Math.min(rangeSize, numberOfStartPoints - nextIndex);
+            range = new StartPointRange(order, nextIndex, size);
+            nextIndex += size;
+        }
+        numberOfAssignedRanges++;
+        return range;
+    }
+
+    /**
+     * Waits until a collision is found, or until the start points are exhausted and all ranges have been completed.
+     *
+     * @return The collision found, or <code>null</code> if no collision could be found.
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+     */
+    public synchronized Collision awaitCollision() throws InterruptedException {
+        while (collision == null && !isExhausted()) {
+            wait();
+        }
+        return collision;
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while closing the server socket: %s", ioe.getMessage());
+        }
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                Laconic.LOGGER.logError("IOException while closing the connection to a worker: %s",
+                        ioe.getMessage());
+            }
+        }
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Completes a range assigned to a worker.
+     */
+    private synchronized void completeRange() {
+        numberOfAssignedRanges--;
+        notifyAll();
+    }
+
+    /**
+     * Returns the metrics of the search.
+     *
+     * @return The metrics of the search.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of start points that are valid at the current order of the segment repository.
+     *
+     * @return The number of start points that are valid at the current order of the segment repository.
+     */
+    private long getNumberOfStartPoints() {
+        return StartPointRange.getNumberOfStartPoints(segmentRepository.getHashFunction(),
+                segmentRepository.getOrder());
+    }
+
+    /**
+     * Returns the number of ranges assigned to workers that haven't been completed yet.
+     *
+     * @return The number of ranges assigned to workers that haven't been completed yet.
+     */
+    synchronized int getNumberOfAssignedRanges() {
+        return numberOfAssignedRanges;
+    }
+
+    /**
+     * Returns the port on which the coordinator listens for workers.
+     *
+     * @return The port on which the coordinator listens for workers.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Checks whether the search is exhausted, i.e. whether no more ranges can be assigned and all assigned ranges have
+     * been completed.
+     *
+     * @return True if the search is exhausted, false otherwise.
+     */
+    private boolean isExhausted() {
+        return numberOfAssignedRanges == 0 && reassignableRanges.isEmpty()
+                && (segmentRepository.isFull() || nextIndex >= getNumberOfStartPoints());
+    }
+
+    /**
+     * Adds a collision reported by a worker, after verifying it.
+     *
+     * @param message The message reporting the collision.
+     */
+    private synchronized void reportCollision(final String message) {
+        Collision newCollision = segmentImporter.importLine(message, segmentRepository.getOrder());
+        if (collision == null) {
+            setCollision(newCollision);
+        }
+    }
+
+    /**
+     * Puts a range abandoned by a worker back in line to be reassigned.
+     *
+     * @param range The range abandoned by a worker.
+     */
+    private synchronized void releaseRange(final StartPointRange range) {
+        Laconic.LOGGER.logProgress("A worker abandoned the range of %d start points from index %d.", range.size(),
+                range.firstIndex());
+        reassignableRanges.addFirst(range);
+        numberOfAssignedRanges--;
+        notifyAll();
+    }
+
+    /**
+     * Serves a worker until it disconnects or the search is over.
+     *
+     * @param socket The socket connected to the worker.
+     */
+    private void serve(final Socket socket) {
+        StartPointRange range = null;
+        try (socket;
+                BufferedReader reader =
+                        new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer writer = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            writeLine(writer, HELLO + " " + segmentRepository.getHashFunction());
+            String message = reader.readLine();
+            while (message != null) {
+                if (message.equals(NEXT)) {
+                    range = assignRange();
+                    if (range == null) {
+                        writeLine(writer, STOP);
+                        break;
+                    }
+                    writeLine(writer, range.format());
+                } else if (message.startsWith(BATCH + " ") && range != null) {
+                    int numberOfSegments = Integer.parseInt(message.substring(BATCH.length() + 1));
+                    List<String> lines = new ArrayList<String>(numberOfSegments);
+                    for (int i = 0; i < numberOfSegments; i++) {
+                        lines.add(reader.readLine());
+                    }
+                    addSegments(lines, range);
+                } else if (message.startsWith(SegmentImporter.COLLISION + " ")) {
+                    reportCollision(message);
+                } else if (message.equals(DONE) && range != null) {
+                    range = null;
+                    completeRange();
+                } else if (message.equals(ABANDON) && range != null) {
+                    releaseRange(range);
+                    range = null;
+                } else {
+                    Laconic.LOGGER.logError("Received an unexpected message from a worker: %s", message);
+                    break;
+                }
+                message = reader.readLine();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!serverSocket.isClosed()) {
+                Laconic.LOGGER.logError("Lost the connection to a worker: %s", e.getMessage());
+            }
+        } finally {
+            sockets.remove(socket);
+            if (range != null && !serverSocket.isClosed()) {
+                releaseRange(range);
+            }
+        }
+    }
+
+    /**
+     * Registers the collision found, and wakes up the threads waiting for it.
+     *
+     * @param newCollision The collision found.
+     */
+    private void setCollision(final Collision newCollision) {
+        if (newCollision != null) {
+            Laconic.LOGGER.logProgress("Found a collision.");
+            collision = newCollision;
+            metrics.recordCollision();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes a line to a worker, and flushes it.
+     *
+     * @param writer The writer to the worker.
+     * @param line   The line.
+     * @throws IOException Thrown if the line can't be written.
+     */
+    private static void writeLine(final Writer writer, final String line) throws IOException {
+        writer.write(line);
+        writer.write("\n");
+        writer.flush();
+    }
+}
@@ -0,0 +1,339 @@
+package net.filipvanlaenen.jcrk;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class collecting the metrics of a collision search. The counters are <code>LongAdder</code>s, such that recording an
+ * event on the hot path of the search costs next to nothing, even with many threads, and the costs are moved to the
+ * rare moments the metrics are read. The metrics can be registered as an MXBean on the platform MBean server.
+ */
+public final class SearchMetrics implements SearchMetricsMXBean {
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final double NANOSECONDS_IN_A_MILLISECOND = 1_000_000D;
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOSECONDS_IN_A_SECOND = 1_000_000_000D;
+    /**
+     * The domain of the object names under which the metrics are registered.
+     */
+    private static final String DOMAIN = "net.filipvanlaenen.jcrk";
+    /**
+     * The minimal interval between two samples of the footprints of the segment repository, in nanoseconds.
+     */
+    private static final long FOOTPRINT_SAMPLE_INTERVAL = 1_000_000_000L;
+
+    /**
+     * The total time spent compressing the segment repository, in nanoseconds.
+     */
+    private final LongAdder compressionTime = new LongAdder();
+    /**
+     * The current order of the segment repository.
+     */
+    private volatile int currentOrder;
+    /**
+     * The moment the footprints of the segment repository were last sampled, as a value of
+     * <code>System.nanoTime()</code>.
+     */
+    private long lastFootprintSampleTime;
+    /**
+     * Whether the footprints of the segment repository have been sampled.
+     */
+    private boolean footprintsSampled;
+    /**
+     * The number of abandoned segments.
+     */
+    private final LongAdder numberOfAbandonedSegments = new LongAdder();
+    /**
+     * The number of collisions found.
+     */
+    private final LongAdder numberOfCollisions = new LongAdder();
+    /**
+     * The number of compressions.
+     */
+    private final LongAdder numberOfCompressions = new LongAdder();
+    /**
+     * The number of cyclic segments.
+     */
+    private final LongAdder numberOfCyclicSegments = new LongAdder();
+    /**
+     * The number of hashes calculated.
+     */
+    private final LongAdder numberOfHashes = new LongAdder();
+    /**
+     * The number of segments added to the segment repository.
+     */
+    private final LongAdder numberOfPersistedSegments = new LongAdder();
+    /**
+     * The number of segments completed.
+     */
+    private final LongAdder numberOfSegments = new LongAdder();
+    /**
+     * The total time spent adding segments to the segment repository, in nanoseconds.
+     */
+    private final LongAdder persistenceTime = new LongAdder();
+    /**
+     * The estimated disk footprint of the segment repository in bytes.
+     */
+    private volatile long repositoryDiskFootprint;
+    /**
+     * The estimated memory footprint of the segment repository in bytes.
+     */
+    private volatile long repositoryMemoryFootprint;
+    /**
+     * The current number of segments in the segment repository.
+     */
+    private volatile int repositorySize;
+    /**
+     * The histograms of the lengths of the completed segments, mapped by order.
+     */
+    private final ConcurrentSkipListMap<Integer, SegmentLengthHistogram> segmentLengthHistograms =
+            new ConcurrentSkipListMap<Integer, SegmentLengthHistogram>();
+    /**
+     * The moment the search started, as a value of <code>System.nanoTime()</code>.
+     */
+    private final long startTime = System.nanoTime();
+
+    @Override
+    public double getAveragePersistenceLatencyMillis() {
+        long persisted = numberOfPersistedSegments.sum();
+        return persisted == 0L ? 0D : persistenceTime.sum() / NANOSECONDS_IN_A_MILLISECOND / persisted;
+    }
+
+    @Override
+    public long getCompressionTimeMillis() {
+        return Math.round(compressionTime.sum() / NANOSECONDS_IN_A_MILLISECOND);
+    }
+
+    /**
+     * Returns the total time spent compressing the segment repository, in nanoseconds.
+     *
+     * @return The total compression time in nanoseconds.
+     */
+    long getCompressionTimeNanos() {
+        return compressionTime.sum();
+    }
+
+    @Override
+    public int getCurrentOrder() {
+        return currentOrder;
+    }
+
+    @Override
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startTime) / NANOSECONDS_IN_A_SECOND;
+    }
+
+    @Override
+    public double getHashesPerSecond() {
+        return numberOfHashes.sum() / getElapsedSeconds();
+    }
+
+    @Override
+    public long getNumberOfAbandonedSegments() {
+        return numberOfAbandonedSegments.sum();
+    }
+
+    @Override
+    public long getNumberOfCollisions() {
+        return numberOfCollisions.sum();
+    }
+
+    @Override
+    public long getNumberOfCompressions() {
+        return numberOfCompressions.sum();
+    }
+
+    @Override
+    public long getNumberOfCyclicSegments() {
+        return numberOfCyclicSegments.sum();
+    }
+
+    @Override
+    public long getNumberOfHashes() {
+        return numberOfHashes.sum();
+    }
+
+    @Override
+    public long getNumberOfSegments() {
+        return numberOfSegments.sum();
+    }
+
+    /**
+     * Returns the number of segments added to the segment repository.
+     *
+     * @return The number of segments added to the segment repository.
+     */
+    long getNumberOfPersistedSegments() {
+        return numberOfPersistedSegments.sum();
+    }
+
+    /**
+     * Returns the total time spent adding segments to the segment repository, in nanoseconds.
+     *
+     * @return The total persistence time in nanoseconds.
+     */
+    long getPersistenceTimeNanos() {
+        return persistenceTime.sum();
+    }
+
+    @Override
+    public long getRepositoryDiskFootprint() {
+        return repositoryDiskFootprint;
+    }
+
+    @Override
+    public long getRepositoryMemoryFootprint() {
+        return repositoryMemoryFootprint;
+    }
+
+    @Override
+    public int getRepositorySize() {
+        return repositorySize;
+    }
+
+    /**
+     * Returns the histograms of the lengths of the completed segments, mapped by order.
+     *
+     * @return The histograms of the segment lengths, sorted by order.
+     */
+    SortedMap<Integer, SegmentLengthHistogram> getSegmentLengthHistograms() {
+        return Collections.unmodifiableSortedMap(segmentLengthHistograms);
+    }
+
+    @Override
+    public double getSegmentsPerSecond() {
+        return numberOfSegments.sum() / getElapsedSeconds();
+    }
+
+    /**
+     * Records that a segment was completed but abandoned because the segment repository already contained it.
+     */
+    void recordAbandonedSegment() {
+        numberOfAbandonedSegments.increment();
+    }
+
+    /**
+     * Records that a collision was found.
+     */
+    void recordCollision() {
+        numberOfCollisions.increment();
+    }
+
+    /**
+     * Records a compression of the segment repository.
+     *
+     * @param duration The duration of the compression in nanoseconds.
+     */
+    void recordCompression(final long duration) {
+        numberOfCompressions.increment();
+        compressionTime.add(duration);
+    }
+
+    /**
+     * Records that a segment turned out to be cyclic.
+     */
+    void recordCyclicSegment() {
+        numberOfCyclicSegments.increment();
+    }
+
+    /**
+     * Records that a hash was calculated.
+     */
+    void recordHash() {
+        numberOfHashes.increment();
+    }
+
+    /**
+     * Records that a segment was added to the segment repository.
+     *
+     * @param duration The time it took to add the segment, including persisting it, in nanoseconds.
+     */
+    void recordPersistence(final long duration) {
+        numberOfPersistedSegments.increment();
+        persistenceTime.add(duration);
+    }
+
+    /**
+     * Records that a segment was completed.
+     *
+     * @param order  The order of the segment.
+     * @param length The length of the segment.
+     */
+    void recordSegment(final int order, final long length) {
+        numberOfSegments.increment();
+        segmentLengthHistograms.computeIfAbsent(order, SegmentLengthHistogram::new).record(length);
+    }
+
+    /**
+     * Registers the metrics on the platform MBean server, under an object name with the given name.
+     *
+     * @param name The name of the search, e.g. the name of the hash function.
+     * @return The object name under which the metrics were registered.
+     * @throws IllegalStateException Thrown if the metrics can't be registered, e.g. because another search with the
+     *                               same name is already registered.
+     */
+    public ObjectName register(final String name) throws IllegalStateException {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName =
+                    new ObjectName(String.format("%s:type=SearchMetrics,name=%s", DOMAIN, ObjectName.quote(name)));
+            server.registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException jme) {
+            throw new IllegalStateException(
+                    String.format("Could not register the search metrics for %s: %s", name, jme.getMessage()), jme);
+        }
+    }
+
+    /**
+     * Unregisters the metrics with the given object name from the platform MBean server, if they're registered.
+     *
+     * @param objectName The object name under which the metrics were registered.
+     */
+    public static void unregister(final ObjectName objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException jme) {
+            Laconic.LOGGER.logError("Could not unregister the search metrics %s: %s", objectName.toString(),
+                    jme.getMessage());
+        }
+    }
+
+    /**
+     * Updates the current order and size of the segment repository. Since estimating the footprints of a segment
+     * repository may take system calls, e.g. to get the size of its files, the footprints are only sampled the first
+     * time, when the order changed, and at most once per sample interval, such that the state can be updated after
+     * every segment.
+     *
+     * @param segmentRepository The segment repository.
+     */
+    void updateRepositoryState(final SegmentRepository segmentRepository) {
+        int order = segmentRepository.getOrder();
+        boolean orderChanged = order != currentOrder;
+        currentOrder = order;
+        repositorySize = segmentRepository.size();
+        long now = System.nanoTime();
+        if (!footprintsSampled || orderChanged || now - lastFootprintSampleTime >= FOOTPRINT_SAMPLE_INTERVAL) {
+            footprintsSampled = true;
+            lastFootprintSampleTime = now;
+            repositoryMemoryFootprint = segmentRepository.getEstimatedMemoryFootprint();
+            repositoryDiskFootprint = segmentRepository.getEstimatedDiskFootprint();
+        }
+    }
+}
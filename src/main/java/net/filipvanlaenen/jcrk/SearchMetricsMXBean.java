@@ -0,0 +1,115 @@
+package net.filipvanlaenen.jcrk;
+
+/**
+ * Management interface exposing the metrics of a running collision search through JMX, such that a search can be
+ * monitored with standard JVM tooling like JConsole or VisualVM. Totals are provided next to the average rates, such
+ * that monitoring tools can derive current rates from the difference between two samples.
+ */
+public interface SearchMetricsMXBean {
+    /**
+     * Returns the average number of hashes calculated per second since the search started.
+     *
+     * @return The average number of hashes per second.
+     */
+    double getHashesPerSecond();
+
+    /**
+     * Returns the average time spent to add a segment to the segment repository, including persisting it, in
+     * milliseconds.
+     *
+     * @return The average persistence latency in milliseconds.
+     */
+    double getAveragePersistenceLatencyMillis();
+
+    /**
+     * Returns the total time spent compressing the segment repository, in milliseconds.
+     *
+     * @return The total compression time in milliseconds.
+     */
+    long getCompressionTimeMillis();
+
+    /**
+     * Returns the current order of the segment repository.
+     *
+     * @return The current order of the segment repository.
+     */
+    int getCurrentOrder();
+
+    /**
+     * Returns the time since the search started, in seconds.
+     *
+     * @return The time since the search started, in seconds.
+     */
+    double getElapsedSeconds();
+
+    /**
+     * Returns the number of segments that were completed but not added to the segment repository because it already
+     * contained them.
+     *
+     * @return The number of abandoned segments.
+     */
+    long getNumberOfAbandonedSegments();
+
+    /**
+     * Returns the number of collisions found.
+     *
+     * @return The number of collisions found.
+     */
+    long getNumberOfCollisions();
+
+    /**
+     * Returns the number of times the segment repository was compressed.
+     *
+     * @return The number of compressions.
+     */
+    long getNumberOfCompressions();
+
+    /**
+     * Returns the number of segments that turned out to be cyclic.
+     *
+     * @return The number of cyclic segments.
+     */
+    long getNumberOfCyclicSegments();
+
+    /**
+     * Returns the number of hashes calculated.
+     *
+     * @return The number of hashes calculated.
+     */
+    long getNumberOfHashes();
+
+    /**
+     * Returns the number of segments completed.
+     *
+     * @return The number of segments completed.
+     */
+    long getNumberOfSegments();
+
+    /**
+     * Returns the estimated disk footprint of the segment repository in bytes.
+     *
+     * @return The estimated disk footprint of the segment repository in bytes.
+     */
+    long getRepositoryDiskFootprint();
+
+    /**
+     * Returns the estimated memory footprint of the segment repository in bytes.
+     *
+     * @return The estimated memory footprint of the segment repository in bytes.
+     */
+    long getRepositoryMemoryFootprint();
+
+    /**
+     * Returns the number of segments in the segment repository.
+     *
+     * @return The number of segments in the segment repository.
+     */
+    int getRepositorySize();
+
+    /**
+     * Returns the average number of segments completed per second since the search started.
+     *
+     * @return The average number of segments completed per second.
+     */
+    double getSegmentsPerSecond();
+}
@@ -0,0 +1,176 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class producing segments for a search coordinator. The worker connects to the coordinator over TCP, asks for ranges
+ * of start points, and streams the completed segments back in batches until the coordinator stops the search. See
+ * <code>SearchCoordinator</code> for the protocol.
+ */
+public final class SearchWorker implements Runnable {
+    /**
+     * The size of the batches of segments sent to the coordinator.
+     */
+    private final int batchSize;
+    /**
+     * The checkpoint depth for the segments.
+     */
+    private final int checkpointDepth;
+    /**
+     * The hash function.
+     */
+    private final HashFunction hashFunction;
+    /**
+     * The host of the coordinator.
+     */
+    private final String host;
+    /**
+     * The number of segments sent to the coordinator.
+     */
+    private long numberOfSegments;
+    /**
+     * The port of the coordinator.
+     */
+    private final int port;
+
+    /**
+     * Constructs a worker for a coordinator.
+     *
+     * @param host            The host of the coordinator.
+     * @param port            The port of the coordinator.
+     * @param hashFunction    The hash function, which should be the same as the hash function of the coordinator.
+     * @param batchSize       The size of the batches of segments sent to the coordinator.
+     * @param checkpointDepth The checkpoint depth for the segments.
+     */
+    public SearchWorker(final String host, final int port, final HashFunction hashFunction, final int batchSize,
+            final int checkpointDepth) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The size of the batches (%d) should be at least one.", batchSize));
+        }
+        this.host = host;
+        this.port = port;
+        this.hashFunction = hashFunction;
+        this.batchSize = batchSize;
+        this.checkpointDepth = checkpointDepth;
+    }
+
+    /**
+     * Returns the number of segments sent to the coordinator.
+     *
+     * @return The number of segments sent to the coordinator.
+     */
+    public long getNumberOfSegments() {
+        return numberOfSegments;
+    }
+
+    /**
+     * Produces the segments for a range of start points, and sends them to the coordinator in batches. A collision
+     * found in a cyclic segment is sent to the coordinator right away.
+     *
+     * @param range  The range of start points.
+     * @param writer The writer to the coordinator.
+     * @throws IOException Thrown if the segments can't be sent.
+     */
+    private void process(final StartPointRange range, final Writer writer) throws IOException {
+        List<Segment> batch = new ArrayList<Segment>(batchSize);
+        for (int i = 0; i < range.size(); i++) {
+            Segment segment = range.produceSegment(i, hashFunction, checkpointDepth);
+            if (segment.isCyclic()) {
+                Collision collision = segment.asCyclicSegment().findCollision();
+                if (collision != null) {
+                    writeLine(writer, SegmentImporter.formatCollision(collision));
+                }
+            } else {
+                batch.add(segment);
+                if (batch.size() == batchSize) {
+                    send(batch, writer);
+                }
+            }
+        }
+        send(batch, writer);
+        writeLine(writer, SearchCoordinator.DONE);
+    }
+
+    /**
+     * Connects to the coordinator, and processes the ranges of start points assigned to the worker until the
+     * coordinator stops the search or the connection is lost. A range that can't be processed is abandoned, such that
+     * the coordinator reassigns it, and the worker stops, such that it doesn't get the same range back right away.
+     */
+    @Override
+    public void run() {
+        try (Socket socket = new Socket(host, port);
+                BufferedReader reader =
+                        new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer writer = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String hello = reader.readLine();
+            if (!(SearchCoordinator.HELLO + " " + hashFunction).equals(hello)) {
+                Laconic.LOGGER.logError("The coordinator doesn't search collisions for %s: %s", hashFunction, hello);
+                return;
+            }
+            writeLine(writer, SearchCoordinator.NEXT);
+            String message = reader.readLine();
+            while (message != null && !message.equals(SearchCoordinator.STOP)) {
+                StartPointRange range = StartPointRange.parse(message);
+                try {
+                    process(range, writer);
+                } catch (RuntimeException re) {
+                    Laconic.LOGGER.logError("Couldn't produce the segments for the range of %d start points from"
+                            + " index %d, abandoning it: %s", range.size(), range.firstIndex(), re.getMessage());
+                    writeLine(writer, SearchCoordinator.ABANDON);
+                    return;
+                }
+                writeLine(writer, SearchCoordinator.NEXT);
+                message = reader.readLine();
+            }
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("Lost the connection to the coordinator: %s", ioe.getMessage());
+        }
+    }
+
+    /**
+     * Sends a batch of segments to the coordinator, and clears the batch.
+     *
+     * @param batch  The batch of segments.
+     * @param writer The writer to the coordinator.
+     * @throws IOException Thrown if the batch can't be sent.
+     */
+    private void send(final List<Segment> batch, final Writer writer) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        writer.write(SearchCoordinator.BATCH + " " + batch.size() + "\n");
+        for (Segment segment : batch) {
+            writer.write(FileBasedSegmentRepository.formatSegment(segment));
+            writer.write("\n");
+        }
+        writer.flush();
+        numberOfSegments += batch.size();
+        batch.clear();
+    }
+
+    /**
+     * Writes a line to the coordinator, and flushes it.
+     *
+     * @param writer The writer to the coordinator.
+     * @param line   The line.
+     * @throws IOException Thrown if the line can't be written.
+     */
+    private static void writeLine(final Writer writer, final String line) throws IOException {
+        writer.write(line);
+        writer.write("\n");
+        writer.flush();
+    }
+}
@@ -1,16 +1,30 @@
 package net.filipvanlaenen.jcrk;
 
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.Map;
 import net.filipvanlaenen.kolektoj.ModifiableCollection;
+import net.filipvanlaenen.kolektoj.ModifiableMap;
+import net.filipvanlaenen.kolektoj.hash.ModifiableHashMap;
 
 /**
  * A segment on a path in Pollard's rho collision search. A segment has a start point, an end point, a length, an order
- * and a hash function.
+ * and a hash function. Optionally, a segment records checkpoints, i.e. the intermediate points with an order of at
+ * least the segment's order minus its checkpoint depth. On average, a segment records 2^d - 1 checkpoints for a
+ * checkpoint depth d.
  */
 public final class Segment {
     /**
      * The magic number 31.
      */
     private static final int THIRTY_ONE = 31;
+    /**
+     * The depth below the segment's order down to which intermediate points are recorded as checkpoints.
+     */
+    private final int checkpointDepth;
+    /**
+     * The checkpoints recorded on the segment.
+     */
+    private final ModifiableCollection<SegmentCheckpoint> checkpoints;
     /**
      * The (current) end point of the segment.
      */
@@ -32,9 +46,9 @@ public final class Segment {
      */
     private final Point startPoint;
     /**
-     * Points tracked while extending the segment in order to detect whether it's cyclic.
+     * Points tracked while extending the segment in order to detect whether it's cyclic, mapped to their positions.
      */
-    private ModifiableCollection<Point> trackedPoints;
+    private final ModifiableMap<Point, Long> trackedPositions;
     /**
      * The length at which to track points.
      */
@@ -48,7 +62,20 @@ public final class Segment {
      * @param hashFunction The hash function.
      */
     Segment(final Point startPoint, final int order, final HashFunction hashFunction) {
-        this(startPoint, startPoint, 0, order, hashFunction);
+        this(startPoint, order, hashFunction, 0);
+    }
+
+    /**
+     * Constructs a segment using a start point, order, hash function and checkpoint depth, and defaults the other
+     * segment values.
+     *
+     * @param startPoint      The start point.
+     * @param order           The order.
+     * @param hashFunction    The hash function.
+     * @param checkpointDepth The checkpoint depth.
+     */
+    Segment(final Point startPoint, final int order, final HashFunction hashFunction, final int checkpointDepth) {
+        this(startPoint, startPoint, 0, order, hashFunction, checkpointDepth, Collection.empty());
     }
 
     /**
@@ -62,6 +89,45 @@ public final class Segment {
      */
     Segment(final Point startPoint, final Point endPoint, final long length, final int order,
             final HashFunction hashFunction) {
+        this(startPoint, endPoint, length, order, hashFunction, 0, Collection.empty());
+    }
+
+    /**
+     * Constructs a segment using a start point, end point, length, order, hash function, checkpoint depth and
+     * checkpoints. Checkpoints with an order lower than the segment's order minus the checkpoint depth are dropped.
+     *
+     * @param startPoint      The start point.
+     * @param endPoint        The end point.
+     * @param length          The length.
+     * @param order           The order.
+     * @param hashFunction    The hash function.
+     * @param checkpointDepth The checkpoint depth.
+     * @param checkpoints     The checkpoints.
+     */
+    Segment(final Point startPoint, final Point endPoint, final long length, final int order,
+            final HashFunction hashFunction, final int checkpointDepth,
+            final Collection<SegmentCheckpoint> checkpoints) {
+        this(startPoint, endPoint, length, order, hashFunction, checkpointDepth, checkpoints,
+                new ModifiableHashMap<Point, Long>());
+    }
+
+    /**
+     * Constructs a segment using a start point, end point, length, order, hash function, checkpoint depth, checkpoints
+     * and the points tracked to detect whether it's cyclic. This allows to resume extending a segment that was
+     * interrupted, with the same cycle detection state.
+     *
+     * @param startPoint       The start point.
+     * @param endPoint         The end point.
+     * @param length           The length.
+     * @param order            The order.
+     * @param hashFunction     The hash function.
+     * @param checkpointDepth  The checkpoint depth.
+     * @param checkpoints      The checkpoints.
+     * @param trackedPositions The tracked points, mapped to their positions.
+     */
+    Segment(final Point startPoint, final Point endPoint, final long length, final int order,
+            final HashFunction hashFunction, final int checkpointDepth,
+            final Collection<SegmentCheckpoint> checkpoints, final Map<Point, Long> trackedPositions) {
         if (startPoint.order() < order) {
             throw new IllegalArgumentException(String.format(
                     "The start point's order (%d) is less than the provided order (%d).", startPoint.order(), order));
@@ -69,14 +135,24 @@ public final class Segment {
             throw new IllegalArgumentException(String.format("The length (%d) is negative.", length));
         } else if (order < 0) {
             throw new IllegalArgumentException(String.format("The order (%d) is negative.", order));
+        } else if (checkpointDepth < 0) {
+            throw new IllegalArgumentException(
+                    String.format("The checkpoint depth (%d) is negative.", checkpointDepth));
         }
         this.startPoint = startPoint;
         this.endPoint = endPoint;
         this.length = length;
         this.order = order;
         this.hashFunction = hashFunction;
-        this.trackedPoints = ModifiableCollection.empty();
+        this.trackedPositions = new ModifiableHashMap<Point, Long>(trackedPositions);
         this.trackLength = 1L << order;
+        this.checkpointDepth = checkpointDepth;
+        this.checkpoints = ModifiableCollection.empty();
+        for (SegmentCheckpoint checkpoint : checkpoints) {
+            if (checkpoint.point().order() >= getCheckpointOrder()) {
+                this.checkpoints.add(checkpoint);
+            }
+        }
     }
 
     /**
@@ -91,7 +167,10 @@ public final class Segment {
     }
 
     /**
-     * Exports the segment as a cyclic segment.
+     * Exports the segment as a cyclic segment. Since points are tracked at every multiple of the track length, and the
+     * segment is found to be cyclic as soon as its end point equals a tracked point, the cycle's length equals the
+     * distance to that tracked point, and the cycle is entered after the previous tracked point and no later than that
+     * tracked point.
      *
      * @return The segment as a cyclic segment.
      */
@@ -99,7 +178,17 @@ public final class Segment {
         if (!isCyclic()) {
             throw new IllegalStateException("A segment that isn't cyclic can't be exported as a cyclic segment.");
         }
-        return new CyclicSegment(startPoint, endPoint, hashFunction);
+        long cyclicPosition = trackedPositions.get(endPoint);
+        long cycleLength = length - cyclicPosition;
+        long tailLengthLowerBound = cyclicPosition - trackLength;
+        long cycleBoundPosition = tailLengthLowerBound + cycleLength;
+        long nearestTrackedPosition = cycleBoundPosition - cycleBoundPosition % trackLength;
+        Point cycleBoundPoint = getTrackedPoint(nearestTrackedPosition);
+        for (long i = nearestTrackedPosition; i < cycleBoundPosition; i++) {
+            cycleBoundPoint = cycleBoundPoint.hash(hashFunction);
+        }
+        return new CyclicSegment(startPoint, endPoint, hashFunction, cycleLength, tailLengthLowerBound,
+                getTrackedPoint(tailLengthLowerBound), cycleBoundPoint);
     }
 
     @Override
@@ -118,10 +207,44 @@ public final class Segment {
             throw new IllegalStateException("A cyclic segment cannot be extended.");
         }
         if (length > 0 && length % trackLength == 0) {
-            trackedPoints.add(endPoint);
+            trackedPositions.add(endPoint, length);
         }
         endPoint = endPoint.hash(hashFunction);
         length++;
+        if (checkpointDepth > 0) {
+            int endPointOrder = endPoint.order();
+            if (endPointOrder < order && endPointOrder >= getCheckpointOrder()) {
+                checkpoints.add(new SegmentCheckpoint(length, endPoint));
+            }
+        }
+    }
+
+    /**
+     * Returns the checkpoint depth.
+     *
+     * @return The checkpoint depth.
+     */
+    int getCheckpointDepth() {
+        return checkpointDepth;
+    }
+
+    /**
+     * Returns the minimal order of the checkpoints, i.e. the segment's order minus the checkpoint depth, but not less
+     * than zero.
+     *
+     * @return The minimal order of the checkpoints.
+     */
+    int getCheckpointOrder() {
+        return Math.max(0, order - checkpointDepth);
+    }
+
+    /**
+     * Returns the checkpoints.
+     *
+     * @return The checkpoints.
+     */
+    Collection<SegmentCheckpoint> getCheckpoints() {
+        return checkpoints;
     }
 
     /**
@@ -169,6 +292,33 @@ public final class Segment {
         return startPoint;
     }
 
+    /**
+     * Returns the tracked point at a position, or the start point for position zero.
+     *
+     * @param position The position, which should be a multiple of the track length.
+     * @return The tracked point at the position.
+     */
+    private Point getTrackedPoint(final long position) {
+        if (position == 0L) {
+            return startPoint;
+        }
+        for (Point point : trackedPositions.getKeys()) {
+            if (trackedPositions.get(point) == position) {
+                return point;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the points tracked to detect whether the segment is cyclic, mapped to their positions.
+     *
+     * @return The tracked points, mapped to their positions.
+     */
+    Map<Point, Long> getTrackedPositions() {
+        return new ModifiableHashMap<Point, Long>(trackedPositions);
+    }
+
     @Override
     public int hashCode() {
         int hashCode = addValueToHashCode(1, startPoint.hashCode());
@@ -194,7 +344,7 @@ public final class Segment {
      * @return True if the segment is cyclic, and false otherwise.
      */
     boolean isCyclic() {
-        return trackedPoints.contains(endPoint);
+        return trackedPositions.containsKey(endPoint);
     }
 
     /**
@@ -0,0 +1,12 @@
+package net.filipvanlaenen.jcrk;
+
+/**
+ * An intermediate point recorded while producing a segment, together with its position on the segment. Checkpoints
+ * allow to localize the point where two colliding segments merge without having to walk both segments from their start
+ * points.
+ *
+ * @param position The position of the checkpoint, i.e. the number of hashes from the segment's start point.
+ * @param point    The point at that position.
+ */
+public record SegmentCheckpoint(long position, Point point) {
+}
@@ -0,0 +1,172 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.HexFormat;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class adding segments produced elsewhere, e.g. by workers of a distributed search or from the results of work units,
+ * to a segment repository. Segments produced at a lower order than the current order of the segment repository are
+ * retained if both their start point and their end point are distinguished at the current order too, and abandoned
+ * otherwise. Lines that can't be parsed into a segment are ignored. After every segment added, the segments sharing
+ * its end point are backtracked to find a collision.
+ */
+final class SegmentImporter {
+    /**
+     * The keyword of a line reporting a collision found in a cyclic segment.
+     */
+    static final String COLLISION = "COLLISION";
+
+    /**
+     * The metrics of the search.
+     */
+    private final SearchMetrics metrics;
+    /**
+     * The segment repository.
+     */
+    private final SegmentRepository segmentRepository;
+    /**
+     * The segment repository compression condition.
+     */
+    private final SegmentRepositoryCompressionCondition segmentRepositoryCompressionCondition;
+
+    /**
+     * Constructs an importer for a segment repository.
+     *
+     * @param segmentRepository                     The segment repository.
+     * @param segmentRepositoryCompressionCondition The condition specifying when to compress the segment repository.
+     * @param metrics                               The metrics of the search.
+     */
+    SegmentImporter(final SegmentRepository segmentRepository,
+            final SegmentRepositoryCompressionCondition segmentRepositoryCompressionCondition,
+            final SearchMetrics metrics) {
+        this.segmentRepository = segmentRepository;
+        this.segmentRepositoryCompressionCondition = segmentRepositoryCompressionCondition;
+        this.metrics = metrics;
+        metrics.updateRepositoryState(segmentRepository);
+    }
+
+    /**
+     * Compresses the segment repository to the next order if the segment repository compression condition is met.
+     */
+    void compressIfNeeded() {
+        if (segmentRepositoryCompressionCondition.evaluate(segmentRepository)) {
+            Laconic.LOGGER.logProgress(
+                    "The segment repository has %d segments of order %d -- going to compress it to the next order.",
+                    segmentRepository.size(), segmentRepository.getOrder());
+            long start = System.nanoTime();
+            segmentRepository.compressToNextOrder();
+            metrics.recordCompression(System.nanoTime() - start);
+            metrics.updateRepositoryState(segmentRepository);
+            Laconic.LOGGER.logProgress(
+                    "Compressed the segment repository to order %d -- %d segments were retained and/or created.",
+                    segmentRepository.getOrder(), segmentRepository.size());
+        }
+    }
+
+    /**
+     * Formats a collision found in a cyclic segment as a line, consisting of the keyword and the points separated by
+     * commas.
+     *
+     * @param collision The collision.
+     * @return A line reporting the collision.
+     */
+    static String formatCollision(final Collision collision) {
+        StringBuilder sb = new StringBuilder(COLLISION);
+        String separator = " ";
+        for (Point point : collision.points()) {
+            sb.append(separator);
+            sb.append(point.asHexadecimalString());
+            separator = ",";
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Imports a line, being either a segment in the format of the cache files, or a collision found in a cyclic
+     * segment. Collisions are verified before they're accepted.
+     *
+     * @param line  The line.
+     * @param order The order at which the segment was produced.
+     * @return The collision found, or <code>null</code> if the line didn't lead to a collision.
+     */
+    Collision importLine(final String line, final int order) {
+        if (line.startsWith(COLLISION + " ")) {
+            return importCollision(line);
+        } else {
+            return importSegment(line, order);
+        }
+    }
+
+    /**
+     * Imports a collision found in a cyclic segment, after verifying it.
+     *
+     * @param line The line reporting the collision.
+     * @return The collision, or <code>null</code> if it's invalid.
+     */
+    private Collision importCollision(final String line) {
+        String[] hexadecimalPoints = line.substring(COLLISION.length() + 1).split(",");
+        Point[] points = new Point[hexadecimalPoints.length];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Point(HexFormat.of().parseHex(hexadecimalPoints[i]));
+        }
+        metrics.recordCyclicSegment();
+        if (points.length < 2 || points[0].equals(points[1])) {
+            return null;
+        }
+        try {
+            return new Collision(segmentRepository.getHashFunction(), points);
+        } catch (IllegalArgumentException iae) {
+            Laconic.LOGGER.logError("Ignored an invalid collision: %s", iae.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Imports a segment, and backtracks the segments sharing its end point if it was added to the segment repository.
+     *
+     * @param line  The segment, in the format of the cache files.
+     * @param order The order at which the segment was produced.
+     * @return The collision found, or <code>null</code> if the segment didn't lead to a collision.
+     */
+    private Collision importSegment(final String line, final int order) {
+        int currentOrder = segmentRepository.getOrder();
+        Segment segment;
+        try {
+            segment = FileBasedSegmentRepository.parseSegment(line, order, segmentRepository.getHashFunction());
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            Laconic.LOGGER.logError("Ignored an invalid segment: %s", e.getMessage());
+            return null;
+        }
+        metrics.recordSegment(order, segment.getLength());
+        if (order > currentOrder || segment.getEndPoint().order() < currentOrder) {
+            metrics.recordAbandonedSegment();
+            return null;
+        }
+        if (order < currentOrder) {
+            if (segment.getStartPoint().order() < currentOrder) {
+                Laconic.LOGGER.logProgress("Abandoned the segment with start point %s, which isn't distinguished at"
+                        + " order %d.", segment.getStartPoint().asHexadecimalString(), currentOrder);
+                metrics.recordAbandonedSegment();
+                return null;
+            }
+            segment = FileBasedSegmentRepository.parseSegment(line, currentOrder, segmentRepository.getHashFunction());
+        }
+        long start = System.nanoTime();
+        boolean added = segmentRepository.add(segment);
+        metrics.recordPersistence(System.nanoTime() - start);
+        metrics.updateRepositoryState(segmentRepository);
+        if (!added) {
+            metrics.recordAbandonedSegment();
+            return null;
+        }
+        Collection<Segment> segmentsWithNewEndPoint = segmentRepository.getSegmentsWithEndPoint(segment.getEndPoint());
+        if (segmentsWithNewEndPoint.size() > 1) {
+            Laconic.LOGGER.logProgress("Found two colliding segments with end point %s.",
+                    segment.getEndPoint().asHexadecimalString());
+            return new CollidingSegmentsCollection(segmentsWithNewEndPoint).findCollision();
+        }
+        return null;
+    }
+}
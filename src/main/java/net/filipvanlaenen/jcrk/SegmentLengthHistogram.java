@@ -0,0 +1,107 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of the lengths of the segments completed at an order. The length of a segment of order n follows a
+ * geometric distribution with mean 2<sup>n</sup>, so the buckets are powers of two around that mean, from
+ * 2<sup>n-4</sup> up to 2<sup>n+4</sup>, with an additional bucket for the longer segments.
+ */
+final class SegmentLengthHistogram {
+    /**
+     * The number of buckets below and above the mean segment length.
+     */
+    private static final int BUCKETS_AROUND_MEAN = 4;
+
+    /**
+     * The number of segments per bucket, with the last bucket for the segments longer than the largest upper bound.
+     */
+    private final LongAdder[] counts;
+    /**
+     * The sum of the lengths of the segments.
+     */
+    private final LongAdder sum = new LongAdder();
+    /**
+     * The upper bounds of the buckets, inclusive.
+     */
+    private final long[] upperBounds;
+
+    /**
+     * Constructs a histogram for the segments of an order.
+     *
+     * @param order The order of the segments.
+     */
+    SegmentLengthHistogram(final int order) {
+        int lowestExponent = Math.max(0, order - BUCKETS_AROUND_MEAN);
+        int highestExponent = Math.min(Long.SIZE - 2, order + BUCKETS_AROUND_MEAN);
+        upperBounds = new long[highestExponent - lowestExponent + 1];
+        for (int i = 0; i < upperBounds.length; i++) {
+            upperBounds[i] = 1L << (lowestExponent + i);
+        }
+        counts = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the number of segments.
+     *
+     * @return The number of segments.
+     */
+    long getCount() {
+        long count = 0L;
+        for (LongAdder bucketCount : counts) {
+            count += bucketCount.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the cumulative number of segments per bucket, i.e. the number of segments with a length up to the upper
+     * bound of the bucket. The last element is the total number of segments.
+     *
+     * @return The cumulative number of segments per bucket.
+     */
+    long[] getCumulativeCounts() {
+        long[] cumulativeCounts = new long[counts.length];
+        long count = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i].sum();
+            cumulativeCounts[i] = count;
+        }
+        return cumulativeCounts;
+    }
+
+    /**
+     * Returns the sum of the lengths of the segments.
+     *
+     * @return The sum of the lengths of the segments.
+     */
+    long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the upper bounds of the buckets, inclusive.
+     *
+     * @return The upper bounds of the buckets.
+     */
+    long[] getUpperBounds() {
+        return upperBounds.clone();
+    }
+
+    /**
+     * Records the length of a segment.
+     *
+     * @param length The length of the segment.
+     */
+    void record(final long length) {
+        int bucket = 0;
+        while (bucket < upperBounds.length && length > upperBounds[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        sum.add(length);
+    }
+}
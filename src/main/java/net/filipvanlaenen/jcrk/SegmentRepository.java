@@ -1,6 +1,7 @@
 package net.filipvanlaenen.jcrk;
 
 import java.io.IOException;
+import java.util.function.Consumer;
 
 import net.filipvanlaenen.kolektoj.Collection;
 
@@ -68,6 +69,34 @@ public interface SegmentRepository {
      */
     Collection<Segment> getSegmentsWithEndPoint(Point point);
 
+    /**
+     * Returns the end points shared by at least the specified number of segments.
+     *
+     * @param minimumNumberOfSegments The minimum number of segments sharing the end point, at least two.
+     * @return A collection with the end points shared by at least the specified number of segments.
+     */
+    Collection<Point> getEndPointsWithMultipleSegments(int minimumNumberOfSegments);
+
+    /**
+     * Returns all the segments in this repository.
+     *
+     * @return A collection with all the segments in this repository.
+     */
+    Collection<Segment> getSegments();
+
+    /**
+     * Performs an action on every segment in this repository, streaming the segments if the repository can, e.g. from
+     * a snapshot on disk, instead of collecting them all into a collection first. By default, the action is performed
+     * on the segments returned by <code>getSegments</code>.
+     *
+     * @param action The action to be performed on every segment.
+     */
+    default void forEachSegment(final Consumer<Segment> action) {
+        for (Segment segment : getSegments()) {
+            action.accept(segment);
+        }
+    }
+
     /**
      * Returns true if this repository doesn't contain any segments.
      *
@@ -96,6 +125,20 @@ public interface SegmentRepository {
      */
     void compressToNextOrder();
 
+    /**
+     * Persists the repository such that it can be reopened quickly, if the repository supports it. By default, nothing
+     * is done.
+     */
+    default void checkpoint() {
+    }
+
+    /**
+     * Waits until the segments added to the repository so far are durable, if the repository supports it, such that
+     * work resuming from them doesn't get ahead of the repository. By default, nothing is done.
+     */
+    default void sync() {
+    }
+
     /**
      * Returns the collisions present in the repository.
      *
@@ -103,6 +146,20 @@ public interface SegmentRepository {
      */
     Collection<Collision> getCollisions();
 
+    /**
+     * Returns an estimate of the number of bytes this repository occupies on disk.
+     *
+     * @return An estimate of the number of bytes this repository occupies on disk.
+     */
+    long getEstimatedDiskFootprint();
+
+    /**
+     * Returns an estimate of the number of bytes this repository occupies in memory.
+     *
+     * @return An estimate of the number of bytes this repository occupies in memory.
+     */
+    long getEstimatedMemoryFootprint();
+
     /**
      * Returns the hash function of the repository.
      *
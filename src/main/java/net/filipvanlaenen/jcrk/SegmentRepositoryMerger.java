@@ -0,0 +1,369 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * Class merging the cache files of independent searches for the same hash function into a single cache file, finding
+ * the collisions between segments from different files on the way. The cache files are streamed into temporary runs of
+ * a bounded size, sorted by end point, and brought to the highest order among them by compressing their runs one order
+ * at a time, the same way the log-structured merge segment repository compresses its runs. The runs are then merged
+ * in a single streaming pass, such that only the segments sharing the current end point are kept in memory, and
+ * segments sharing an end point are backtracked right away.
+ */
+public final class SegmentRepositoryMerger {
+    /**
+     * The default number of segments in a temporary run.
+     */
+    public static final int DEFAULT_RUN_SIZE = 1 << 20;
+
+    /**
+     * The hash function.
+     */
+    private final HashFunction hashFunction;
+    /**
+     * The number of segments written to the merged cache file by the last merge.
+     */
+    private long numberOfSegments;
+    /**
+     * The number of segments in a temporary run, i.e. the number of segments kept in memory while a cache file is
+     * loaded or compressed.
+     */
+    private final int runSize;
+
+    /**
+     * Constructs a merger for the cache files of a hash function with the default run size.
+     *
+     * @param hashFunction The hash function.
+     */
+    public SegmentRepositoryMerger(final HashFunction hashFunction) {
+        this(hashFunction, DEFAULT_RUN_SIZE);
+    }
+
+    /**
+     * Constructs a merger for the cache files of a hash function.
+     *
+     * @param hashFunction The hash function.
+     * @param runSize      The number of segments in a temporary run.
+     * @throws IllegalArgumentException Thrown if the run size isn't positive.
+     */
+    public SegmentRepositoryMerger(final HashFunction hashFunction, final int runSize)
+            throws IllegalArgumentException {
+        if (runSize < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The size of the runs (%d) should be at least one.", runSize));
+        }
+        this.hashFunction = hashFunction;
+        this.runSize = runSize;
+    }
+
+    /**
+     * Returns the number of segments written to the merged cache file by the last merge.
+     *
+     * @return The number of segments written to the merged cache file by the last merge.
+     */
+    public long getNumberOfSegments() {
+        return numberOfSegments;
+    }
+
+    /**
+     * Compresses the runs of a cache file to the next order. The runs are merged into a single run first, such that
+     * the segments can be combined one by one while the segments they're combined with are looked up in the run. The
+     * runs are replaced by the runs of the next order.
+     *
+     * @param runs     The runs of a cache file, which are replaced by the runs of the next order.
+     * @param runOrder The order of the runs.
+     * @throws IOException Thrown if a run can't be read or written.
+     */
+    private void compressToNextOrder(final List<SegmentRun> runs, final int runOrder) throws IOException {
+        if (runs.size() > 1) {
+            Path mergedRunFile = Files.createTempFile("jcrk", ".run");
+            SegmentRun mergedRun;
+            try {
+                mergedRun = SegmentRun.merge(runs, mergedRunFile, runOrder, hashFunction, group -> {
+                });
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(mergedRunFile);
+                throw e;
+            }
+            delete(runs);
+            runs.add(mergedRun);
+        }
+        if (runs.isEmpty()) {
+            return;
+        }
+        SegmentRun lowerOrderRun = runs.get(0);
+        int newOrder = runOrder + 1;
+        InMemorySegmentRepository buffer = new InMemorySegmentRepository(hashFunction);
+        buffer.setOrder(newOrder);
+        List<SegmentRun> newRuns = new ArrayList<SegmentRun>();
+        try {
+            try (SegmentRun.Cursor<Segment> cursor = lowerOrderRun.openSegmentCursor()) {
+                while (cursor.getCurrent() != null) {
+                    Segment newSegment = InMemorySegmentRepository.combineToOrder(cursor.getCurrent(), newOrder,
+                            point -> getSegmentWithStartPoint(lowerOrderRun, point));
+                    if (newSegment != null) {
+                        buffer.add(newSegment);
+                        writeRunIfFull(buffer, newRuns, newOrder);
+                    }
+                    cursor.advance();
+                }
+            }
+            writeRun(buffer, newRuns, newOrder);
+        } catch (IOException | RuntimeException e) {
+            delete(newRuns);
+            throw e;
+        }
+        delete(runs);
+        runs.addAll(newRuns);
+    }
+
+    /**
+     * Closes and deletes runs, and clears the list of runs.
+     *
+     * @param runs The runs.
+     * @throws IOException Thrown if a run can't be closed or deleted.
+     */
+    private static void delete(final List<SegmentRun> runs) throws IOException {
+        for (SegmentRun run : runs) {
+            run.close();
+            Files.deleteIfExists(run.getFile());
+        }
+        runs.clear();
+    }
+
+    /**
+     * Returns the segment with a start point in a run, wrapping the exception if the run can't be read.
+     *
+     * @param run   The run.
+     * @param point The start point.
+     * @return The segment with the start point, or <code>null</code> if the run doesn't contain such a segment.
+     */
+    private static Segment getSegmentWithStartPoint(final SegmentRun run, final Point point) {
+        try {
+            return run.getSegmentWithStartPoint(point);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Streams a cache file into runs sorted by end point, and compresses the runs to an order.
+     *
+     * @param cacheFile The cache file.
+     * @param order     The order to compress the runs to.
+     * @param runs      The runs to add the runs of the cache file to.
+     * @throws IOException Thrown if the cache file can't be read or a run can't be written.
+     */
+    private void load(final Path cacheFile, final int order, final List<SegmentRun> runs) throws IOException {
+        List<SegmentRun> fileRuns = new ArrayList<SegmentRun>();
+        try {
+            int fileOrder;
+            try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+                fileOrder = Integer.parseInt(reader.readLine());
+                reader.readLine();
+                InMemorySegmentRepository buffer = new InMemorySegmentRepository(hashFunction);
+                buffer.setOrder(fileOrder);
+                String line = reader.readLine();
+                while (line != null) {
+                    if (!line.isEmpty()) {
+                        buffer.add(FileBasedSegmentRepository.parseSegment(line, fileOrder, hashFunction));
+                        writeRunIfFull(buffer, fileRuns, fileOrder);
+                    }
+                    line = reader.readLine();
+                }
+                writeRun(buffer, fileRuns, fileOrder);
+            }
+            for (int runOrder = fileOrder; runOrder < order; runOrder++) {
+                compressToNextOrder(fileRuns, runOrder);
+            }
+        } catch (IOException | RuntimeException e) {
+            delete(fileRuns);
+            throw e;
+        }
+        runs.addAll(fileRuns);
+    }
+
+    /**
+     * Merges cache files into a single cache file at the highest order among them, and returns the collisions found
+     * between the segments.
+     *
+     * @param cacheFiles The cache files to be merged.
+     * @param mergedFile The merged cache file.
+     * @return The collisions found.
+     * @throws IOException              Thrown if a cache file can't be read or the merged cache file can't be written.
+     * @throws IllegalArgumentException Thrown if a cache file isn't a cache file for the hash function.
+     */
+    public Collection<Collision> merge(final OrderedCollection<Path> cacheFiles, final Path mergedFile)
+            throws IOException, IllegalArgumentException {
+        int order = 0;
+        for (Path cacheFile : cacheFiles) {
+            order = Math.max(order, readOrder(cacheFile));
+        }
+        List<SegmentRun> runs = new ArrayList<SegmentRun>();
+        try {
+            for (Path cacheFile : cacheFiles) {
+                load(cacheFile, order, runs);
+            }
+            Collection<Collision> collisions = mergeRuns(runs, mergedFile, order);
+            Laconic.LOGGER.logProgress("Merged %d cache files into %s at order %d with %d segments and %d collisions.",
+                    cacheFiles.size(), mergedFile.toString(), order, numberOfSegments, collisions.size());
+            return collisions;
+        } finally {
+            delete(runs);
+        }
+    }
+
+    /**
+     * Merges the runs sorted by end point into a cache file, and backtracks the segments sharing an end point.
+     * Segments occurring in more than one run are written only once.
+     *
+     * @param runs       The runs.
+     * @param mergedFile The merged cache file.
+     * @param order      The order of the segments.
+     * @return The collisions found.
+     * @throws IOException Thrown if a run can't be read or the merged cache file can't be written.
+     */
+    private Collection<Collision> mergeRuns(final List<SegmentRun> runs, final Path mergedFile, final int order)
+            throws IOException {
+        ModifiableCollection<Collision> collisions = ModifiableCollection.empty();
+        numberOfSegments = 0L;
+        PriorityQueue<SegmentRun.Cursor<Segment>> queue = new PriorityQueue<SegmentRun.Cursor<Segment>>(
+                Comparator.comparing(SegmentRun.Cursor::getCurrent, SegmentRun.END_POINT_COMPARATOR));
+        Path temporaryFile = mergedFile.resolveSibling(mergedFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            for (SegmentRun run : runs) {
+                SegmentRun.Cursor<Segment> cursor = run.openSegmentCursor();
+                if (cursor.getCurrent() == null) {
+                    cursor.close();
+                } else {
+                    queue.add(cursor);
+                }
+            }
+            writer.write(order + "\n" + hashFunction.toString() + "\n");
+            List<Segment> segmentsWithEndPoint = new ArrayList<Segment>();
+            while (!queue.isEmpty()) {
+                SegmentRun.Cursor<Segment> cursor = queue.poll();
+                Segment segment = cursor.getCurrent();
+                if (!segmentsWithEndPoint.isEmpty()
+                        && !segmentsWithEndPoint.get(0).getEndPoint().equals(segment.getEndPoint())) {
+                    backtrack(segmentsWithEndPoint, collisions);
+                    segmentsWithEndPoint.clear();
+                }
+                if (segmentsWithEndPoint.isEmpty() || !segmentsWithEndPoint.get(segmentsWithEndPoint.size() - 1)
+                        .getStartPoint().equals(segment.getStartPoint())) {
+                    segmentsWithEndPoint.add(segment);
+                    writer.write(FileBasedSegmentRepository.formatSegment(segment));
+                    writer.write("\n");
+                    numberOfSegments++;
+                }
+                cursor.advance();
+                if (cursor.getCurrent() == null) {
+                    cursor.close();
+                } else {
+                    queue.add(cursor);
+                }
+            }
+            backtrack(segmentsWithEndPoint, collisions);
+        } finally {
+            for (SegmentRun.Cursor<Segment> cursor : queue) {
+                cursor.close();
+            }
+        }
+        Files.move(temporaryFile, mergedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return collisions;
+    }
+
+    /**
+     * Backtracks the segments sharing an end point if there is more than one, and adds the collision found.
+     *
+     * @param segments   The segments sharing an end point.
+     * @param collisions The collisions found so far.
+     */
+    private static void backtrack(final List<Segment> segments, final ModifiableCollection<Collision> collisions) {
+        if (segments.size() > 1) {
+            Laconic.LOGGER.logProgress("Found %d colliding segments with end point %s.", segments.size(),
+                    segments.get(0).getEndPoint().asHexadecimalString());
+            Collision collision =
+                    new CollidingSegmentsCollection(Collection.of(segments.toArray(new Segment[0]))).findCollision();
+            if (collision != null) {
+                collisions.add(collision);
+            }
+        }
+    }
+
+    /**
+     * Reads the order from the header of a cache file, and verifies that it's a cache file for the hash function.
+     *
+     * @param cacheFile The cache file.
+     * @return The order of the cache file.
+     * @throws IOException              Thrown if the cache file can't be read.
+     * @throws IllegalArgumentException Thrown if the cache file isn't a cache file for the hash function.
+     */
+    private int readOrder(final Path cacheFile) throws IOException, IllegalArgumentException {
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String order = reader.readLine();
+            String hashFunctionName = reader.readLine();
+            if (order == null || !hashFunction.toString().equals(hashFunctionName)) {
+                throw new IllegalArgumentException(String.format("The file %s isn't a cache file for %s.",
+                        cacheFile.toString(), hashFunction.toString()));
+            }
+            return Integer.parseInt(order);
+        }
+    }
+
+    /**
+     * Writes the segments in a buffer to a new temporary run of an order, and clears the buffer, unless the buffer is
+     * empty.
+     *
+     * @param buffer   The buffer.
+     * @param runs     The runs to add the new run to.
+     * @param runOrder The order of the segments.
+     * @throws IOException Thrown if the run can't be written.
+     */
+    private void writeRun(final InMemorySegmentRepository buffer, final List<SegmentRun> runs, final int runOrder)
+            throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        Path runFile = Files.createTempFile("jcrk", ".run");
+        try {
+            runs.add(SegmentRun.write(buffer.getSegments(), runFile, runOrder, hashFunction));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(runFile);
+            throw e;
+        }
+        buffer.setOrder(runOrder);
+    }
+
+    /**
+     * Writes the segments in a buffer to a new temporary run of an order if the buffer holds the number of segments in
+     * a run.
+     *
+     * @param buffer   The buffer.
+     * @param runs     The runs to add the new run to.
+     * @param runOrder The order of the segments.
+     * @throws IOException Thrown if the run can't be written.
+     */
+    private void writeRunIfFull(final InMemorySegmentRepository buffer, final List<SegmentRun> runs,
+            final int runOrder) throws IOException {
+        if (buffer.size() >= runSize) {
+            writeRun(buffer, runs, runOrder);
+        }
+    }
+}
@@ -0,0 +1,789 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+
+/**
+ * An immutable, sorted run of segments on disk, as used by the log-structured merge segment repository. A run consists
+ * of the segments sorted by end point, followed by an index on the start points, i.e. the start points with the end
+ * points of their segments sorted by start point, and a footer with the number of segments and the offset of the
+ * index. The segments are stored as binary records with the start point, the end point, the length, the checkpoint
+ * depth, the number of checkpoints and the checkpoints. A sparse index on the end point of every 64th segment and
+ * filters on the start points and end points are kept in memory, such that a lookup by end point reads one block of
+ * segments, a lookup by start point a few index entries and one block, and lookups for absent points rarely touch the
+ * disk at all.
+ */
+final class SegmentRun implements AutoCloseable {
+    /**
+     * The number of segments per block, i.e. between two entries of the sparse index.
+     */
+    static final int SPARSE_INDEX_INTERVAL = 64;
+    /**
+     * Comparator sorting segments by end point first, and then by start point.
+     */
+    static final Comparator<Segment> END_POINT_COMPARATOR =
+            Comparator.comparing(Segment::getEndPoint).thenComparing(Segment::getStartPoint);
+    /**
+     * Comparator sorting segments by start point.
+     */
+    private static final Comparator<Segment> START_POINT_COMPARATOR = Comparator.comparing(Segment::getStartPoint);
+    /**
+     * The target false positive rate of the filters.
+     */
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * The length of the footer, i.e. the number of segments and the offset of the index.
+     */
+    private static final int FOOTER_LENGTH = 2 * Long.BYTES;
+    /**
+     * The estimated number of bytes per entry of the sparse index, not including the bytes of the point.
+     */
+    private static final long SPARSE_INDEX_ENTRY_OVERHEAD = 40L;
+
+    /**
+     * The filter on the end points.
+     */
+    private final BlockedBloomFilter endPointFilter;
+    /**
+     * The file of the run.
+     */
+    private final Path file;
+    /**
+     * The hash function of the segments.
+     */
+    private final HashFunction hashFunction;
+    /**
+     * The number of segments in the run.
+     */
+    private final long numberOfSegments;
+    /**
+     * The order of the segments.
+     */
+    private final int order;
+    /**
+     * The file of the run opened for random access, used for lookups.
+     */
+    private final RandomAccessFile randomAccessFile;
+    /**
+     * The end points of the first segment of every block.
+     */
+    private final Point[] sparseIndexEndPoints;
+    /**
+     * The offsets of the first segment of every block.
+     */
+    private final long[] sparseIndexOffsets;
+    /**
+     * The filter on the start points.
+     */
+    private final BlockedBloomFilter startPointFilter;
+    /**
+     * The offset of the index on the start points.
+     */
+    private final long startPointIndexOffset;
+
+    /**
+     * Constructs a run from its file and the in-memory structures built while writing or scanning the file.
+     *
+     * @param file                  The file of the run.
+     * @param order                 The order of the segments.
+     * @param hashFunction          The hash function of the segments.
+     * @param numberOfSegments      The number of segments in the run.
+     * @param startPointIndexOffset The offset of the index on the start points.
+     * @param sparseIndexEndPoints  The end points of the first segment of every block.
+     * @param sparseIndexOffsets    The offsets of the first segment of every block.
+     * @param startPointFilter      The filter on the start points.
+     * @param endPointFilter        The filter on the end points.
+     * @throws IOException Thrown if the file can't be opened.
+     */
+    private SegmentRun(final Path file, final int order, final HashFunction hashFunction, final long numberOfSegments,
+            final long startPointIndexOffset, final Point[] sparseIndexEndPoints, final long[] sparseIndexOffsets,
+            final BlockedBloomFilter startPointFilter, final BlockedBloomFilter endPointFilter) throws IOException {
+        this.file = file;
+        this.order = order;
+        this.hashFunction = hashFunction;
+        this.numberOfSegments = numberOfSegments;
+        this.startPointIndexOffset = startPointIndexOffset;
+        this.sparseIndexEndPoints = sparseIndexEndPoints;
+        this.sparseIndexOffsets = sparseIndexOffsets;
+        this.startPointFilter = startPointFilter;
+        this.endPointFilter = endPointFilter;
+        this.randomAccessFile = new RandomAccessFile(file.toFile(), "r");
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    /**
+     * Returns the file of the run.
+     *
+     * @return The file of the run.
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the estimated number of bytes the sparse index and the filters of the run occupy in memory.
+     *
+     * @return The estimated number of bytes the run occupies in memory.
+     */
+    long getEstimatedMemoryFootprint() {
+        return startPointFilter.getByteSize() + endPointFilter.getByteSize() + sparseIndexEndPoints.length
+                * (SPARSE_INDEX_ENTRY_OVERHEAD + hashFunction.getByteLength());
+    }
+
+    /**
+     * Returns the number of segments in the run.
+     *
+     * @return The number of segments in the run.
+     */
+    long getNumberOfSegments() {
+        return numberOfSegments;
+    }
+
+    /**
+     * Returns the segments with an end point. Only the blocks that may contain the end point are read.
+     *
+     * @param point The end point.
+     * @return A collection with the segments with the end point.
+     * @throws IOException Thrown if the run can't be read.
+     */
+    synchronized Collection<Segment> getSegmentsWithEndPoint(final Point point) throws IOException {
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        if (!endPointFilter.mightContain(point)) {
+            return segments;
+        }
+        for (int block = findBlock(point); block < sparseIndexOffsets.length; block++) {
+            for (Segment segment : readBlock(block)) {
+                int comparison = segment.getEndPoint().compareTo(point);
+                if (comparison == 0) {
+                    segments.add(segment);
+                } else if (comparison > 0) {
+                    return segments;
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the segment with a start point, looking up its end point in the index on the start points first.
+     *
+     * @param point The start point.
+     * @return The segment with the start point, or <code>null</code> if the run doesn't contain such a segment.
+     * @throws IOException Thrown if the run can't be read.
+     */
+    synchronized Segment getSegmentWithStartPoint(final Point point) throws IOException {
+        if (!startPointFilter.mightContain(point)) {
+            return null;
+        }
+        int byteLength = hashFunction.getByteLength();
+        byte[] entry = new byte[2 * byteLength];
+        long low = 0L;
+        long high = numberOfSegments - 1L;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            randomAccessFile.seek(startPointIndexOffset + middle * entry.length);
+            randomAccessFile.readFully(entry);
+            int comparison = new Point(Arrays.copyOfRange(entry, 0, byteLength)).compareTo(point);
+            if (comparison < 0) {
+                low = middle + 1L;
+            } else if (comparison > 0) {
+                high = middle - 1L;
+            } else {
+                Point endPoint = new Point(Arrays.copyOfRange(entry, byteLength, entry.length));
+                for (Segment segment : getSegmentsWithEndPoint(endPoint)) {
+                    if (segment.getStartPoint().equals(point)) {
+                        return segment;
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index of the block that may contain the first segment with an end point, i.e. the last block
+     * starting with a lower end point.
+     *
+     * @param point The end point.
+     * @return The index of the block that may contain the first segment with the end point.
+     */
+    private int findBlock(final Point point) {
+        int low = 0;
+        int high = sparseIndexEndPoints.length - 1;
+        int block = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (sparseIndexEndPoints[middle].compareTo(point) < 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Reads a block of segments.
+     *
+     * @param block The index of the block.
+     * @return An array with the segments of the block.
+     * @throws IOException Thrown if the run can't be read.
+     */
+    private Segment[] readBlock(final int block) throws IOException {
+        long start = sparseIndexOffsets[block];
+        long end = block + 1 < sparseIndexOffsets.length ? sparseIndexOffsets[block + 1] : startPointIndexOffset;
+        byte[] bytes = new byte[(int) (end - start)];
+        randomAccessFile.seek(start);
+        randomAccessFile.readFully(bytes);
+        Segment[] segments = new Segment[(int) Math.min(SPARSE_INDEX_INTERVAL,
+                numberOfSegments - (long) block * SPARSE_INDEX_INTERVAL)];
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = readSegment(input, order, hashFunction);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Opens a cursor streaming the segments of the run, sorted by end point.
+     *
+     * @return A cursor streaming the segments of the run.
+     * @throws IOException Thrown if the run can't be read.
+     */
+    Cursor<Segment> openSegmentCursor() throws IOException {
+        return new Cursor<Segment>(file, 0L, numberOfSegments, input -> readSegment(input, order, hashFunction));
+    }
+
+    /**
+     * Opens a cursor streaming the index on the start points, sorted by start point.
+     *
+     * @return A cursor streaming the entries of the index on the start points.
+     * @throws IOException Thrown if the run can't be read.
+     */
+    private Cursor<StartPointIndexEntry> openStartPointIndexCursor() throws IOException {
+        int byteLength = hashFunction.getByteLength();
+        return new Cursor<StartPointIndexEntry>(file, startPointIndexOffset, numberOfSegments,
+                input -> new StartPointIndexEntry(readPoint(input, byteLength), readPoint(input, byteLength)));
+    }
+
+    /**
+     * Opens an existing run, and rebuilds its sparse index and filters by scanning it.
+     *
+     * @param file         The file of the run.
+     * @param order        The order of the segments.
+     * @param hashFunction The hash function of the segments.
+     * @return The run.
+     * @throws IOException Thrown if the run can't be read.
+     */
+    static SegmentRun open(final Path file, final int order, final HashFunction hashFunction) throws IOException {
+        long numberOfSegments;
+        long startPointIndexOffset;
+        try (RandomAccessFile footer = new RandomAccessFile(file.toFile(), "r")) {
+            footer.seek(footer.length() - FOOTER_LENGTH);
+            numberOfSegments = footer.readLong();
+            startPointIndexOffset = footer.readLong();
+        }
+        Indexer indexer = new Indexer(hashFunction, numberOfSegments);
+        try (Cursor<Segment> segments = new Cursor<Segment>(file, 0L, numberOfSegments,
+                input -> readSegment(input, order, hashFunction))) {
+            while (segments.getCurrent() != null) {
+                indexer.indexSegment(segments.getCurrent());
+                segments.advance();
+            }
+        }
+        int byteLength = hashFunction.getByteLength();
+        try (Cursor<StartPointIndexEntry> entries = new Cursor<StartPointIndexEntry>(file, startPointIndexOffset,
+                numberOfSegments,
+                input -> new StartPointIndexEntry(readPoint(input, byteLength), readPoint(input, byteLength)))) {
+            while (entries.getCurrent() != null) {
+                indexer.indexStartPoint(entries.getCurrent().startPoint());
+                entries.advance();
+            }
+        }
+        return indexer.toRun(file, order);
+    }
+
+    /**
+     * Merges runs into a new run. Segments occurring in more than one run are written only once, and the groups of
+     * segments sharing an end point are passed to a consumer while they're merged.
+     *
+     * @param runs                   The runs to be merged.
+     * @param file                   The file of the new run.
+     * @param order                  The order of the segments.
+     * @param hashFunction           The hash function of the segments.
+     * @param collidingSegmentsGroup The consumer of the groups of segments sharing an end point.
+     * @return The new run.
+     * @throws IOException Thrown if a run can't be read or the new run can't be written.
+     */
+    static SegmentRun merge(final List<SegmentRun> runs, final Path file, final int order,
+            final HashFunction hashFunction, final Consumer<List<Segment>> collidingSegmentsGroup)
+            throws IOException {
+        long expectedNumberOfSegments = 0L;
+        for (SegmentRun run : runs) {
+            expectedNumberOfSegments += run.getNumberOfSegments();
+        }
+        try (Writer writer = new Writer(file, order, hashFunction, expectedNumberOfSegments)) {
+            PriorityQueue<Cursor<Segment>> segmentCursors = new PriorityQueue<Cursor<Segment>>(
+                    (cursor0, cursor1) -> END_POINT_COMPARATOR.compare(cursor0.getCurrent(), cursor1.getCurrent()));
+            try {
+                for (SegmentRun run : runs) {
+                    addOrClose(segmentCursors, run.openSegmentCursor());
+                }
+                List<Segment> group = new ArrayList<Segment>();
+                while (!segmentCursors.isEmpty()) {
+                    Cursor<Segment> cursor = segmentCursors.poll();
+                    Segment segment = cursor.getCurrent();
+                    if (!group.isEmpty() && !group.get(0).getEndPoint().equals(segment.getEndPoint())) {
+                        passOnIfColliding(group, collidingSegmentsGroup);
+                        group.clear();
+                    }
+                    if (group.isEmpty()
+                            || !group.get(group.size() - 1).getStartPoint().equals(segment.getStartPoint())) {
+                        group.add(segment);
+                        writer.writeSegment(segment);
+                    }
+                    cursor.advance();
+                    addOrClose(segmentCursors, cursor);
+                }
+                passOnIfColliding(group, collidingSegmentsGroup);
+            } finally {
+                for (Cursor<Segment> cursor : segmentCursors) {
+                    cursor.close();
+                }
+            }
+            PriorityQueue<Cursor<StartPointIndexEntry>> entryCursors =
+                    new PriorityQueue<Cursor<StartPointIndexEntry>>((cursor0, cursor1) -> cursor0.getCurrent()
+                            .startPoint().compareTo(cursor1.getCurrent().startPoint()));
+            try {
+                for (SegmentRun run : runs) {
+                    addOrClose(entryCursors, run.openStartPointIndexCursor());
+                }
+                Point lastStartPoint = null;
+                while (!entryCursors.isEmpty()) {
+                    Cursor<StartPointIndexEntry> cursor = entryCursors.poll();
+                    StartPointIndexEntry entry = cursor.getCurrent();
+                    if (!entry.startPoint().equals(lastStartPoint)) {
+                        writer.writeStartPointIndexEntry(entry.startPoint(), entry.endPoint());
+                        lastStartPoint = entry.startPoint();
+                    }
+                    cursor.advance();
+                    addOrClose(entryCursors, cursor);
+                }
+            } finally {
+                for (Cursor<StartPointIndexEntry> cursor : entryCursors) {
+                    cursor.close();
+                }
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Adds a cursor to a queue if it has a current element, and closes it otherwise.
+     *
+     * @param <T>    The type of the elements of the cursor.
+     * @param queue  The queue.
+     * @param cursor The cursor.
+     * @throws IOException Thrown if the cursor can't be closed.
+     */
+    private static <T> void addOrClose(final PriorityQueue<Cursor<T>> queue, final Cursor<T> cursor)
+            throws IOException {
+        if (cursor.getCurrent() == null) {
+            cursor.close();
+        } else {
+            queue.add(cursor);
+        }
+    }
+
+    /**
+     * Passes a group of segments sharing an end point on to a consumer if it contains more than one segment.
+     *
+     * @param group                  The group of segments sharing an end point.
+     * @param collidingSegmentsGroup The consumer.
+     */
+    private static void passOnIfColliding(final List<Segment> group,
+            final Consumer<List<Segment>> collidingSegmentsGroup) {
+        if (group.size() > 1) {
+            collidingSegmentsGroup.accept(List.copyOf(group));
+        }
+    }
+
+    /**
+     * Reads a point.
+     *
+     * @param input      The input to read from.
+     * @param byteLength The byte length of the point.
+     * @return The point.
+     * @throws IOException Thrown if the input can't be read.
+     */
+    private static Point readPoint(final DataInputStream input, final int byteLength) throws IOException {
+        byte[] bytes = new byte[byteLength];
+        input.readFully(bytes);
+        return new Point(bytes);
+    }
+
+    /**
+     * Reads a segment from its binary record.
+     *
+     * @param input        The input to read from.
+     * @param order        The order of the segment.
+     * @param hashFunction The hash function of the segment.
+     * @return The segment.
+     * @throws IOException Thrown if the input can't be read.
+     */
+    private static Segment readSegment(final DataInputStream input, final int order, final HashFunction hashFunction)
+            throws IOException {
+        int byteLength = hashFunction.getByteLength();
+        Point startPoint = readPoint(input, byteLength);
+        Point endPoint = readPoint(input, byteLength);
+        long length = input.readLong();
+        int checkpointDepth = input.readInt();
+        int numberOfCheckpoints = input.readInt();
+        ModifiableCollection<SegmentCheckpoint> checkpoints = ModifiableCollection.empty();
+        for (int i = 0; i < numberOfCheckpoints; i++) {
+            long position = input.readLong();
+            checkpoints.add(new SegmentCheckpoint(position, readPoint(input, byteLength)));
+        }
+        return new Segment(startPoint, endPoint, length, order, hashFunction, checkpointDepth, checkpoints);
+    }
+
+    /**
+     * Writes segments to a new run.
+     *
+     * @param segments     The segments, in any order.
+     * @param file         The file of the new run.
+     * @param order        The order of the segments.
+     * @param hashFunction The hash function of the segments.
+     * @return The new run.
+     * @throws IOException Thrown if the run can't be written.
+     */
+    static SegmentRun write(final Collection<Segment> segments, final Path file, final int order,
+            final HashFunction hashFunction) throws IOException {
+        Segment[] sortedSegments = segments.toArray(new Segment[segments.size()]);
+        try (Writer writer = new Writer(file, order, hashFunction, sortedSegments.length)) {
+            Arrays.sort(sortedSegments, END_POINT_COMPARATOR);
+            for (Segment segment : sortedSegments) {
+                writer.writeSegment(segment);
+            }
+            Arrays.sort(sortedSegments, START_POINT_COMPARATOR);
+            for (Segment segment : sortedSegments) {
+                writer.writeStartPointIndexEntry(segment.getStartPoint(), segment.getEndPoint());
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Cursor streaming a section of a run.
+     *
+     * @param <T> The type of the elements of the section.
+     */
+    static final class Cursor<T> implements AutoCloseable {
+        /**
+         * The current element, or <code>null</code> if the section is exhausted.
+         */
+        private T current;
+        /**
+         * The input stream.
+         */
+        private final DataInputStream input;
+        /**
+         * The reader of the elements.
+         */
+        private final ElementReader<T> reader;
+        /**
+         * The number of elements that remain to be read.
+         */
+        private long remaining;
+
+        /**
+         * Opens a cursor on a section of a run, and reads its first element.
+         *
+         * @param file     The file of the run.
+         * @param offset   The offset of the section.
+         * @param size     The number of elements in the section.
+         * @param reader   The reader of the elements.
+         * @throws IOException Thrown if the run can't be read.
+         */
+        private Cursor(final Path file, final long offset, final long size, final ElementReader<T> reader)
+                throws IOException {
+            InputStream inputStream = Files.newInputStream(file);
+            inputStream.skipNBytes(offset);
+            this.input = new DataInputStream(new BufferedInputStream(inputStream));
+            this.reader = reader;
+            this.remaining = size;
+            advance();
+        }
+
+        /**
+         * Reads the next element.
+         *
+         * @throws IOException Thrown if the run can't be read.
+         */
+        void advance() throws IOException {
+            if (remaining == 0L) {
+                current = null;
+            } else {
+                current = reader.read(input);
+                remaining--;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+
+        /**
+         * Returns the current element.
+         *
+         * @return The current element, or <code>null</code> if the section is exhausted.
+         */
+        T getCurrent() {
+            return current;
+        }
+    }
+
+    /**
+     * Reader of an element of a section of a run.
+     *
+     * @param <T> The type of the element.
+     */
+    @FunctionalInterface
+    private interface ElementReader<T> {
+        /**
+         * Reads an element.
+         *
+         * @param input The input to read from.
+         * @return The element.
+         * @throws IOException Thrown if the input can't be read.
+         */
+        T read(DataInputStream input) throws IOException;
+    }
+
+    /**
+     * An entry of the index on the start points.
+     *
+     * @param startPoint The start point of the segment.
+     * @param endPoint   The end point of the segment.
+     */
+    private record StartPointIndexEntry(Point startPoint, Point endPoint) {
+    }
+
+    /**
+     * Builder of the sparse index and the filters of a run, used while the run is written or scanned.
+     */
+    private static final class Indexer {
+        /**
+         * The filter on the end points.
+         */
+        private final BlockedBloomFilter endPointFilter;
+        /**
+         * The hash function of the segments.
+         */
+        private final HashFunction hashFunction;
+        /**
+         * The number of start points indexed.
+         */
+        private long numberOfStartPoints;
+        /**
+         * The number of segments indexed.
+         */
+        private long numberOfSegments;
+        /**
+         * The offset of the next segment.
+         */
+        private long offset;
+        /**
+         * The end points of the first segment of every block.
+         */
+        private final List<Point> sparseIndexEndPoints = new ArrayList<Point>();
+        /**
+         * The offsets of the first segment of every block.
+         */
+        private long[] sparseIndexOffsets = new long[1];
+        /**
+         * The filter on the start points.
+         */
+        private final BlockedBloomFilter startPointFilter;
+
+        /**
+         * Creates an indexer sized for an expected number of segments.
+         *
+         * @param hashFunction             The hash function of the segments.
+         * @param expectedNumberOfSegments The expected number of segments, used to size the filters.
+         */
+        private Indexer(final HashFunction hashFunction, final long expectedNumberOfSegments) {
+            this.hashFunction = hashFunction;
+            long capacity = Math.max(1L, expectedNumberOfSegments);
+            this.startPointFilter = BlockedBloomFilter.forExpectedInsertions(capacity, FALSE_POSITIVE_RATE);
+            this.endPointFilter = BlockedBloomFilter.forExpectedInsertions(capacity, FALSE_POSITIVE_RATE);
+        }
+
+        /**
+         * Adds the next segment to the sparse index and the filter on the end points.
+         *
+         * @param segment The segment.
+         */
+        private void indexSegment(final Segment segment) {
+            if (numberOfSegments % SPARSE_INDEX_INTERVAL == 0L) {
+                int block = sparseIndexEndPoints.size();
+                if (block == sparseIndexOffsets.length) {
+                    sparseIndexOffsets = Arrays.copyOf(sparseIndexOffsets, 2 * block);
+                }
+                sparseIndexOffsets[block] = offset;
+                sparseIndexEndPoints.add(segment.getEndPoint());
+            }
+            endPointFilter.add(segment.getEndPoint());
+            int byteLength = hashFunction.getByteLength();
+            offset += 2 * byteLength + Long.BYTES + 2 * Integer.BYTES
+                    + (long) segment.getCheckpoints().size() * (Long.BYTES + byteLength);
+            numberOfSegments++;
+        }
+
+        /**
+         * Adds the next start point to the filter on the start points.
+         *
+         * @param startPoint The start point.
+         */
+        private void indexStartPoint(final Point startPoint) {
+            startPointFilter.add(startPoint);
+            numberOfStartPoints++;
+        }
+
+        /**
+         * Creates the run from the sparse index and the filters.
+         *
+         * @param file  The file of the run.
+         * @param order The order of the segments.
+         * @return The run.
+         * @throws IOException           Thrown if the file can't be opened.
+         * @throws IllegalStateException Thrown if the number of start points differs from the number of segments.
+         */
+        private SegmentRun toRun(final Path file, final int order) throws IOException, IllegalStateException {
+            if (numberOfStartPoints != numberOfSegments) {
+                throw new IllegalStateException(String.format(
+                        "The number of start points (%d) differs from the number of segments (%d) in the run %s.",
+                        numberOfStartPoints, numberOfSegments, file.toString()));
+            }
+            int numberOfBlocks = sparseIndexEndPoints.size();
+            return new SegmentRun(file, order, hashFunction, numberOfSegments, offset,
+                    sparseIndexEndPoints.toArray(new Point[numberOfBlocks]),
+                    Arrays.copyOf(sparseIndexOffsets, numberOfBlocks), startPointFilter, endPointFilter);
+        }
+    }
+
+    /**
+     * Writer of a new run, building its sparse index and filters on the way. The segments have to be written sorted
+     * by end point first, and then the entries of the index on the start points sorted by start point.
+     */
+    private static final class Writer implements AutoCloseable {
+        /**
+         * The file of the run.
+         */
+        private final Path file;
+        /**
+         * The indexer building the sparse index and the filters.
+         */
+        private final Indexer indexer;
+        /**
+         * The order of the segments.
+         */
+        private final int order;
+        /**
+         * The output stream.
+         */
+        private final DataOutputStream output;
+
+        /**
+         * Creates a writer for a new run.
+         *
+         * @param file                     The file of the new run.
+         * @param order                    The order of the segments.
+         * @param hashFunction             The hash function of the segments.
+         * @param expectedNumberOfSegments The expected number of segments, used to size the filters.
+         * @throws IOException Thrown if the file can't be created.
+         */
+        private Writer(final Path file, final int order, final HashFunction hashFunction,
+                final long expectedNumberOfSegments) throws IOException {
+            this.file = file;
+            this.order = order;
+            this.indexer = new Indexer(hashFunction, expectedNumberOfSegments);
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+
+        /**
+         * Writes the footer, and opens the new run.
+         *
+         * @return The new run.
+         * @throws IOException Thrown if the run can't be written.
+         */
+        private SegmentRun finish() throws IOException {
+            output.writeLong(indexer.numberOfSegments);
+            output.writeLong(indexer.offset);
+            output.close();
+            return indexer.toRun(file, order);
+        }
+
+        /**
+         * Writes an entry of the index on the start points.
+         *
+         * @param startPoint The start point of the segment.
+         * @param endPoint   The end point of the segment.
+         * @throws IOException Thrown if the run can't be written.
+         */
+        private void writeStartPointIndexEntry(final Point startPoint, final Point endPoint) throws IOException {
+            output.write(startPoint.getBytes());
+            output.write(endPoint.getBytes());
+            indexer.indexStartPoint(startPoint);
+        }
+
+        /**
+         * Writes a segment as a binary record.
+         *
+         * @param segment The segment.
+         * @throws IOException Thrown if the run can't be written.
+         */
+        private void writeSegment(final Segment segment) throws IOException {
+            output.write(segment.getStartPoint().getBytes());
+            output.write(segment.getEndPoint().getBytes());
+            output.writeLong(segment.getLength());
+            output.writeInt(segment.getCheckpointDepth());
+            output.writeInt(segment.getCheckpoints().size());
+            for (SegmentCheckpoint checkpoint : segment.getCheckpoints()) {
+                output.writeLong(checkpoint.position());
+                output.write(checkpoint.point().getBytes());
+            }
+            indexer.indexSegment(segment);
+        }
+    }
+}
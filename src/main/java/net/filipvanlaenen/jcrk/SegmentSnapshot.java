@@ -0,0 +1,721 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+
+/**
+ * An immutable snapshot of the segments of a file-based segment repository, memory-mapped with its hash indexes, such
+ * that a repository can be opened without parsing and indexing its segments. A snapshot consists of a header, the
+ * segments as fixed-length records, an open addressing hash table on the start points, one on the end points, the
+ * end points shared by more than one segment, and the checkpoints of the segments. The header holds the order, the
+ * hash function, the length of the cache file covered by the snapshot, such that only the segments appended to the
+ * cache file after the snapshot was written have to be parsed, and a checksum of the last block of the cache file
+ * covered by the snapshot, such that a snapshot that doesn't match the cache file anymore can be detected. Snapshots
+ * are written to a temporary file first, and then moved into place atomically.
+ */
+final class SegmentSnapshot implements Iterable<Segment> {
+    /**
+     * The magic number at the start of a snapshot, i.e. "JCRKSNAP" in ASCII.
+     */
+    private static final long MAGIC_NUMBER = 0x4A43524B534E4150L;
+    /**
+     * The version of the snapshot format.
+     */
+    private static final int VERSION = 2;
+    /**
+     * The maximum number of bytes at the end of the covered part of the cache file included in the checksum.
+     */
+    private static final int CHECKSUM_BLOCK_SIZE = 1 << 16;
+    /**
+     * The maximum number of bytes mapped in a single buffer.
+     */
+    private static final long CHUNK_SIZE = 1L << 30;
+    /**
+     * The maximum number of segments in a snapshot, such that the hash tables can be indexed with integers.
+     */
+    private static final long MAXIMUM_NUMBER_OF_SEGMENTS = 1L << 29;
+    /**
+     * The number of bytes in a record besides its points: the length, the checkpoint depth, the offset of the
+     * checkpoints and the number of checkpoints.
+     */
+    private static final int RECORD_OVERHEAD = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+    /**
+     * The offset basis of the FNV-1a hash.
+     */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    /**
+     * The prime of the FNV-1a hash.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /**
+     * The mask to convert a byte to an unsigned integer.
+     */
+    private static final int BYTE_MASK = 0xff;
+    /**
+     * The number of bits shifted to mix the high bits of a hash into its low bits.
+     */
+    private static final int MIX_SHIFT = 29;
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+
+    /**
+     * The buffers mapping the snapshot, each of the chunk size except for the last one.
+     */
+    private final MappedByteBuffer[] buffers;
+    /**
+     * The length of the cache file covered by the snapshot.
+     */
+    private final long cacheFileOffset;
+    /**
+     * The checksum of the last block of the cache file covered by the snapshot.
+     */
+    private final long cacheFileChecksum;
+    /**
+     * The offset of the checkpoints.
+     */
+    private final long checkpointsOffset;
+    /**
+     * The offset of the end points shared by more than one segment.
+     */
+    private final long collidingEndPointsOffset;
+    /**
+     * The offset of the hash table on the end points.
+     */
+    private final long endPointTableOffset;
+    /**
+     * The file of the snapshot.
+     */
+    private final Path file;
+    /**
+     * The hash function of the segments.
+     */
+    private final HashFunction hashFunction;
+    /**
+     * The number of end points shared by more than one segment.
+     */
+    private final int numberOfCollidingEndPoints;
+    /**
+     * The number of segments.
+     */
+    private final int numberOfSegments;
+    /**
+     * The order of the segments.
+     */
+    private final int order;
+    /**
+     * The number of bytes of a point.
+     */
+    private final int pointLength;
+    /**
+     * The offset of the records.
+     */
+    private final long recordsOffset;
+    /**
+     * The number of slots of the hash tables, a power of two.
+     */
+    private final int tableSize;
+
+    /**
+     * Constructs a snapshot from its mapped buffers and the fields of its header.
+     *
+     * @param file                       The file of the snapshot.
+     * @param buffers                    The buffers mapping the snapshot.
+     * @param hashFunction               The hash function of the segments.
+     * @param order                      The order of the segments.
+     * @param cacheFileOffset            The length of the cache file covered by the snapshot.
+     * @param cacheFileChecksum          The checksum of the last block of the cache file covered by the snapshot.
+     * @param numberOfSegments           The number of segments.
+     * @param numberOfCollidingEndPoints The number of end points shared by more than one segment.
+     * @param recordsOffset              The offset of the records.
+     */
+    private SegmentSnapshot(final Path file, final MappedByteBuffer[] buffers, final HashFunction hashFunction,
+            final int order, final long cacheFileOffset, final long cacheFileChecksum, final int numberOfSegments,
+            final int numberOfCollidingEndPoints, final long recordsOffset) {
+        this.file = file;
+        this.buffers = buffers;
+        this.hashFunction = hashFunction;
+        this.order = order;
+        this.cacheFileOffset = cacheFileOffset;
+        this.cacheFileChecksum = cacheFileChecksum;
+        this.numberOfSegments = numberOfSegments;
+        this.numberOfCollidingEndPoints = numberOfCollidingEndPoints;
+        this.pointLength = hashFunction.getByteLength();
+        this.tableSize = getTableSize(numberOfSegments);
+        this.recordsOffset = recordsOffset;
+        this.endPointTableOffset = recordsOffset + (long) numberOfSegments * getRecordLength(pointLength)
+                + (long) tableSize * Integer.BYTES;
+        this.collidingEndPointsOffset = endPointTableOffset + (long) tableSize * Integer.BYTES;
+        this.checkpointsOffset = collidingEndPointsOffset + (long) numberOfCollidingEndPoints * pointLength;
+    }
+
+    /**
+     * Calculates the checksum of the last block of a cache file up to an offset, i.e. the CRC-32 of at most the
+     * checksum block size of bytes before the offset.
+     *
+     * @param channel The channel of the cache file.
+     * @param offset  The offset.
+     * @return The checksum of the last block of the cache file up to the offset.
+     * @throws IOException Thrown if the cache file can't be read.
+     */
+    static long calculateChecksum(final FileChannel channel, final long offset) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate((int) Math.min(offset, CHECKSUM_BLOCK_SIZE));
+        long position = offset - block.capacity();
+        while (block.hasRemaining()) {
+            if (channel.read(block, position + block.position()) < 0) {
+                throw new EOFException(
+                        String.format("The cache file ends before the offset of the snapshot (%d).", offset));
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(block.flip());
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the checksum of the last block of the cache file covered by the snapshot.
+     *
+     * @return The checksum of the last block of the cache file covered by the snapshot.
+     */
+    long getCacheFileChecksum() {
+        return cacheFileChecksum;
+    }
+
+    /**
+     * Returns the length of the cache file covered by the snapshot.
+     *
+     * @return The length of the cache file covered by the snapshot.
+     */
+    long getCacheFileOffset() {
+        return cacheFileOffset;
+    }
+
+    /**
+     * Returns the end points shared by more than one segment.
+     *
+     * @return A collection with the end points shared by more than one segment.
+     */
+    Collection<Point> getCollidingEndPoints() {
+        ModifiableCollection<Point> endPoints = ModifiableCollection.empty();
+        for (int i = 0; i < numberOfCollidingEndPoints; i++) {
+            endPoints.add(readPoint(collidingEndPointsOffset + (long) i * pointLength));
+        }
+        return endPoints;
+    }
+
+    /**
+     * Returns the file of the snapshot.
+     *
+     * @return The file of the snapshot.
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of segments.
+     *
+     * @return The number of segments.
+     */
+    int getNumberOfSegments() {
+        return numberOfSegments;
+    }
+
+    /**
+     * Returns the order of the segments.
+     *
+     * @return The order of the segments.
+     */
+    int getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns all the segments in the snapshot.
+     *
+     * @return A collection with all the segments in the snapshot.
+     */
+    Collection<Segment> getSegments() {
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        for (int i = 0; i < numberOfSegments; i++) {
+            segments.add(readSegment(i));
+        }
+        return segments;
+    }
+
+    /**
+     * Returns an iterator over the segments, reading them from the snapshot one by one.
+     *
+     * @return An iterator over the segments.
+     */
+    @Override
+    public Iterator<Segment> iterator() {
+        return new Iterator<Segment>() {
+            /**
+             * The index of the next segment.
+             */
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < numberOfSegments;
+            }
+
+            @Override
+            public Segment next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return readSegment(index++);
+            }
+        };
+    }
+
+    /**
+     * Returns the segments with an end point.
+     *
+     * @param point The end point.
+     * @return A collection with the segments with the end point.
+     */
+    Collection<Segment> getSegmentsWithEndPoint(final Point point) {
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        byte[] bytes = point.getBytes();
+        int slot = getSlot(bytes, tableSize - 1);
+        int entry = getEntry(endPointTableOffset, slot);
+        while (entry != 0) {
+            if (pointEquals(getRecordOffset(entry - 1) + pointLength, bytes)) {
+                segments.add(readSegment(entry - 1));
+            }
+            slot = (slot + 1) & (tableSize - 1);
+            entry = getEntry(endPointTableOffset, slot);
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the segment with a start point.
+     *
+     * @param point The start point.
+     * @return The segment with the start point, or <code>null</code> if the snapshot doesn't contain such a segment.
+     */
+    Segment getSegmentWithStartPoint(final Point point) {
+        byte[] bytes = point.getBytes();
+        long startPointTableOffset = endPointTableOffset - (long) tableSize * Integer.BYTES;
+        int slot = getSlot(bytes, tableSize - 1);
+        int entry = getEntry(startPointTableOffset, slot);
+        while (entry != 0) {
+            if (pointEquals(getRecordOffset(entry - 1), bytes)) {
+                return readSegment(entry - 1);
+            }
+            slot = (slot + 1) & (tableSize - 1);
+            entry = getEntry(startPointTableOffset, slot);
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the snapshot contains segments with an end point.
+     *
+     * @param point The end point.
+     * @return True if the snapshot contains at least one segment with the end point.
+     */
+    boolean containsSegmentsWithEndPoint(final Point point) {
+        byte[] bytes = point.getBytes();
+        int slot = getSlot(bytes, tableSize - 1);
+        int entry = getEntry(endPointTableOffset, slot);
+        while (entry != 0) {
+            if (pointEquals(getRecordOffset(entry - 1) + pointLength, bytes)) {
+                return true;
+            }
+            slot = (slot + 1) & (tableSize - 1);
+            entry = getEntry(endPointTableOffset, slot);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the entry in a slot of a hash table, i.e. the index of the record plus one, or zero if the slot is
+     * empty.
+     *
+     * @param tableOffset The offset of the hash table.
+     * @param slot        The slot.
+     * @return The entry in the slot.
+     */
+    private int getEntry(final long tableOffset, final int slot) {
+        return getInt(tableOffset + (long) slot * Integer.BYTES);
+    }
+
+    /**
+     * Returns the maximum number of segments that can be written to a snapshot, such that the hash tables can be
+     * indexed with integers, and the end points kept in memory while writing fit into a single array.
+     *
+     * @param pointLength The number of bytes of a point.
+     * @return The maximum number of segments that can be written to a snapshot.
+     */
+    private static long getMaximumNumberOfSegments(final int pointLength) {
+        return Math.min(MAXIMUM_NUMBER_OF_SEGMENTS, Integer.MAX_VALUE / pointLength);
+    }
+
+    /**
+     * Returns the length of a record.
+     *
+     * @param pointLength The number of bytes of a point.
+     * @return The length of a record.
+     */
+    private static int getRecordLength(final int pointLength) {
+        return 2 * pointLength + RECORD_OVERHEAD;
+    }
+
+    /**
+     * Returns the offset of a record.
+     *
+     * @param index The index of the record.
+     * @return The offset of the record.
+     */
+    private long getRecordOffset(final int index) {
+        return recordsOffset + (long) index * getRecordLength(pointLength);
+    }
+
+    /**
+     * Returns the home slot of a point in a hash table, using the FNV-1a hash of its bytes, such that the slots don't
+     * depend on the virtual machine.
+     *
+     * @param bytes The bytes of the point.
+     * @param mask  The mask of the hash table, i.e. its size minus one.
+     * @return The home slot of the point.
+     */
+    private static int getSlot(final byte[] bytes, final int mask) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : bytes) {
+            hash ^= b & BYTE_MASK;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> MIX_SHIFT;
+        return (int) hash & mask;
+    }
+
+    /**
+     * Returns the number of slots of the hash tables for a number of segments, i.e. the smallest power of two that's
+     * at least twice the number of segments.
+     *
+     * @param numberOfSegments The number of segments.
+     * @return The number of slots of the hash tables.
+     */
+    private static int getTableSize(final long numberOfSegments) {
+        int tableSize = 2;
+        while (tableSize < 2L * numberOfSegments) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    /**
+     * Reads a byte at an offset.
+     *
+     * @param offset The offset.
+     * @return The byte at the offset.
+     */
+    private byte getByte(final long offset) {
+        return buffers[(int) (offset / CHUNK_SIZE)].get((int) (offset % CHUNK_SIZE));
+    }
+
+    /**
+     * Reads bytes at an offset, also if they straddle two buffers.
+     *
+     * @param offset The offset.
+     * @param bytes  The array to read the bytes into.
+     */
+    private void getBytes(final long offset, final byte[] bytes) {
+        int chunk = (int) (offset / CHUNK_SIZE);
+        int position = (int) (offset % CHUNK_SIZE);
+        if (position + bytes.length <= buffers[chunk].limit()) {
+            buffers[chunk].get(position, bytes);
+        } else {
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = getByte(offset + i);
+            }
+        }
+    }
+
+    /**
+     * Reads an integer at an offset.
+     *
+     * @param offset The offset.
+     * @return The integer at the offset.
+     */
+    private int getInt(final long offset) {
+        byte[] bytes = new byte[Integer.BYTES];
+        getBytes(offset, bytes);
+        return ByteBuffer.wrap(bytes).getInt();
+    }
+
+    /**
+     * Reads a long at an offset.
+     *
+     * @param offset The offset.
+     * @return The long at the offset.
+     */
+    private long getLong(final long offset) {
+        byte[] bytes = new byte[Long.BYTES];
+        getBytes(offset, bytes);
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+
+    /**
+     * Returns true if the point at an offset has the given bytes.
+     *
+     * @param offset The offset of the point.
+     * @param bytes  The bytes.
+     * @return True if the point at the offset has the given bytes.
+     */
+    private boolean pointEquals(final long offset, final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (getByte(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a point at an offset.
+     *
+     * @param offset The offset.
+     * @return The point at the offset.
+     */
+    private Point readPoint(final long offset) {
+        byte[] bytes = new byte[pointLength];
+        getBytes(offset, bytes);
+        return new Point(bytes);
+    }
+
+    /**
+     * Reads a segment from its record and the checkpoints.
+     *
+     * @param index The index of the record.
+     * @return The segment.
+     */
+    private Segment readSegment(final int index) {
+        long offset = getRecordOffset(index);
+        Point startPoint = readPoint(offset);
+        Point endPoint = readPoint(offset + pointLength);
+        long position = offset + 2L * pointLength;
+        long length = getLong(position);
+        int checkpointDepth = getInt(position + Long.BYTES);
+        long checkpointOffset = getLong(position + Long.BYTES + Integer.BYTES);
+        int numberOfCheckpoints = getInt(position + 2L * Long.BYTES + Integer.BYTES);
+        ModifiableCollection<SegmentCheckpoint> checkpoints = ModifiableCollection.empty();
+        long checkpointPosition = checkpointsOffset + checkpointOffset;
+        for (int i = 0; i < numberOfCheckpoints; i++) {
+            checkpoints.add(new SegmentCheckpoint(getLong(checkpointPosition),
+                    readPoint(checkpointPosition + Long.BYTES)));
+            checkpointPosition += Long.BYTES + pointLength;
+        }
+        return new Segment(startPoint, endPoint, length, order, hashFunction, checkpointDepth, checkpoints);
+    }
+
+    /**
+     * Opens a snapshot by mapping it into memory and validating its header. No segments are read.
+     *
+     * @param file         The file of the snapshot.
+     * @param hashFunction The hash function of the segments.
+     * @return The snapshot, or <code>null</code> if the file doesn't exist, isn't a snapshot for the hash function, or
+     *         doesn't have the length recorded in its header.
+     * @throws IOException Thrown if the file can't be read or mapped.
+     */
+    static SegmentSnapshot open(final Path file, final HashFunction hashFunction) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileLength = channel.size();
+            byte[] expectedName = hashFunction.toString().getBytes(StandardCharsets.UTF_8);
+            int fixedHeaderLength = Long.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES;
+            int headerLength = fixedHeaderLength + expectedName.length + THREE * Long.BYTES + THREE * Integer.BYTES;
+            if (fileLength < headerLength) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            channel.read(header, 0L);
+            header.flip();
+            if (header.getLong() != MAGIC_NUMBER || header.getInt() != VERSION
+                    || header.getInt() != hashFunction.getByteLength() || header.getInt() != expectedName.length) {
+                return null;
+            }
+            byte[] name = new byte[expectedName.length];
+            header.get(name);
+            if (!Arrays.equals(name, expectedName)) {
+                return null;
+            }
+            int order = header.getInt();
+            long cacheFileOffset = header.getLong();
+            long cacheFileChecksum = header.getLong();
+            int numberOfSegments = header.getInt();
+            int numberOfCollidingEndPoints = header.getInt();
+            long checkpointsLength = header.getLong();
+            long recordsOffset = header.position();
+            if (numberOfSegments < 0 || numberOfSegments > MAXIMUM_NUMBER_OF_SEGMENTS || numberOfCollidingEndPoints < 0
+                    || numberOfCollidingEndPoints > numberOfSegments || checkpointsLength < 0L) {
+                return null;
+            }
+            int pointLength = hashFunction.getByteLength();
+            long tableSize = getTableSize(numberOfSegments);
+            long expectedLength = recordsOffset + (long) numberOfSegments * getRecordLength(pointLength)
+                    + 2L * tableSize * Integer.BYTES + (long) numberOfCollidingEndPoints * pointLength
+                    + checkpointsLength;
+            if (fileLength != expectedLength) {
+                return null;
+            }
+            MappedByteBuffer[] buffers = new MappedByteBuffer[(int) ((fileLength + CHUNK_SIZE - 1L) / CHUNK_SIZE)];
+            for (int i = 0; i < buffers.length; i++) {
+                long position = i * CHUNK_SIZE;
+                buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(CHUNK_SIZE, fileLength - position));
+            }
+            return new SegmentSnapshot(file, buffers, hashFunction, order, cacheFileOffset, cacheFileChecksum,
+                    numberOfSegments, numberOfCollidingEndPoints, recordsOffset);
+        }
+    }
+
+    /**
+     * Writes a snapshot with the segments, building its hash indexes, to a temporary file that's forced to the disk
+     * and then moved into place atomically. The segments are streamed into the snapshot: they're iterated once for the
+     * records and the hash indexes, and once more for the checkpoints, after which the number of end points shared by
+     * more than one segment and the length of the checkpoints are filled in in the header. Only the hash tables and
+     * the end points are kept in memory.
+     *
+     * @param segments          The segments, iterated twice in the same order.
+     * @param numberOfSegments  The number of segments.
+     * @param order             The order of the segments.
+     * @param hashFunction      The hash function of the segments.
+     * @param cacheFileOffset   The length of the cache file covered by the snapshot.
+     * @param cacheFileChecksum The checksum of the last block of the cache file covered by the snapshot.
+     * @param file              The file of the snapshot.
+     * @throws IOException              Thrown if the snapshot can't be written.
+     * @throws IllegalArgumentException Thrown if there are too many segments for a snapshot, or the segments don't
+     *                                  match the number of segments.
+     */
+    static void write(final Iterable<Segment> segments, final int numberOfSegments, final int order,
+            final HashFunction hashFunction, final long cacheFileOffset, final long cacheFileChecksum,
+            final Path file) throws IOException, IllegalArgumentException {
+        int pointLength = hashFunction.getByteLength();
+        long maximumNumberOfSegments = getMaximumNumberOfSegments(pointLength);
+        if (numberOfSegments > maximumNumberOfSegments) {
+            throw new IllegalArgumentException(String.format(
+                    "The number of segments (%d) exceeds the maximum for a snapshot (%d).", numberOfSegments,
+                    maximumNumberOfSegments));
+        }
+        int tableSize = getTableSize(numberOfSegments);
+        int mask = tableSize - 1;
+        int[] startPointTable = new int[tableSize];
+        int[] endPointTable = new int[tableSize];
+        byte[] endPoints = new byte[(int) ((long) numberOfSegments * pointLength)];
+        ModifiableCollection<Point> collidingEndPoints = ModifiableCollection.empty();
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            byte[] name = hashFunction.toString().getBytes(StandardCharsets.UTF_8);
+            output.writeLong(MAGIC_NUMBER);
+            output.writeInt(VERSION);
+            output.writeInt(pointLength);
+            output.writeInt(name.length);
+            output.write(name);
+            output.writeInt(order);
+            output.writeLong(cacheFileOffset);
+            output.writeLong(cacheFileChecksum);
+            output.writeInt(numberOfSegments);
+            long collidingEndPointsPosition = output.size();
+            output.writeInt(0);
+            output.writeLong(0L);
+            int index = 0;
+            long checkpointOffset = 0L;
+            for (Segment segment : segments) {
+                if (index == numberOfSegments) {
+                    throw new IllegalArgumentException(String.format(
+                            "There are more segments than the number of segments (%d).", numberOfSegments));
+                }
+                byte[] startPoint = segment.getStartPoint().getBytes();
+                byte[] endPoint = segment.getEndPoint().getBytes();
+                output.write(startPoint);
+                output.write(endPoint);
+                output.writeLong(segment.getLength());
+                output.writeInt(segment.getCheckpointDepth());
+                output.writeLong(checkpointOffset);
+                output.writeInt(segment.getCheckpoints().size());
+                checkpointOffset += segment.getCheckpoints().size() * (long) (Long.BYTES + pointLength);
+                int slot = getSlot(startPoint, mask);
+                while (startPointTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                startPointTable[slot] = index + 1;
+                int numberOfSegmentsWithEndPoint = 0;
+                slot = getSlot(endPoint, mask);
+                while (endPointTable[slot] != 0) {
+                    int other = (int) ((endPointTable[slot] - 1L) * pointLength);
+                    if (Arrays.equals(endPoints, other, other + pointLength, endPoint, 0, pointLength)) {
+                        numberOfSegmentsWithEndPoint++;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                endPointTable[slot] = index + 1;
+                System.arraycopy(endPoint, 0, endPoints, (int) ((long) index * pointLength), pointLength);
+                if (numberOfSegmentsWithEndPoint == 1) {
+                    collidingEndPoints.add(segment.getEndPoint());
+                }
+                index++;
+            }
+            if (index != numberOfSegments) {
+                throw new IllegalArgumentException(String.format(
+                        "There are fewer segments (%d) than the number of segments (%d).", index, numberOfSegments));
+            }
+            for (int entry : startPointTable) {
+                output.writeInt(entry);
+            }
+            for (int entry : endPointTable) {
+                output.writeInt(entry);
+            }
+            for (Point endPoint : collidingEndPoints) {
+                output.write(endPoint.getBytes());
+            }
+            long checkpointsLength = 0L;
+            for (Segment segment : segments) {
+                for (SegmentCheckpoint checkpoint : segment.getCheckpoints()) {
+                    output.writeLong(checkpoint.position());
+                    output.write(checkpoint.point().getBytes());
+                    checkpointsLength += Long.BYTES + pointLength;
+                }
+            }
+            output.flush();
+            if (checkpointsLength != checkpointOffset) {
+                throw new IllegalArgumentException("The segments changed while the snapshot was written.");
+            }
+            ByteBuffer counts = ByteBuffer.allocate(Integer.BYTES + Long.BYTES);
+            counts.putInt(collidingEndPoints.size()).putLong(checkpointsLength).flip();
+            while (counts.hasRemaining()) {
+                channel.write(counts, collidingEndPointsPosition + counts.position());
+            }
+            channel.force(false);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,644 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * A segment repository partitioning the segments into 2^k shards by the k bits of their end point just after the
+ * leading zeros required by the order. Every shard has its own index and lock, and, if the repository is persisted,
+ * its own cache file. Lookups by end point, and thus the checks for collisions, touch exactly one shard, and
+ * concurrent producers only contend when the end points of their segments fall in the same shard. Lookups by start
+ * point go through an index from the start points to the shards, and touch exactly one shard too. New segments are
+ * appended to the cache file of their shard. When the repository is compressed, the segments are combined shard by
+ * shard, holding only the lock of the shard being read, and redistributed over the shards for the next order. Only the
+ * segments added to the shards already combined are combined while the shards are replaced, after which the cache
+ * files are rewritten shard by shard.
+ */
+public final class ShardedSegmentRepository implements SegmentRepository {
+    /**
+     * The magic number eight.
+     */
+    private static final int EIGHT = 8;
+    /**
+     * The maximum number of bits used to select a shard.
+     */
+    private static final int MAXIMUM_SHARD_BITS = 16;
+
+    /**
+     * The base name of the cache files, or <code>null</code> if the repository isn't persisted.
+     */
+    private final String cacheFileBaseName;
+    /**
+     * The hash function.
+     */
+    private final HashFunction hashFunction;
+    /**
+     * The lock serializing the compressions.
+     */
+    private final Object compressionLock = new Object();
+    /**
+     * The lock shared by all operations on the shards, and held exclusively while the shards are replaced.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * The order of the segment repository.
+     */
+    private int order;
+    /**
+     * The number of bits used to select a shard.
+     */
+    private final int shardBits;
+    /**
+     * The shards.
+     */
+    private InMemorySegmentRepository[] shards;
+    /**
+     * The segments added to every shard after it was combined by the compression running, or <code>null</code> if no
+     * compression is running. The list of a shard is <code>null</code> until the shard is combined, and is only
+     * accessed while holding the lock of the shard.
+     */
+    private volatile List<List<Segment>> segmentsAddedWhileCompressing;
+    /**
+     * The index from the start points of the segments to the indexes of their shards.
+     */
+    private Map<Point, Integer> startPointIndex = new ConcurrentHashMap<Point, Integer>();
+
+    /**
+     * Constructs an in-memory sharded repository.
+     *
+     * @param hashFunction The hash function.
+     * @param shardBits    The number of bits used to select a shard.
+     * @throws IllegalArgumentException Thrown if the number of bits is negative or too large.
+     */
+    public ShardedSegmentRepository(final HashFunction hashFunction, final int shardBits)
+            throws IllegalArgumentException {
+        this(hashFunction, shardBits, null);
+    }
+
+    /**
+     * Constructs a sharded repository persisting every shard to its own cache file, and loads the shards from the
+     * cache files if they exist. The cache files are named after the base name with the index of the shard appended.
+     *
+     * @param hashFunction      The hash function.
+     * @param shardBits         The number of bits used to select a shard.
+     * @param cacheFileBaseName The base name of the cache files, or <code>null</code> to keep the shards in memory.
+     * @throws IllegalArgumentException Thrown if the number of bits is negative or too large.
+     */
+    public ShardedSegmentRepository(final HashFunction hashFunction, final int shardBits,
+            final String cacheFileBaseName) throws IllegalArgumentException {
+        if (shardBits < 0 || shardBits > MAXIMUM_SHARD_BITS) {
+            throw new IllegalArgumentException(String.format(
+                    "The number of shard bits (%d) should be between 0 and %d.", shardBits, MAXIMUM_SHARD_BITS));
+        }
+        this.hashFunction = hashFunction;
+        this.shardBits = shardBits;
+        this.cacheFileBaseName = cacheFileBaseName;
+        this.shards = createShards(0);
+        if (cacheFileBaseName != null) {
+            loadFromCache();
+        }
+    }
+
+    @Override
+    public boolean add(final Segment segment) throws IllegalArgumentException {
+        lock.readLock().lock();
+        try {
+            int index = getShardIndex(segment.getEndPoint(), order, shardBits);
+            InMemorySegmentRepository shard = shards[index];
+            synchronized (shard) {
+                boolean added = shard.add(segment);
+                if (added) {
+                    startPointIndex.put(segment.getStartPoint(), index);
+                    List<List<Segment>> addedWhileCompressing = segmentsAddedWhileCompressing;
+                    if (addedWhileCompressing != null && addedWhileCompressing.get(index) != null) {
+                        addedWhileCompressing.get(index).add(segment);
+                    }
+                    appendSegment(index, shard, segment);
+                }
+                return added;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a segment to the cache file of its shard if the repository is persisted. If the cache file doesn't exist
+     * yet, the shard is written to it as a whole.
+     *
+     * @param index   The index of the shard.
+     * @param shard   The shard, already containing the segment.
+     * @param segment The segment.
+     */
+    private void appendSegment(final int index, final InMemorySegmentRepository shard, final Segment segment) {
+        if (cacheFileBaseName == null) {
+            return;
+        }
+        Path cacheFile = Path.of(getCacheFileName(index));
+        if (!Files.exists(cacheFile)) {
+            writeShard(index, shard);
+            return;
+        }
+        try {
+            Files.writeString(cacheFile, FileBasedSegmentRepository.formatSegment(segment) + "\n",
+                    StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to append a segment to the file %s: %s",
+                    cacheFile.toString(), ioe.getMessage());
+        }
+    }
+
+    /**
+     * Combines segments into segments of the next order, and adds them to the new shards and their start point index.
+     *
+     * @param segments              The segments to be combined.
+     * @param newOrder              The next order.
+     * @param lowerOrderShards      The shards with the segments to combine them with.
+     * @param lowerOrderStartPoints The start point index of the shards with the segments to combine them with.
+     * @param newShards             The new shards.
+     * @param newStartPointIndex    The start point index of the new shards.
+     */
+    private void combineToOrder(final Iterable<Segment> segments, final int newOrder,
+            final InMemorySegmentRepository[] lowerOrderShards, final Map<Point, Integer> lowerOrderStartPoints,
+            final InMemorySegmentRepository[] newShards, final Map<Point, Integer> newStartPointIndex) {
+        for (Segment segment : segments) {
+            Segment newSegment = InMemorySegmentRepository.combineToOrder(segment, newOrder,
+                    point -> findSegmentWithStartPoint(lowerOrderShards, lowerOrderStartPoints, point));
+            if (newSegment != null) {
+                int index = getShardIndex(newSegment.getEndPoint(), newOrder, shardBits);
+                if (newShards[index].add(newSegment)) {
+                    newStartPointIndex.put(newSegment.getStartPoint(), index);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void compressToNextOrder() {
+        synchronized (compressionLock) {
+            InMemorySegmentRepository[] lowerOrderShards = shards;
+            Map<Point, Integer> lowerOrderStartPoints = startPointIndex;
+            int newOrder = order + 1;
+            InMemorySegmentRepository[] newShards = createShards(newOrder);
+            Map<Point, Integer> newStartPointIndex = new ConcurrentHashMap<Point, Integer>();
+            List<List<Segment>> addedWhileCompressing =
+                    new ArrayList<List<Segment>>(Collections.nCopies(lowerOrderShards.length, null));
+            segmentsAddedWhileCompressing = addedWhileCompressing;
+            for (int i = 0; i < lowerOrderShards.length; i++) {
+                Collection<Segment> segments;
+                synchronized (lowerOrderShards[i]) {
+                    segments = lowerOrderShards[i].getSegments();
+                    addedWhileCompressing.set(i, new ArrayList<Segment>());
+                }
+                combineToOrder(segments, newOrder, lowerOrderShards, lowerOrderStartPoints, newShards,
+                        newStartPointIndex);
+            }
+            lock.writeLock().lock();
+            try {
+                for (List<Segment> segments : addedWhileCompressing) {
+                    combineToOrder(segments, newOrder, lowerOrderShards, lowerOrderStartPoints, newShards,
+                            newStartPointIndex);
+                }
+                segmentsAddedWhileCompressing = null;
+                shards = newShards;
+                startPointIndex = newStartPointIndex;
+                order = newOrder;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            lock.readLock().lock();
+            try {
+                for (int i = 0; i < newShards.length; i++) {
+                    synchronized (newShards[i]) {
+                        writeShard(i, newShards[i]);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(final Segment segment) {
+        lock.readLock().lock();
+        try {
+            InMemorySegmentRepository shard = getShard(segment.getEndPoint());
+            synchronized (shard) {
+                return shard.contains(segment);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsSegmentsWithEndPoint(final Point point) {
+        lock.readLock().lock();
+        try {
+            InMemorySegmentRepository shard = getShard(point);
+            synchronized (shard) {
+                return shard.containsSegmentsWithEndPoint(point);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsSegmentWithStartPoint(final Point point) {
+        return getSegmentWithStartPoint(point) != null;
+    }
+
+    /**
+     * Creates empty shards for an order.
+     *
+     * @param newOrder The order.
+     * @return An array with empty shards.
+     */
+    private InMemorySegmentRepository[] createShards(final int newOrder) {
+        InMemorySegmentRepository[] newShards = new InMemorySegmentRepository[1 << shardBits];
+        for (int i = 0; i < newShards.length; i++) {
+            newShards[i] = new InMemorySegmentRepository(hashFunction);
+            newShards[i].setOrder(newOrder);
+        }
+        return newShards;
+    }
+
+    /**
+     * Finds the segment with a start point in the shard listed for it in the start point index.
+     *
+     * @param shardsToSearch The shards to search.
+     * @param startPoints    The index from the start points to the indexes of the shards.
+     * @param point          The start point.
+     * @return The segment with the start point, or <code>null</code> if there is none.
+     */
+    private static Segment findSegmentWithStartPoint(final InMemorySegmentRepository[] shardsToSearch,
+            final Map<Point, Integer> startPoints, final Point point) {
+        Integer index = startPoints.get(point);
+        if (index == null) {
+            return null;
+        }
+        InMemorySegmentRepository shard = shardsToSearch[index];
+        synchronized (shard) {
+            return shard.getSegmentWithStartPoint(point);
+        }
+    }
+
+    /**
+     * Returns the name of the cache file of a shard.
+     *
+     * @param index The index of the shard.
+     * @return The name of the cache file of the shard.
+     */
+    String getCacheFileName(final int index) {
+        return cacheFileBaseName + "-" + index + ".rcf";
+    }
+
+    @Override
+    public Collection<Collision> getCollisions() {
+        lock.readLock().lock();
+        try {
+            ModifiableCollection<Collision> collisions = ModifiableCollection.empty();
+            for (InMemorySegmentRepository shard : shards) {
+                synchronized (shard) {
+                    collisions.addAll(shard.getCollisions());
+                }
+            }
+            return collisions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<Point> getEndPointsWithMultipleSegments(final int minimumNumberOfSegments) {
+        lock.readLock().lock();
+        try {
+            ModifiableCollection<Point> endPoints = ModifiableCollection.empty();
+            for (InMemorySegmentRepository shard : shards) {
+                synchronized (shard) {
+                    endPoints.addAll(shard.getEndPointsWithMultipleSegments(minimumNumberOfSegments));
+                }
+            }
+            return endPoints;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getEstimatedDiskFootprint() {
+        if (cacheFileBaseName == null) {
+            return 0L;
+        }
+        long footprint = 0L;
+        try {
+            for (int i = 0; i < getNumberOfShards(); i++) {
+                Path cacheFile = Path.of(getCacheFileName(i));
+                if (Files.exists(cacheFile)) {
+                    footprint += Files.size(cacheFile);
+                }
+            }
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to measure the size of the shards: %s",
+                    ioe.getMessage());
+        }
+        return footprint;
+    }
+
+    @Override
+    public long getEstimatedMemoryFootprint() {
+        lock.readLock().lock();
+        try {
+            long footprint = 0L;
+            for (InMemorySegmentRepository shard : shards) {
+                footprint += shard.getEstimatedMemoryFootprint();
+            }
+            return footprint;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    @Override
+    public int getOrder() {
+        lock.readLock().lock();
+        try {
+            return order;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<Segment> getSegments() {
+        lock.readLock().lock();
+        try {
+            ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+            for (InMemorySegmentRepository shard : shards) {
+                synchronized (shard) {
+                    segments.addAll(shard.getSegments());
+                }
+            }
+            return segments;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<Segment> getSegmentsWithEndPoint(final Point point) {
+        lock.readLock().lock();
+        try {
+            InMemorySegmentRepository shard = getShard(point);
+            synchronized (shard) {
+                return shard.getSegmentsWithEndPoint(point);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Segment getSegmentWithStartPoint(final Point point) {
+        lock.readLock().lock();
+        try {
+            return findSegmentWithStartPoint(shards, startPointIndex, point);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the shard for an end point at the current order.
+     *
+     * @param endPoint The end point.
+     * @return The shard for the end point.
+     */
+    private InMemorySegmentRepository getShard(final Point endPoint) {
+        return shards[getShardIndex(endPoint, order, shardBits)];
+    }
+
+    /**
+     * Returns the index of the shard for an end point, i.e. the value of the bits of the end point just after the
+     * leading zeros required by the order. Bits beyond the length of the point count as zeros.
+     *
+     * @param endPoint     The end point.
+     * @param currentOrder The order.
+     * @param numberOfBits The number of bits used to select a shard.
+     * @return The index of the shard.
+     */
+    static int getShardIndex(final Point endPoint, final int currentOrder, final int numberOfBits) {
+        byte[] bytes = endPoint.getBytes();
+        int index = 0;
+        for (int i = currentOrder; i < currentOrder + numberOfBits; i++) {
+            int bit = i / EIGHT < bytes.length ? (bytes[i / EIGHT] >> (EIGHT - 1 - i % EIGHT)) & 1 : 0;
+            index = (index << 1) | bit;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return The number of shards.
+     */
+    public int getNumberOfShards() {
+        return 1 << shardBits;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean isFull() {
+        lock.readLock().lock();
+        try {
+            return new BigDecimal(2).pow(hashFunction.getBitLength() - order).equals(new BigDecimal(size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the shards from their cache files. The repository takes the highest order among the cache files, which
+     * may differ if the process was interrupted while the shards were written after a compression. Segments from a
+     * cache file at a lower order are only retained if their start and end points are distinguished at the highest
+     * order. If a cache file was at a lower order or had a torn last line, all cache files are rewritten, such that
+     * new segments can be appended to them again.
+     */
+    private void loadFromCache() {
+        try {
+            int[] orders = new int[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                orders[i] = readOrder(i);
+                order = Math.max(order, orders[i]);
+            }
+            shards = createShards(order);
+            startPointIndex.clear();
+            boolean rewrite = false;
+            for (int i = 0; i < shards.length; i++) {
+                if (orders[i] >= 0) {
+                    rewrite |= loadShard(i, orders[i]) || orders[i] != order;
+                }
+            }
+            if (rewrite) {
+                for (int i = 0; i < shards.length; i++) {
+                    writeShard(i, shards[i]);
+                }
+            }
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to load a sharded segment repository from files: %s",
+                    ioe.getMessage());
+        }
+    }
+
+    /**
+     * Checks whether a file ends with a newline, i.e. whether its last line was appended completely.
+     *
+     * @param file The file.
+     * @return True if the file ends with a newline, false otherwise.
+     * @throws IOException Thrown if the file can't be read.
+     */
+    private static boolean endsWithNewline(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() == 0L) {
+                return false;
+            }
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            channel.read(lastByte, channel.size() - 1L);
+            return lastByte.get(0) == '\n';
+        }
+    }
+
+    /**
+     * Loads the segments from the cache file of a shard. A last line without a newline was torn by an interrupted
+     * append, and is discarded.
+     *
+     * @param index     The index of the shard.
+     * @param fileOrder The order of the cache file.
+     * @return True if the last line of the cache file was torn, false otherwise.
+     * @throws IOException Thrown if the cache file can't be read.
+     */
+    private boolean loadShard(final int index, final int fileOrder) throws IOException {
+        Path cacheFile = Path.of(getCacheFileName(index));
+        boolean tornLastLine = !endsWithNewline(cacheFile);
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            reader.readLine();
+            String line = reader.readLine();
+            while (line != null) {
+                String nextLine = reader.readLine();
+                if (!line.isEmpty() && (nextLine != null || !tornLastLine)) {
+                    Segment segment = FileBasedSegmentRepository.parseSegment(line, order, hashFunction);
+                    if (fileOrder == order || segment.getStartPoint().order() >= order
+                            && segment.getEndPoint().order() >= order) {
+                        int shardIndex = getShardIndex(segment.getEndPoint(), order, shardBits);
+                        if (shards[shardIndex].add(segment)) {
+                            startPointIndex.put(segment.getStartPoint(), shardIndex);
+                        }
+                    }
+                }
+                line = nextLine;
+            }
+        }
+        if (tornLastLine) {
+            Laconic.LOGGER.logProgress("Discarded the torn last line of the file %s.", cacheFile.toString());
+        }
+        return tornLastLine;
+    }
+
+    /**
+     * Reads the order from the header of the cache file of a shard.
+     *
+     * @param index The index of the shard.
+     * @return The order of the cache file, or -1 if it doesn't exist or isn't for the hash function.
+     * @throws IOException Thrown if the cache file can't be read.
+     */
+    private int readOrder(final int index) throws IOException {
+        Path cacheFile = Path.of(getCacheFileName(index));
+        if (!Files.exists(cacheFile)) {
+            return -1;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String fileOrder = reader.readLine();
+            if (fileOrder == null || !hashFunction.toString().equals(reader.readLine())) {
+                return -1;
+            }
+            return Integer.parseInt(fileOrder);
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int size = 0;
+            for (InMemorySegmentRepository shard : shards) {
+                synchronized (shard) {
+                    size += shard.size();
+                }
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a shard to its cache file if the repository is persisted. The cache file is replaced atomically.
+     *
+     * @param index The index of the shard.
+     * @param shard The shard.
+     */
+    private void writeShard(final int index, final InMemorySegmentRepository shard) {
+        if (cacheFileBaseName == null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(shard.getOrder());
+        sb.append("\n");
+        sb.append(hashFunction.toString());
+        sb.append("\n");
+        for (Segment segment : shard.getSegments()) {
+            sb.append(FileBasedSegmentRepository.formatSegment(segment));
+            sb.append("\n");
+        }
+        Path cacheFile = Path.of(getCacheFileName(index));
+        Path temporaryFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try {
+            Files.writeString(temporaryFile, sb.toString(), StandardCharsets.UTF_8);
+            Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            Laconic.LOGGER.logError("IOException while trying to write a shard to the file %s: %s",
+                    cacheFile.toString(), ioe.getMessage());
+        }
+    }
+}
@@ -33,9 +33,17 @@ public enum StandardHashFunction implements HashFunction {
      */
     private static final int EIGHT = 8;
     /**
-     * The message digest.
+     * The name of the algorithm.
      */
-    private final MessageDigest digest;
+    private final String algorithm;
+    /**
+     * The byte length of the hash values.
+     */
+    private final int byteLength;
+    /**
+     * The message digest, one per thread, since message digests aren't thread-safe.
+     */
+    private final ThreadLocal<MessageDigest> digest;
 
     /**
      * Constructor taking the name of the algorithm as its parameter.
@@ -43,7 +51,9 @@ public enum StandardHashFunction implements HashFunction {
      * @param algorithm The name of the algorithm.
      */
     StandardHashFunction(final String algorithm) {
-        digest = getMessageDigest(algorithm);
+        this.algorithm = algorithm;
+        this.byteLength = getMessageDigest(algorithm).getDigestLength();
+        this.digest = ThreadLocal.withInitial(() -> getMessageDigest(algorithm));
     }
 
     @Override
@@ -53,7 +63,7 @@ public enum StandardHashFunction implements HashFunction {
 
     @Override
     public int getByteLength() {
-        return digest.getDigestLength();
+        return byteLength;
     }
 
     /**
@@ -62,7 +72,7 @@ public enum StandardHashFunction implements HashFunction {
      * @param algorithm The name of the algorithm.
      * @return The message digest for the algorithm, or <code>null</code> if none could be found for the given name.
      */
-    private MessageDigest getMessageDigest(final String algorithm) {
+    private static MessageDigest getMessageDigest(final String algorithm) {
         try {
             return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
@@ -72,11 +82,11 @@ public enum StandardHashFunction implements HashFunction {
 
     @Override
     public byte[] hash(final byte[] source) {
-        return digest.digest(source);
+        return digest.get().digest(source);
     }
 
     @Override
     public String toString() {
-        return digest.getAlgorithm();
+        return algorithm;
     }
 }
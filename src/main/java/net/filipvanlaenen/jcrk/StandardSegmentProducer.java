@@ -0,0 +1,119 @@
+package net.filipvanlaenen.jcrk;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Enumeration defining some standard segment producers.
+ */
+public enum StandardSegmentProducer implements SegmentProducer {
+    /**
+     * Produces new segments starting from point zero. If point zero isn't used as a start point yet, then it will be
+     * returned as the next start point. Otherwise, it'll start to count until it finds one that isn't used as a start
+     * point yet.
+     */
+    Counter {
+        /**
+         * The magic number eight.
+         */
+        private static final int EIGHT = 8;
+
+        @Override
+        public Point findNewStartPoint(final SegmentRepository segmentRepository) {
+            int byteLength = segmentRepository.getHashFunction().getByteLength();
+            int bitLength = segmentRepository.getHashFunction().getBitLength();
+            byte[] bytes = new byte[byteLength];
+            Point counter = new Point(bytes);
+            while (segmentRepository.containsSegmentWithStartPoint(counter)) {
+                counter = increment(counter, byteLength, bitLength);
+            }
+            return counter;
+        }
+
+        /**
+         * Returns an increment of a point.
+         *
+         * @param point      The point to start from.
+         * @param byteLength The byte length that should be applied to the point.
+         * @param bitLength  The bit length that should be applied to the point.
+         * @return An increment of the provided point.
+         */
+        private Point increment(final Point point, final int byteLength, final int bitLength) {
+            byte[] bytes = point.getBytes();
+            int shift = (EIGHT - (bitLength % EIGHT)) % EIGHT;
+            int byteIndex = byteLength - 1;
+            bytes[byteIndex] = (byte) (bytes[byteIndex] + (1 << shift));
+            while (bytes[byteIndex] == 0) {
+                byteIndex--;
+                bytes[byteIndex] = (byte) (bytes[byteIndex] + 1);
+            }
+            return new Point(bytes);
+        }
+    },
+    /**
+     * Produces new segments starting from point zero. If point zero isn't used as a start point yet, then it will be
+     * returned as the next start point. Otherwise, it'll go through the chain of segments starting from point zero to
+     * find the last end point. The tail of the chain is cached per segment repository, such that the chain only has to
+     * be followed from the start after the repository has been compressed to the next order.
+     */
+    ZeroPointSegmentChainExtension {
+        /**
+         * The cached chain tails, mapped by segment repository.
+         */
+        private final Map<SegmentRepository, ChainTail> chainTails = new WeakHashMap<SegmentRepository, ChainTail>();
+
+        @Override
+        public Point findNewStartPoint(final SegmentRepository segmentRepository) {
+            int byteLength = segmentRepository.getHashFunction().getByteLength();
+            byte[] bytes = new byte[byteLength];
+            Point pointZero = new Point(bytes);
+            int order = segmentRepository.getOrder();
+            synchronized (chainTails) {
+                ChainTail chainTail = chainTails.get(segmentRepository);
+                Point tail = chainTail == null || chainTail.order() != order ? pointZero : chainTail.tail();
+                if (tail == null) {
+                    return null;
+                }
+                Point newStartPoint = findEndPointMissingAsStartPoint(segmentRepository, pointZero, tail);
+                chainTails.put(segmentRepository, new ChainTail(order, newStartPoint));
+                return newStartPoint;
+            }
+        }
+
+        /**
+         * Finds the first end point that isn't already used as a start point, following the chain from its last known
+         * tail. Following the chain stops when it closes back on point zero, or when it takes more hops than there are
+         * segments in the repository.
+         *
+         * @param segmentRepository The segment repository.
+         * @param pointZero         Point zero, i.e. the start point of the chain.
+         * @param tail              The last known tail of the chain.
+         * @return The first end point that isn't used as a start point, or <code>null</code> if the chain is closed.
+         */
+        private Point findEndPointMissingAsStartPoint(final SegmentRepository segmentRepository,
+                final Point pointZero, final Point tail) {
+            int maximumNumberOfHops = segmentRepository.size();
+            int numberOfHops = 0;
+            Point newStartPoint = tail;
+            Segment segment = segmentRepository.getSegmentWithStartPoint(newStartPoint);
+            while (segment != null) {
+                newStartPoint = segment.getEndPoint();
+                numberOfHops++;
+                if (newStartPoint.equals(pointZero) || numberOfHops > maximumNumberOfHops) {
+                    return null;
+                }
+                segment = segmentRepository.getSegmentWithStartPoint(newStartPoint);
+            }
+            return newStartPoint;
+        }
+    };
+
+    /**
+     * The tail of a chain of segments at a given order of the segment repository.
+     *
+     * @param order The order of the segment repository when the tail was found.
+     * @param tail  The tail of the chain, or <code>null</code> if the chain is closed.
+     */
+    private record ChainTail(int order, Point tail) {
+    }
+}
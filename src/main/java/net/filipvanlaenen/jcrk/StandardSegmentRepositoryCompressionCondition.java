@@ -0,0 +1,16 @@
+package net.filipvanlaenen.jcrk;
+
+/**
+ * Enumeration holding some standard conditions to determine whether a segment repository should be compressed or not.
+ */
+public enum StandardSegmentRepositoryCompressionCondition implements SegmentRepositoryCompressionCondition {
+    /**
+     * Condition evaluates to true if the size of the repository is larger than the power of two of half of the order.
+     */
+    SizeLargerThanHalfOrderPowerOfTwo {
+        @Override
+        public boolean evaluate(final SegmentRepository segmentRepository) {
+            return segmentRepository.size() > Math.pow(2, segmentRepository.getOrder() / 2.0);
+        }
+    };
+}
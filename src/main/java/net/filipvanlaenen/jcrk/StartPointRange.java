@@ -0,0 +1,118 @@
+package net.filipvanlaenen.jcrk;
+
+import java.math.BigInteger;
+
+/**
+ * A range of consecutive start points assigned by a search coordinator to a worker, together with the order at which
+ * the worker should produce the segments. The start points are numbered by the value of their bits, such that a range
+ * can be represented by the index of its first start point and its size.
+ *
+ * @param order      The order at which the segments should be produced.
+ * @param firstIndex The index of the first start point in the range.
+ * @param size       The number of start points in the range.
+ */
+record StartPointRange(int order, long firstIndex, int size) {
+    /**
+     * The magic number eight.
+     */
+    private static final int EIGHT = 8;
+    /**
+     * The keyword of the message assigning a range.
+     */
+    static final String KEYWORD = "RANGE";
+
+    /**
+     * Parses a message assigning a range, consisting of the keyword, the order, the index of the first start point and
+     * the size, separated by spaces.
+     *
+     * @param message The message.
+     * @return The range.
+     * @throws IllegalArgumentException Thrown if the message doesn't assign a range.
+     */
+    static StartPointRange parse(final String message) throws IllegalArgumentException {
+        String[] parts = message.split(" ");
+        if (parts.length != 4 || !parts[0].equals(KEYWORD)) {
+            throw new IllegalArgumentException(String.format("The message \"%s\" doesn't assign a range.", message));
+        }
+        return new StartPointRange(Integer.parseInt(parts[1]), Long.parseLong(parts[2]), Integer.parseInt(parts[3]));
+    }
+
+    /**
+     * Formats the range as a message assigning it.
+     *
+     * @return A message assigning the range.
+     */
+    String format() {
+        return KEYWORD + " " + order + " " + firstIndex + " " + size;
+    }
+
+    /**
+     * Returns the number of start points available for a hash function, or <code>Long.MAX_VALUE</code> if there are
+     * more start points than can be indexed.
+     *
+     * @param hashFunction The hash function.
+     * @return The number of start points available for the hash function.
+     */
+    static long getNumberOfStartPoints(final HashFunction hashFunction) {
+        return getNumberOfStartPoints(hashFunction, 0);
+    }
+
+    /**
+     * Returns the number of start points available for a hash function at an order, or <code>Long.MAX_VALUE</code> if
+     * there are more start points than can be indexed. Only the indexes below this number produce start points with
+     * enough leading zeros for the order.
+     *
+     * @param hashFunction The hash function.
+     * @param order        The order.
+     * @return The number of start points available for the hash function at the order.
+     */
+    static long getNumberOfStartPoints(final HashFunction hashFunction, final int order) {
+        int bitLength = Math.max(hashFunction.getBitLength() - order, 0);
+        return bitLength < Long.SIZE - 1 ? 1L << bitLength : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns a start point in the range. The bits of the index are aligned to the most significant bits of the point,
+     * such that the start point is valid for a hash function with a bit length that isn't a multiple of eight.
+     *
+     * @param i            The position of the start point in the range.
+     * @param hashFunction The hash function.
+     * @return The start point.
+     */
+    Point getStartPoint(final int i, final HashFunction hashFunction) {
+        int byteLength = hashFunction.getByteLength();
+        byte[] value = BigInteger.valueOf(firstIndex + i).shiftLeft(byteLength * EIGHT - hashFunction.getBitLength())
+                .toByteArray();
+        byte[] bytes = new byte[byteLength];
+        int length = Math.min(value.length, byteLength);
+        System.arraycopy(value, value.length - length, bytes, byteLength - length, length);
+        return new Point(bytes);
+    }
+
+    /**
+     * Produces the segment from a start point in the range, extending it until it's complete or cyclic.
+     *
+     * @param i               The position of the start point in the range.
+     * @param hashFunction    The hash function.
+     * @param checkpointDepth The checkpoint depth for the segment.
+     * @return A complete or cyclic segment.
+     */
+    Segment produceSegment(final int i, final HashFunction hashFunction, final int checkpointDepth) {
+        Segment segment = new Segment(getStartPoint(i, hashFunction), order, hashFunction, checkpointDepth);
+        while (!segment.isComplete() && !segment.isCyclic()) {
+            segment.extend();
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the range reassigned at another order, e.g. after it was abandoned by a worker and the segment
+     * repository has been compressed in the meantime.
+     *
+     * @param newOrder The new order.
+     * @return The range at the new order.
+     */
+    StartPointRange withOrder(final int newOrder) {
+        return new StartPointRange(newOrder, firstIndex, size);
+    }
+}
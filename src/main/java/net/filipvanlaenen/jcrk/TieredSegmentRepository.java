@@ -0,0 +1,546 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * A segment repository with a memory tier and a disk tier, for searches that would otherwise run out of memory. New
+ * segments are added to the memory tier, an in-memory segment repository. Once the estimated memory footprint of the
+ * memory tier exceeds the heap budget, the least recently used half of the memory tier is demoted to the disk tier,
+ * such that the recently added and recently looked up segments stay in memory. The disk tier consists of runs on disk
+ * sorted by end point, which are merged in tiers: whenever the newest run is at least as large as the run before it,
+ * the two are merged, such that there are only logarithmically many runs and every segment is rewritten only
+ * logarithmically many times. Lookups and collision checks cover both tiers. The indexes and filters of the runs stay
+ * in memory too, and a warning is logged once they exceed the heap budget on their own. The disk tier is scratch
+ * space: it's deleted when the repository is closed, and left over files are deleted when a repository is constructed
+ * in the same directory.
+ */
+public final class TieredSegmentRepository implements SegmentRepository, AutoCloseable {
+    /**
+     * The initial capacity of the map keeping track of the recency of the segments.
+     */
+    private static final int INITIAL_RECENCY_CAPACITY = 16;
+    /**
+     * The load factor of the map keeping track of the recency of the segments.
+     */
+    private static final float RECENCY_LOAD_FACTOR = 0.75f;
+    /**
+     * The estimated number of bytes per segment for keeping track of the recency of the segments in the memory tier.
+     */
+    private static final long RECENCY_ENTRY_OVERHEAD = 56L;
+    /**
+     * The prefix of the names of the runs of the disk tier.
+     */
+    private static final String RUN_FILE_PREFIX = "tier-";
+    /**
+     * The extension of the names of the runs of the disk tier.
+     */
+    private static final String RUN_EXTENSION = ".run";
+
+    /**
+     * The end points shared by more than one segment that may not all be in the memory tier.
+     */
+    private final ModifiableCollection<Point> collidingEndPoints = ModifiableCollection.empty();
+    /**
+     * The directory of the disk tier.
+     */
+    private final Path directory;
+    /**
+     * The runs of the disk tier, oldest first.
+     */
+    private final List<SegmentRun> diskTier = new ArrayList<SegmentRun>();
+    /**
+     * Whether a warning has been logged that the indexes and filters of the disk tier exceed the heap budget.
+     */
+    private boolean diskTierWarningLogged;
+    /**
+     * The hash function.
+     */
+    private final HashFunction hashFunction;
+    /**
+     * The budget for the estimated memory footprint in bytes.
+     */
+    private final long heapBudget;
+    /**
+     * The memory tier.
+     */
+    private final InMemorySegmentRepository memoryTier;
+    /**
+     * The segments in the memory tier by their start point, least recently used first.
+     */
+    private final LinkedHashMap<Point, Segment> recency =
+            new LinkedHashMap<Point, Segment>(INITIAL_RECENCY_CAPACITY, RECENCY_LOAD_FACTOR, true);
+    /**
+     * The sequence number of the next run.
+     */
+    private long nextRunNumber;
+    /**
+     * The order of the segment repository.
+     */
+    private int order;
+
+    /**
+     * Constructs an empty tiered repository, deleting the runs left over in the directory.
+     *
+     * @param hashFunction The hash function.
+     * @param directory    The directory of the disk tier.
+     * @param heapBudget   The budget for the estimated memory footprint in bytes.
+     * @throws IOException              Thrown if the directory can't be created or cleaned up.
+     * @throws IllegalArgumentException Thrown if the heap budget isn't positive.
+     */
+    public TieredSegmentRepository(final HashFunction hashFunction, final Path directory, final long heapBudget)
+            throws IOException, IllegalArgumentException {
+        if (heapBudget < 1L) {
+            throw new IllegalArgumentException(
+                    String.format("The heap budget (%d) should be at least one byte.", heapBudget));
+        }
+        this.hashFunction = hashFunction;
+        this.directory = directory;
+        this.heapBudget = heapBudget;
+        this.memoryTier = new InMemorySegmentRepository(hashFunction);
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, RUN_FILE_PREFIX + "*")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean add(final Segment segment) throws IllegalArgumentException {
+        if (contains(segment)) {
+            return false;
+        }
+        memoryTier.add(segment);
+        recency.put(segment.getStartPoint(), segment);
+        if (!getSegmentsWithEndPoint(diskTier, segment.getEndPoint()).isEmpty()) {
+            addCollidingEndPoint(segment.getEndPoint());
+        }
+        if (getMemoryTierFootprint() > heapBudget) {
+            try {
+                demote(recency.size() - recency.size() / 2);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds an end point to the colliding end points, unless it's already there.
+     *
+     * @param endPoint The end point.
+     */
+    private void addCollidingEndPoint(final Point endPoint) {
+        if (!collidingEndPoints.contains(endPoint)) {
+            collidingEndPoints.add(endPoint);
+        }
+    }
+
+    /**
+     * Closes the disk tier and deletes its runs.
+     *
+     * @throws IOException Thrown if a run can't be closed or deleted.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        delete(diskTier);
+    }
+
+    /**
+     * Compacts the disk tier in tiers, i.e. merges the two newest runs as long as the newest run is at least as large
+     * as the run before it. The end points shared by segments found while merging are kept as colliding end points.
+     *
+     * @throws IOException Thrown if a run can't be read, written or deleted.
+     */
+    private void compactDiskTier() throws IOException {
+        while (diskTier.size() > 1 && diskTier.get(diskTier.size() - 1).getNumberOfSegments() >= diskTier
+                .get(diskTier.size() - 2).getNumberOfSegments()) {
+            List<SegmentRun> runsToMerge = new ArrayList<SegmentRun>(diskTier.subList(diskTier.size() - 2,
+                    diskTier.size()));
+            SegmentRun mergedRun = merge(runsToMerge);
+            diskTier.subList(diskTier.size() - 2, diskTier.size()).clear();
+            delete(runsToMerge);
+            diskTier.add(mergedRun);
+        }
+    }
+
+    @Override
+    public synchronized void compressToNextOrder() {
+        try {
+            demote(recency.size());
+            if (diskTier.size() > 1) {
+                SegmentRun mergedRun = merge(diskTier);
+                delete(diskTier);
+                diskTier.clear();
+                diskTier.add(mergedRun);
+            }
+            SegmentRun lowerOrderRun = diskTier.isEmpty() ? null : diskTier.get(0);
+            diskTier.clear();
+            order++;
+            memoryTier.setOrder(order);
+            collidingEndPoints.clear();
+            if (lowerOrderRun != null) {
+                try (SegmentRun.Cursor<Segment> cursor = lowerOrderRun.openSegmentCursor()) {
+                    while (cursor.getCurrent() != null) {
+                        Segment newSegment = InMemorySegmentRepository.combineToOrder(cursor.getCurrent(), order,
+                                point -> getSegmentWithStartPoint(lowerOrderRun, point));
+                        if (newSegment != null) {
+                            add(newSegment);
+                        }
+                        cursor.advance();
+                    }
+                }
+                lowerOrderRun.close();
+                Files.delete(lowerOrderRun.getFile());
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(final Segment segment) {
+        return segment.equals(getSegmentWithStartPoint(segment.getStartPoint()));
+    }
+
+    @Override
+    public synchronized boolean containsSegmentsWithEndPoint(final Point point) {
+        return memoryTier.containsSegmentsWithEndPoint(point) || !getSegmentsWithEndPoint(diskTier, point).isEmpty();
+    }
+
+    @Override
+    public synchronized boolean containsSegmentWithStartPoint(final Point point) {
+        return getSegmentWithStartPoint(point) != null;
+    }
+
+    /**
+     * Closes and deletes runs.
+     *
+     * @param runs The runs.
+     * @throws IOException Thrown if a run can't be closed or deleted.
+     */
+    private static void delete(final List<SegmentRun> runs) throws IOException {
+        for (SegmentRun run : runs) {
+            run.close();
+            Files.delete(run.getFile());
+        }
+    }
+
+    /**
+     * Demotes the least recently used segments of the memory tier to the disk tier. The segments are written to a new
+     * run, after which the disk tier is compacted. The end points shared by segments in the memory tier are kept as
+     * colliding end points, and so are the end points shared by segments found while merging.
+     *
+     * @param numberOfSegments The number of segments to be demoted.
+     * @throws IOException Thrown if a run can't be written, read or deleted.
+     */
+    private void demote(final int numberOfSegments) throws IOException {
+        if (numberOfSegments == 0) {
+            return;
+        }
+        for (Point endPoint : memoryTier.getEndPointsWithMultipleSegments(2)) {
+            addCollidingEndPoint(endPoint);
+        }
+        ModifiableCollection<Segment> demotedSegments = ModifiableCollection.empty();
+        List<Segment> retainedSegments = new ArrayList<Segment>();
+        Iterator<Segment> iterator = recency.values().iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            if (i < numberOfSegments) {
+                demotedSegments.add(iterator.next());
+            } else {
+                retainedSegments.add(iterator.next());
+            }
+        }
+        diskTier.add(SegmentRun.write(demotedSegments, createRunFile(), order, hashFunction));
+        compactDiskTier();
+        memoryTier.setOrder(order);
+        recency.clear();
+        for (Segment segment : retainedSegments) {
+            memoryTier.add(segment);
+            recency.put(segment.getStartPoint(), segment);
+        }
+        Laconic.LOGGER.logProgress("Demoted %d segments of order %d to disk, keeping %d segments in memory.",
+                numberOfSegments, order, retainedSegments.size());
+        long diskTierFootprint = getDiskTierFootprint();
+        if (diskTierFootprint > heapBudget && !diskTierWarningLogged) {
+            Laconic.LOGGER.logError("The indexes and filters of the disk tier (%d bytes) exceed the heap budget (%d"
+                    + " bytes) -- the repository should be compressed, or the heap budget raised.",
+                    diskTierFootprint, heapBudget);
+            diskTierWarningLogged = true;
+        }
+    }
+
+    /**
+     * Creates the file name for a new run.
+     *
+     * @return The file for the new run.
+     */
+    private Path createRunFile() {
+        return directory.resolve(String.format("%s%d-%d%s", RUN_FILE_PREFIX, order, nextRunNumber++, RUN_EXTENSION));
+    }
+
+    /**
+     * Returns the end points that may be shared by more than one segment, i.e. those found while demoting and merging
+     * and those in the memory tier.
+     *
+     * @return A collection with the end points that may be shared by more than one segment.
+     */
+    private Collection<Point> getCollidingEndPoints() {
+        ModifiableCollection<Point> endPoints = ModifiableCollection.empty();
+        endPoints.addAll(collidingEndPoints);
+        for (Point endPoint : memoryTier.getEndPointsWithMultipleSegments(2)) {
+            if (!endPoints.contains(endPoint)) {
+                endPoints.add(endPoint);
+            }
+        }
+        return endPoints;
+    }
+
+    @Override
+    public synchronized Collection<Collision> getCollisions() {
+        ModifiableCollection<Collision> collisions = ModifiableCollection.empty();
+        for (Point point : getCollidingEndPoints()) {
+            Collection<Segment> segments = getSegmentsWithEndPoint(point);
+            if (segments.size() > 1) {
+                Laconic.LOGGER.logProgress("Found %d colliding segments with end point %s.", segments.size(),
+                        point.asHexadecimalString());
+                collisions.addAll(new CollidingSegmentsCollection(segments).findCollisions());
+            }
+        }
+        return collisions;
+    }
+
+    @Override
+    public synchronized Collection<Point> getEndPointsWithMultipleSegments(final int minimumNumberOfSegments) {
+        ModifiableCollection<Point> result = ModifiableCollection.empty();
+        for (Point point : getCollidingEndPoints()) {
+            if (getSegmentsWithEndPoint(point).size() >= minimumNumberOfSegments) {
+                result.add(point);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the estimated number of bytes the indexes and filters of the runs of the disk tier occupy in memory.
+     *
+     * @return The estimated number of bytes the disk tier occupies in memory.
+     */
+    private long getDiskTierFootprint() {
+        long footprint = 0L;
+        for (SegmentRun run : diskTier) {
+            footprint += run.getEstimatedMemoryFootprint();
+        }
+        return footprint;
+    }
+
+    @Override
+    public synchronized long getEstimatedDiskFootprint() {
+        long footprint = 0L;
+        for (SegmentRun run : diskTier) {
+            try {
+                footprint += Files.size(run.getFile());
+            } catch (IOException ioe) {
+                Laconic.LOGGER.logError("IOException while trying to measure the size of a run: %s",
+                        ioe.getMessage());
+            }
+        }
+        return footprint;
+    }
+
+    /**
+     * Returns the estimated memory footprint, i.e. the segments in the memory tier with their recency, and the
+     * indexes and filters of the disk tier. Only the memory tier is held against the heap budget.
+     *
+     * @return The estimated number of bytes the repository occupies in memory.
+     */
+    @Override
+    public synchronized long getEstimatedMemoryFootprint() {
+        return getMemoryTierFootprint() + getDiskTierFootprint();
+    }
+
+    /**
+     * Returns the estimated number of bytes the segments in the memory tier with their recency occupy in memory.
+     *
+     * @return The estimated number of bytes the memory tier occupies in memory.
+     */
+    private long getMemoryTierFootprint() {
+        return memoryTier.getEstimatedMemoryFootprint() + recency.size() * RECENCY_ENTRY_OVERHEAD;
+    }
+
+    @Override
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Returns the number of segments in the memory tier.
+     *
+     * @return The number of segments in the memory tier.
+     */
+    synchronized int getMemoryTierSize() {
+        return memoryTier.size();
+    }
+
+    /**
+     * Returns the number of runs in the disk tier.
+     *
+     * @return The number of runs in the disk tier.
+     */
+    synchronized int getNumberOfDiskRuns() {
+        return diskTier.size();
+    }
+
+    /**
+     * Returns the number of segments in the repository.
+     *
+     * @return The number of segments in the repository.
+     */
+    private long getNumberOfSegments() {
+        long numberOfSegments = memoryTier.size();
+        for (SegmentRun run : diskTier) {
+            numberOfSegments += run.getNumberOfSegments();
+        }
+        return numberOfSegments;
+    }
+
+    @Override
+    public synchronized int getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns all the segments in the repository. Note that this reads the disk tier into memory.
+     *
+     * @return A collection with all the segments in the repository.
+     */
+    @Override
+    public synchronized Collection<Segment> getSegments() {
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        segments.addAll(memoryTier.getSegments());
+        for (SegmentRun run : diskTier) {
+            try (SegmentRun.Cursor<Segment> cursor = run.openSegmentCursor()) {
+                while (cursor.getCurrent() != null) {
+                    segments.add(cursor.getCurrent());
+                    cursor.advance();
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+        return segments;
+    }
+
+    @Override
+    public synchronized Collection<Segment> getSegmentsWithEndPoint(final Point point) {
+        if (diskTier.isEmpty()) {
+            return memoryTier.getSegmentsWithEndPoint(point);
+        }
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        segments.addAll(memoryTier.getSegmentsWithEndPoint(point));
+        segments.addAll(getSegmentsWithEndPoint(diskTier, point));
+        return segments;
+    }
+
+    /**
+     * Returns the segments with an end point from runs.
+     *
+     * @param runs  The runs.
+     * @param point The end point.
+     * @return A collection with the segments with the end point in the runs.
+     */
+    private static Collection<Segment> getSegmentsWithEndPoint(final List<SegmentRun> runs, final Point point) {
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        try {
+            for (SegmentRun run : runs) {
+                segments.addAll(run.getSegmentsWithEndPoint(point));
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the segment with a start point, from the memory tier if it's there, marking it as recently used, and
+     * from the disk tier otherwise.
+     *
+     * @param point The start point.
+     * @return The segment with the start point, or <code>null</code> if the repository doesn't contain such a segment.
+     */
+    @Override
+    public synchronized Segment getSegmentWithStartPoint(final Point point) {
+        Segment segment = recency.get(point);
+        for (int i = diskTier.size() - 1; segment == null && i >= 0; i--) {
+            segment = getSegmentWithStartPoint(diskTier.get(i), point);
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the segment with a start point from a run.
+     *
+     * @param run   The run.
+     * @param point The start point.
+     * @return The segment with the start point, or <code>null</code> if the run doesn't contain such a segment.
+     */
+    private static Segment getSegmentWithStartPoint(final SegmentRun run, final Point point) {
+        try {
+            return run.getSegmentWithStartPoint(point);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Merges runs of the disk tier into a new run, keeping the end points shared by segments found while merging as
+     * colliding end points.
+     *
+     * @param runs The runs to be merged.
+     * @return The merged run.
+     * @throws IOException Thrown if a run can't be read or the merged run can't be written.
+     */
+    private SegmentRun merge(final List<SegmentRun> runs) throws IOException {
+        return SegmentRun.merge(runs, createRunFile(), order, hashFunction,
+                group -> addCollidingEndPoint(group.get(0).getEndPoint()));
+    }
+
+    /**
+     * Returns true if the segment with a start point is in the memory tier, without marking it as recently used.
+     *
+     * @param point The start point.
+     * @return True if the segment with the start point is in the memory tier.
+     */
+    synchronized boolean isInMemoryTier(final Point point) {
+        return memoryTier.containsSegmentWithStartPoint(point);
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return getNumberOfSegments() == 0L;
+    }
+
+    @Override
+    public synchronized boolean isFull() {
+        BigDecimal maxSize = new BigDecimal(2).pow(hashFunction.getBitLength() - order);
+        return maxSize.equals(new BigDecimal(getNumberOfSegments()));
+    }
+
+    @Override
+    public synchronized int size() {
+        return (int) Math.min(Integer.MAX_VALUE, getNumberOfSegments());
+    }
+}
@@ -78,4 +78,13 @@ public final class TruncatedStandardHashFunction implements HashFunction {
     public int getByteLength() {
         return byteArrayLength;
     }
+
+    /**
+     * Returns the standard hash function that is truncated.
+     *
+     * @return The standard hash function that is truncated.
+     */
+    public StandardHashFunction getStandardHashFunction() {
+        return standardHashFunction;
+    }
 }
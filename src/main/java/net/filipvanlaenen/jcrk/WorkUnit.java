@@ -0,0 +1,257 @@
+package net.filipvanlaenen.jcrk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+import net.filipvanlaenen.laconic.Laconic;
+
+/**
+ * A unit of work for a search on a cluster without network connections between the nodes, but with a shared file
+ * system. Work units are exported to files, processed by workers into result files with the completed segments, and
+ * the result files are imported into the segment repository. A work unit file consists of the name of the standard
+ * hash function, the bit length of the truncation, and the range of start points, including the order at which the
+ * segments should be produced. A result file starts with the same lines, followed by the segments in the format of the
+ * cache files, and the collisions found in cyclic segments.
+ *
+ * @param hashFunction The truncated standard hash function.
+ * @param range        The range of start points.
+ */
+record WorkUnit(TruncatedStandardHashFunction hashFunction, StartPointRange range) {
+    /**
+     * The extension of work unit files.
+     */
+    static final String UNIT_EXTENSION = ".unit";
+    /**
+     * The extension of result files.
+     */
+    static final String RESULT_EXTENSION = ".result";
+    /**
+     * The number of lines imported from a result file between two evaluations of the compression condition.
+     */
+    private static final int COMPRESSION_CHECK_INTERVAL = 1024;
+
+    /**
+     * Exports a number of work units for a hash function to a directory, continuing after the ranges of the work
+     * units and result files already in the directory.
+     *
+     * @param directory     The directory.
+     * @param hashFunction  The truncated standard hash function.
+     * @param order         The order at which the segments should be produced.
+     * @param numberOfUnits The number of work units.
+     * @param rangeSize     The number of start points in a work unit.
+     * @return The files of the exported work units.
+     * @throws IOException Thrown if the directory can't be read or a work unit can't be written.
+     */
+    static Collection<Path> export(final Path directory, final TruncatedStandardHashFunction hashFunction,
+            final int order, final int numberOfUnits, final int rangeSize) throws IOException {
+        long nextIndex = findNextIndex(directory, hashFunction);
+        long numberOfStartPoints = StartPointRange.getNumberOfStartPoints(hashFunction, order);
+        ModifiableCollection<Path> files = ModifiableCollection.empty();
+        for (int i = 0; i < numberOfUnits && nextIndex < numberOfStartPoints; i++) {
+            int size = (int) Math.min(rangeSize, numberOfStartPoints - nextIndex);
+            WorkUnit unit = new WorkUnit(hashFunction, new StartPointRange(order, nextIndex, size));
+            Path file = directory.resolve(unit.getFileName());
+            unit.write(file);
+            files.add(file);
+            nextIndex += size;
+        }
+        return files;
+    }
+
+    /**
+     * Finds the index of the first start point after the ranges of the work units and result files for a hash
+     * function in a directory.
+     *
+     * @param directory    The directory.
+     * @param hashFunction The truncated standard hash function.
+     * @return The index of the first start point that hasn't been exported yet.
+     * @throws IOException Thrown if the directory can't be read.
+     */
+    private static long findNextIndex(final Path directory, final TruncatedStandardHashFunction hashFunction)
+            throws IOException {
+        long nextIndex = 0L;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(UNIT_EXTENSION) || fileName.endsWith(RESULT_EXTENSION)) {
+                    WorkUnit unit = read(file);
+                    if (unit != null && unit.hashFunction().toString().equals(hashFunction.toString())) {
+                        nextIndex = Math.max(nextIndex, unit.range().firstIndex() + unit.range().size());
+                    }
+                }
+            }
+        }
+        return nextIndex;
+    }
+
+    /**
+     * Formats the header of the work unit and result files.
+     *
+     * @return The header of the work unit and result files.
+     */
+    private String formatHeader() {
+        return hashFunction.getStandardHashFunction().name() + "\n" + hashFunction.getBitLength() + "\n"
+                + range.format() + "\n";
+    }
+
+    /**
+     * Returns the name of the work unit file, consisting of the hash function, the bit length and the index of the
+     * first start point.
+     *
+     * @return The name of the work unit file.
+     */
+    String getFileName() {
+        return hashFunction.getStandardHashFunction() + "-" + hashFunction.getBitLength() + "-" + range.firstIndex()
+                + UNIT_EXTENSION;
+    }
+
+    /**
+     * Returns the result file for a work unit file, i.e. the file with the same name but the extension of result
+     * files.
+     *
+     * @param unitFile The work unit file.
+     * @return The result file.
+     */
+    static Path getResultFile(final Path unitFile) {
+        String fileName = unitFile.getFileName().toString();
+        if (fileName.endsWith(UNIT_EXTENSION)) {
+            fileName = fileName.substring(0, fileName.length() - UNIT_EXTENSION.length());
+        }
+        return unitFile.resolveSibling(fileName + RESULT_EXTENSION);
+    }
+
+    /**
+     * Imports a result file into a segment repository. The result file is streamed line by line, such that it doesn't
+     * have to fit into memory. Since segments already in the segment repository are ignored, importing a result file
+     * more than once is harmless. The compression condition is evaluated once every batch of lines, and once more at
+     * the end of the result file.
+     *
+     * @param resultFile      The result file.
+     * @param segmentImporter The importer for the segment repository.
+     * @param hashFunction    The hash function of the segment repository.
+     * @return The collisions found.
+     * @throws IOException Thrown if the result file can't be read.
+     */
+    static Collection<Collision> importResult(final Path resultFile, final SegmentImporter segmentImporter,
+            final HashFunction hashFunction) throws IOException {
+        ModifiableCollection<Collision> collisions = ModifiableCollection.empty();
+        try (BufferedReader reader = Files.newBufferedReader(resultFile, StandardCharsets.UTF_8)) {
+            WorkUnit unit = read(reader);
+            if (unit == null || !unit.hashFunction().toString().equals(hashFunction.toString())) {
+                Laconic.LOGGER.logError("The result file %s doesn't contain segments for %s.", resultFile.toString(),
+                        hashFunction.toString());
+                return collisions;
+            }
+            long numberOfLines = 0L;
+            String line = reader.readLine();
+            while (line != null) {
+                if (!line.isEmpty()) {
+                    if (numberOfLines++ % COMPRESSION_CHECK_INTERVAL == 0L) {
+                        segmentImporter.compressIfNeeded();
+                    }
+                    Collision collision = segmentImporter.importLine(line, unit.range().order());
+                    if (collision != null && !collisions.contains(collision)) {
+                        collisions.add(collision);
+                    }
+                }
+                line = reader.readLine();
+            }
+        }
+        segmentImporter.compressIfNeeded();
+        return collisions;
+    }
+
+    /**
+     * Processes the work unit into a result file, unless the result file already exists. The segments are streamed to
+     * a temporary file with a unique name, which is moved to the result file once the work unit is completed, such
+     * that an interrupted work unit can be processed again, and nodes processing the same work unit don't clobber each
+     * other's temporary files.
+     *
+     * @param resultFile      The result file.
+     * @param checkpointDepth The checkpoint depth for the segments.
+     * @return True if the work unit was processed, false if the result file already existed.
+     * @throws IOException Thrown if the result file can't be written.
+     */
+    boolean process(final Path resultFile, final int checkpointDepth) throws IOException {
+        if (Files.exists(resultFile)) {
+            Laconic.LOGGER.logProgress("The result file %s exists already.", resultFile.toString());
+            return false;
+        }
+        Path temporaryFile = Files.createTempFile(resultFile.toAbsolutePath().getParent(),
+                resultFile.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writer.write(formatHeader());
+            for (int i = 0; i < range.size(); i++) {
+                Segment segment = range.produceSegment(i, hashFunction, checkpointDepth);
+                if (segment.isCyclic()) {
+                    Collision collision = segment.asCyclicSegment().findCollision();
+                    if (collision != null) {
+                        writer.write(SegmentImporter.formatCollision(collision));
+                        writer.write("\n");
+                    }
+                } else {
+                    writer.write(FileBasedSegmentRepository.formatSegment(segment));
+                    writer.write("\n");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        Files.move(temporaryFile, resultFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Reads the header of a work unit or result file.
+     *
+     * @param reader The reader of the file.
+     * @return The work unit, or <code>null</code> if the header can't be parsed.
+     * @throws IOException Thrown if the file can't be read.
+     */
+    private static WorkUnit read(final BufferedReader reader) throws IOException {
+        String hashFunctionName = reader.readLine();
+        String bitLength = reader.readLine();
+        String range = reader.readLine();
+        if (hashFunctionName == null || bitLength == null || range == null) {
+            return null;
+        }
+        try {
+            return new WorkUnit(new TruncatedStandardHashFunction(StandardHashFunction.valueOf(hashFunctionName),
+                    Integer.parseInt(bitLength)), StartPointRange.parse(range));
+        } catch (IllegalArgumentException iae) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a work unit from a work unit or result file.
+     *
+     * @param file The file.
+     * @return The work unit, or <code>null</code> if the file isn't a work unit or result file.
+     * @throws IOException Thrown if the file can't be read.
+     */
+    static WorkUnit read(final Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Writes the work unit to a file.
+     *
+     * @param file The file.
+     * @throws IOException Thrown if the file can't be written.
+     */
+    void write(final Path file) throws IOException {
+        Files.writeString(file, formatHeader(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,91 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>BatchCollisionSearch</code>.
+ */
+public class BatchCollisionSearchTest {
+    /**
+     * The order of the segments in the search.
+     */
+    private static final int ORDER = 4;
+    /**
+     * The number of start points in a batch.
+     */
+    private static final int BATCH_SIZE = 32;
+    /**
+     * The number of records in the sort buffer.
+     */
+    private static final int SORT_BUFFER_SIZE = 16;
+    /**
+     * The magic number seventeen.
+     */
+    private static final int SEVENTEEN = 17;
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+
+    /**
+     * Deletes a directory with the files in it.
+     *
+     * @param directory The directory.
+     * @throws IOException Thrown if the directory can't be deleted.
+     */
+    private static void delete(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * A batch search finds a valid collision.
+     *
+     * @throws IOException          Thrown if the search can't write its files.
+     * @throws InterruptedException Thrown if the search is interrupted.
+     */
+    @Test
+    public void findCollisionShouldFindAValidCollision() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("jcrk");
+        Collision collision = new BatchCollisionSearch(SHA1_TRUNCATED_TO_16_BITS, ORDER, directory, BATCH_SIZE,
+                SORT_BUFFER_SIZE, 2).findCollision();
+        assertNotNull(collision);
+        Point hashValue = collision.points().get().hash(SHA1_TRUNCATED_TO_16_BITS);
+        for (Point point : collision.points()) {
+            assertEquals(hashValue, point.hash(SHA1_TRUNCATED_TO_16_BITS));
+        }
+        delete(directory);
+    }
+
+    /**
+     * The order should not exceed the bit length of the hash function.
+     */
+    @Test
+    public void constructorShouldRejectAnOrderLargerThanTheBitLength() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchCollisionSearch(SHA1_TRUNCATED_TO_16_BITS,
+                SEVENTEEN, Path.of("."), BATCH_SIZE, SORT_BUFFER_SIZE, 1));
+    }
+
+    /**
+     * The batch size should be positive.
+     */
+    @Test
+    public void constructorShouldRejectANonPositiveBatchSize() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchCollisionSearch(SHA1_TRUNCATED_TO_16_BITS, ORDER,
+                Path.of("."), 0, SORT_BUFFER_SIZE, 1));
+    }
+}
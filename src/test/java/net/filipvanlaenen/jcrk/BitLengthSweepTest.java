@@ -0,0 +1,152 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+
+/**
+ * Unit tests on the class <code>BitLengthSweep</code>.
+ */
+public class BitLengthSweepTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The magic number four.
+     */
+    private static final int FOUR = 4;
+    /**
+     * The magic number five.
+     */
+    private static final int FIVE = 5;
+    /**
+     * The magic number six.
+     */
+    private static final int SIX = 6;
+
+    /**
+     * Creates a sweep with in-memory segment repositories.
+     *
+     * @param minimumBitLength The minimum bit length.
+     * @param maximumBitLength The maximum bit length.
+     * @param hashFunctions    The standard hash functions.
+     * @return A sweep with in-memory segment repositories.
+     */
+    private static BitLengthSweep createSweep(final int minimumBitLength, final int maximumBitLength,
+            final StandardHashFunction... hashFunctions) {
+        return new BitLengthSweep(OrderedCollection.of(hashFunctions), minimumBitLength, maximumBitLength, 2,
+                InMemorySegmentRepository::new);
+    }
+
+    /**
+     * Deletes a directory with the files in it.
+     *
+     * @param directory The directory.
+     * @throws IOException Thrown if the directory can't be deleted.
+     */
+    private static void delete(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Verifies that the jobs are scheduled with the smallest bit lengths first.
+     */
+    @Test
+    public void getJobsShouldScheduleTheSmallestBitLengthsFirst() {
+        OrderedCollection<BitLengthSweep.Job> jobs =
+                createSweep(THREE, FIVE, StandardHashFunction.SHA256, StandardHashFunction.SHA1).getJobs();
+        assertEquals(SIX, jobs.size());
+        assertEquals(new BitLengthSweep.Job(StandardHashFunction.SHA1, THREE), jobs.getAt(0));
+        assertEquals(new BitLengthSweep.Job(StandardHashFunction.SHA256, THREE), jobs.getAt(1));
+        assertEquals(new BitLengthSweep.Job(StandardHashFunction.SHA1, FOUR), jobs.getAt(2));
+        assertEquals(new BitLengthSweep.Job(StandardHashFunction.SHA256, FIVE), jobs.getAt(FIVE));
+    }
+
+    /**
+     * Verifies that an empty range of bit lengths is rejected.
+     */
+    @Test
+    public void constructorShouldRejectAnEmptyRangeOfBitLengths() {
+        assertThrows(IllegalArgumentException.class, () -> createSweep(FIVE, THREE, StandardHashFunction.SHA1));
+    }
+
+    /**
+     * Verifies that the results are sorted by hash function first, and then by bit length.
+     *
+     * @throws InterruptedException Thrown if the sweep is interrupted.
+     */
+    @Test
+    public void runShouldReturnTheResultsSortedByHashFunctionAndBitLength() throws InterruptedException {
+        OrderedCollection<BitLengthSweep.Result> results =
+                createSweep(THREE, FOUR, StandardHashFunction.SHA224, StandardHashFunction.SHA1).run();
+        assertEquals(FOUR, results.size());
+        assertEquals(StandardHashFunction.SHA1, results.getAt(0).hashFunction());
+        assertEquals(THREE, results.getAt(0).bitLength());
+        assertEquals(StandardHashFunction.SHA224, results.getAt(THREE).hashFunction());
+        assertEquals(FOUR, results.getAt(THREE).bitLength());
+    }
+
+    /**
+     * Verifies that a collision is formatted as a row for the tables in the README file.
+     *
+     * @throws InterruptedException Thrown if the sweep is interrupted.
+     */
+    @Test
+    public void toTableRowShouldFormatACollisionAsInTheReadmeFile() throws InterruptedException {
+        BitLengthSweep.Result result = createSweep(THREE, THREE, StandardHashFunction.SHA1).run().getAt(0);
+        assertTrue(result.toTableRow().startsWith("| 3 | `80` and `A0` | `C0` | 80 | "));
+    }
+
+    /**
+     * Verifies that a cyclic result space is formatted as a row for the tables in the README file.
+     *
+     * @throws InterruptedException Thrown if the sweep is interrupted.
+     */
+    @Test
+    public void toTableRowShouldFormatACyclicResultSpaceAsInTheReadmeFile() throws InterruptedException {
+        BitLengthSweep.Result result = createSweep(THREE, THREE, StandardHashFunction.SHA224).run().getAt(0);
+        assertTrue(result.toTableRow().startsWith("| 3 | Cyclic result space | N/A | N/A | "));
+    }
+
+    /**
+     * Verifies that the segment repository of every job is closed when the job is finished.
+     *
+     * @throws InterruptedException Thrown if the sweep is interrupted.
+     * @throws IOException          Thrown if the temporary directory can't be created or cleaned up.
+     */
+    @Test
+    public void runShouldCloseTheSegmentRepositoryOfEveryJob() throws InterruptedException, IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        List<FileBasedSegmentRepository> repositories =
+                Collections.synchronizedList(new ArrayList<FileBasedSegmentRepository>());
+        new BitLengthSweep(OrderedCollection.of(StandardHashFunction.SHA1), THREE, FOUR, 2, hashFunction -> {
+            FileBasedSegmentRepository repository = new FileBasedSegmentRepository(
+                    directory.resolve(hashFunction.getBitLength() + ".rcf").toString(), hashFunction);
+            repositories.add(repository);
+            return repository;
+        }).run();
+        assertEquals(2, repositories.size());
+        for (FileBasedSegmentRepository repository : repositories) {
+            assertTrue(repository.isClosed());
+        }
+        delete(directory);
+    }
+}
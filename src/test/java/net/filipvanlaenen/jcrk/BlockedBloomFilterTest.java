@@ -0,0 +1,133 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the <code>BlockedBloomFilter</code> class.
+ */
+public class BlockedBloomFilterTest {
+    /**
+     * The magic number four.
+     */
+    private static final int FOUR = 4;
+    /**
+     * The magic number sixty-four.
+     */
+    private static final int SIXTY_FOUR = 64;
+    /**
+     * The magic number twenty.
+     */
+    private static final int TWENTY = 20;
+    /**
+     * The target false positive rate used in the tests.
+     */
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * The number of points used in the tests on the false positive rate.
+     */
+    private static final int NUMBER_OF_POINTS = 1000;
+    /**
+     * The point 0x0000.
+     */
+    private static final Point POINT_0000 = new Point((byte) 0x00, (byte) 0x00);
+    /**
+     * The point 0x0001.
+     */
+    private static final Point POINT_0001 = new Point((byte) 0x00, (byte) 0x01);
+
+    /**
+     * Creates a point from an integer.
+     *
+     * @param i The integer.
+     * @return A point with the bytes of the integer.
+     */
+    private static Point createPoint(final int i) {
+        return new Point(ByteBuffer.allocate(Integer.BYTES).putInt(i).array());
+    }
+
+    /**
+     * Verifies that an empty filter doesn't contain a point.
+     */
+    @Test
+    public void emptyFilterShouldNotContainAPoint() {
+        assertFalse(new BlockedBloomFilter(1, FOUR).mightContain(POINT_0000));
+    }
+
+    /**
+     * Verifies that a filter contains a point after it has been added.
+     */
+    @Test
+    public void filterShouldContainAPointAfterItHasBeenAdded() {
+        BlockedBloomFilter filter = new BlockedBloomFilter(1, FOUR);
+        filter.add(POINT_0001);
+        assertTrue(filter.mightContain(POINT_0001));
+    }
+
+    /**
+     * Verifies that a filter doesn't contain a point anymore after it has been cleared.
+     */
+    @Test
+    public void filterShouldNotContainAPointAfterItHasBeenCleared() {
+        BlockedBloomFilter filter = new BlockedBloomFilter(1, FOUR);
+        filter.add(POINT_0001);
+        filter.clear();
+        assertFalse(filter.mightContain(POINT_0001));
+    }
+
+    /**
+     * Verifies that a filter never produces false negatives.
+     */
+    @Test
+    public void filterShouldNotProduceFalseNegatives() {
+        BlockedBloomFilter filter = BlockedBloomFilter.forExpectedInsertions(NUMBER_OF_POINTS, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < NUMBER_OF_POINTS; i++) {
+            filter.add(createPoint(i));
+        }
+        for (int i = 0; i < NUMBER_OF_POINTS; i++) {
+            assertTrue(filter.mightContain(createPoint(i)));
+        }
+    }
+
+    /**
+     * Verifies that a filter sized for the number of points has a low false positive rate.
+     */
+    @Test
+    public void filterSizedForTheNumberOfPointsShouldHaveALowFalsePositiveRate() {
+        BlockedBloomFilter filter = BlockedBloomFilter.forExpectedInsertions(NUMBER_OF_POINTS, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < NUMBER_OF_POINTS; i++) {
+            filter.add(createPoint(i));
+        }
+        int falsePositives = 0;
+        for (int i = NUMBER_OF_POINTS; i < 2 * NUMBER_OF_POINTS; i++) {
+            if (filter.mightContain(createPoint(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < NUMBER_OF_POINTS / TWENTY);
+    }
+
+    /**
+     * Verifies that the byte size of a filter is the number of blocks times 64.
+     */
+    @Test
+    public void byteSizeShouldBeSixtyFourBytesPerBlock() {
+        assertEquals(FOUR * SIXTY_FOUR, new BlockedBloomFilter(FOUR, 1).getByteSize());
+    }
+
+    /**
+     * Verifies that the constructor rejects a filter without blocks.
+     */
+    @Test
+    public void constructorShouldThrowIllegalArgumentExceptionIfThereAreNoBlocks() {
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> new BlockedBloomFilter(0, FOUR));
+        assertEquals("The number of blocks (0) should be at least one.", exception.getMessage());
+    }
+}
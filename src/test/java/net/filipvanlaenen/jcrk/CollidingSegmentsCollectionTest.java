@@ -7,6 +7,9 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.Map;
+import net.filipvanlaenen.kolektoj.ModifiableMap;
+import net.filipvanlaenen.kolektoj.hash.ModifiableHashMap;
 
 /**
  * Unit tests on the class <code>CollidingSegmentsCollection</code>.
@@ -24,6 +27,14 @@ public class CollidingSegmentsCollectionTest {
      * The magic number four.
      */
     private static final int FOUR = 4;
+    /**
+     * The number of bits in a byte.
+     */
+    private static final int BITS_IN_A_BYTE = 8;
+    /**
+     * The number of start points of order four for a 16 bits hash function.
+     */
+    private static final int NUMBER_OF_START_POINTS = 4096;
     /**
      * The magic number seven.
      */
@@ -42,6 +53,11 @@ public class CollidingSegmentsCollectionTest {
      */
     private static final TruncatedStandardHashFunction TRUNCATED_SHA1_8_BITS =
             new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 8);
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final TruncatedStandardHashFunction TRUNCATED_SHA1_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
     /**
      * The hash function SHA-256 truncated to 8 bits.
      */
@@ -55,10 +71,18 @@ public class CollidingSegmentsCollectionTest {
      * The point 0x02.
      */
     private static final Point POINT_02 = new Point((byte) 0x02);
+    /**
+     * The point 0x06.
+     */
+    private static final Point POINT_06 = new Point((byte) 0x06);
     /**
      * The point 0x0A.
      */
     private static final Point POINT_0A = new Point((byte) 0x0A);
+    /**
+     * The point 0x0B.
+     */
+    private static final Point POINT_0B = new Point((byte) 0x0B);
     /**
      * The point 0x20.
      */
@@ -71,6 +95,14 @@ public class CollidingSegmentsCollectionTest {
      * The point 0x58.
      */
     private static final Point POINT_58 = new Point((byte) 0x58);
+    /**
+     * The point 0x52.
+     */
+    private static final Point POINT_52 = new Point((byte) 0x52);
+    /**
+     * The point 0xBA.
+     */
+    private static final Point POINT_BA = new Point((byte) 0xBA);
     /**
      * The point 0xC4.
      */
@@ -230,4 +262,195 @@ public class CollidingSegmentsCollectionTest {
     public void segmentComparatorReturnsPositiveNumberWhenComparingLongSegmentToShortSegment() {
         assertTrue(CollidingSegmentsCollection.SEGMENT_COMPARATOR.compare(SEGMENT_0A_02, SEGMENT_02_02) > 0);
     }
+
+    /**
+     * Verifies that for a pair of colliding segments, the multi-way walk finds the same collision as the two-way walk.
+     */
+    @Test
+    public void findMultiCollisionShouldFindCollisionOfTwoSegments() {
+        CollidingSegmentsCollection collidingSegments =
+                new CollidingSegmentsCollection(Collection.of(SEGMENT_02_02, SEGMENT_0A_02));
+        assertEquals(new Collision(TRUNCATED_SHA1_8_BITS, POINT_02, POINT_3C), collidingSegments.findMultiCollision());
+    }
+
+    /**
+     * Verifies that for three segments merging in the same point, the multi-way walk finds the 3-collision.
+     */
+    @Test
+    public void findMultiCollisionShouldFindThreeCollision() {
+        Segment s0 = new Segment(POINT_0B, POINT_06, 1, 0, TRUNCATED_SHA1_8_BITS);
+        Segment s1 = new Segment(POINT_52, POINT_06, 1, 0, TRUNCATED_SHA1_8_BITS);
+        Segment s2 = new Segment(POINT_BA, POINT_06, 1, 0, TRUNCATED_SHA1_8_BITS);
+        CollidingSegmentsCollection collidingSegments = new CollidingSegmentsCollection(Collection.of(s0, s1, s2));
+        assertEquals(new Collision(TRUNCATED_SHA1_8_BITS, POINT_0B, POINT_52, POINT_BA),
+                collidingSegments.findMultiCollision());
+    }
+
+    /**
+     * Verifies that for three segments merging in the same point, a single collision with three points is found.
+     */
+    @Test
+    public void findCollisionsShouldFindOneCollisionForThreeSegmentsMergingInTheSamePoint() {
+        Segment s0 = new Segment(POINT_0B, POINT_06, 1, 0, TRUNCATED_SHA1_8_BITS);
+        Segment s1 = new Segment(POINT_52, POINT_06, 1, 0, TRUNCATED_SHA1_8_BITS);
+        Segment s2 = new Segment(POINT_BA, POINT_06, 1, 0, TRUNCATED_SHA1_8_BITS);
+        Collection<Collision> collisions = new CollidingSegmentsCollection(Collection.of(s0, s1, s2)).findCollisions();
+        assertEquals(1, collisions.size());
+        assertTrue(collisions.contains(new Collision(TRUNCATED_SHA1_8_BITS, POINT_0B, POINT_52, POINT_BA)));
+    }
+
+    /**
+     * Verifies that a collision is found for every merge point in the tree of segments feeding an end point, such that
+     * the numbers of points of the collisions add up to one less than the number of segments.
+     */
+    @Test
+    public void findCollisionsShouldFindACollisionForEveryMergePoint() {
+        ModifiableMap<Point, Segment> segmentsByEndPoint =
+                new ModifiableHashMap<Point, Segment>(Map.KeyAndValueCardinality.DUPLICATE_KEYS_WITH_DISTINCT_VALUES);
+        for (int i = 0; i < NUMBER_OF_START_POINTS; i++) {
+            Point startPoint = new Point((byte) (i >> BITS_IN_A_BYTE), (byte) i);
+            Segment segment = new Segment(startPoint, FOUR, TRUNCATED_SHA1_16_BITS);
+            while (!segment.isComplete() && !segment.isCyclic()) {
+                segment.extend();
+            }
+            if (!segment.isCyclic()) {
+                segmentsByEndPoint.add(segment.getEndPoint(), segment);
+            }
+        }
+        int numberOfTreesWithSeveralMergePoints = 0;
+        for (Point endPoint : segmentsByEndPoint.getKeys()) {
+            Collection<Segment> segments = segmentsByEndPoint.getAll(endPoint);
+            if (segments.size() > 2) {
+                Collection<Collision> collisions = new CollidingSegmentsCollection(segments).findCollisions();
+                int numberOfMergedPaths = 0;
+                for (Collision collision : collisions) {
+                    Point image = collision.points().get().hash(TRUNCATED_SHA1_16_BITS);
+                    for (Point point : collision.points()) {
+                        assertEquals(image, point.hash(TRUNCATED_SHA1_16_BITS));
+                    }
+                    numberOfMergedPaths += collision.points().size() - 1;
+                }
+                assertEquals(segments.size() - 1, numberOfMergedPaths);
+                if (collisions.size() > 1) {
+                    numberOfTreesWithSeveralMergePoints++;
+                }
+            }
+        }
+        assertTrue(numberOfTreesWithSeveralMergePoints > 0);
+    }
+
+    /**
+     * Verifies that the collisions found using checkpoints to localise the merge intervals are the same as the
+     * collisions found without checkpoints.
+     */
+    @Test
+    public void findCollisionsWithCheckpointsShouldFindTheSameCollisionsAsWithoutCheckpoints() {
+        ModifiableMap<Point, Segment> segmentsByEndPoint =
+                new ModifiableHashMap<Point, Segment>(Map.KeyAndValueCardinality.DUPLICATE_KEYS_WITH_DISTINCT_VALUES);
+        for (int i = 0; i < NUMBER_OF_START_POINTS; i++) {
+            Point startPoint = new Point((byte) (i >> BITS_IN_A_BYTE), (byte) i);
+            Segment segment = new Segment(startPoint, FOUR, TRUNCATED_SHA1_16_BITS, THREE);
+            while (!segment.isComplete() && !segment.isCyclic()) {
+                segment.extend();
+            }
+            if (!segment.isCyclic()) {
+                segmentsByEndPoint.add(segment.getEndPoint(), segment);
+            }
+        }
+        int numberOfCheckedTrees = 0;
+        for (Point endPoint : segmentsByEndPoint.getKeys()) {
+            Collection<Segment> segments = segmentsByEndPoint.getAll(endPoint);
+            if (segments.size() > 2) {
+                ModifiableMap<Point, Segment> segmentsWithoutCheckpoints = new ModifiableHashMap<Point, Segment>();
+                for (Segment segment : segments) {
+                    segmentsWithoutCheckpoints.add(segment.getStartPoint(), withoutCheckpoints(segment));
+                }
+                Collection<Collision> expected =
+                        new CollidingSegmentsCollection(segmentsWithoutCheckpoints.getValues()).findCollisions();
+                Collection<Collision> actual = new CollidingSegmentsCollection(segments).findCollisions();
+                assertEquals(expected.size(), actual.size());
+                for (Collision collision : expected) {
+                    assertTrue(actual.contains(collision));
+                }
+                numberOfCheckedTrees++;
+            }
+        }
+        assertTrue(numberOfCheckedTrees > 0);
+    }
+
+    /**
+     * Verifies that the collision involving a segment is the collision at the merge point where its path joins the
+     * paths of the other segments, with all the preimages of that merge point.
+     */
+    @Test
+    public void findCollisionsWithShouldFindTheCollisionAtTheMergePointOfTheSegment() {
+        ModifiableMap<Point, Segment> segmentsByEndPoint =
+                new ModifiableHashMap<Point, Segment>(Map.KeyAndValueCardinality.DUPLICATE_KEYS_WITH_DISTINCT_VALUES);
+        for (int i = 0; i < NUMBER_OF_START_POINTS; i++) {
+            Point startPoint = new Point((byte) (i >> BITS_IN_A_BYTE), (byte) i);
+            Segment segment = new Segment(startPoint, FOUR, TRUNCATED_SHA1_16_BITS);
+            while (!segment.isComplete() && !segment.isCyclic()) {
+                segment.extend();
+            }
+            if (!segment.isCyclic()) {
+                segmentsByEndPoint.add(segment.getEndPoint(), segment);
+            }
+        }
+        int numberOfCheckedSegments = 0;
+        for (Point endPoint : segmentsByEndPoint.getKeys()) {
+            Collection<Segment> segments = segmentsByEndPoint.getAll(endPoint);
+            if (segments.size() > 2) {
+                CollidingSegmentsCollection collidingSegments = new CollidingSegmentsCollection(segments);
+                Collection<Collision> collisions = collidingSegments.findCollisions();
+                for (Segment segment : segments) {
+                    Collection<Collision> collisionsWithSegment = collidingSegments.findCollisionsWith(segment);
+                    assertEquals(1, collisionsWithSegment.size());
+                    assertTrue(collisions.contains(collisionsWithSegment.get()));
+                    numberOfCheckedSegments++;
+                }
+            }
+        }
+        assertTrue(numberOfCheckedSegments > 0);
+    }
+
+    /**
+     * Verifies that the collision found using checkpoints is the same as the collision found without checkpoints.
+     */
+    @Test
+    public void findCollisionWithCheckpointsShouldFindTheSameCollisionAsWithoutCheckpoints() {
+        ModifiableMap<Point, Segment> segmentsByEndPoint = new ModifiableHashMap<Point, Segment>();
+        int numberOfCollidingPairs = 0;
+        for (int i = 0; i < NUMBER_OF_START_POINTS && numberOfCollidingPairs < THREE; i++) {
+            Point startPoint = new Point((byte) (i >> BITS_IN_A_BYTE), (byte) i);
+            Segment segment = new Segment(startPoint, FOUR, TRUNCATED_SHA1_16_BITS, THREE);
+            while (!segment.isComplete() && !segment.isCyclic()) {
+                segment.extend();
+            }
+            if (segment.isCyclic()) {
+                continue;
+            }
+            if (segmentsByEndPoint.containsKey(segment.getEndPoint())) {
+                Segment other = segmentsByEndPoint.get(segment.getEndPoint());
+                Collision expected = new CollidingSegmentsCollection(
+                        Collection.of(withoutCheckpoints(segment), withoutCheckpoints(other))).findCollision();
+                Collision actual = new CollidingSegmentsCollection(Collection.of(segment, other)).findCollision();
+                assertEquals(expected, actual);
+                numberOfCollidingPairs++;
+            } else {
+                segmentsByEndPoint.add(segment.getEndPoint(), segment);
+            }
+        }
+        assertEquals(THREE, numberOfCollidingPairs);
+    }
+
+    /**
+     * Returns a copy of a segment without its checkpoints.
+     *
+     * @param segment The segment.
+     * @return A copy of the segment without its checkpoints.
+     */
+    private static Segment withoutCheckpoints(final Segment segment) {
+        return new Segment(segment.getStartPoint(), segment.getEndPoint(), segment.getLength(), segment.getOrder(),
+                segment.getHashFunction());
+    }
 }
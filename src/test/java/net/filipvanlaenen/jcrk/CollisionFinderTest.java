@@ -1,13 +1,24 @@
 package net.filipvanlaenen.jcrk;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+
 /**
  * An integration test on the CollisionFinder class.
  */
@@ -27,6 +38,11 @@ public class CollisionFinderTest {
      */
     private static final TruncatedStandardHashFunction SHA1_TRUNCATED_TO_9_BITS =
             new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 9);
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final TruncatedStandardHashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
     /**
      * The hash function SHA-1 truncated to 8 bits.
      */
@@ -49,10 +65,22 @@ public class CollisionFinderTest {
      */
     private static final Point POINT_3680 = new Point((byte) 0x36, (byte) 0x80);
 
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
     /**
      * The magic number four.
      */
     private static final int FOUR = 4;
+    /**
+     * The magic number five.
+     */
+    private static final int FIVE = 5;
+    /**
+     * The seed for the random segment producer.
+     */
+    private static final long SEED = 42L;
 
     /**
      * Verifies that if the segment producer can't produce a collision, null is returned.
@@ -61,10 +89,22 @@ public class CollisionFinderTest {
     public void collisionFinderReturnsNullIfSegmentProducerCanNotProduceACollision() {
         SegmentRepository repository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_1_BITS);
         CollisionFinder finder = new CollisionFinder(repository,
-                SegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
         assertNull(finder.findCollision());
     }
 
+    /**
+     * Verifies that no collision is logged if the segment producer can't produce a collision.
+     */
+    @Test
+    public void collisionFinderShouldNotLogACollisionIfItCanNotProduceOne() {
+        ByteArrayOutputStream outputStream = LaconicConfigurator.resetLaconicOutputStream();
+        CollisionFinder finder = new CollisionFinder(new InMemorySegmentRepository(SHA1_TRUNCATED_TO_1_BITS),
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+        assertNull(finder.findCollision());
+        assertFalse(outputStream.toString().contains("Found a collision."));
+    }
+
     /**
      * Verifies that the collision found is correct.
      */
@@ -73,7 +113,7 @@ public class CollisionFinderTest {
         ByteArrayOutputStream outputStream = LaconicConfigurator.resetLaconicOutputStream();
         SegmentRepository segmentRepository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_8_BITS);
         CollisionFinder finder = new CollisionFinder(segmentRepository,
-                SegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
         Collision collision = finder.findCollision();
         assertEquals(collision, new Collision(SHA1_TRUNCATED_TO_8_BITS, POINT_02, POINT_3C));
         assertEquals(segmentRepository.getOrder(), FOUR);
@@ -88,7 +128,7 @@ public class CollisionFinderTest {
         ByteArrayOutputStream outputStream = LaconicConfigurator.resetLaconicOutputStream();
         SegmentRepository segmentRepository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_9_BITS);
         CollisionFinder finder = new CollisionFinder(segmentRepository,
-                SegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
         Collision collision = finder.findCollision();
         assertEquals(collision, new Collision(SHA1_TRUNCATED_TO_9_BITS, POINT_0C00, POINT_3680));
         assertEquals(segmentRepository.getOrder(), FOUR);
@@ -103,9 +143,147 @@ public class CollisionFinderTest {
         ByteArrayOutputStream outputStream = LaconicConfigurator.resetLaconicOutputStream();
         SegmentRepository segmentRepository = new InMemorySegmentRepository(SHA224_TRUNCATED_TO_3_BITS);
         CollisionFinder finder = new CollisionFinder(segmentRepository,
-                SegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
         finder.findCollision();
         assertTrue(
                 outputStream.toString().contains("No collision found -- the hash function has a cyclic result space."));
     }
+
+    /**
+     * Verifies that in multi-collision mode, a collision with the requested number of points is found, and that all
+     * the points have the same hash value.
+     */
+    @Test
+    public void collisionFinderMustFindMultiCollision() {
+        SegmentRepository segmentRepository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_16_BITS);
+        CollisionFinder finder = new CollisionFinder(segmentRepository,
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo,
+                OrderedCollection.<SegmentProducer>of(new RandomSegmentProducer(SEED)), 0, THREE);
+        Collision collision = finder.findCollision();
+        assertTrue(collision.points().size() >= THREE);
+        Point hashValue = collision.points().get().hash(SHA1_TRUNCATED_TO_16_BITS);
+        for (Point point : collision.points()) {
+            assertEquals(hashValue, point.hash(SHA1_TRUNCATED_TO_16_BITS));
+        }
+    }
+
+    /**
+     * Verifies that in multi-collision mode, the deterministic default segment producers move past cyclic start
+     * points, such that a multi-collision is found.
+     */
+    @Test
+    public void collisionFinderMustFindMultiCollisionWithTheDefaultSegmentProducers() {
+        SegmentRepository segmentRepository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_16_BITS);
+        CollisionFinder finder = new CollisionFinder(segmentRepository,
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo,
+                OrderedCollection.<SegmentProducer>of(StandardSegmentProducer.ZeroPointSegmentChainExtension,
+                        StandardSegmentProducer.Counter),
+                0, THREE);
+        Collision collision = finder.findCollision();
+        assertNotNull(collision);
+        assertTrue(collision.points().size() >= THREE);
+        Point hashValue = collision.points().get().hash(SHA1_TRUNCATED_TO_16_BITS);
+        for (Point point : collision.points()) {
+            assertEquals(hashValue, point.hash(SHA1_TRUNCATED_TO_16_BITS));
+        }
+    }
+
+    /**
+     * Verifies that the constructor throws an IllegalArgumentException if the multiplicity is less than two.
+     */
+    @Test
+    public void constructorThrowsIllegalArgumentExceptionIfMultiplicityIsLessThanTwo() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> new CollisionFinder(new InMemorySegmentRepository(SHA1_TRUNCATED_TO_16_BITS),
+                        StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo,
+                        OrderedCollection.<SegmentProducer>of(new RandomSegmentProducer(SEED)), 0, 1));
+        assertEquals("The multiplicity (1) should be at least two.", exception.getMessage());
+    }
+
+    /**
+     * Verifies that the stream of collisions returns distinct, correct collisions from the same repository.
+     */
+    @Test
+    public void findCollisionsShouldReturnDistinctCollisions() {
+        SegmentRepository segmentRepository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_16_BITS);
+        CollisionFinder finder = new CollisionFinder(segmentRepository,
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo,
+                OrderedCollection.<SegmentProducer>of(new RandomSegmentProducer(SEED)));
+        List<Collision> collisions = finder.findCollisions().limit(FIVE).toList();
+        assertEquals(FIVE, collisions.size());
+        assertEquals(FIVE, Set.copyOf(collisions).size());
+        for (Collision collision : collisions) {
+            Point hashValue = collision.points().get().hash(SHA1_TRUNCATED_TO_16_BITS);
+            for (Point point : collision.points()) {
+                assertEquals(hashValue, point.hash(SHA1_TRUNCATED_TO_16_BITS));
+            }
+        }
+    }
+
+    /**
+     * Verifies that the metrics record the search for a collision.
+     */
+    @Test
+    public void findCollisionShouldRecordTheSearchInTheMetrics() {
+        SegmentRepository segmentRepository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_9_BITS);
+        CollisionFinder finder = new CollisionFinder(segmentRepository,
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+        finder.findCollision();
+        SearchMetrics metrics = finder.getMetrics();
+        assertEquals(1L, metrics.getNumberOfCollisions());
+        assertEquals(1L, metrics.getNumberOfCyclicSegments());
+        assertEquals(FOUR, metrics.getCurrentOrder());
+        assertEquals(segmentRepository.size(), metrics.getRepositorySize());
+        assertEquals(FOUR, metrics.getNumberOfCompressions());
+        assertTrue(metrics.getNumberOfHashes() >= metrics.getNumberOfSegments());
+        assertTrue(metrics.getNumberOfSegments() > segmentRepository.size());
+    }
+
+    /**
+     * Verifies that the progress on single segments isn't logged by default.
+     */
+    @Test
+    public void findCollisionShouldNotLogSingleSegmentsByDefault() {
+        ByteArrayOutputStream outputStream = LaconicConfigurator.resetLaconicOutputStream();
+        CollisionFinder finder = new CollisionFinder(new InMemorySegmentRepository(SHA1_TRUNCATED_TO_8_BITS),
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+        finder.findCollision();
+        assertFalse(outputStream.toString().contains("Starting on a new segment"));
+        assertFalse(outputStream.toString().contains("Completed a segment"));
+    }
+
+    /**
+     * Verifies that the progress on single segments is logged when tracing is enabled.
+     */
+    @Test
+    public void findCollisionShouldLogSingleSegmentsWhenTracing() {
+        ByteArrayOutputStream outputStream = LaconicConfigurator.resetLaconicOutputStream();
+        CollisionFinder finder = new CollisionFinder(new InMemorySegmentRepository(SHA1_TRUNCATED_TO_8_BITS),
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+        finder.setTraceEnabled(true);
+        finder.findCollision();
+        assertTrue(outputStream.toString().contains("Starting on a new segment of order 0 with start point 00."));
+        assertTrue(outputStream.toString().contains("Completed a segment of order 0 with start point 00"));
+    }
+
+    /**
+     * Verifies that a segment checkpointed to the in-flight segment store is resumed, and that the checkpoint is
+     * removed once the segment is completed.
+     *
+     * @throws IOException Thrown if the temporary checkpoint file can't be created.
+     */
+    @Test
+    public void findCollisionShouldResumeTheInFlightSegment() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".inflight");
+        InFlightSegmentStore store = new InFlightSegmentStore(file, Duration.ofHours(1L));
+        store.save(new Segment(POINT_02, 0, SHA1_TRUNCATED_TO_8_BITS));
+        ByteArrayOutputStream outputStream = LaconicConfigurator.resetLaconicOutputStream();
+        CollisionFinder finder = new CollisionFinder(new InMemorySegmentRepository(SHA1_TRUNCATED_TO_8_BITS),
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo);
+        finder.setInFlightSegmentStore(store);
+        assertNotNull(finder.findCollision());
+        assertTrue(
+                outputStream.toString().contains("Resuming the segment of order 0 with start point 02 at length 0."));
+        assertFalse(Files.exists(file));
+    }
 }
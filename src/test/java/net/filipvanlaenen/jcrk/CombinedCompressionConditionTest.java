@@ -0,0 +1,60 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the <code>CombinedCompressionCondition</code> class.
+ */
+public class CombinedCompressionConditionTest {
+    /**
+     * A condition that always evaluates to true.
+     */
+    private static final SegmentRepositoryCompressionCondition TRUE = segmentRepository -> true;
+    /**
+     * A condition that always evaluates to false.
+     */
+    private static final SegmentRepositoryCompressionCondition FALSE = segmentRepository -> false;
+    /**
+     * An empty segment repository.
+     */
+    private static final SegmentRepository REPOSITORY = new InMemorySegmentRepository(StandardHashFunction.SHA1);
+
+    /**
+     * Combining in mode any evaluates to true if one of the conditions evaluates to true.
+     */
+    @Test
+    public void anyShouldEvaluateToTrueIfOneConditionEvaluatesToTrue() {
+        assertTrue(new CombinedCompressionCondition(CombinedCompressionCondition.Mode.ANY, FALSE, TRUE)
+                .evaluate(REPOSITORY));
+    }
+
+    /**
+     * Combining in mode any evaluates to false if none of the conditions evaluates to true.
+     */
+    @Test
+    public void anyShouldEvaluateToFalseIfNoConditionEvaluatesToTrue() {
+        assertFalse(new CombinedCompressionCondition(CombinedCompressionCondition.Mode.ANY, FALSE, FALSE)
+                .evaluate(REPOSITORY));
+    }
+
+    /**
+     * Combining in mode all evaluates to false if one of the conditions evaluates to false.
+     */
+    @Test
+    public void allShouldEvaluateToFalseIfOneConditionEvaluatesToFalse() {
+        assertFalse(new CombinedCompressionCondition(CombinedCompressionCondition.Mode.ALL, TRUE, FALSE)
+                .evaluate(REPOSITORY));
+    }
+
+    /**
+     * Combining in mode all evaluates to true if all of the conditions evaluate to true.
+     */
+    @Test
+    public void allShouldEvaluateToTrueIfAllConditionsEvaluateToTrue() {
+        assertTrue(new CombinedCompressionCondition(CombinedCompressionCondition.Mode.ALL, TRUE, TRUE)
+                .evaluate(REPOSITORY));
+    }
+}
@@ -1,8 +1,13 @@
 package net.filipvanlaenen.jcrk;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.junit.jupiter.api.Test;
 
@@ -10,6 +15,20 @@ import org.junit.jupiter.api.Test;
  * Unit tests on the CommandLineInterface class.
  */
 public class CommandLineInterfaceTest {
+    /**
+     * The number of bytes in a mebibyte.
+     */
+    private static final long MEBIBYTE = 1024L * 1024L;
+    /**
+     * The magic number five.
+     */
+    private static final long FIVE = 5L;
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA256, 8);
+
     /**
      * Verifies correct reporting when no collision can be found.
      */
@@ -19,4 +38,128 @@ public class CommandLineInterfaceTest {
         CommandLineInterface.Command.ANALYZE.execute(new String[] {"analyze", "SHA224", "3"});
         assertTrue(outputStream.toString().contains("No collision found."));
     }
+
+    /**
+     * Verifies that the value of an option is extracted from the arguments.
+     */
+    @Test
+    public void getOptionShouldReturnTheValueOfTheOption() {
+        assertEquals("42", CommandLineInterface.getOption(new String[] {"analyze", "--seed=42"}, "seed", null));
+    }
+
+    /**
+     * Verifies that the default value is returned for an absent option.
+     */
+    @Test
+    public void getOptionShouldReturnTheDefaultValueForAnAbsentOption() {
+        assertEquals("0", CommandLineInterface.getOption(new String[] {"analyze"}, "seed", "0"));
+    }
+
+    /**
+     * Verifies that options are filtered out of the positional arguments.
+     */
+    @Test
+    public void getPositionalArgumentsShouldFilterOutOptions() {
+        String[] positionalArgs =
+                CommandLineInterface.getPositionalArguments(new String[] {"analyze", "--filter", "SHA1", "--seed=1"});
+        assertEquals(2, positionalArgs.length);
+        assertEquals("SHA1", positionalArgs[1]);
+    }
+
+    /**
+     * Verifies that byte sizes with a binary prefix are parsed correctly.
+     */
+    @Test
+    public void parseByteSizeShouldApplyBinaryPrefixes() {
+        assertEquals(FIVE * MEBIBYTE, CommandLineInterface.parseByteSize("5M"));
+    }
+
+    /**
+     * Verifies that the default compression condition is parsed correctly.
+     */
+    @Test
+    public void parseCompressionConditionShouldParseTheDefaultCondition() {
+        assertEquals(StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo,
+                CommandLineInterface.parseCompressionCondition("half-order"));
+    }
+
+    /**
+     * Verifies that combined compression conditions are parsed correctly.
+     */
+    @Test
+    public void parseCompressionConditionShouldParseCombinedConditions() {
+        assertTrue(CommandLineInterface.parseCompressionCondition("memory:1G,ratio:0.5+disk:2G")
+                instanceof CombinedCompressionCondition);
+    }
+
+    /**
+     * Verifies that an unknown compression condition is rejected.
+     */
+    @Test
+    public void parseCompressionConditionShouldRejectUnknownConditions() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> CommandLineInterface.parseCompressionCondition("never"));
+        assertEquals("Unknown compression condition \"never\".", exception.getMessage());
+    }
+
+    /**
+     * Verifies that the sort buffer of a batch search is parsed as a number of records, and not as a byte size.
+     */
+    @Test
+    public void batchShouldRejectASortBufferThatIsNotANumberOfRecords() {
+        assertThrows(IllegalArgumentException.class, () -> CommandLineInterface.Command.BATCH
+                .execute(new String[] {"batch", "SHA1", "16", "--sort-buffer=4M"}));
+        assertThrows(IllegalArgumentException.class, () -> CommandLineInterface.Command.BATCH
+                .execute(new String[] {"batch", "SHA1", "16", "--sort-buffer=2147483648"}));
+    }
+
+    /**
+     * Verifies that the detection interval of a batch search is parsed as a number of start points, and that values
+     * that don't fit into an integer are rejected.
+     */
+    @Test
+    public void batchShouldRejectADetectionIntervalThatIsNotANumberOfStartPoints() {
+        assertThrows(IllegalArgumentException.class, () -> CommandLineInterface.Command.BATCH
+                .execute(new String[] {"batch", "SHA1", "16", "--detection-interval=1M"}));
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> CommandLineInterface.Command.BATCH
+                        .execute(new String[] {"batch", "SHA1", "16", "--detection-interval=2147483648"}));
+        assertEquals("The detection interval (2147483648) should be a number of start points between 1 and 2147483647.",
+                exception.getMessage());
+    }
+
+    /**
+     * Verifies that the name of a standard hash function is parsed ignoring case and hyphens.
+     */
+    @Test
+    public void parseHashFunctionShouldIgnoreCaseAndHyphens() {
+        assertEquals(StandardHashFunction.SHA224, CommandLineInterface.parseHashFunction("sha-224"));
+    }
+
+    /**
+     * Verifies that a file-based segment repository is opened with a durability policy with parameters.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created or deleted.
+     */
+    @Test
+    public void openFileBasedSegmentRepositoryShouldParseAFlushPolicy() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository = CommandLineInterface.openFileBasedSegmentRepository(
+                cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS, "flush:16:500");
+        assertTrue(repository.isEmpty());
+        repository.close();
+        Files.delete(cacheFile);
+        Files.deleteIfExists(cacheFile.resolveSibling(cacheFile.getFileName() + ".snapshot"));
+    }
+
+    /**
+     * Verifies that unknown durability policies are rejected.
+     */
+    @Test
+    public void openFileBasedSegmentRepositoryShouldRejectUnknownPolicies() {
+        assertThrows(IllegalArgumentException.class, () -> CommandLineInterface
+                .openFileBasedSegmentRepository("jcrk.rcf", SHA256_TRUNCATED_TO_8_BITS, "sometimes"));
+        assertThrows(IllegalArgumentException.class, () -> CommandLineInterface
+                .openFileBasedSegmentRepository("jcrk.rcf", SHA256_TRUNCATED_TO_8_BITS, "fsync:16"));
+    }
 }
@@ -1,6 +1,7 @@
 package net.filipvanlaenen.jcrk;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
@@ -8,6 +9,18 @@ import org.junit.jupiter.api.Test;
  * Unit tests on the <code>CyclicSegment</code> class.
  */
 public class CyclicSegmentTest {
+    /**
+     * The number of bits in a byte.
+     */
+    private static final int BITS_IN_A_BYTE = 8;
+    /**
+     * The minimal bit length of the truncated hash functions to be tested.
+     */
+    private static final int MINIMAL_BIT_LENGTH = 3;
+    /**
+     * The maximal bit length of the truncated hash functions to be tested.
+     */
+    private static final int MAXIMAL_BIT_LENGTH = 12;
     /**
      * Point 0x0300.
      */
@@ -59,4 +72,51 @@ public class CyclicSegmentTest {
         Collision collision = cyclicSegment.findCollision();
         assertEquals(collision, new Collision(SHA1_TRUNCATED_TO_9_BITS, POINT_0C00, POINT_3680));
     }
+
+    /**
+     * Verifies that the collision found using the cycle's bounds is the same as the collision found by measuring the
+     * cycle, for all cyclic segments on small truncations of the standard hash functions.
+     */
+    @Test
+    public void findCollisionShouldFindTheSameCollisionAsByMeasuringTheCycle() {
+        int numberOfCyclicSegments = 0;
+        for (StandardHashFunction standardHashFunction : StandardHashFunction.values()) {
+            for (int bitLength = MINIMAL_BIT_LENGTH; bitLength <= MAXIMAL_BIT_LENGTH; bitLength++) {
+                HashFunction hashFunction = new TruncatedStandardHashFunction(standardHashFunction, bitLength);
+                for (int order = 1; order < bitLength; order++) {
+                    for (int i = 0; i < 1 << (bitLength - order); i++) {
+                        Point startPoint = createPoint(i, hashFunction);
+                        Segment segment = new Segment(startPoint, order, hashFunction);
+                        while (!segment.isComplete() && !segment.isCyclic()) {
+                            segment.extend();
+                        }
+                        if (segment.isCyclic()) {
+                            CyclicSegment cyclicSegment = segment.asCyclicSegment();
+                            assertEquals(cyclicSegment.findCollisionByMeasuringCycle(), cyclicSegment.findCollision());
+                            numberOfCyclicSegments++;
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(numberOfCyclicSegments > 0);
+    }
+
+    /**
+     * Creates the point with a given index for a hash function, i.e. the point having the index as its value when the
+     * unused trailing bits are ignored.
+     *
+     * @param index        The index of the point.
+     * @param hashFunction The hash function.
+     * @return The point with the given index.
+     */
+    private static Point createPoint(final int index, final HashFunction hashFunction) {
+        int byteLength = hashFunction.getByteLength();
+        long value = (long) index << (byteLength * BITS_IN_A_BYTE - hashFunction.getBitLength());
+        byte[] bytes = new byte[byteLength];
+        for (int j = 0; j < byteLength; j++) {
+            bytes[j] = (byte) (value >> ((byteLength - 1 - j) * BITS_IN_A_BYTE));
+        }
+        return new Point(bytes);
+    }
 }
@@ -0,0 +1,72 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the <code>ExpectedCollisionRatioCompressionCondition</code> class.
+ */
+public class ExpectedCollisionRatioCompressionConditionTest {
+    /**
+     * The SHA-1 hash algorithm truncated to eight bits.
+     */
+    private static final TruncatedStandardHashFunction TRUNCATED_SHA1 =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 8);
+    /**
+     * The magic number eight.
+     */
+    private static final int EIGHT = 8;
+    /**
+     * The magic number sixteen.
+     */
+    private static final double SIXTEEN = 16D;
+    /**
+     * The precision for comparisons of doubles.
+     */
+    private static final double PRECISION = 0.000001D;
+    /**
+     * A ratio of a twentieth.
+     */
+    private static final double ONE_TWENTIETH = 0.05D;
+
+    /**
+     * The expected number of segments of order zero is the square root of π/2 times 2 to the power of the bit length.
+     */
+    @Test
+    public void expectedNumberOfSegmentsOfOrderZeroShouldFollowTheBirthdayParadox() {
+        assertEquals(Math.sqrt(Math.PI / 2D) * SIXTEEN,
+                ExpectedCollisionRatioCompressionCondition.calculateExpectedNumberOfSegments(EIGHT, 0), PRECISION);
+    }
+
+    /**
+     * The expected number of segments halves with every order.
+     */
+    @Test
+    public void expectedNumberOfSegmentsShouldHalveWithEveryOrder() {
+        assertEquals(ExpectedCollisionRatioCompressionCondition.calculateExpectedNumberOfSegments(EIGHT, 0) / 2D,
+                ExpectedCollisionRatioCompressionCondition.calculateExpectedNumberOfSegments(EIGHT, 1), PRECISION);
+    }
+
+    /**
+     * An empty repository should not be compressed.
+     */
+    @Test
+    public void emptyRepositoryShouldNotBeCompressed() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_SHA1);
+        assertFalse(new ExpectedCollisionRatioCompressionCondition(ONE_TWENTIETH).evaluate(repository));
+    }
+
+    /**
+     * A repository exceeding the ratio should be compressed.
+     */
+    @Test
+    public void repositoryExceedingTheRatioShouldBeCompressed() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_SHA1);
+        repository.add(new Segment(new Point((byte) 0x00), new Point((byte) 0x01), 1, 0, TRUNCATED_SHA1));
+        repository.add(new Segment(new Point((byte) 0x01), new Point((byte) 0x02), 1, 0, TRUNCATED_SHA1));
+        assertTrue(new ExpectedCollisionRatioCompressionCondition(ONE_TWENTIETH).evaluate(repository));
+    }
+}
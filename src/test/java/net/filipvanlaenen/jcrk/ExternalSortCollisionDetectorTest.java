@@ -0,0 +1,204 @@
+package net.filipvanlaenen.jcrk;
+
+import static net.filipvanlaenen.jcrk.StandardHashFunction.SHA256;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import net.filipvanlaenen.kolektoj.Collection;
+
+/**
+ * Unit tests on the class <code>ExternalSortCollisionDetector</code>.
+ */
+public class ExternalSortCollisionDetectorTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The number of segments spilled to force several merge passes.
+     */
+    private static final int NUMBER_OF_SEGMENTS = 300;
+    /**
+     * The mask to convert an integer to a byte.
+     */
+    private static final int BYTE_MASK = 0xff;
+    /**
+     * The magic number eight.
+     */
+    private static final int EIGHT = 8;
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS = new TruncatedStandardHashFunction(SHA256, 8);
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+    /**
+     * The point 0x00.
+     */
+    private static final Point POINT_00 = new Point((byte) 0x00);
+    /**
+     * The point 0x01.
+     */
+    private static final Point POINT_01 = new Point((byte) 0x01);
+    /**
+     * The point 0x02.
+     */
+    private static final Point POINT_02 = new Point((byte) 0x02);
+    /**
+     * The point 0x6E.
+     */
+    private static final Point POINT_6E = new Point((byte) 0x6e);
+    /**
+     * The point 0x9C.
+     */
+    private static final Point POINT_9C = new Point((byte) 0x9c);
+
+    /**
+     * Deletes a directory with the files in it.
+     *
+     * @param directory The directory.
+     * @throws IOException Thrown if the directory can't be deleted.
+     */
+    private static void delete(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Creates a two-byte point from an integer.
+     *
+     * @param value The value of the point.
+     * @return The point.
+     */
+    private static Point point(final int value) {
+        return new Point((byte) ((value >> EIGHT) & BYTE_MASK), (byte) (value & BYTE_MASK));
+    }
+
+    /**
+     * Segments sharing an end point in the spill files are detected as a collision, and only once.
+     *
+     * @throws IOException Thrown if the spill files can't be written or sorted.
+     */
+    @Test
+    public void detectShouldFindTheCollisionBetweenSpilledSegmentsOnce() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        ExternalSortCollisionDetector detector =
+                new ExternalSortCollisionDetector(SHA256_TRUNCATED_TO_8_BITS, 0, directory, 2, 1);
+        try (ExternalSortCollisionDetector.SpillWriter spillWriter = detector.openSpillWriter()) {
+            spillWriter.append(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            spillWriter.append(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            spillWriter.append(new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        }
+        Collection<Collision> collisions = detector.detect();
+        assertEquals(1, collisions.size());
+        assertEquals(new Collision(SHA256_TRUNCATED_TO_8_BITS, POINT_00, POINT_9C), collisions.get());
+        assertEquals(THREE, detector.getNumberOfSegments());
+        assertTrue(detector.detect().isEmpty());
+        delete(directory);
+    }
+
+    /**
+     * A new detector in the same directory continues with the segments sorted earlier.
+     *
+     * @throws IOException Thrown if the spill files can't be written or sorted.
+     */
+    @Test
+    public void newDetectorShouldContinueWithTheSortedSegments() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        ExternalSortCollisionDetector detector =
+                new ExternalSortCollisionDetector(SHA256_TRUNCATED_TO_8_BITS, 0, directory, 2, 1);
+        try (ExternalSortCollisionDetector.SpillWriter spillWriter = detector.openSpillWriter()) {
+            spillWriter.append(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            spillWriter.append(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        }
+        assertTrue(detector.detect().isEmpty());
+        ExternalSortCollisionDetector resumed =
+                new ExternalSortCollisionDetector(SHA256_TRUNCATED_TO_8_BITS, 0, directory, 2, 1);
+        assertEquals(2, resumed.getNumberOfSegments());
+        try (ExternalSortCollisionDetector.SpillWriter spillWriter = resumed.openSpillWriter()) {
+            spillWriter.append(new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        }
+        assertEquals(1, resumed.detect().size());
+        assertEquals(THREE, resumed.getNumberOfSegments());
+        delete(directory);
+    }
+
+    /**
+     * Spill files larger than the sort buffer are sorted in runs that are merged in several passes.
+     *
+     * @throws IOException Thrown if the spill files can't be written or sorted.
+     */
+    @Test
+    public void detectShouldMergeManyRunsInSeveralPasses() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        ExternalSortCollisionDetector detector =
+                new ExternalSortCollisionDetector(SHA1_TRUNCATED_TO_16_BITS, 0, directory, 2, 2);
+        for (int s = 0; s < 2; s++) {
+            try (ExternalSortCollisionDetector.SpillWriter spillWriter = detector.openSpillWriter()) {
+                for (int i = s; i < NUMBER_OF_SEGMENTS; i += 2) {
+                    spillWriter.append(
+                            new Segment(point(i), point(NUMBER_OF_SEGMENTS - i), 1, 0, SHA1_TRUNCATED_TO_16_BITS));
+                }
+            }
+        }
+        assertTrue(detector.detect().isEmpty());
+        assertEquals(NUMBER_OF_SEGMENTS, detector.getNumberOfSegments());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1L, files.count());
+        }
+        delete(directory);
+    }
+
+    /**
+     * The levels sorted by the detections are merged in tiers, and collisions between a new segment and a segment in
+     * an older level are still found.
+     *
+     * @throws IOException Thrown if the spill files can't be written or sorted.
+     */
+    @Test
+    public void detectShouldMergeTheLevelsInTiers() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        ExternalSortCollisionDetector detector =
+                new ExternalSortCollisionDetector(SHA256_TRUNCATED_TO_8_BITS, 0, directory, 2, 1);
+        Segment[] segments = new Segment[] {new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS),
+                new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS),
+                new Segment(POINT_02, POINT_01, 1, 0, SHA256_TRUNCATED_TO_8_BITS),
+                new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS)};
+        int[] expectedNumbersOfLevels = new int[] {1, 1, 2, 1};
+        Collection<Collision> collisions = null;
+        for (int i = 0; i < segments.length; i++) {
+            try (ExternalSortCollisionDetector.SpillWriter spillWriter = detector.openSpillWriter()) {
+                spillWriter.append(segments[i]);
+            }
+            collisions = detector.detect();
+            assertEquals(expectedNumbersOfLevels[i], detector.getNumberOfLevels());
+        }
+        assertEquals(1, collisions.size());
+        assertEquals(segments.length, detector.getNumberOfSegments());
+        delete(directory);
+    }
+
+    /**
+     * The sort buffer should hold at least one record per thread.
+     */
+    @Test
+    public void constructorShouldRejectASortBufferSmallerThanTheNumberOfThreads() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ExternalSortCollisionDetector(SHA256_TRUNCATED_TO_8_BITS, 0, Path.of("."), 1, 2));
+    }
+}
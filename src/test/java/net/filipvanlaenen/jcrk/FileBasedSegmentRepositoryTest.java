@@ -0,0 +1,427 @@
+package net.filipvanlaenen.jcrk;
+
+import static net.filipvanlaenen.jcrk.StandardHashFunction.SHA256;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+
+/**
+ * Unit tests on the class <code>FileBasedSegmentRepository</code>.
+ */
+public class FileBasedSegmentRepositoryTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The magic number four.
+     */
+    private static final int FOUR = 4;
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS = new TruncatedStandardHashFunction(SHA256, 8);
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+    /**
+     * The point 0x00.
+     */
+    private static final Point POINT_00 = new Point((byte) 0x00);
+    /**
+     * The point 0x08.
+     */
+    private static final Point POINT_08 = new Point((byte) 0x08);
+    /**
+     * The point 0x0A.
+     */
+    private static final Point POINT_0A = new Point((byte) 0x0a);
+    /**
+     * The point 0x01.
+     */
+    private static final Point POINT_01 = new Point((byte) 0x01);
+    /**
+     * The point 0x02.
+     */
+    private static final Point POINT_02 = new Point((byte) 0x02);
+    /**
+     * The point 0x40.
+     */
+    private static final Point POINT_40 = new Point((byte) 0x40);
+    /**
+     * The point 0x6E.
+     */
+    private static final Point POINT_6E = new Point((byte) 0x6e);
+    /**
+     * The point 0x9C.
+     */
+    private static final Point POINT_9C = new Point((byte) 0x9c);
+    /**
+     * The segment from point 0x00 to point 0x08 with length 3 and order 4.
+     */
+    private static final Segment SEGMENT_00_08 = new Segment(POINT_00, POINT_08, THREE, FOUR,
+            SHA256_TRUNCATED_TO_8_BITS);
+
+    /**
+     * Deletes a cache file and its snapshot.
+     *
+     * @param cacheFile The cache file.
+     * @throws IOException Thrown if the cache file or its snapshot can't be deleted.
+     */
+    private static void delete(final Path cacheFile) throws IOException {
+        Files.delete(cacheFile);
+        Files.deleteIfExists(getSnapshotPath(cacheFile));
+    }
+
+    /**
+     * Returns the path of the snapshot of a cache file.
+     *
+     * @param cacheFile The cache file.
+     * @return The path of the snapshot.
+     */
+    private static Path getSnapshotPath(final Path cacheFile) {
+        return cacheFile.resolveSibling(cacheFile.getFileName() + ".snapshot");
+    }
+
+    /**
+     * A segment without checkpoints is formatted as its start point, end point and length.
+     */
+    @Test
+    public void formatSegmentShouldFormatSegmentWithoutCheckpoints() {
+        assertEquals("00.08.3", FileBasedSegmentRepository.formatSegment(SEGMENT_00_08));
+    }
+
+    /**
+     * A segment with checkpoints is formatted with its checkpoint depth and checkpoints appended.
+     */
+    @Test
+    public void formatSegmentShouldFormatSegmentWithCheckpoints() {
+        Segment segment = new Segment(POINT_00, POINT_08, THREE, FOUR, SHA256_TRUNCATED_TO_8_BITS, 2,
+                Collection.of(new SegmentCheckpoint(2L, POINT_0A)));
+        assertEquals("00.08.3.2.2:0a", FileBasedSegmentRepository.formatSegment(segment));
+    }
+
+    /**
+     * A line without checkpoints is parsed into a segment without checkpoints.
+     */
+    @Test
+    public void parseSegmentShouldParseLineWithoutCheckpoints() {
+        Segment segment = FileBasedSegmentRepository.parseSegment("00.08.3", FOUR, SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(SEGMENT_00_08, segment);
+        assertEquals(0, segment.getCheckpointDepth());
+        assertTrue(segment.getCheckpoints().isEmpty());
+    }
+
+    /**
+     * A line with a checkpoint depth but no checkpoints is parsed into a segment without checkpoints.
+     */
+    @Test
+    public void parseSegmentShouldParseLineWithCheckpointDepthButWithoutCheckpoints() {
+        Segment segment = FileBasedSegmentRepository.parseSegment("00.08.3.2.", FOUR, SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(2, segment.getCheckpointDepth());
+        assertTrue(segment.getCheckpoints().isEmpty());
+    }
+
+    /**
+     * A line with checkpoints is parsed into a segment with checkpoints.
+     */
+    @Test
+    public void parseSegmentShouldParseLineWithCheckpoints() {
+        Segment segment = FileBasedSegmentRepository.parseSegment("00.08.3.2.2:0a", FOUR, SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(SEGMENT_00_08, segment);
+        assertEquals(2, segment.getCheckpointDepth());
+        assertEquals(1, segment.getCheckpoints().size());
+        assertTrue(segment.getCheckpoints().contains(new SegmentCheckpoint(2L, POINT_0A)));
+    }
+
+    /**
+     * Segments added to the repository are appended to the cache file, and loaded again by a new repository.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created or read.
+     */
+    @Test
+    public void addedSegmentsShouldBeLoadedAgainAfterClosing() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.close();
+        assertEquals("0\nTRUNC(SHA-256, 8)\n00.6e.1\n01.02.1\n",
+                Files.readString(cacheFile, StandardCharsets.UTF_8));
+        FileBasedSegmentRepository loaded =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(2, loaded.size());
+        assertTrue(loaded.containsSegmentWithStartPoint(POINT_01));
+        loaded.close();
+        delete(cacheFile);
+    }
+
+    /**
+     * Synchronizing the repository forces the segments to the cache file, also with the durability policy
+     * <code>NONE</code>.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created or read.
+     */
+    @Test
+    public void syncShouldWriteTheSegmentsToTheCacheFile() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository = new FileBasedSegmentRepository(cacheFile.toString(),
+                SHA256_TRUNCATED_TO_8_BITS, FileBasedSegmentRepository.Durability.NONE, 1, Duration.ofSeconds(1L), 1);
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.sync();
+        assertTrue(Files.readString(cacheFile, StandardCharsets.UTF_8).endsWith("00.6e.1\n"));
+        repository.close();
+        delete(cacheFile);
+    }
+
+    /**
+     * Compressing the repository replaces the cache file with the segments of the next order.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created or read.
+     */
+    @Test
+    public void compressToNextOrderShouldReplaceTheCacheFile() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository = new FileBasedSegmentRepository(cacheFile.toString(),
+                SHA256_TRUNCATED_TO_8_BITS, FileBasedSegmentRepository.Durability.FSYNC, 1, Duration.ofSeconds(1L),
+                FOUR);
+        repository.add(new Segment(POINT_00, POINT_40, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.compressToNextOrder();
+        repository.close();
+        assertEquals("1\nTRUNC(SHA-256, 8)\n00.40.1\n", Files.readString(cacheFile, StandardCharsets.UTF_8));
+        delete(cacheFile);
+    }
+
+    /**
+     * A last line that was only partially appended is skipped, and removed from the cache file.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created or read.
+     */
+    @Test
+    public void partiallyAppendedLineShouldBeSkipped() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        Files.writeString(cacheFile, "0\nTRUNC(SHA-256, 8)\n00.6e.1\n01.0", StandardCharsets.UTF_8);
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(1, repository.size());
+        assertFalse(repository.containsSegmentWithStartPoint(POINT_01));
+        repository.close();
+        assertEquals("0\nTRUNC(SHA-256, 8)\n00.6e.1\n", Files.readString(cacheFile, StandardCharsets.UTF_8));
+        delete(cacheFile);
+    }
+
+    /**
+     * A last line that doesn't end with a newline is discarded, even if it can be parsed, since it may have been cut
+     * off in the middle of a field.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created or read.
+     */
+    @Test
+    public void partiallyAppendedLineShouldBeDiscardedEvenIfItCanBeParsed() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        Files.writeString(cacheFile, "0\nTRUNC(SHA-256, 8)\n00.6e.1\n01.02.1", StandardCharsets.UTF_8);
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(1, repository.size());
+        assertFalse(repository.containsSegmentWithStartPoint(POINT_01));
+        repository.close();
+        assertEquals("0\nTRUNC(SHA-256, 8)\n00.6e.1\n", Files.readString(cacheFile, StandardCharsets.UTF_8));
+        delete(cacheFile);
+    }
+
+    /**
+     * Once the flusher fails to write to the cache file, the failure is thrown when the repository is synced or
+     * segments are added, and the temporary file that would have replaced the cache file is deleted.
+     *
+     * @throws IOException Thrown if the temporary directory can't be created, listed or deleted.
+     */
+    @Test
+    public void flushFailureShouldBeThrownToTheProducers() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        Path file = Files.createFile(directory.resolve("segments"));
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(directory.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        assertThrows(UncheckedIOException.class, repository::sync);
+        assertThrows(UncheckedIOException.class,
+                () -> repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS)));
+        repository.close();
+        Files.delete(file);
+        Files.delete(directory);
+        try (Stream<Path> siblings = Files.list(directory.getParent())) {
+            assertFalse(siblings.anyMatch(path -> path.getFileName().toString()
+                    .startsWith(directory.getFileName().toString()) && path.toString().endsWith(".tmp")));
+        }
+    }
+
+    /**
+     * Closing the repository writes a snapshot, from which the repository is opened again, together with the segments
+     * appended to the cache file after the snapshot.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created, read or deleted.
+     */
+    @Test
+    public void repositoryShouldBeOpenedFromTheSnapshotAndTheAppendedSegments() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.close();
+        assertTrue(Files.exists(getSnapshotPath(cacheFile)));
+        Files.writeString(cacheFile, "9c.6e.1\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        FileBasedSegmentRepository loaded =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(THREE, loaded.size());
+        assertFalse(loaded.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS)));
+        assertEquals(2, loaded.getSegmentsWithEndPoint(POINT_6E).size());
+        assertEquals(1, loaded.getEndPointsWithMultipleSegments(2).size());
+        assertEquals(1, loaded.getCollisions().size());
+        loaded.close();
+        delete(cacheFile);
+    }
+
+    /**
+     * A repository opened from a snapshot streams the segments in the snapshot and the segments appended after it to
+     * an action.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created, read or deleted.
+     */
+    @Test
+    public void forEachSegmentShouldStreamTheSegmentsInTheSnapshotAndAppendedAfterIt() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.close();
+        FileBasedSegmentRepository loaded =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        loaded.add(new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        ModifiableCollection<Point> startPoints = ModifiableCollection.empty();
+        loaded.forEachSegment(segment -> startPoints.add(segment.getStartPoint()));
+        assertEquals(THREE, startPoints.size());
+        assertTrue(startPoints.contains(POINT_00));
+        assertTrue(startPoints.contains(POINT_9C));
+        loaded.close();
+        delete(cacheFile);
+    }
+
+    /**
+     * A snapshot is ignored if the part of the cache file it covers was changed, even if its length didn't change.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created, read or deleted.
+     */
+    @Test
+    public void snapshotWithAnotherChecksumShouldBeIgnored() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.close();
+        assertTrue(Files.exists(getSnapshotPath(cacheFile)));
+        Files.writeString(cacheFile, "0\nTRUNC(SHA-256, 8)\n01.02.1\n", StandardCharsets.UTF_8);
+        FileBasedSegmentRepository loaded =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(1, loaded.size());
+        assertTrue(loaded.containsSegmentWithStartPoint(POINT_01));
+        assertFalse(loaded.containsSegmentWithStartPoint(POINT_00));
+        loaded.close();
+        delete(cacheFile);
+    }
+
+    /**
+     * A collision finder checkpoints a file-based repository after every compression.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created or deleted.
+     */
+    @Test
+    public void collisionFinderShouldCheckpointTheRepositoryAfterACompression() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA1_TRUNCATED_TO_16_BITS);
+        new CollisionFinder(repository, StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo)
+                .findCollision();
+        assertTrue(repository.getOrder() > 0);
+        assertTrue(Files.exists(getSnapshotPath(cacheFile)));
+        repository.close();
+        delete(cacheFile);
+    }
+
+    /**
+     * A snapshot that doesn't match the order of the cache file is ignored.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created, read or deleted.
+     */
+    @Test
+    public void snapshotWithAnotherOrderShouldBeIgnored() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.close();
+        Files.writeString(cacheFile, "1\nTRUNC(SHA-256, 8)\n01.02.1\n", StandardCharsets.UTF_8);
+        FileBasedSegmentRepository loaded =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(1, loaded.getOrder());
+        assertEquals(1, loaded.size());
+        assertTrue(loaded.containsSegmentWithStartPoint(POINT_01));
+        loaded.close();
+        delete(cacheFile);
+    }
+
+    /**
+     * Compressing a repository opened from a snapshot combines the segments in the snapshot and in memory, and
+     * deletes the snapshot together with the replaced cache file.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be created, read or deleted.
+     */
+    @Test
+    public void compressToNextOrderShouldCombineTheSegmentsInTheSnapshot() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        FileBasedSegmentRepository repository =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        repository.add(new Segment(POINT_00, POINT_40, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.checkpoint();
+        assertTrue(Files.exists(getSnapshotPath(cacheFile)));
+        repository.add(new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.close();
+        FileBasedSegmentRepository loaded =
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS);
+        loaded.compressToNextOrder();
+        loaded.sync();
+        assertFalse(Files.exists(getSnapshotPath(cacheFile)));
+        assertEquals(1, loaded.size());
+        assertTrue(loaded.containsSegmentWithStartPoint(POINT_00));
+        loaded.close();
+        assertEquals("1\nTRUNC(SHA-256, 8)\n00.40.1\n", Files.readString(cacheFile, StandardCharsets.UTF_8));
+        delete(cacheFile);
+    }
+
+    /**
+     * The capacity of the write queue should be positive.
+     */
+    @Test
+    public void constructorShouldRejectANonPositiveWriteQueueCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new FileBasedSegmentRepository("jcrk.rcf",
+                SHA256_TRUNCATED_TO_8_BITS, FileBasedSegmentRepository.Durability.FLUSH, 1, Duration.ofSeconds(1L), 0));
+    }
+}
@@ -0,0 +1,137 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the <code>FilteredSegmentRepository</code> class.
+ */
+public class FilteredSegmentRepositoryTest {
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA256, 8);
+    /**
+     * The point 0x00.
+     */
+    private static final Point POINT_00 = new Point((byte) 0x00);
+    /**
+     * The point 0x40.
+     */
+    private static final Point POINT_40 = new Point((byte) 0x40);
+    /**
+     * The point 0x41.
+     */
+    private static final Point POINT_41 = new Point((byte) 0x41);
+    /**
+     * The point 0x6E.
+     */
+    private static final Point POINT_6E = new Point((byte) 0x6e);
+    /**
+     * The point 0xFF.
+     */
+    private static final Point POINT_FF = new Point((byte) 0xff);
+    /**
+     * The segment starting from point zero.
+     */
+    private static final Segment SEGMENT_FOR_POINT_ZERO =
+            new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+
+    /**
+     * Creates a new, empty filtered segment repository for truncated SHA-256.
+     *
+     * @return A new, empty filtered segment repository for truncated SHA-256.
+     */
+    private FilteredSegmentRepository createNewFilteredSegmentRepository() {
+        return new FilteredSegmentRepository(new InMemorySegmentRepository(SHA256_TRUNCATED_TO_8_BITS));
+    }
+
+    /**
+     * After adding a segment, it can be retrieved by its start point.
+     */
+    @Test
+    public void segmentCanBeRetrievedByItsStartPointAfterAddingIt() {
+        FilteredSegmentRepository repository = createNewFilteredSegmentRepository();
+        repository.add(SEGMENT_FOR_POINT_ZERO);
+        assertEquals(SEGMENT_FOR_POINT_ZERO, repository.getSegmentWithStartPoint(POINT_00));
+        assertTrue(repository.containsSegmentWithStartPoint(POINT_00));
+    }
+
+    /**
+     * After adding a segment, it can be retrieved by its end point.
+     */
+    @Test
+    public void segmentCanBeRetrievedByItsEndPointAfterAddingIt() {
+        FilteredSegmentRepository repository = createNewFilteredSegmentRepository();
+        repository.add(SEGMENT_FOR_POINT_ZERO);
+        assertTrue(repository.getSegmentsWithEndPoint(POINT_6E).contains(SEGMENT_FOR_POINT_ZERO));
+        assertTrue(repository.containsSegmentsWithEndPoint(POINT_6E));
+    }
+
+    /**
+     * Lookups of absent points are answered as definite negatives by the filters.
+     */
+    @Test
+    public void lookupsOfAbsentPointsShouldBeAnsweredByTheFilters() {
+        FilteredSegmentRepository repository = createNewFilteredSegmentRepository();
+        repository.add(SEGMENT_FOR_POINT_ZERO);
+        assertNull(repository.getSegmentWithStartPoint(POINT_FF));
+        assertFalse(repository.containsSegmentsWithEndPoint(POINT_FF));
+        assertEquals(2L, repository.getNumberOfLookups());
+        assertEquals(2L, repository.getNumberOfDefiniteNegatives());
+        assertEquals(1D, repository.getFilterHitRate(), 0D);
+    }
+
+    /**
+     * Lookups of present points aren't counted as false positives.
+     */
+    @Test
+    public void lookupsOfPresentPointsShouldNotBeCountedAsFalsePositives() {
+        FilteredSegmentRepository repository = createNewFilteredSegmentRepository();
+        repository.add(SEGMENT_FOR_POINT_ZERO);
+        repository.containsSegmentWithStartPoint(POINT_00);
+        assertEquals(0L, repository.getNumberOfFalsePositives());
+        assertEquals(0D, repository.getFalsePositiveRate(), 0D);
+    }
+
+    /**
+     * The filters are rebuilt after compression.
+     */
+    @Test
+    public void filtersShouldBeRebuiltAfterCompression() {
+        FilteredSegmentRepository repository = new FilteredSegmentRepository(
+                new InMemorySegmentRepository(StandardHashFunction.SHA256));
+        repository.add(new Segment(POINT_40, POINT_FF, 1, 0, StandardHashFunction.SHA256));
+        repository.add(new Segment(POINT_FF, POINT_41, 1, 0, StandardHashFunction.SHA256));
+        repository.compressToNextOrder();
+        assertFalse(repository.containsSegmentWithStartPoint(POINT_FF));
+        assertTrue(repository.containsSegmentWithStartPoint(POINT_40));
+        assertTrue(repository.containsSegmentsWithEndPoint(POINT_41));
+    }
+
+    /**
+     * The filters contain the segments loaded from disk with a file-based repository.
+     *
+     * @throws IOException Thrown if the temporary cache file can't be written.
+     */
+    @Test
+    public void filtersShouldContainTheSegmentsLoadedFromDisk() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        Files.writeString(cacheFile, "0\nTRUNC(SHA-256, 8)\n00.6e.1\n", StandardCharsets.UTF_8);
+        FilteredSegmentRepository repository = new FilteredSegmentRepository(
+                new FileBasedSegmentRepository(cacheFile.toString(), SHA256_TRUNCATED_TO_8_BITS));
+        assertTrue(repository.containsSegmentWithStartPoint(POINT_00));
+        assertTrue(repository.containsSegmentsWithEndPoint(POINT_6E));
+        Files.delete(cacheFile);
+    }
+}
@@ -0,0 +1,99 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the <code>FootprintBudgetCompressionCondition</code> class.
+ */
+public class FootprintBudgetCompressionConditionTest {
+    /**
+     * A disk budget of one kibibyte.
+     */
+    private static final long DISK_BUDGET = 1024L;
+    /**
+     * The SHA-1 hash algorithm truncated to eight bits.
+     */
+    private static final TruncatedStandardHashFunction TRUNCATED_SHA1 =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 8);
+    /**
+     * A segment from point 0x00 to point 0x01.
+     */
+    private static final Segment SEGMENT_00_01 =
+            new Segment(new Point((byte) 0x00), new Point((byte) 0x01), 1, 0, TRUNCATED_SHA1);
+
+    /**
+     * An empty repository should not be compressed.
+     */
+    @Test
+    public void emptyRepositoryShouldNotBeCompressed() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_SHA1);
+        assertFalse(new FootprintBudgetCompressionCondition(FootprintBudgetCompressionCondition.Resource.MEMORY, 0L)
+                .evaluate(repository));
+    }
+
+    /**
+     * A repository exceeding the memory budget should be compressed.
+     */
+    @Test
+    public void repositoryExceedingTheMemoryBudgetShouldBeCompressed() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_SHA1);
+        repository.add(SEGMENT_00_01);
+        long footprint = repository.getEstimatedMemoryFootprint();
+        assertTrue(new FootprintBudgetCompressionCondition(FootprintBudgetCompressionCondition.Resource.MEMORY,
+                footprint - 1L).evaluate(repository));
+    }
+
+    /**
+     * A repository within the memory budget should not be compressed.
+     */
+    @Test
+    public void repositoryWithinTheMemoryBudgetShouldNotBeCompressed() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_SHA1);
+        repository.add(SEGMENT_00_01);
+        long footprint = repository.getEstimatedMemoryFootprint();
+        assertFalse(new FootprintBudgetCompressionCondition(FootprintBudgetCompressionCondition.Resource.MEMORY,
+                footprint).evaluate(repository));
+    }
+
+    /**
+     * An in-memory repository doesn't exceed a disk budget.
+     */
+    @Test
+    public void inMemoryRepositoryShouldNotExceedADiskBudget() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_SHA1);
+        repository.add(SEGMENT_00_01);
+        assertFalse(new FootprintBudgetCompressionCondition(FootprintBudgetCompressionCondition.Resource.DISK, 0L)
+                .evaluate(repository));
+    }
+
+    /**
+     * The footprint on disk is sampled once per interval, and not measured on the file system every time the condition
+     * is evaluated.
+     *
+     * @throws IOException Thrown if the temporary files can't be created or deleted.
+     */
+    @Test
+    public void diskFootprintShouldBeSampledOncePerInterval() throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        Path snapshot = cacheFile.resolveSibling(cacheFile.getFileName() + ".snapshot");
+        FileBasedSegmentRepository repository = new FileBasedSegmentRepository(cacheFile.toString(), TRUNCATED_SHA1);
+        repository.sync();
+        FootprintBudgetCompressionCondition condition =
+                new FootprintBudgetCompressionCondition(FootprintBudgetCompressionCondition.Resource.DISK, DISK_BUDGET);
+        assertFalse(condition.evaluate(repository));
+        Files.write(snapshot, new byte[2 * (int) DISK_BUDGET]);
+        assertFalse(condition.evaluate(repository));
+        assertTrue(new FootprintBudgetCompressionCondition(FootprintBudgetCompressionCondition.Resource.DISK,
+                DISK_BUDGET).evaluate(repository));
+        repository.close();
+        Files.deleteIfExists(snapshot);
+        Files.delete(cacheFile);
+    }
+}
@@ -0,0 +1,202 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import net.filipvanlaenen.kolektoj.Map;
+import net.filipvanlaenen.kolektoj.ModifiableMap;
+import net.filipvanlaenen.kolektoj.hash.ModifiableHashMap;
+
+/**
+ * Unit tests on the class <code>InFlightSegmentStore</code>.
+ */
+public class InFlightSegmentStoreTest {
+    /**
+     * The magic number three.
+     */
+    private static final long THREE = 3L;
+    /**
+     * The order of the segments.
+     */
+    private static final int ORDER = 12;
+    /**
+     * The number of hashes the segments are extended with before they're checkpointed.
+     */
+    private static final int NUMBER_OF_HASHES = 5;
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+    /**
+     * The point 0x0000.
+     */
+    private static final Point POINT_0000 = new Point((byte) 0x00, (byte) 0x00);
+    /**
+     * The point 0x0A0B.
+     */
+    private static final Point POINT_0A0B = new Point((byte) 0x0a, (byte) 0x0b);
+
+    /**
+     * Creates a segment of order 12 from point 0x0000, extended with a few hashes.
+     *
+     * @return A segment being extended.
+     */
+    private static Segment createSegmentInFlight() {
+        Segment segment = new Segment(POINT_0000, ORDER, SHA1_TRUNCATED_TO_16_BITS);
+        for (int i = 0; i < NUMBER_OF_HASHES; i++) {
+            segment.extend();
+        }
+        return segment;
+    }
+
+    /**
+     * Tracked points are formatted as their positions and points, separated by commas.
+     */
+    @Test
+    public void formatTrackedPositionsShouldFormatPositionsAndPoints() {
+        ModifiableMap<Point, Long> trackedPositions = new ModifiableHashMap<Point, Long>();
+        trackedPositions.add(POINT_0A0B, THREE);
+        assertEquals("3:0a0b", InFlightSegmentStore.formatTrackedPositions(trackedPositions));
+    }
+
+    /**
+     * A line with tracked points is parsed into the points mapped to their positions.
+     */
+    @Test
+    public void parseTrackedPositionsShouldParsePositionsAndPoints() {
+        Map<Point, Long> trackedPositions = InFlightSegmentStore.parseTrackedPositions("0:0000,3:0a0b");
+        assertEquals(2, trackedPositions.size());
+        assertEquals(0L, trackedPositions.get(POINT_0000));
+        assertEquals(THREE, trackedPositions.get(POINT_0A0B));
+    }
+
+    /**
+     * An empty line is parsed into an empty map of tracked points.
+     */
+    @Test
+    public void parseTrackedPositionsShouldParseAnEmptyLine() {
+        assertTrue(InFlightSegmentStore.parseTrackedPositions("").isEmpty());
+    }
+
+    /**
+     * A checkpointed segment is loaded with its end point, length and tracked points, and extends to the same segment
+     * as the original.
+     *
+     * @throws IOException Thrown if the temporary checkpoint file can't be created.
+     */
+    @Test
+    public void loadShouldReturnTheSavedSegment() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".inflight");
+        InFlightSegmentStore store = new InFlightSegmentStore(file, Duration.ZERO);
+        Segment original = createSegmentInFlight();
+        store.save(original);
+        Segment loaded = store.load(ORDER, SHA1_TRUNCATED_TO_16_BITS);
+        assertEquals(original.getStartPoint(), loaded.getStartPoint());
+        assertEquals(original.getEndPoint(), loaded.getEndPoint());
+        assertEquals(original.getLength(), loaded.getLength());
+        assertEquals(original.getTrackedPositions().size(), loaded.getTrackedPositions().size());
+        original.extend();
+        loaded.extend();
+        assertEquals(original.getEndPoint(), loaded.getEndPoint());
+        Files.delete(file);
+    }
+
+    /**
+     * No segment is loaded for another order than the one it was checkpointed at.
+     *
+     * @throws IOException Thrown if the temporary checkpoint file can't be created.
+     */
+    @Test
+    public void loadShouldReturnNullForAnotherOrder() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".inflight");
+        InFlightSegmentStore store = new InFlightSegmentStore(file, Duration.ZERO);
+        store.save(createSegmentInFlight());
+        assertNull(store.load(ORDER + 1, SHA1_TRUNCATED_TO_16_BITS));
+        Files.delete(file);
+    }
+
+    /**
+     * No segment is loaded for another hash function than the one it was checkpointed for.
+     *
+     * @throws IOException Thrown if the temporary checkpoint file can't be created.
+     */
+    @Test
+    public void loadShouldReturnNullForAnotherHashFunction() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".inflight");
+        InFlightSegmentStore store = new InFlightSegmentStore(file, Duration.ZERO);
+        store.save(createSegmentInFlight());
+        assertNull(store.load(ORDER, new TruncatedStandardHashFunction(StandardHashFunction.SHA256, 16)));
+        Files.delete(file);
+    }
+
+    /**
+     * No segment is loaded from a corrupt checkpoint file.
+     *
+     * @throws IOException Thrown if the temporary checkpoint file can't be written.
+     */
+    @Test
+    public void loadShouldReturnNullForACorruptFile() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".inflight");
+        Files.writeString(file, "12\nTRUNC(SHA-1, 16)\n", StandardCharsets.UTF_8);
+        assertNull(new InFlightSegmentStore(file, Duration.ZERO).load(ORDER, SHA1_TRUNCATED_TO_16_BITS));
+        Files.delete(file);
+    }
+
+    /**
+     * Clearing the store removes the checkpoint file.
+     *
+     * @throws IOException Thrown if the temporary checkpoint file can't be created.
+     */
+    @Test
+    public void clearShouldRemoveTheCheckpoint() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".inflight");
+        InFlightSegmentStore store = new InFlightSegmentStore(file, Duration.ZERO);
+        store.save(createSegmentInFlight());
+        store.clear();
+        assertFalse(Files.exists(file));
+        assertNull(store.load(ORDER, SHA1_TRUNCATED_TO_16_BITS));
+    }
+
+    /**
+     * Clearing a store that neither saved nor found a checkpoint doesn't touch the file system.
+     *
+     * @throws IOException Thrown if the temporary checkpoint file can't be created, written or deleted.
+     */
+    @Test
+    public void clearShouldNotTouchTheFileSystemIfNoCheckpointWasSaved() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".inflight");
+        Files.delete(file);
+        InFlightSegmentStore store = new InFlightSegmentStore(file, Duration.ZERO);
+        Files.writeString(file, "", StandardCharsets.UTF_8);
+        store.clear();
+        assertTrue(Files.exists(file));
+        Files.delete(file);
+    }
+
+    /**
+     * A checkpoint isn't due before the interval has passed.
+     */
+    @Test
+    public void isDueShouldReturnFalseBeforeTheIntervalHasPassed() {
+        assertFalse(new InFlightSegmentStore(Path.of("unused.inflight"), Duration.ofHours(1L)).isDue());
+    }
+
+    /**
+     * A checkpoint is due once the interval has passed.
+     */
+    @Test
+    public void isDueShouldReturnTrueAfterTheIntervalHasPassed() {
+        assertTrue(new InFlightSegmentStore(Path.of("unused.inflight"), Duration.ZERO).isDue());
+    }
+}
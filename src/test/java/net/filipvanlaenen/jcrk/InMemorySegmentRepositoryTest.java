@@ -6,6 +6,8 @@ import static net.filipvanlaenen.jcrk.StandardHashFunction.SHA256;
 
 import org.junit.jupiter.api.Test;
 
+import net.filipvanlaenen.kolektoj.Collection;
+
 /**
  * Unit tests on the class InMemorySegmentRepository.
  */
@@ -14,6 +16,10 @@ public class InMemorySegmentRepositoryTest {
      * The magic number three.
      */
     private static final int THREE = 3;
+    /**
+     * The maximum number of segments to produce in a chain.
+     */
+    private static final int MAX_NUMBER_OF_SEGMENTS = 64;
     /**
      * The magic number seven.
      */
@@ -22,6 +28,43 @@ public class InMemorySegmentRepositoryTest {
      * The hash function SHA-256 truncated to 8 bits.
      */
     private static final HashFunction SHA256_TRUNCATED_TO_8_BITS = new TruncatedStandardHashFunction(SHA256, 8);
+    /**
+     * The hash function SHA-256 truncated to 16 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_16_BITS = new TruncatedStandardHashFunction(SHA256, 16);
+    /**
+     * The hash function SHA-1 truncated to 8 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_8_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 8);
+    /**
+     * The point 0x06.
+     */
+    private static final Point POINT_06 = new Point((byte) 0x06);
+    /**
+     * The point 0x08.
+     */
+    private static final Point POINT_08 = new Point((byte) 0x08);
+    /**
+     * The point 0x0B.
+     */
+    private static final Point POINT_0B = new Point((byte) 0x0b);
+    /**
+     * The point 0x4F.
+     */
+    private static final Point POINT_4F = new Point((byte) 0x4f);
+    /**
+     * The point 0x52.
+     */
+    private static final Point POINT_52 = new Point((byte) 0x52);
+    /**
+     * The point 0x5C.
+     */
+    private static final Point POINT_5C = new Point((byte) 0x5c);
+    /**
+     * The point 0x0000.
+     */
+    private static final Point POINT_0000 = new Point((byte) 0x00, (byte) 0x00);
     /**
      * The point 0x00.
      */
@@ -460,4 +503,108 @@ public class InMemorySegmentRepositoryTest {
         repository.compressToNextOrder();
         assertTrue(repository.contains(new Segment(POINT_40, POINT_41, THREE, 1, SHA256)));
     }
+
+    /**
+     * The estimated memory footprint grows with every segment added.
+     */
+    @Test
+    public void estimatedMemoryFootprintGrowsWithEverySegmentAdded() {
+        SegmentRepository repository = createNewTruncatedSha256SegmentRepository();
+        assertEquals(0L, repository.getEstimatedMemoryFootprint());
+        repository.add(SEGMENT_FOR_POINT_ZERO);
+        long footprint = repository.getEstimatedMemoryFootprint();
+        assertTrue(footprint > 0L);
+        repository.add(new Segment(POINT_6E, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        assertEquals(2L * footprint, repository.getEstimatedMemoryFootprint());
+    }
+
+    /**
+     * When combining segments with different checkpoint depths, the combined segment gets the minimum checkpoint
+     * depth, such that it doesn't record checkpoints with gaps in between.
+     */
+    @Test
+    public void combineToOrderShouldUseTheMinimumCheckpointDepth() {
+        Segment first = new Segment(POINT_00, POINT_20, THREE, 1, SHA256_TRUNCATED_TO_8_BITS, 2,
+                Collection.of(new SegmentCheckpoint(1L, POINT_20)));
+        Segment second = new Segment(POINT_20, POINT_00, 2, 1, SHA256_TRUNCATED_TO_8_BITS, 0, Collection.empty());
+        Segment combined = InMemorySegmentRepository.combineToOrder(first, THREE,
+                point -> point.equals(POINT_20) ? second : null);
+        assertEquals(new Segment(POINT_00, POINT_00, THREE + 2, THREE, SHA256_TRUNCATED_TO_8_BITS), combined);
+        assertEquals(0, combined.getCheckpointDepth());
+        assertTrue(combined.getCheckpoints().isEmpty());
+    }
+
+    /**
+     * When compressing a repository with segments recording checkpoints, the combined segments record the
+     * intermediate points of the checkpoint order at their correct positions.
+     */
+    @Test
+    public void compressionShouldCombineCheckpoints() {
+        SegmentRepository repository = new InMemorySegmentRepository(SHA256_TRUNCATED_TO_16_BITS);
+        repository.compressToNextOrder();
+        repository.compressToNextOrder();
+        Point startPoint = POINT_0000;
+        for (int i = 0; i < MAX_NUMBER_OF_SEGMENTS && !repository.containsSegmentWithStartPoint(startPoint); i++) {
+            Segment segment = new Segment(startPoint, 2, SHA256_TRUNCATED_TO_16_BITS, 1);
+            while (!segment.isComplete() && !segment.isCyclic()) {
+                segment.extend();
+            }
+            if (segment.isCyclic()) {
+                break;
+            }
+            repository.add(segment);
+            startPoint = segment.getEndPoint();
+        }
+        repository.compressToNextOrder();
+        int numberOfCheckpoints = 0;
+        for (Segment segment : repository.getSegments()) {
+            Point p = segment.getStartPoint();
+            int expectedNumberOfCheckpoints = 0;
+            for (long position = 1; position < segment.getLength(); position++) {
+                p = p.hash(SHA256_TRUNCATED_TO_16_BITS);
+                if (p.order() >= 2) {
+                    assertTrue(segment.getCheckpoints().contains(new SegmentCheckpoint(position, p)));
+                    expectedNumberOfCheckpoints++;
+                }
+            }
+            assertEquals(expectedNumberOfCheckpoints, segment.getCheckpoints().size());
+            numberOfCheckpoints += expectedNumberOfCheckpoints;
+        }
+        assertTrue(numberOfCheckpoints > 0);
+    }
+
+    /**
+     * The end points shared by at least a given number of segments are returned.
+     */
+    @Test
+    public void getEndPointsWithMultipleSegmentsShouldReturnSharedEndPoints() {
+        SegmentRepository repository = createNewTruncatedSha256SegmentRepository();
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_01, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_20, POINT_FF, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_21, POINT_FF, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_40, POINT_FF, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_41, POINT_FE, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        assertEquals(2, repository.getEndPointsWithMultipleSegments(2).size());
+        assertTrue(repository.getEndPointsWithMultipleSegments(2).contains(POINT_6E));
+        assertTrue(repository.getEndPointsWithMultipleSegments(2).contains(POINT_FF));
+        assertEquals(1, repository.getEndPointsWithMultipleSegments(THREE).size());
+        assertTrue(repository.getEndPointsWithMultipleSegments(THREE).contains(POINT_FF));
+    }
+
+    /**
+     * The repository returns a collision for every end point shared by several segments.
+     */
+    @Test
+    public void getCollisionsShouldReturnACollisionForEverySharedEndPoint() {
+        SegmentRepository repository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_8_BITS);
+        repository.add(new Segment(POINT_0B, POINT_06, 1, 0, SHA1_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_52, POINT_06, 1, 0, SHA1_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_4F, POINT_08, 1, 0, SHA1_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_5C, POINT_08, 1, 0, SHA1_TRUNCATED_TO_8_BITS));
+        Collection<Collision> collisions = repository.getCollisions();
+        assertEquals(2, collisions.size());
+        assertTrue(collisions.contains(new Collision(SHA1_TRUNCATED_TO_8_BITS, POINT_0B, POINT_52)));
+        assertTrue(collisions.contains(new Collision(SHA1_TRUNCATED_TO_8_BITS, POINT_4F, POINT_5C)));
+    }
 }
@@ -0,0 +1,236 @@
+package net.filipvanlaenen.jcrk;
+
+import static net.filipvanlaenen.jcrk.StandardHashFunction.SHA256;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>LsmSegmentRepository</code>.
+ */
+public class LsmSegmentRepositoryTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The magic number four.
+     */
+    private static final int FOUR = 4;
+    /**
+     * The memtable capacity used for the collision search.
+     */
+    private static final int SIXTEEN = 16;
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS = new TruncatedStandardHashFunction(SHA256, 8);
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+    /**
+     * The point 0x00.
+     */
+    private static final Point POINT_00 = new Point((byte) 0x00);
+    /**
+     * The point 0x01.
+     */
+    private static final Point POINT_01 = new Point((byte) 0x01);
+    /**
+     * The point 0x02.
+     */
+    private static final Point POINT_02 = new Point((byte) 0x02);
+    /**
+     * The point 0x03.
+     */
+    private static final Point POINT_03 = new Point((byte) 0x03);
+    /**
+     * The point 0x20.
+     */
+    private static final Point POINT_20 = new Point((byte) 0x20);
+    /**
+     * The point 0x40.
+     */
+    private static final Point POINT_40 = new Point((byte) 0x40);
+    /**
+     * The point 0x6E.
+     */
+    private static final Point POINT_6E = new Point((byte) 0x6e);
+    /**
+     * The point 0x9C.
+     */
+    private static final Point POINT_9C = new Point((byte) 0x9c);
+
+    /**
+     * Deletes a directory with the files in it.
+     *
+     * @param directory The directory.
+     * @throws IOException Thrown if the directory can't be deleted.
+     */
+    private static void delete(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Segments can be looked up by start point and by end point, both in the memtable and in the runs.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void segmentsShouldBeFoundInTheMemtableAndTheRuns() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        Segment segment0 = new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+        Segment segment1 = new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+        Segment segment2 = new Segment(POINT_03, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+        try (LsmSegmentRepository repository = new LsmSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, 2)) {
+            assertTrue(repository.add(segment0));
+            assertFalse(repository.add(segment0));
+            assertTrue(repository.add(segment1));
+            assertTrue(repository.add(segment2));
+            assertEquals(1, repository.getNumberOfRuns());
+            assertEquals(THREE, repository.size());
+            assertEquals(segment0, repository.getSegmentWithStartPoint(POINT_00));
+            assertEquals(segment2, repository.getSegmentWithStartPoint(POINT_03));
+            assertEquals(2, repository.getSegmentsWithEndPoint(POINT_02).size());
+            assertFalse(repository.containsSegmentsWithEndPoint(POINT_00));
+            assertFalse(repository.containsSegmentWithStartPoint(POINT_02));
+        }
+        delete(directory);
+    }
+
+    /**
+     * A repository is loaded again from its runs and its log.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void repositoryShouldBeLoadedFromItsRunsAndLog() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (LsmSegmentRepository repository = new LsmSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, 2)) {
+            repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_03, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        }
+        try (LsmSegmentRepository loaded = new LsmSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, 2)) {
+            assertEquals(THREE, loaded.size());
+            assertEquals(1, loaded.getNumberOfRuns());
+            assertTrue(loaded.containsSegmentWithStartPoint(POINT_00));
+            assertTrue(loaded.containsSegmentWithStartPoint(POINT_03));
+            assertTrue(loaded.getEstimatedDiskFootprint() > 0L);
+        }
+        delete(directory);
+    }
+
+    /**
+     * Compacting the runs detects segments in different runs sharing an end point.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void compactionShouldDetectCollidingSegmentsInDifferentRuns() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (LsmSegmentRepository repository = new LsmSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, 1)) {
+            repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_03, POINT_40, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        }
+        try (LsmSegmentRepository loaded = new LsmSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, 1)) {
+            assertEquals(1, loaded.getNumberOfRuns());
+            assertEquals(FOUR, loaded.size());
+            assertEquals(1, loaded.getEndPointsWithMultipleSegments(2).size());
+            assertEquals(1, loaded.getCollisions().size());
+        }
+        delete(directory);
+    }
+
+    /**
+     * A segment added to the memtable sharing its end point with a segment in a run is detected as a collision before
+     * the run is compacted.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void addShouldDetectCollidingSegmentsInTheMemtableAndARun() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (LsmSegmentRepository repository = new LsmSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, 2)) {
+            repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            assertEquals(1, repository.getNumberOfRuns());
+            assertEquals(1, repository.getEndPointsWithMultipleSegments(2).size());
+            assertEquals(1, repository.getCollisions().size());
+        }
+        delete(directory);
+    }
+
+    /**
+     * Compressing the repository combines the segments in the runs into segments of the next order.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void compressToNextOrderShouldCombineTheSegmentsInTheRuns() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (LsmSegmentRepository repository = new LsmSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, 1)) {
+            repository.add(new Segment(POINT_00, POINT_40, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_40, POINT_20, 2, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.compressToNextOrder();
+            assertEquals(2, repository.size());
+            repository.compressToNextOrder();
+            assertEquals(2, repository.getOrder());
+            assertEquals(1, repository.size());
+            assertEquals(new Segment(POINT_00, POINT_20, THREE, 2, SHA256_TRUNCATED_TO_8_BITS),
+                    repository.getSegmentWithStartPoint(POINT_00));
+        }
+        delete(directory);
+    }
+
+    /**
+     * A collision finder finds a valid collision using a log-structured merge repository, including flushes,
+     * compactions and compressions.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void collisionFinderShouldFindACollisionWithAnLsmRepository() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (LsmSegmentRepository repository =
+                new LsmSegmentRepository(SHA1_TRUNCATED_TO_16_BITS, directory, SIXTEEN)) {
+            Collision collision = new CollisionFinder(repository,
+                    StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo).findCollision();
+            assertNotNull(collision);
+            assertTrue(repository.getOrder() > 0);
+            Point hashValue = collision.points().get().hash(SHA1_TRUNCATED_TO_16_BITS);
+            for (Point point : collision.points()) {
+                assertEquals(hashValue, point.hash(SHA1_TRUNCATED_TO_16_BITS));
+            }
+        }
+        delete(directory);
+    }
+
+    /**
+     * The memtable capacity should be positive.
+     */
+    @Test
+    public void constructorShouldRejectANonPositiveMemtableCapacity() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LsmSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, Path.of("."), 0));
+    }
+}
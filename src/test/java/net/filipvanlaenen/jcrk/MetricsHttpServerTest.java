@@ -0,0 +1,125 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>MetricsHttpServer</code>.
+ */
+public class MetricsHttpServerTest {
+    /**
+     * The magic number three.
+     */
+    private static final long THREE = 3L;
+    /**
+     * The magic number five.
+     */
+    private static final long FIVE = 5L;
+    /**
+     * The HTTP status code for OK.
+     */
+    private static final int HTTP_OK = 200;
+    /**
+     * The name of the search.
+     */
+    private static final String SEARCH = "TRUNC(SHA-1, 8)";
+
+    /**
+     * Creates metrics with a few events recorded.
+     *
+     * @return Metrics with a few events recorded.
+     */
+    private static SearchMetrics createMetrics() {
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.recordHash();
+        metrics.recordHash();
+        metrics.recordSegment(2, THREE);
+        metrics.recordSegment(2, FIVE);
+        metrics.recordCollision();
+        return metrics;
+    }
+
+    /**
+     * Verifies that the counters are formatted with the name of the search as a label.
+     */
+    @Test
+    public void formatShouldLabelTheSamplesWithTheSearch() {
+        SortedMap<String, SearchMetrics> searches = new TreeMap<String, SearchMetrics>();
+        searches.put(SEARCH, createMetrics());
+        String exposition = MetricsHttpServer.format(searches);
+        assertTrue(exposition.contains("# TYPE jcrk_hashes_total counter\n"));
+        assertTrue(exposition.contains("jcrk_hashes_total{search=\"TRUNC(SHA-1, 8)\"} 2\n"));
+        assertTrue(exposition.contains("jcrk_collisions_total{search=\"TRUNC(SHA-1, 8)\"} 1\n"));
+    }
+
+    /**
+     * Verifies that the segment lengths are formatted as a histogram per order.
+     */
+    @Test
+    public void formatShouldFormatTheSegmentLengthsAsAHistogram() {
+        SortedMap<String, SearchMetrics> searches = new TreeMap<String, SearchMetrics>();
+        searches.put(SEARCH, createMetrics());
+        String exposition = MetricsHttpServer.format(searches);
+        String labels = "search=\"TRUNC(SHA-1, 8)\",order=\"2\"";
+        assertTrue(exposition.contains("# TYPE jcrk_segment_length histogram\n"));
+        assertTrue(exposition.contains("jcrk_segment_length_bucket{" + labels + ",le=\"2\"} 0\n"));
+        assertTrue(exposition.contains("jcrk_segment_length_bucket{" + labels + ",le=\"4\"} 1\n"));
+        assertTrue(exposition.contains("jcrk_segment_length_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        assertTrue(exposition.contains("jcrk_segment_length_sum{" + labels + "} 8\n"));
+        assertTrue(exposition.contains("jcrk_segment_length_count{" + labels + "} 2\n"));
+    }
+
+    /**
+     * Verifies that the metrics are served over HTTP on localhost, and removed searches are no longer served.
+     *
+     * @throws IOException          Thrown if the request fails.
+     * @throws InterruptedException Thrown if the request is interrupted.
+     */
+    @Test
+    public void serverShouldServeTheMetricsOnLocalhost() throws IOException, InterruptedException {
+        MetricsHttpServer server = new MetricsHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            server.add(SEARCH, createMetrics());
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest
+                    .newBuilder(URI.create("http://localhost:" + server.getPort() + MetricsHttpServer.PATH)).build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertEquals(HTTP_OK, response.statusCode());
+            assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+            assertTrue(response.body().contains("jcrk_hashes_total{search=\"TRUNC(SHA-1, 8)\"} 2\n"));
+            server.remove(SEARCH);
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertFalse(response.body().contains("TRUNC(SHA-1, 8)"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Verifies that a server constructed with only a port listens on the loopback interface.
+     *
+     * @throws IOException Thrown if the server can't be started.
+     */
+    @Test
+    public void serverWithOnlyAPortShouldListenOnTheLoopbackInterface() throws IOException {
+        MetricsHttpServer server = new MetricsHttpServer(0);
+        try {
+            assertTrue(server.getAddress().getAddress().isLoopbackAddress());
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+
+/**
+ * Unit tests on the class <code>NearCollisionRanking</code>.
+ */
+public class NearCollisionRankingTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The hash function SHA-1 truncated to 8 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_8_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 8);
+    /**
+     * The point 0x0B.
+     */
+    private static final Point POINT_0B = new Point((byte) 0x0b);
+    /**
+     * The point 0x4F.
+     */
+    private static final Point POINT_4F = new Point((byte) 0x4f);
+    /**
+     * The point 0x52.
+     */
+    private static final Point POINT_52 = new Point((byte) 0x52);
+    /**
+     * The point 0x5C.
+     */
+    private static final Point POINT_5C = new Point((byte) 0x5c);
+    /**
+     * The point 0xBA.
+     */
+    private static final Point POINT_BA = new Point((byte) 0xba);
+
+    /**
+     * Returns the Hamming distance between the full SHA-1 hash values of two points.
+     *
+     * @param point0 The first point.
+     * @param point1 The second point.
+     * @return The Hamming distance between the full SHA-1 hash values of the points.
+     */
+    private static int fullHashDistance(final Point point0, final Point point1) {
+        return point0.hash(StandardHashFunction.SHA1).hammingDistanceTo(point1.hash(StandardHashFunction.SHA1));
+    }
+
+    /**
+     * The constructor throws an IllegalArgumentException if the capacity is less than one.
+     */
+    @Test
+    public void constructorShouldThrowIllegalArgumentExceptionIfCapacityIsLessThanOne() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> new NearCollisionRanking(StandardHashFunction.SHA1, 0));
+        assertEquals("The capacity (0) should be at least one.", exception.getMessage());
+    }
+
+    /**
+     * A collision with three points adds three pairs to the ranking.
+     */
+    @Test
+    public void addShouldAddAllPairsOfACollision() {
+        NearCollisionRanking ranking = new NearCollisionRanking(StandardHashFunction.SHA1, THREE);
+        ranking.add(new Collision(SHA1_TRUNCATED_TO_8_BITS, POINT_0B, POINT_52, POINT_BA));
+        assertEquals(THREE, ranking.getNearCollisions().size());
+    }
+
+    /**
+     * The near-collisions are sorted from the lowest to the highest Hamming distance.
+     */
+    @Test
+    public void getNearCollisionsShouldSortByHammingDistance() {
+        NearCollisionRanking ranking = new NearCollisionRanking(StandardHashFunction.SHA1, THREE);
+        ranking.add(new Collision(SHA1_TRUNCATED_TO_8_BITS, POINT_0B, POINT_52, POINT_BA));
+        OrderedCollection<NearCollisionRanking.NearCollision> nearCollisions = ranking.getNearCollisions();
+        for (int i = 1; i < nearCollisions.size(); i++) {
+            assertTrue(nearCollisions.getAt(i - 1).hammingDistance() <= nearCollisions.getAt(i).hammingDistance());
+        }
+    }
+
+    /**
+     * Only the pairs with the lowest Hamming distance are retained.
+     */
+    @Test
+    public void rankingShouldRetainOnlyThePairWithTheLowestHammingDistance() {
+        NearCollisionRanking ranking = new NearCollisionRanking(StandardHashFunction.SHA1, 1);
+        ranking.add(new Collision(SHA1_TRUNCATED_TO_8_BITS, POINT_0B, POINT_52, POINT_BA));
+        ranking.add(new Collision(SHA1_TRUNCATED_TO_8_BITS, POINT_4F, POINT_5C));
+        int lowestDistance = Math.min(Math.min(fullHashDistance(POINT_0B, POINT_52), fullHashDistance(POINT_0B,
+                POINT_BA)), Math.min(fullHashDistance(POINT_52, POINT_BA), fullHashDistance(POINT_4F, POINT_5C)));
+        assertEquals(1, ranking.getNearCollisions().size());
+        assertEquals(lowestDistance, ranking.getNearCollisions().getAt(0).hammingDistance());
+    }
+}
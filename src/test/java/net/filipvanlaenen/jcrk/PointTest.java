@@ -2,6 +2,8 @@ package net.filipvanlaenen.jcrk;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
@@ -16,6 +18,14 @@ public class PointTest {
      * The magic number eight.
      */
     private static final int EIGHT = 8;
+    /**
+     * The magic number nine.
+     */
+    private static final int NINE = 9;
+    /**
+     * The magic number twelve.
+     */
+    private static final int TWELVE = 12;
     /**
      * The byte 0x00.
      */
@@ -198,4 +208,45 @@ public class PointTest {
         Point b = new Point((byte) 2, (byte) 1, (byte) 0);
         assertFalse(a.hashCode() == b.hashCode());
     }
+
+    /**
+     * The Hamming distance between a point and itself is zero.
+     */
+    @Test
+    public void hammingDistanceToItselfShouldBeZero() {
+        Point a = new Point(new byte[NINE]);
+        assertEquals(0, a.hammingDistanceTo(a));
+    }
+
+    /**
+     * The Hamming distance counts the differing bits both in whole eight-byte words and in the remaining bytes.
+     */
+    @Test
+    public void hammingDistanceShouldCountDifferingBitsInWordsAndRemainingBytes() {
+        Point a = new Point(new byte[NINE]);
+        Point b = new Point((byte) 0xff, (byte) 0x01, (byte) 0, (byte) 0, (byte) 0, (byte) 0, (byte) 0, (byte) 0x80,
+                (byte) 0x03);
+        assertEquals(TWELVE, a.hammingDistanceTo(b));
+    }
+
+    /**
+     * The Hamming distance between points of different lengths can't be calculated.
+     */
+    @Test
+    public void hammingDistanceShouldThrowIllegalArgumentExceptionForPointsOfDifferentLengths() {
+        Point a = new Point((byte) 0, (byte) 1);
+        Point b = new Point((byte) 0);
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> a.hammingDistanceTo(b));
+        assertEquals("The points have different lengths (2 ≠ 1).", exception.getMessage());
+    }
+
+    /**
+     * Verifies that points are compared by the unsigned values of their bytes.
+     */
+    @Test
+    public void compareToComparesTheUnsignedValuesOfTheBytes() {
+        assertTrue(new Point((byte) 0x7f).compareTo(new Point((byte) 0x80)) < 0);
+        assertTrue(new Point((byte) 0x80, (byte) 0x00).compareTo(new Point((byte) 0x01, (byte) 0xff)) > 0);
+        assertEquals(0, new Point((byte) 0x6e).compareTo(new Point((byte) 0x6e)));
+    }
 }
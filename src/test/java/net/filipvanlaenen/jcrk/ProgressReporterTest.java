@@ -0,0 +1,60 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>ProgressReporter</code>.
+ */
+public class ProgressReporterTest {
+    /**
+     * A reporting interval long enough not to trigger a periodic summary during a test.
+     */
+    private static final Duration ONE_HOUR = Duration.ofHours(1L);
+
+    /**
+     * Verifies that a summary contains the name of the search and the totals.
+     */
+    @Test
+    public void reportShouldLogASummary() {
+        ByteArrayOutputStream outputStream = LaconicConfigurator.resetLaconicOutputStream();
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.recordHash();
+        metrics.recordHash();
+        metrics.recordSegment(1, 2L);
+        metrics.recordCollision();
+        try (ProgressReporter reporter = new ProgressReporter("TRUNC(SHA-1, 8)", metrics, ONE_HOUR)) {
+            reporter.report();
+        }
+        String output = outputStream.toString();
+        assertTrue(output.startsWith("TRUNC(SHA-1, 8): 1 segments completed ("));
+        assertTrue(output.contains(", 2 hashes ("));
+        assertTrue(output.contains(", 1 collisions found."));
+    }
+
+    /**
+     * Verifies that a last summary is logged when the reporter is closed.
+     */
+    @Test
+    public void closeShouldLogALastSummary() {
+        ByteArrayOutputStream outputStream = LaconicConfigurator.resetLaconicOutputStream();
+        new ProgressReporter("SHA-1", new SearchMetrics(), ONE_HOUR).close();
+        assertTrue(outputStream.toString().startsWith("SHA-1: 0 segments completed"));
+    }
+
+    /**
+     * Verifies that the constructor rejects an interval that isn't positive.
+     */
+    @Test
+    public void constructorShouldRejectAZeroInterval() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> new ProgressReporter("SHA-1", new SearchMetrics(), Duration.ZERO));
+        assertEquals("The reporting interval (PT0S) should be positive.", exception.getMessage());
+    }
+}
@@ -0,0 +1,153 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the <code>RandomSegmentProducer</code> class.
+ */
+public class RandomSegmentProducerTest {
+    /**
+     * The seed used in the tests.
+     */
+    private static final long SEED = 42L;
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The mask for the four bits that aren't part of the truncation in the second byte.
+     */
+    private static final int UNUSED_BITS_MASK = 0x0f;
+    /**
+     * The number of start points drawn in the tests.
+     */
+    private static final int NUMBER_OF_START_POINTS = 100;
+    /**
+     * The SHA-1 hash algorithm truncated to one bit.
+     */
+    private static final TruncatedStandardHashFunction TRUNCATED_1_SHA1 =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 1);
+    /**
+     * The SHA-1 hash algorithm truncated to twelve bits.
+     */
+    private static final TruncatedStandardHashFunction TRUNCATED_12_SHA1 =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 12);
+
+    /**
+     * Verifies that the start points have at least the order of the repository and fit the truncation.
+     */
+    @Test
+    public void startPointsShouldHaveTheRepositorysOrderAndFitTheTruncation() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_12_SHA1);
+        for (int i = 0; i < THREE; i++) {
+            repository.compressToNextOrder();
+        }
+        RandomSegmentProducer producer = new RandomSegmentProducer(SEED);
+        for (int i = 0; i < NUMBER_OF_START_POINTS; i++) {
+            Point point = producer.findNewStartPoint(repository);
+            assertTrue(point.order() >= THREE);
+            assertEquals(0, point.byteAt(1) & UNUSED_BITS_MASK);
+        }
+    }
+
+    /**
+     * Verifies that two producers with the same seed produce the same start points.
+     */
+    @Test
+    public void producersWithTheSameSeedShouldProduceTheSameStartPoints() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_12_SHA1);
+        RandomSegmentProducer producer1 = new RandomSegmentProducer(SEED);
+        RandomSegmentProducer producer2 = new RandomSegmentProducer(SEED);
+        for (int i = 0; i < NUMBER_OF_START_POINTS; i++) {
+            assertEquals(producer1.findNewStartPoint(repository), producer2.findNewStartPoint(repository));
+        }
+    }
+
+    /**
+     * Verifies that split producers are reproducible from the seed.
+     */
+    @Test
+    public void splitProducersShouldBeReproducibleFromTheSeed() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_12_SHA1);
+        RandomSegmentProducer worker1 = new RandomSegmentProducer(SEED).split();
+        RandomSegmentProducer worker2 = new RandomSegmentProducer(SEED).split();
+        for (int i = 0; i < NUMBER_OF_START_POINTS; i++) {
+            assertEquals(worker1.findNewStartPoint(repository), worker2.findNewStartPoint(repository));
+        }
+    }
+
+    /**
+     * Verifies that a split producer has a different stream than the producer it was split from.
+     */
+    @Test
+    public void splitProducerShouldHaveADifferentStream() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_12_SHA1);
+        RandomSegmentProducer producer = new RandomSegmentProducer(SEED);
+        RandomSegmentProducer worker = producer.split();
+        StringBuilder producerPoints = new StringBuilder();
+        StringBuilder workerPoints = new StringBuilder();
+        for (int i = 0; i < NUMBER_OF_START_POINTS; i++) {
+            producerPoints.append(producer.findNewStartPoint(repository).asHexadecimalString());
+            workerPoints.append(worker.findNewStartPoint(repository).asHexadecimalString());
+        }
+        assertNotEquals(producerPoints.toString(), workerPoints.toString());
+    }
+
+    /**
+     * Verifies that a start point already used in the repository isn't produced again.
+     */
+    @Test
+    public void startPointsUsedInTheRepositoryShouldNotBeProducedAgain() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_1_SHA1);
+        RandomSegmentProducer producer = new RandomSegmentProducer(SEED);
+        Point first = producer.findNewStartPoint(repository);
+        Segment segment = new Segment(first, 0, TRUNCATED_1_SHA1);
+        segment.extend();
+        repository.add(segment);
+        Point second = producer.findNewStartPoint(repository);
+        assertNotEquals(first, second);
+    }
+
+    /**
+     * Verifies that a producer constructed with a repository from an earlier run with the same seed doesn't produce
+     * the start points of that run again.
+     */
+    @Test
+    public void startPointsOfAResumedRunShouldNotBeProducedAgain() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_12_SHA1);
+        RandomSegmentProducer earlierRun = new RandomSegmentProducer(SEED);
+        for (int i = 0; i < NUMBER_OF_START_POINTS; i++) {
+            Segment segment = new Segment(earlierRun.findNewStartPoint(repository), 0, TRUNCATED_12_SHA1);
+            segment.extend();
+            repository.add(segment);
+        }
+        RandomSegmentProducer resumedRun = new RandomSegmentProducer(SEED, repository);
+        for (int i = 0; i < NUMBER_OF_START_POINTS; i++) {
+            Point point = resumedRun.findNewStartPoint(repository);
+            assertNotNull(point);
+            assertFalse(repository.containsSegmentWithStartPoint(point));
+        }
+    }
+
+    /**
+     * Verifies that null is returned if all start points are in use.
+     */
+    @Test
+    public void shouldReturnNullIfAllStartPointsAreInUse() {
+        SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_1_SHA1);
+        RandomSegmentProducer producer = new RandomSegmentProducer(SEED);
+        for (int i = 0; i < 2; i++) {
+            Segment segment = new Segment(producer.findNewStartPoint(repository), 0, TRUNCATED_1_SHA1);
+            segment.extend();
+            repository.add(segment);
+        }
+        assertNull(producer.findNewStartPoint(repository));
+    }
+}
@@ -0,0 +1,200 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Integration tests on the classes <code>SearchCoordinator</code> and <code>SearchWorker</code>, running over
+ * localhost.
+ */
+public class SearchCoordinatorTest {
+    /**
+     * The number of start points in a range.
+     */
+    private static final int RANGE_SIZE = 8;
+    /**
+     * The size of the batches of segments.
+     */
+    private static final int BATCH_SIZE = 4;
+    /**
+     * An order leaving only four start points for a 16-bit hash function.
+     */
+    private static final int HIGH_ORDER = 14;
+    /**
+     * The number of start points at the high order.
+     */
+    private static final long NUMBER_OF_START_POINTS_AT_HIGH_ORDER = 4L;
+    /**
+     * The number of milliseconds to wait between two checks whether an abandoned range has been released.
+     */
+    private static final long POLLING_INTERVAL = 10L;
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+
+    /**
+     * Creates a coordinator for SHA-1 truncated to 16 bits on a free port.
+     *
+     * @return A coordinator.
+     * @throws IOException Thrown if the server socket can't be opened.
+     */
+    private static SearchCoordinator createCoordinator() throws IOException {
+        return new SearchCoordinator(new InMemorySegmentRepository(SHA1_TRUNCATED_TO_16_BITS),
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo, 0, RANGE_SIZE);
+    }
+
+    /**
+     * Starts a worker on a new thread.
+     *
+     * @param coordinator The coordinator.
+     * @param hashFunction The hash function of the worker.
+     * @return The thread running the worker.
+     */
+    private static Thread startWorker(final SearchCoordinator coordinator, final HashFunction hashFunction) {
+        Thread thread = new Thread(new SearchWorker("localhost", coordinator.getPort(), hashFunction, BATCH_SIZE, 0));
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Two workers produce enough segments for the coordinator to find a collision.
+     *
+     * @throws IOException          Thrown if the server socket can't be opened.
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void coordinatorShouldFindACollisionWithTwoWorkers() throws IOException, InterruptedException {
+        try (SearchCoordinator coordinator = createCoordinator()) {
+            startWorker(coordinator, SHA1_TRUNCATED_TO_16_BITS);
+            startWorker(coordinator, SHA1_TRUNCATED_TO_16_BITS);
+            Collision collision = coordinator.awaitCollision();
+            assertNotNull(collision);
+            Point hashValue = collision.points().get().hash(SHA1_TRUNCATED_TO_16_BITS);
+            for (Point point : collision.points()) {
+                assertEquals(hashValue, point.hash(SHA1_TRUNCATED_TO_16_BITS));
+            }
+            assertEquals(1L, coordinator.getMetrics().getNumberOfCollisions());
+        }
+    }
+
+    /**
+     * A range abandoned by a worker that disconnects is reassigned to the next worker asking for work.
+     *
+     * @throws IOException          Thrown if the server socket can't be opened.
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void coordinatorShouldReassignTheRangeOfADisconnectedWorker() throws IOException, InterruptedException {
+        try (SearchCoordinator coordinator = createCoordinator()) {
+            assertEquals("RANGE 0 0 8", requestRange(coordinator));
+            while (coordinator.getNumberOfAssignedRanges() > 0) {
+                Thread.sleep(POLLING_INTERVAL);
+            }
+            assertEquals("RANGE 0 0 8", requestRange(coordinator));
+        }
+    }
+
+    /**
+     * A range abandoned by a worker is reassigned instead of being completed.
+     *
+     * @throws IOException Thrown if the server socket can't be opened or the connection fails.
+     */
+    @Test
+    public void coordinatorShouldReassignAnAbandonedRange() throws IOException {
+        try (SearchCoordinator coordinator = createCoordinator();
+                Socket socket = new Socket("localhost", coordinator.getPort());
+                BufferedReader reader =
+                        new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            assertTrue(reader.readLine().startsWith(SearchCoordinator.HELLO));
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write((SearchCoordinator.NEXT + "\n").getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            assertEquals("RANGE 0 0 8", reader.readLine());
+            outputStream.write((SearchCoordinator.ABANDON + "\n" + SearchCoordinator.NEXT + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            assertEquals("RANGE 0 0 8", reader.readLine());
+        }
+    }
+
+    /**
+     * A worker for another hash function doesn't produce any segments.
+     *
+     * @throws IOException          Thrown if the server socket can't be opened.
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void workerShouldNotWorkForACoordinatorForAnotherHashFunction() throws IOException, InterruptedException {
+        try (SearchCoordinator coordinator = createCoordinator()) {
+            SearchWorker worker = new SearchWorker("localhost", coordinator.getPort(),
+                    new TruncatedStandardHashFunction(StandardHashFunction.SHA256, 16), BATCH_SIZE, 0);
+            worker.run();
+            assertEquals(0L, worker.getNumberOfSegments());
+            assertEquals(0, coordinator.getNumberOfAssignedRanges());
+        }
+    }
+
+    /**
+     * A worker stops once the start points valid at the order of the segment repository are exhausted, and the
+     * coordinator no longer waits for work.
+     *
+     * @throws IOException          Thrown if the server socket can't be opened.
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void workerShouldStopOnceTheStartPointsOfTheOrderAreExhausted() throws IOException, InterruptedException {
+        InMemorySegmentRepository segmentRepository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_16_BITS);
+        segmentRepository.setOrder(HIGH_ORDER);
+        try (SearchCoordinator coordinator = new SearchCoordinator(segmentRepository,
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo, 0, RANGE_SIZE)) {
+            SearchWorker worker =
+                    new SearchWorker("localhost", coordinator.getPort(), SHA1_TRUNCATED_TO_16_BITS, BATCH_SIZE, 0);
+            worker.run();
+            assertTrue(worker.getNumberOfSegments() <= NUMBER_OF_START_POINTS_AT_HIGH_ORDER);
+            assertEquals(0, coordinator.getNumberOfAssignedRanges());
+            coordinator.awaitCollision();
+        }
+    }
+
+    /**
+     * The size of the ranges should be at least one.
+     */
+    @Test
+    public void constructorShouldRejectAnEmptyRangeSize() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SearchCoordinator(new InMemorySegmentRepository(SHA1_TRUNCATED_TO_16_BITS),
+                        StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo, 0, 0));
+    }
+
+    /**
+     * Connects to the coordinator, asks for a range and disconnects without completing it.
+     *
+     * @param coordinator The coordinator.
+     * @return The message assigning the range.
+     * @throws IOException Thrown if the connection fails.
+     */
+    private static String requestRange(final SearchCoordinator coordinator) throws IOException {
+        try (Socket socket = new Socket("localhost", coordinator.getPort());
+                BufferedReader reader =
+                        new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            assertTrue(reader.readLine().startsWith(SearchCoordinator.HELLO));
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write((SearchCoordinator.NEXT + "\n").getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            return reader.readLine();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>SearchMetrics</code>.
+ */
+public class SearchMetricsTest {
+    /**
+     * The magic number three.
+     */
+    private static final long THREE = 3L;
+    /**
+     * The magic number 1,000,000.
+     */
+    private static final long ONE_MILLION = 1_000_000L;
+    /**
+     * The magic number 3,000,000.
+     */
+    private static final long THREE_MILLION = 3_000_000L;
+    /**
+     * The magic number 1.5.
+     */
+    private static final double ONE_AND_A_HALF = 1.5D;
+    /**
+     * The hash function SHA-1 truncated to 8 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_8_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 8);
+
+    /**
+     * Verifies that the counters add up the recorded events.
+     */
+    @Test
+    public void countersShouldAddUpTheRecordedEvents() {
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.recordHash();
+        metrics.recordHash();
+        metrics.recordHash();
+        metrics.recordSegment(2, THREE);
+        metrics.recordCyclicSegment();
+        metrics.recordAbandonedSegment();
+        metrics.recordCollision();
+        assertEquals(THREE, metrics.getNumberOfHashes());
+        assertEquals(1L, metrics.getNumberOfSegments());
+        assertEquals(1L, metrics.getNumberOfCyclicSegments());
+        assertEquals(1L, metrics.getNumberOfAbandonedSegments());
+        assertEquals(1L, metrics.getNumberOfCollisions());
+    }
+
+    /**
+     * Verifies that the compression time is added up and converted to milliseconds.
+     */
+    @Test
+    public void getCompressionTimeMillisShouldAddUpTheCompressions() {
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.recordCompression(ONE_MILLION);
+        metrics.recordCompression(ONE_MILLION);
+        assertEquals(2L, metrics.getCompressionTimeMillis());
+        assertEquals(2L, metrics.getNumberOfCompressions());
+    }
+
+    /**
+     * Verifies that the average persistence latency is calculated in milliseconds.
+     */
+    @Test
+    public void getAveragePersistenceLatencyMillisShouldAverageTheLatencies() {
+        SearchMetrics metrics = new SearchMetrics();
+        assertEquals(0D, metrics.getAveragePersistenceLatencyMillis());
+        metrics.recordPersistence(ONE_MILLION);
+        metrics.recordPersistence(2L * ONE_MILLION);
+        assertEquals(ONE_AND_A_HALF, metrics.getAveragePersistenceLatencyMillis());
+    }
+
+    /**
+     * Verifies that the state of the segment repository is recorded.
+     */
+    @Test
+    public void updateRepositoryStateShouldRecordTheOrderAndSize() {
+        SearchMetrics metrics = new SearchMetrics();
+        InMemorySegmentRepository repository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_8_BITS);
+        repository.setOrder(2);
+        metrics.updateRepositoryState(repository);
+        assertEquals(2, metrics.getCurrentOrder());
+        assertEquals(0, metrics.getRepositorySize());
+    }
+
+    /**
+     * Verifies that the footprints of the segment repository are sampled the first time and when the order changes,
+     * but not after every update.
+     */
+    @Test
+    public void updateRepositoryStateShouldSampleTheFootprints() {
+        SearchMetrics metrics = new SearchMetrics();
+        InMemorySegmentRepository repository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_8_BITS);
+        metrics.updateRepositoryState(repository);
+        assertEquals(0L, metrics.getRepositoryMemoryFootprint());
+        repository.add(new Segment(new Point((byte) 0x00), new Point((byte) 0x01), 1, 0, SHA1_TRUNCATED_TO_8_BITS));
+        metrics.updateRepositoryState(repository);
+        assertEquals(1, metrics.getRepositorySize());
+        assertEquals(0L, metrics.getRepositoryMemoryFootprint());
+        repository.setOrder(1);
+        repository.add(new Segment(new Point((byte) 0x00), new Point((byte) 0x01), 1, 1, SHA1_TRUNCATED_TO_8_BITS));
+        metrics.updateRepositoryState(repository);
+        assertTrue(metrics.getRepositoryMemoryFootprint() > 0L);
+    }
+
+    /**
+     * Verifies that the metrics can be read through the platform MBean server once registered, and are gone once
+     * unregistered.
+     *
+     * @throws JMException Thrown if an attribute can't be read.
+     */
+    @Test
+    public void registeredMetricsShouldBeReadableThroughTheMBeanServer() throws JMException {
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.recordPersistence(THREE_MILLION);
+        ObjectName objectName = metrics.register("SearchMetricsTest");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(THREE_MILLION / ONE_MILLION * 1D,
+                    server.getAttribute(objectName, "AveragePersistenceLatencyMillis"));
+            assertThrows(IllegalStateException.class, () -> metrics.register("SearchMetricsTest"));
+        } finally {
+            SearchMetrics.unregister(objectName);
+        }
+        assertFalse(server.isRegistered(objectName));
+    }
+}
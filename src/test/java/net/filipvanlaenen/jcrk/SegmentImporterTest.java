@@ -0,0 +1,126 @@
+package net.filipvanlaenen.jcrk;
+
+import static net.filipvanlaenen.jcrk.StandardHashFunction.SHA256;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>SegmentImporter</code>.
+ */
+public class SegmentImporterTest {
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS = new TruncatedStandardHashFunction(SHA256, 8);
+    /**
+     * The point 0x00.
+     */
+    private static final Point POINT_00 = new Point((byte) 0x00);
+
+    /**
+     * Creates an importer for a new in-memory segment repository.
+     *
+     * @param segmentRepository The segment repository.
+     * @param metrics           The metrics.
+     * @return An importer.
+     */
+    private static SegmentImporter createImporter(final SegmentRepository segmentRepository,
+            final SearchMetrics metrics) {
+        return new SegmentImporter(segmentRepository,
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo, metrics);
+    }
+
+    /**
+     * A segment is added to the segment repository.
+     */
+    @Test
+    public void importLineShouldAddASegment() {
+        InMemorySegmentRepository segmentRepository = new InMemorySegmentRepository(SHA256_TRUNCATED_TO_8_BITS);
+        assertNull(createImporter(segmentRepository, new SearchMetrics()).importLine("00.6e.1", 0));
+        assertEquals(1, segmentRepository.size());
+        assertEquals(POINT_00, segmentRepository.getSegments().get().getStartPoint());
+    }
+
+    /**
+     * A segment that's already present in the segment repository is abandoned.
+     */
+    @Test
+    public void importLineShouldAbandonADuplicateSegment() {
+        SearchMetrics metrics = new SearchMetrics();
+        SegmentImporter importer =
+                createImporter(new InMemorySegmentRepository(SHA256_TRUNCATED_TO_8_BITS), metrics);
+        importer.importLine("00.6e.1", 0);
+        importer.importLine("00.6e.1", 0);
+        assertEquals(1L, metrics.getNumberOfAbandonedSegments());
+    }
+
+    /**
+     * A segment produced at a lower order is retained if its end point is distinguished at the current order.
+     */
+    @Test
+    public void importLineShouldRetainALowerOrderSegmentWithADistinguishedEndPoint() {
+        InMemorySegmentRepository segmentRepository = new InMemorySegmentRepository(SHA256_TRUNCATED_TO_8_BITS);
+        segmentRepository.setOrder(1);
+        createImporter(segmentRepository, new SearchMetrics()).importLine("00.6e.1", 0);
+        assertEquals(1, segmentRepository.size());
+    }
+
+    /**
+     * A segment produced at a lower order is abandoned if its end point isn't distinguished at the current order.
+     */
+    @Test
+    public void importLineShouldAbandonALowerOrderSegmentWithoutADistinguishedEndPoint() {
+        InMemorySegmentRepository segmentRepository = new InMemorySegmentRepository(SHA256_TRUNCATED_TO_8_BITS);
+        segmentRepository.setOrder(1);
+        SearchMetrics metrics = new SearchMetrics();
+        createImporter(segmentRepository, metrics).importLine("01.80.1", 0);
+        assertEquals(0, segmentRepository.size());
+        assertEquals(1L, metrics.getNumberOfAbandonedSegments());
+    }
+
+    /**
+     * A segment produced at a lower order is abandoned if its start point isn't distinguished at the current order.
+     */
+    @Test
+    public void importLineShouldAbandonALowerOrderSegmentWithoutADistinguishedStartPoint() {
+        InMemorySegmentRepository segmentRepository = new InMemorySegmentRepository(SHA256_TRUNCATED_TO_8_BITS);
+        segmentRepository.setOrder(1);
+        SearchMetrics metrics = new SearchMetrics();
+        assertNull(createImporter(segmentRepository, metrics).importLine("80.00.1", 0));
+        assertEquals(0, segmentRepository.size());
+        assertEquals(1L, metrics.getNumberOfAbandonedSegments());
+    }
+
+    /**
+     * A line that isn't a segment is ignored.
+     */
+    @Test
+    public void importLineShouldIgnoreAnInvalidSegment() {
+        InMemorySegmentRepository segmentRepository = new InMemorySegmentRepository(SHA256_TRUNCATED_TO_8_BITS);
+        assertNull(createImporter(segmentRepository, new SearchMetrics()).importLine("00", 0));
+        assertEquals(0, segmentRepository.size());
+    }
+
+    /**
+     * A collision that isn't a collision is ignored.
+     */
+    @Test
+    public void importLineShouldIgnoreAnInvalidCollision() {
+        SearchMetrics metrics = new SearchMetrics();
+        SegmentImporter importer =
+                createImporter(new InMemorySegmentRepository(SHA256_TRUNCATED_TO_8_BITS), metrics);
+        assertNull(importer.importLine("COLLISION 00,01", 0));
+        assertEquals(1L, metrics.getNumberOfCyclicSegments());
+    }
+
+    /**
+     * A collision is formatted as the keyword followed by its points.
+     */
+    @Test
+    public void formatCollisionShouldFormatTheKeywordAndThePoints() {
+        Collision collision = new Collision(SHA256_TRUNCATED_TO_8_BITS, POINT_00, POINT_00);
+        assertEquals("COLLISION 00,00", SegmentImporter.formatCollision(collision));
+    }
+}
@@ -0,0 +1,65 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>SegmentLengthHistogram</code>.
+ */
+public class SegmentLengthHistogramTest {
+    /**
+     * The magic number three.
+     */
+    private static final long THREE = 3L;
+    /**
+     * The magic number four.
+     */
+    private static final long FOUR = 4L;
+    /**
+     * The magic number eight.
+     */
+    private static final long EIGHT = 8L;
+    /**
+     * The magic number ten.
+     */
+    private static final int TEN = 10;
+    /**
+     * The magic number 5,000.
+     */
+    private static final long FIVE_THOUSAND = 5_000L;
+
+    /**
+     * Verifies that the buckets of order 0 start at one.
+     */
+    @Test
+    public void upperBoundsForOrderZeroShouldStartAtOne() {
+        assertArrayEquals(new long[] {1L, 2L, FOUR, EIGHT, 16L}, new SegmentLengthHistogram(0).getUpperBounds());
+    }
+
+    /**
+     * Verifies that the buckets are powers of two around the mean length.
+     */
+    @Test
+    public void upperBoundsShouldBePowersOfTwoAroundTheMean() {
+        long[] upperBounds = new SegmentLengthHistogram(TEN).getUpperBounds();
+        assertEquals(1L << (TEN - FOUR), upperBounds[0]);
+        assertEquals(1L << (TEN + FOUR), upperBounds[upperBounds.length - 1]);
+    }
+
+    /**
+     * Verifies that the lengths are counted cumulatively, with the longest segments only in the last bucket.
+     */
+    @Test
+    public void getCumulativeCountsShouldCountTheLengthsCumulatively() {
+        SegmentLengthHistogram histogram = new SegmentLengthHistogram(0);
+        histogram.record(1L);
+        histogram.record(THREE);
+        histogram.record(FOUR);
+        histogram.record(FIVE_THOUSAND);
+        assertArrayEquals(new long[] {1L, 1L, THREE, THREE, THREE, FOUR}, histogram.getCumulativeCounts());
+        assertEquals(FOUR, histogram.getCount());
+        assertEquals(1L + THREE + FOUR + FIVE_THOUSAND, histogram.getSum());
+    }
+}
@@ -0,0 +1,157 @@
+package net.filipvanlaenen.jcrk;
+
+import static net.filipvanlaenen.jcrk.StandardHashFunction.SHA256;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.OrderedCollection;
+
+/**
+ * Unit tests on the class <code>SegmentRepositoryMerger</code>.
+ */
+public class SegmentRepositoryMergerTest {
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS = new TruncatedStandardHashFunction(SHA256, 8);
+    /**
+     * The point 0x00.
+     */
+    private static final Point POINT_00 = new Point((byte) 0x00);
+    /**
+     * The point 0x9C, which has the same hash value as point 0x00 under SHA-256 truncated to 8 bits.
+     */
+    private static final Point POINT_9C = new Point((byte) 0x9c);
+
+    /**
+     * Writes a cache file to a temporary file.
+     *
+     * @param content The content of the cache file.
+     * @return The cache file.
+     * @throws IOException Thrown if the temporary file can't be written.
+     */
+    private static Path writeCacheFile(final String content) throws IOException {
+        Path cacheFile = Files.createTempFile("jcrk", ".rcf");
+        Files.writeString(cacheFile, content, StandardCharsets.UTF_8);
+        return cacheFile;
+    }
+
+    /**
+     * Merges cache files into a temporary file, returning the lines of the merged cache file, and deletes all files.
+     *
+     * @param merger     The merger.
+     * @param collisions A list to add the collisions found to.
+     * @param contents   The contents of the cache files.
+     * @return The lines of the merged cache file.
+     * @throws IOException Thrown if a temporary file can't be written or read.
+     */
+    private static List<String> merge(final SegmentRepositoryMerger merger, final List<Collision> collisions,
+            final String... contents) throws IOException {
+        Path[] cacheFiles = new Path[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            cacheFiles[i] = writeCacheFile(contents[i]);
+        }
+        Path mergedFile = Files.createTempFile("jcrk", ".rcf");
+        for (Collision collision : merger.merge(OrderedCollection.of(cacheFiles), mergedFile)) {
+            collisions.add(collision);
+        }
+        List<String> lines = Files.readAllLines(mergedFile, StandardCharsets.UTF_8);
+        for (Path cacheFile : cacheFiles) {
+            Files.delete(cacheFile);
+        }
+        Files.delete(mergedFile);
+        return lines;
+    }
+
+    /**
+     * Segments from different cache files sharing an end point are backtracked to a collision.
+     *
+     * @throws IOException Thrown if a temporary file can't be written or read.
+     */
+    @Test
+    public void mergeShouldFindACollisionBetweenCacheFiles() throws IOException {
+        List<Collision> collisions = new ArrayList<Collision>();
+        List<String> lines = merge(new SegmentRepositoryMerger(SHA256_TRUNCATED_TO_8_BITS), collisions,
+                "0\nTRUNC(SHA-256, 8)\n00.6e.1\n", "0\nTRUNC(SHA-256, 8)\n9c.6e.1\n");
+        assertEquals(List.of("0", "TRUNC(SHA-256, 8)", "00.6e.1", "9c.6e.1"), lines);
+        assertEquals(1, collisions.size());
+        Collection<Point> points = Collection.of(collisions.get(0).points().toArray(new Point[2]));
+        assertTrue(points.contains(POINT_00));
+        assertTrue(points.contains(POINT_9C));
+    }
+
+    /**
+     * A segment occurring in more than one cache file is written only once.
+     *
+     * @throws IOException Thrown if a temporary file can't be written or read.
+     */
+    @Test
+    public void mergeShouldWriteADuplicateSegmentOnlyOnce() throws IOException {
+        SegmentRepositoryMerger merger = new SegmentRepositoryMerger(SHA256_TRUNCATED_TO_8_BITS);
+        List<Collision> collisions = new ArrayList<Collision>();
+        List<String> lines = merge(merger, collisions, "0\nTRUNC(SHA-256, 8)\n00.6e.1\n",
+                "0\nTRUNC(SHA-256, 8)\n00.6e.1\n");
+        assertEquals(List.of("0", "TRUNC(SHA-256, 8)", "00.6e.1"), lines);
+        assertEquals(1L, merger.getNumberOfSegments());
+        assertTrue(collisions.isEmpty());
+    }
+
+    /**
+     * Cache files at a lower order are compressed to the highest order among the cache files.
+     *
+     * @throws IOException Thrown if a temporary file can't be written or read.
+     */
+    @Test
+    public void mergeShouldCompressToTheHighestOrder() throws IOException {
+        List<String> lines = merge(new SegmentRepositoryMerger(SHA256_TRUNCATED_TO_8_BITS),
+                new ArrayList<Collision>(), "0\nTRUNC(SHA-256, 8)\n00.6e.1\n", "1\nTRUNC(SHA-256, 8)\n");
+        assertEquals(List.of("1", "TRUNC(SHA-256, 8)", "00.6e.1"), lines);
+    }
+
+    /**
+     * Cache files are streamed into runs of a bounded size, which are combined while they're compressed to the
+     * highest order among the cache files.
+     *
+     * @throws IOException Thrown if a temporary file can't be written or read.
+     */
+    @Test
+    public void mergeShouldCompressCacheFilesSpreadOverMultipleRuns() throws IOException {
+        List<String> lines = merge(new SegmentRepositoryMerger(SHA256_TRUNCATED_TO_8_BITS, 1),
+                new ArrayList<Collision>(), "0\nTRUNC(SHA-256, 8)\n00.6e.1\n6e.3f.1\n", "2\nTRUNC(SHA-256, 8)\n");
+        assertEquals(List.of("2", "TRUNC(SHA-256, 8)", "00.3f.2"), lines);
+    }
+
+    /**
+     * The size of the runs should be at least one.
+     */
+    @Test
+    public void constructorShouldRejectAnEmptyRunSize() {
+        assertThrows(IllegalArgumentException.class, () -> new SegmentRepositoryMerger(SHA256_TRUNCATED_TO_8_BITS, 0));
+    }
+
+    /**
+     * A cache file for another hash function can't be merged.
+     *
+     * @throws IOException Thrown if a temporary file can't be written or read.
+     */
+    @Test
+    public void mergeShouldRejectACacheFileForAnotherHashFunction() throws IOException {
+        Path cacheFile = writeCacheFile("0\nTRUNC(SHA-1, 8)\n");
+        Path mergedFile = Files.createTempFile("jcrk", ".rcf");
+        assertThrows(IllegalArgumentException.class, () -> new SegmentRepositoryMerger(SHA256_TRUNCATED_TO_8_BITS)
+                .merge(OrderedCollection.of(cacheFile), mergedFile));
+        Files.delete(cacheFile);
+        Files.delete(mergedFile);
+    }
+}
@@ -0,0 +1,175 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.filipvanlaenen.kolektoj.Collection;
+import net.filipvanlaenen.kolektoj.ModifiableCollection;
+
+/**
+ * Unit tests on the class <code>SegmentRun</code>.
+ */
+public class SegmentRunTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The number of segments in the large run, spanning several blocks.
+     */
+    private static final int NUMBER_OF_SEGMENTS = 200;
+    /**
+     * The mask to convert an integer to a byte.
+     */
+    private static final int BYTE_MASK = 0xff;
+    /**
+     * The magic number eight.
+     */
+    private static final int EIGHT = 8;
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+
+    /**
+     * Creates a two-byte point from an integer.
+     *
+     * @param value The value of the point.
+     * @return The point.
+     */
+    private static Point point(final int value) {
+        return new Point((byte) ((value >> EIGHT) & BYTE_MASK), (byte) (value & BYTE_MASK));
+    }
+
+    /**
+     * Creates a segment of order zero.
+     *
+     * @param startPoint The start point.
+     * @param endPoint   The end point.
+     * @return The segment.
+     */
+    private static Segment segment(final int startPoint, final int endPoint) {
+        return new Segment(point(startPoint), point(endPoint), 1, 0, SHA1_TRUNCATED_TO_16_BITS);
+    }
+
+    /**
+     * Creates a run with segments whose end points are shared by three consecutive start points, such that groups of
+     * segments sharing an end point straddle the blocks.
+     *
+     * @param file The file of the run.
+     * @return The run.
+     * @throws IOException Thrown if the run can't be written.
+     */
+    private static SegmentRun createLargeRun(final Path file) throws IOException {
+        ModifiableCollection<Segment> segments = ModifiableCollection.empty();
+        for (int i = 0; i < NUMBER_OF_SEGMENTS; i++) {
+            segments.add(segment(i, i / THREE));
+        }
+        return SegmentRun.write(segments, file, 0, SHA1_TRUNCATED_TO_16_BITS);
+    }
+
+    /**
+     * Asserts that all the segments of the large run can be found by start point and by end point.
+     *
+     * @param run The run.
+     * @throws IOException Thrown if the run can't be read.
+     */
+    private static void assertLargeRunLookups(final SegmentRun run) throws IOException {
+        assertEquals(NUMBER_OF_SEGMENTS, run.getNumberOfSegments());
+        for (int i = 0; i < NUMBER_OF_SEGMENTS; i++) {
+            assertEquals(segment(i, i / THREE), run.getSegmentWithStartPoint(point(i)));
+        }
+        for (int i = 0; i < NUMBER_OF_SEGMENTS / THREE; i++) {
+            assertEquals(THREE, run.getSegmentsWithEndPoint(point(i)).size());
+        }
+    }
+
+    /**
+     * Segments can be looked up by start point and by end point, also when they straddle blocks.
+     *
+     * @throws IOException Thrown if the run can't be written or read.
+     */
+    @Test
+    public void segmentsShouldBeFoundByTheirStartPointsAndEndPoints() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".run");
+        try (SegmentRun run = createLargeRun(file)) {
+            assertLargeRunLookups(run);
+            assertNull(run.getSegmentWithStartPoint(point(NUMBER_OF_SEGMENTS)));
+            assertTrue(run.getSegmentsWithEndPoint(point(NUMBER_OF_SEGMENTS)).isEmpty());
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * Opening a run rebuilds its sparse index and filters.
+     *
+     * @throws IOException Thrown if the run can't be written or read.
+     */
+    @Test
+    public void openShouldRebuildTheIndexes() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".run");
+        createLargeRun(file).close();
+        try (SegmentRun run = SegmentRun.open(file, 0, SHA1_TRUNCATED_TO_16_BITS)) {
+            assertLargeRunLookups(run);
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * The checkpoints of a segment are stored in the run.
+     *
+     * @throws IOException Thrown if the run can't be written or read.
+     */
+    @Test
+    public void checkpointsShouldBeStoredInTheRun() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".run");
+        Segment segment = new Segment(point(0), point(1), THREE, 0, SHA1_TRUNCATED_TO_16_BITS, 1,
+                Collection.of(new SegmentCheckpoint(2L, point(2))));
+        try (SegmentRun run = SegmentRun.write(Collection.of(segment), file, 0, SHA1_TRUNCATED_TO_16_BITS)) {
+            Segment storedSegment = run.getSegmentWithStartPoint(point(0));
+            assertEquals(1, storedSegment.getCheckpointDepth());
+            assertEquals(new SegmentCheckpoint(2L, point(2)), storedSegment.getCheckpoints().get());
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * Merging runs writes the segments present in more than one run only once, and passes on the groups of segments
+     * sharing an end point.
+     *
+     * @throws IOException Thrown if the runs can't be written or read.
+     */
+    @Test
+    public void mergeShouldRemoveDuplicatesAndPassOnCollidingSegments() throws IOException {
+        Path file0 = Files.createTempFile("jcrk", ".run");
+        Path file1 = Files.createTempFile("jcrk", ".run");
+        Path mergedFile = Files.createTempFile("jcrk", ".run");
+        SegmentRun run0 = SegmentRun.write(Collection.of(segment(0, 1), segment(1, 2)), file0, 0,
+                SHA1_TRUNCATED_TO_16_BITS);
+        SegmentRun run1 = SegmentRun.write(Collection.of(segment(0, 1), segment(2, 2)), file1, 0,
+                SHA1_TRUNCATED_TO_16_BITS);
+        List<List<Segment>> groups = new ArrayList<List<Segment>>();
+        try (SegmentRun merged =
+                SegmentRun.merge(List.of(run0, run1), mergedFile, 0, SHA1_TRUNCATED_TO_16_BITS, groups::add)) {
+            assertEquals(THREE, merged.getNumberOfSegments());
+            assertEquals(segment(2, 2), merged.getSegmentWithStartPoint(point(2)));
+            assertEquals(1, groups.size());
+            assertEquals(List.of(segment(1, 2), segment(2, 2)), groups.get(0));
+        }
+        run0.close();
+        run1.close();
+        Files.delete(file0);
+        Files.delete(file1);
+        Files.delete(mergedFile);
+    }
+}
@@ -0,0 +1,259 @@
+package net.filipvanlaenen.jcrk;
+
+import static net.filipvanlaenen.jcrk.StandardHashFunction.SHA256;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+
+import net.filipvanlaenen.kolektoj.Collection;
+
+/**
+ * Unit tests on the class <code>SegmentSnapshot</code>.
+ */
+public class SegmentSnapshotTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The offset in the cache file covered by the snapshots in the tests.
+     */
+    private static final long CACHE_FILE_OFFSET = 42L;
+    /**
+     * The checksum of the cache file covered by the snapshots in the tests.
+     */
+    private static final long CACHE_FILE_CHECKSUM = 0xcafeL;
+    /**
+     * A number of segments for SHA-256 whose end points wouldn't fit into a single array.
+     */
+    private static final int TOO_MANY_SHA256_SEGMENTS = Integer.MAX_VALUE / (256 / Byte.SIZE) + 1;
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS = new TruncatedStandardHashFunction(SHA256, 8);
+    /**
+     * The hash function SHA-256 truncated to 16 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_16_BITS = new TruncatedStandardHashFunction(SHA256, 16);
+    /**
+     * The point 0x00.
+     */
+    private static final Point POINT_00 = new Point((byte) 0x00);
+    /**
+     * The point 0x01.
+     */
+    private static final Point POINT_01 = new Point((byte) 0x01);
+    /**
+     * The point 0x02.
+     */
+    private static final Point POINT_02 = new Point((byte) 0x02);
+    /**
+     * The point 0x0A.
+     */
+    private static final Point POINT_0A = new Point((byte) 0x0a);
+    /**
+     * The point 0x6E.
+     */
+    private static final Point POINT_6E = new Point((byte) 0x6e);
+    /**
+     * The point 0x9C.
+     */
+    private static final Point POINT_9C = new Point((byte) 0x9c);
+    /**
+     * The segment from point 0x00 to point 0x6E.
+     */
+    private static final Segment SEGMENT_00_6E = new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+    /**
+     * The segment from point 0x9C to point 0x6E.
+     */
+    private static final Segment SEGMENT_9C_6E = new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+    /**
+     * The segment from point 0x01 to point 0x02, with a checkpoint.
+     */
+    private static final Segment SEGMENT_01_02 = new Segment(POINT_01, POINT_02, THREE, 0,
+            SHA256_TRUNCATED_TO_8_BITS, 1, Collection.of(new SegmentCheckpoint(2L, POINT_0A)));
+
+    /**
+     * Writes a snapshot with the three segments to a temporary file.
+     *
+     * @return The path of the snapshot.
+     * @throws IOException Thrown if the snapshot can't be written.
+     */
+    private static Path writeSnapshot() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".snapshot");
+        SegmentSnapshot.write(Collection.of(SEGMENT_00_6E, SEGMENT_9C_6E, SEGMENT_01_02), THREE, 0,
+                SHA256_TRUNCATED_TO_8_BITS, CACHE_FILE_OFFSET, CACHE_FILE_CHECKSUM, file);
+        return file;
+    }
+
+    /**
+     * A snapshot that's opened again returns its header and its segments.
+     *
+     * @throws IOException Thrown if the snapshot can't be written, opened or deleted.
+     */
+    @Test
+    public void openedSnapshotShouldReturnTheHeaderAndTheSegments() throws IOException {
+        Path file = writeSnapshot();
+        SegmentSnapshot snapshot = SegmentSnapshot.open(file, SHA256_TRUNCATED_TO_8_BITS);
+        assertNotNull(snapshot);
+        assertEquals(0, snapshot.getOrder());
+        assertEquals(CACHE_FILE_OFFSET, snapshot.getCacheFileOffset());
+        assertEquals(CACHE_FILE_CHECKSUM, snapshot.getCacheFileChecksum());
+        assertEquals(THREE, snapshot.getNumberOfSegments());
+        assertEquals(THREE, snapshot.getSegments().size());
+        assertTrue(snapshot.getSegments().contains(SEGMENT_9C_6E));
+        Files.delete(file);
+    }
+
+    /**
+     * The indexes of a snapshot look up segments by start point and by end point.
+     *
+     * @throws IOException Thrown if the snapshot can't be written, opened or deleted.
+     */
+    @Test
+    public void indexesShouldLookUpSegmentsByStartPointAndEndPoint() throws IOException {
+        Path file = writeSnapshot();
+        SegmentSnapshot snapshot = SegmentSnapshot.open(file, SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(SEGMENT_00_6E, snapshot.getSegmentWithStartPoint(POINT_00));
+        assertNull(snapshot.getSegmentWithStartPoint(POINT_6E));
+        assertEquals(2, snapshot.getSegmentsWithEndPoint(POINT_6E).size());
+        assertTrue(snapshot.getSegmentsWithEndPoint(POINT_00).isEmpty());
+        assertTrue(snapshot.containsSegmentsWithEndPoint(POINT_02));
+        assertFalse(snapshot.containsSegmentsWithEndPoint(POINT_01));
+        Files.delete(file);
+    }
+
+    /**
+     * A snapshot keeps the end points shared by more than one segment.
+     *
+     * @throws IOException Thrown if the snapshot can't be written, opened or deleted.
+     */
+    @Test
+    public void snapshotShouldKeepTheCollidingEndPoints() throws IOException {
+        Path file = writeSnapshot();
+        SegmentSnapshot snapshot = SegmentSnapshot.open(file, SHA256_TRUNCATED_TO_8_BITS);
+        assertEquals(1, snapshot.getCollidingEndPoints().size());
+        assertTrue(snapshot.getCollidingEndPoints().contains(POINT_6E));
+        Files.delete(file);
+    }
+
+    /**
+     * A snapshot keeps the checkpoint depth and the checkpoints of the segments.
+     *
+     * @throws IOException Thrown if the snapshot can't be written, opened or deleted.
+     */
+    @Test
+    public void snapshotShouldKeepTheCheckpoints() throws IOException {
+        Path file = writeSnapshot();
+        Segment segment = SegmentSnapshot.open(file, SHA256_TRUNCATED_TO_8_BITS).getSegmentWithStartPoint(POINT_01);
+        assertEquals(1, segment.getCheckpointDepth());
+        assertEquals(1, segment.getCheckpoints().size());
+        assertTrue(segment.getCheckpoints().contains(new SegmentCheckpoint(2L, POINT_0A)));
+        Files.delete(file);
+    }
+
+    /**
+     * A snapshot isn't opened for another hash function.
+     *
+     * @throws IOException Thrown if the snapshot can't be written, opened or deleted.
+     */
+    @Test
+    public void openShouldRejectASnapshotForAnotherHashFunction() throws IOException {
+        Path file = writeSnapshot();
+        assertNull(SegmentSnapshot.open(file, SHA256_TRUNCATED_TO_16_BITS));
+        Files.delete(file);
+    }
+
+    /**
+     * A truncated snapshot isn't opened.
+     *
+     * @throws IOException Thrown if the snapshot can't be written, truncated, opened or deleted.
+     */
+    @Test
+    public void openShouldRejectATruncatedSnapshot() throws IOException {
+        Path file = writeSnapshot();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1L);
+        }
+        assertNull(SegmentSnapshot.open(file, SHA256_TRUNCATED_TO_8_BITS));
+        Files.delete(file);
+    }
+
+    /**
+     * A snapshot isn't written if the segments don't match the number of segments.
+     *
+     * @throws IOException Thrown if the temporary files can't be created or deleted.
+     */
+    @Test
+    public void writeShouldRejectSegmentsNotMatchingTheNumberOfSegments() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".snapshot");
+        assertThrows(IllegalArgumentException.class, () -> SegmentSnapshot.write(Collection.of(SEGMENT_00_6E), 2, 0,
+                SHA256_TRUNCATED_TO_8_BITS, CACHE_FILE_OFFSET, CACHE_FILE_CHECKSUM, file));
+        Files.delete(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+    }
+
+    /**
+     * Writing a snapshot rejects a number of segments whose end points wouldn't fit into a single array, instead of
+     * overflowing.
+     *
+     * @throws IOException Thrown if the temporary file can't be created or deleted.
+     */
+    @Test
+    public void writeShouldRejectANumberOfSegmentsWhoseEndPointsDontFitIntoAnArray() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".snapshot");
+        assertThrows(IllegalArgumentException.class, () -> SegmentSnapshot.write(Collection.empty(),
+                TOO_MANY_SHA256_SEGMENTS, 0, SHA256, CACHE_FILE_OFFSET, CACHE_FILE_CHECKSUM, file));
+        Files.delete(file);
+    }
+
+    /**
+     * The checksum of a cache file only depends on its last block up to the offset.
+     *
+     * @throws IOException Thrown if the temporary cache files can't be created, read or deleted.
+     */
+    @Test
+    public void checksumShouldOnlyDependOnTheCacheFileUpToTheOffset() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".rcf");
+        Files.writeString(file, "0\nTRUNC(SHA-256, 8)\n00.6e.1\n", StandardCharsets.UTF_8);
+        long offset = Files.size(file);
+        long checksum;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            checksum = SegmentSnapshot.calculateChecksum(channel, offset);
+        }
+        Files.writeString(file, "9c.6e.1\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals(checksum, SegmentSnapshot.calculateChecksum(channel, offset));
+        }
+        Files.writeString(file, "0\nTRUNC(SHA-256, 8)\n00.6e.2\n", StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertNotEquals(checksum, SegmentSnapshot.calculateChecksum(channel, offset));
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * A snapshot that doesn't exist isn't opened.
+     *
+     * @throws IOException Thrown if the temporary file can't be created or deleted.
+     */
+    @Test
+    public void openShouldReturnNullForAMissingSnapshot() throws IOException {
+        Path file = Files.createTempFile("jcrk", ".snapshot");
+        Files.delete(file);
+        assertNull(SegmentSnapshot.open(file, SHA256_TRUNCATED_TO_8_BITS));
+    }
+}
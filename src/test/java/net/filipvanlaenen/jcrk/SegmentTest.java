@@ -6,14 +6,24 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.Test;
 
+import net.filipvanlaenen.kolektoj.Collection;
+
 /**
  * Unit tests on the Segment class.
  */
 public class SegmentTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
     /**
      * The magic number four.
      */
     private static final int FOUR = 4;
+    /**
+     * The magic number six.
+     */
+    private static final int SIX = 6;
     /**
      * The magic number twenty.
      */
@@ -42,6 +52,10 @@ public class SegmentTest {
      * Point 0x3680.
      */
     private static final Point POINT_3680 = new Point((byte) 0x36, (byte) 0x80);
+    /**
+     * Point 0x0000.
+     */
+    private static final Point POINT_0000 = new Point((byte) 0x00, (byte) 0x00);
     /**
      * Point zero.
      */
@@ -83,6 +97,11 @@ public class SegmentTest {
      */
     private static final TruncatedStandardHashFunction SHA1_TRUNCATED_TO_9_BITS =
             new TruncatedStandardHashFunction(SHA1, 9);
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final TruncatedStandardHashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(SHA1, 16);
 
     /**
      * A segment is not complete if its length is zero.
@@ -365,7 +384,8 @@ public class SegmentTest {
     @Test
     public void asCyclicSegmentShouldReturnCyclicSegmentCorrectly() {
         CyclicSegment cyclicSegment = createCyclicSegment().asCyclicSegment();
-        assertEquals(new CyclicSegment(POINT_0C00, POINT_3680, SHA1_TRUNCATED_TO_9_BITS), cyclicSegment);
+        assertEquals(new CyclicSegment(POINT_0C00, POINT_3680, SHA1_TRUNCATED_TO_9_BITS, FOUR, 0L, POINT_0C00,
+                POINT_3680), cyclicSegment);
     }
 
     /**
@@ -457,4 +477,71 @@ public class SegmentTest {
         Segment otherSegment = new Segment(POINT_00, POINT_01, 1, 1, SHA1);
         assertFalse(createSegment().equals(otherSegment));
     }
+
+    /**
+     * The constructor throws an IllegalArgumentException if the checkpoint depth is negative.
+     */
+    @Test
+    public void constructorThrowsIllegalArgumentExceptionIfCheckpointDepthIsNegative() {
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> new Segment(POINT_ZERO, 1, SHA256, -1));
+        assertEquals("The checkpoint depth (-1) is negative.", exception.getMessage());
+    }
+
+    /**
+     * A segment without checkpoint depth doesn't record checkpoints.
+     */
+    @Test
+    public void segmentWithoutCheckpointDepthRecordsNoCheckpoints() {
+        Segment segment = new Segment(POINT_0000, SIX, SHA1_TRUNCATED_TO_16_BITS);
+        while (!segment.isComplete() && !segment.isCyclic()) {
+            segment.extend();
+        }
+        assertTrue(segment.getCheckpoints().isEmpty());
+    }
+
+    /**
+     * A segment with a checkpoint depth records the intermediate points with an order between the checkpoint order and
+     * the segment's order, at their correct positions.
+     */
+    @Test
+    public void extendRecordsCheckpointsAtTheirPositions() {
+        Segment segment = new Segment(POINT_0000, SIX, SHA1_TRUNCATED_TO_16_BITS, THREE);
+        while (!segment.isComplete() && !segment.isCyclic()) {
+            segment.extend();
+        }
+        Point p = POINT_0000;
+        long expectedNumberOfCheckpoints = 0;
+        for (long position = 1; position < segment.getLength(); position++) {
+            p = p.hash(SHA1_TRUNCATED_TO_16_BITS);
+            if (p.order() >= THREE) {
+                assertTrue(segment.getCheckpoints().contains(new SegmentCheckpoint(position, p)));
+                expectedNumberOfCheckpoints++;
+            }
+        }
+        assertEquals(expectedNumberOfCheckpoints, segment.getCheckpoints().size());
+    }
+
+    /**
+     * The constructor drops checkpoints with an order lower than the checkpoint order.
+     */
+    @Test
+    public void constructorDropsCheckpointsBelowTheCheckpointOrder() {
+        SegmentCheckpoint checkpoint0 = new SegmentCheckpoint(1L, POINT_40);
+        SegmentCheckpoint checkpoint1 = new SegmentCheckpoint(2L, POINT_20);
+        Segment segment =
+                new Segment(POINT_00, POINT_00, THREE, FOUR, SHA256, 2, Collection.of(checkpoint0, checkpoint1));
+        assertEquals(1, segment.getCheckpoints().size());
+        assertTrue(segment.getCheckpoints().contains(checkpoint1));
+    }
+
+    /**
+     * Checkpoints don't affect the equality of segments.
+     */
+    @Test
+    public void segmentsWithDifferentCheckpointsAreEqual() {
+        Segment otherSegment = new Segment(POINT_00, POINT_01, 1, 1, SHA256, 1,
+                Collection.of(new SegmentCheckpoint(1L, POINT_40)));
+        assertEquals(createSegment(), otherSegment);
+    }
 }
@@ -0,0 +1,192 @@
+package net.filipvanlaenen.jcrk;
+
+import static net.filipvanlaenen.jcrk.StandardHashFunction.SHA256;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>ShardedSegmentRepository</code>.
+ */
+public class ShardedSegmentRepositoryTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The magic number four.
+     */
+    private static final int FOUR = 4;
+    /**
+     * The magic number seven.
+     */
+    private static final int SEVEN = 7;
+    /**
+     * The magic number seventeen.
+     */
+    private static final int SEVENTEEN = 17;
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS = new TruncatedStandardHashFunction(SHA256, 8);
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+    /**
+     * The point 0x00.
+     */
+    private static final Point POINT_00 = new Point((byte) 0x00);
+    /**
+     * The point 0x01.
+     */
+    private static final Point POINT_01 = new Point((byte) 0x01);
+    /**
+     * The point 0x6E.
+     */
+    private static final Point POINT_6E = new Point((byte) 0x6e);
+
+    /**
+     * The shard index consists of the bits just after the leading zeros required by the order.
+     */
+    @Test
+    public void getShardIndexShouldReturnTheBitsAfterTheOrder() {
+        assertEquals(1, ShardedSegmentRepository.getShardIndex(POINT_6E, 0, 2));
+        assertEquals(THREE, ShardedSegmentRepository.getShardIndex(POINT_6E, 1, 2));
+    }
+
+    /**
+     * Bits beyond the length of the point count as zeros in the shard index.
+     */
+    @Test
+    public void getShardIndexShouldPadThePointWithZeros() {
+        assertEquals(2, ShardedSegmentRepository.getShardIndex(POINT_01, SEVEN, 2));
+    }
+
+    /**
+     * A segment added can be looked up by its start point and by its end point.
+     */
+    @Test
+    public void segmentShouldBeFoundByItsStartPointAndEndPoint() {
+        ShardedSegmentRepository repository = new ShardedSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, 2);
+        Segment segment = new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+        assertTrue(repository.add(segment));
+        assertFalse(repository.add(segment));
+        assertEquals(segment, repository.getSegmentWithStartPoint(POINT_00));
+        assertTrue(repository.containsSegmentsWithEndPoint(POINT_6E));
+        assertFalse(repository.containsSegmentsWithEndPoint(POINT_00));
+        assertEquals(1, repository.size());
+        assertEquals(FOUR, repository.getNumberOfShards());
+    }
+
+    /**
+     * After a compression, the segments of the next order can be looked up by their start points.
+     */
+    @Test
+    public void compressedSegmentShouldBeFoundByItsStartPoint() {
+        ShardedSegmentRepository repository = new ShardedSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, 2);
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.compressToNextOrder();
+        assertEquals(1, repository.getOrder());
+        assertEquals(POINT_6E, repository.getSegmentWithStartPoint(POINT_00).getEndPoint());
+        assertNull(repository.getSegmentWithStartPoint(POINT_6E));
+    }
+
+    /**
+     * A collision finder finds a valid collision using a sharded repository, including compressions.
+     */
+    @Test
+    public void collisionFinderShouldFindACollisionWithAShardedRepository() {
+        ShardedSegmentRepository repository = new ShardedSegmentRepository(SHA1_TRUNCATED_TO_16_BITS, THREE);
+        Collision collision = new CollisionFinder(repository,
+                StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo).findCollision();
+        assertNotNull(collision);
+        assertTrue(repository.getOrder() > 0);
+        Point hashValue = collision.points().get().hash(SHA1_TRUNCATED_TO_16_BITS);
+        for (Point point : collision.points()) {
+            assertEquals(hashValue, point.hash(SHA1_TRUNCATED_TO_16_BITS));
+        }
+    }
+
+    /**
+     * A persisted repository writes every shard to its own cache file, and loads them again.
+     *
+     * @throws IOException Thrown if the temporary directory can't be created or cleaned up.
+     */
+    @Test
+    public void persistedRepositoryShouldBeLoadedFromItsCacheFiles() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        String baseName = directory.resolve("shards").toString();
+        ShardedSegmentRepository repository = new ShardedSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, 1, baseName);
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.compressToNextOrder();
+        assertTrue(Files.exists(Path.of(repository.getCacheFileName(0))));
+        assertTrue(Files.exists(Path.of(repository.getCacheFileName(1))));
+        ShardedSegmentRepository loaded = new ShardedSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, 1, baseName);
+        assertEquals(1, loaded.getOrder());
+        assertTrue(loaded.containsSegmentWithStartPoint(POINT_00));
+        assertTrue(loaded.getEstimatedDiskFootprint() > 0L);
+        Files.delete(Path.of(repository.getCacheFileName(0)));
+        Files.delete(Path.of(repository.getCacheFileName(1)));
+        Files.delete(directory);
+    }
+
+    /**
+     * A segment added to a persisted repository is appended to the cache file of its shard.
+     *
+     * @throws IOException Thrown if the temporary directory can't be created, read or cleaned up.
+     */
+    @Test
+    public void addShouldAppendTheSegmentToTheCacheFileOfItsShard() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        String baseName = directory.resolve("shards").toString();
+        ShardedSegmentRepository repository = new ShardedSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, 0, baseName);
+        repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        repository.add(new Segment(POINT_01, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        Path cacheFile = Path.of(repository.getCacheFileName(0));
+        assertEquals("0\nTRUNC(SHA-256, 8)\n00.6e.1\n01.6e.1\n", Files.readString(cacheFile, StandardCharsets.UTF_8));
+        Files.delete(cacheFile);
+        Files.delete(directory);
+    }
+
+    /**
+     * A torn last line in the cache file of a shard is discarded when the repository is loaded, and the cache file is
+     * rewritten such that new segments are appended to a complete line.
+     *
+     * @throws IOException Thrown if the temporary directory can't be created, written, read or cleaned up.
+     */
+    @Test
+    public void loadingShouldDiscardATornLastLine() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        String baseName = directory.resolve("shards").toString();
+        Path cacheFile = Path.of(baseName + "-0.rcf");
+        Files.writeString(cacheFile, "0\nTRUNC(SHA-256, 8)\n00.6e.1\n01.6e", StandardCharsets.UTF_8);
+        ShardedSegmentRepository repository = new ShardedSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, 0, baseName);
+        assertEquals(1, repository.size());
+        assertFalse(repository.containsSegmentWithStartPoint(POINT_01));
+        repository.add(new Segment(POINT_01, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+        assertEquals("0\nTRUNC(SHA-256, 8)\n00.6e.1\n01.6e.1\n", Files.readString(cacheFile, StandardCharsets.UTF_8));
+        Files.delete(cacheFile);
+        Files.delete(directory);
+    }
+
+    /**
+     * The number of shard bits shouldn't be too large.
+     */
+    @Test
+    public void constructorShouldRejectTooManyShardBits() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardedSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, SEVENTEEN));
+    }
+}
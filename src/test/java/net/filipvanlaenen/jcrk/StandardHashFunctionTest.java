@@ -2,6 +2,10 @@ package net.filipvanlaenen.jcrk;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
 
@@ -13,6 +17,10 @@ public class StandardHashFunctionTest {
      * The magic number twenty.
      */
     private static final int TWENTY = 20;
+    /**
+     * The number of hashes to be calculated in parallel.
+     */
+    private static final int NUMBER_OF_PARALLEL_HASHES = 10000;
     /**
      * The magic number one hundred sixty.
      */
@@ -82,4 +90,14 @@ public class StandardHashFunctionTest {
     public void toStringShouldProduceCorrectStringRepresentation() {
         assertEquals("SHA-1", SHA1.toString());
     }
+
+    /**
+     * Verifies that SHA-1 produces the same hash values when used from several threads at the same time.
+     */
+    @Test
+    public void sha1ShouldHashCorrectlyFromSeveralThreads() {
+        boolean allCorrect = IntStream.range(0, NUMBER_OF_PARALLEL_HASHES).parallel()
+                .allMatch(i -> Arrays.equals(HASH_OF_POINT_ZERO, SHA1.hash(new byte[TWENTY])));
+        assertTrue(allCorrect);
+    }
 }
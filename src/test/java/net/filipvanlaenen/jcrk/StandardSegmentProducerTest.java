@@ -0,0 +1,182 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the <code>StandardSegmentProducer</code> enumeration.
+ */
+public class StandardSegmentProducerTest {
+    /**
+     * Point zero.
+     */
+    private static final Point ZERO_POINT = new Point((byte) 0x00);
+    /**
+     * Point 0x01.
+     */
+    private static final Point POINT_01 = new Point((byte) 0x01);
+    /**
+     * The number of segments in the chains built in the tests.
+     */
+    private static final int CHAIN_LENGTH = 10;
+    /**
+     * The SHA-1 hash algorithm truncated to one bit.
+     */
+    private static final TruncatedStandardHashFunction TRUNCATED_1_SHA1 =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 1);
+    /**
+     * The SHA-1 hash algorithm truncated to eight bits.
+     */
+    private static final TruncatedStandardHashFunction TRUNCATED_8_SHA1 =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 8);
+
+    /**
+     * Create an empty segment repository for the tests.
+     *
+     * @return An empty in-memory segment repository.
+     */
+    public SegmentRepository createEmptyInMemorySegmentRepository() {
+        return new InMemorySegmentRepository(TRUNCATED_8_SHA1);
+    }
+
+    /**
+     * If the segment repository is empty, produce the zero point as the new start point.
+     */
+    @Test
+    public void shouldProduceZeroPointIfSegmentRepositoryIsEmpty() {
+        SegmentRepository repository = createEmptyInMemorySegmentRepository();
+        Point point = StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repository);
+        assertEquals(ZERO_POINT, point);
+    }
+
+    /**
+     * If the segment repository contains a segment with the zero point as its start point, produce the segment's end
+     * point as the new start point.
+     */
+    @Test
+    public void shouldProduceNewPointIfSegmentRepositoryContainsZeroPointSegment() {
+        SegmentRepository repository = createEmptyInMemorySegmentRepository();
+        Segment segment = new Segment(ZERO_POINT, 0, TRUNCATED_8_SHA1);
+        segment.extend();
+        Point expectedNewStartPoint = segment.getEndPoint();
+        repository.add(segment);
+        Point point = StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repository);
+        assertEquals(expectedNewStartPoint, point);
+    }
+
+    /**
+     * If the segment repository contains two first two segments of the zero point segment segment, produce the second
+     * segment's end point as the new start point.
+     */
+    @Test
+    public void shouldProduceNewPointIfSegmentRepositoryContainsZeroPointSegmentChain() {
+        SegmentRepository repository = createEmptyInMemorySegmentRepository();
+        Segment segment1 = new Segment(ZERO_POINT, 0, TRUNCATED_8_SHA1);
+        segment1.extend();
+        repository.add(segment1);
+        Segment segment2 = new Segment(segment1.getEndPoint(), 0, TRUNCATED_8_SHA1);
+        segment2.extend();
+        repository.add(segment2);
+        Point expectedNewStartPoint = segment2.getEndPoint();
+        Point point = StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repository);
+        assertEquals(expectedNewStartPoint, point);
+    }
+
+    /**
+     * If the segment repository doesn't contain a segment with the zero point as its start point, produce the zero
+     * point as the new start point.
+     */
+    @Test
+    public void shouldProduceZeroPointIfSegmentRepositoryContainsOtherSegmentsThanWithZeroPoint() {
+        SegmentRepository repository = createEmptyInMemorySegmentRepository();
+        Segment segment = new Segment(new Point((byte) 0x01), 0, TRUNCATED_8_SHA1);
+        segment.extend();
+        repository.add(segment);
+        Point point = StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repository);
+        assertEquals(ZERO_POINT, point);
+    }
+
+    /**
+     * If point zero is part of a loop, return null.
+     */
+    @Test
+    public void shouldReturnNullIfPointZeroIsPartOfALoop() {
+        SegmentRepository repositoryForOneBit = new InMemorySegmentRepository(TRUNCATED_1_SHA1);
+        repositoryForOneBit.add(new Segment(ZERO_POINT, ZERO_POINT, 1, 0, TRUNCATED_1_SHA1));
+        Point point = StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repositoryForOneBit);
+        assertNull(point);
+    }
+
+    /**
+     * Extends the chain starting from point zero with a segment from the new start point produced by the zero point
+     * segment chain extension.
+     *
+     * @param repository The segment repository.
+     * @return The segment that was added.
+     */
+    private Segment extendZeroPointChain(final SegmentRepository repository) {
+        Point startPoint = StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repository);
+        Segment segment = new Segment(startPoint, repository.getOrder(), repository.getHashFunction());
+        while (!segment.isComplete()) {
+            segment.extend();
+        }
+        repository.add(segment);
+        return segment;
+    }
+
+    /**
+     * Follows the chain starting from point zero without any caching.
+     *
+     * @param repository The segment repository.
+     * @return The first end point on the chain that isn't used as a start point.
+     */
+    private Point followZeroPointChain(final SegmentRepository repository) {
+        Point point = ZERO_POINT;
+        while (repository.containsSegmentWithStartPoint(point)) {
+            point = repository.getSegmentWithStartPoint(point).getEndPoint();
+        }
+        return point;
+    }
+
+    /**
+     * When a chain is extended repeatedly, the end point of the last segment is produced as the new start point.
+     */
+    @Test
+    public void shouldProduceTheEndPointOfTheLastSegmentWhenTheChainIsExtendedRepeatedly() {
+        SegmentRepository repository = createEmptyInMemorySegmentRepository();
+        Segment lastSegment = null;
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            lastSegment = extendZeroPointChain(repository);
+        }
+        Point point = StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repository);
+        assertEquals(lastSegment.getEndPoint(), point);
+    }
+
+    /**
+     * After compression to the next order, the new start point is the tail of the compressed chain.
+     */
+    @Test
+    public void shouldProduceTheTailOfTheCompressedChainAfterCompression() {
+        SegmentRepository repository = createEmptyInMemorySegmentRepository();
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            extendZeroPointChain(repository);
+        }
+        repository.compressToNextOrder();
+        Point point = StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repository);
+        assertEquals(followZeroPointChain(repository), point);
+    }
+
+    /**
+     * If the chain closes back on point zero after its tail has been cached, return null.
+     */
+    @Test
+    public void shouldReturnNullIfTheChainClosesAfterItsTailHasBeenCached() {
+        SegmentRepository repository = createEmptyInMemorySegmentRepository();
+        repository.add(new Segment(ZERO_POINT, POINT_01, 1, 0, TRUNCATED_8_SHA1));
+        assertEquals(POINT_01, StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repository));
+        repository.add(new Segment(POINT_01, ZERO_POINT, 1, 0, TRUNCATED_8_SHA1));
+        assertNull(StandardSegmentProducer.ZeroPointSegmentChainExtension.findNewStartPoint(repository));
+    }
+}
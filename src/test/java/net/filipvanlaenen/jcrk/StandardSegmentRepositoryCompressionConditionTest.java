@@ -3,12 +3,14 @@ package net.filipvanlaenen.jcrk;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import static net.filipvanlaenen.jcrk.StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo;
+
 import org.junit.jupiter.api.Test;
 
 /**
- * Unit tests on the SegmentRepositoryCompressionCondition enumeration.
+ * Unit tests on the StandardSegmentRepositoryCompressionCondition enumeration.
  */
-public class SegmentRepositoryCompressionConditionTest {
+public class StandardSegmentRepositoryCompressionConditionTest {
     /**
      * The SHA-1 hash algorithm truncated to eight bits.
      */
@@ -33,7 +35,7 @@ public class SegmentRepositoryCompressionConditionTest {
     @Test
     public void emptyRepositoryShouldNotBeCompressed() {
         SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_SHA1);
-        assertFalse(SegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo.evaluate(repository));
+        assertFalse(SizeLargerThanHalfOrderPowerOfTwo.evaluate(repository));
     }
 
     /**
@@ -43,7 +45,7 @@ public class SegmentRepositoryCompressionConditionTest {
     public void atOrderZeroARepositoryWithOneSegmentShouldNotBeCompressed() {
         SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_SHA1);
         repository.add(new Segment(new Point(BYTE_0X00), new Point(BYTE_0X01), 1, 0, TRUNCATED_SHA1));
-        assertFalse(SegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo.evaluate(repository));
+        assertFalse(SizeLargerThanHalfOrderPowerOfTwo.evaluate(repository));
     }
 
     /**
@@ -54,6 +56,6 @@ public class SegmentRepositoryCompressionConditionTest {
         SegmentRepository repository = new InMemorySegmentRepository(TRUNCATED_SHA1);
         repository.add(new Segment(new Point(BYTE_0X00), new Point(BYTE_0X01), 1, 0, TRUNCATED_SHA1));
         repository.add(new Segment(new Point(BYTE_0X01), new Point(BYTE_0X02), 1, 0, TRUNCATED_SHA1));
-        assertTrue(SegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo.evaluate(repository));
+        assertTrue(SizeLargerThanHalfOrderPowerOfTwo.evaluate(repository));
     }
 }
@@ -0,0 +1,114 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>StartPointRange</code>.
+ */
+public class StartPointRangeTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The magic number four.
+     */
+    private static final int FOUR = 4;
+    /**
+     * The magic number 256.
+     */
+    private static final long TWO_HUNDRED_FIFTY_SIX = 256L;
+    /**
+     * The magic number 4,096.
+     */
+    private static final long FOUR_THOUSAND_NINETY_SIX = 4_096L;
+    /**
+     * The hash function SHA-1 truncated to 12 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_12_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 12);
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+    /**
+     * The range of order 4 with three start points from index 256.
+     */
+    private static final StartPointRange RANGE = new StartPointRange(FOUR, TWO_HUNDRED_FIFTY_SIX, THREE);
+
+    /**
+     * A range is formatted as the keyword, the order, the first index and the size.
+     */
+    @Test
+    public void formatShouldReturnTheMessageAssigningTheRange() {
+        assertEquals("RANGE 4 256 3", RANGE.format());
+    }
+
+    /**
+     * A formatted range is parsed back into the same range.
+     */
+    @Test
+    public void parseShouldReturnTheFormattedRange() {
+        assertEquals(RANGE, StartPointRange.parse("RANGE 4 256 3"));
+    }
+
+    /**
+     * A message that doesn't assign a range can't be parsed.
+     */
+    @Test
+    public void parseShouldThrowAnExceptionForAnotherMessage() {
+        assertThrows(IllegalArgumentException.class, () -> StartPointRange.parse("STOP"));
+    }
+
+    /**
+     * The start points of a range are the indices as points.
+     */
+    @Test
+    public void getStartPointShouldReturnTheIndexAsAPoint() {
+        assertEquals(new Point((byte) 0x01, (byte) 0x02), RANGE.getStartPoint(2, SHA1_TRUNCATED_TO_16_BITS));
+    }
+
+    /**
+     * The bits of the index are aligned to the most significant bits if the bit length isn't a multiple of eight.
+     */
+    @Test
+    public void getStartPointShouldAlignTheIndexToTheMostSignificantBits() {
+        assertEquals(new Point((byte) 0x10, (byte) 0x20), RANGE.getStartPoint(2, SHA1_TRUNCATED_TO_12_BITS));
+    }
+
+    /**
+     * The number of start points is two to the power of the bit length.
+     */
+    @Test
+    public void getNumberOfStartPointsShouldReturnTwoToThePowerOfTheBitLength() {
+        assertEquals(FOUR_THOUSAND_NINETY_SIX, StartPointRange.getNumberOfStartPoints(SHA1_TRUNCATED_TO_12_BITS));
+    }
+
+    /**
+     * The number of start points is capped for hash functions with more bits than can be indexed.
+     */
+    @Test
+    public void getNumberOfStartPointsShouldBeCappedForLongHashFunctions() {
+        assertEquals(Long.MAX_VALUE, StartPointRange.getNumberOfStartPoints(StandardHashFunction.SHA1));
+    }
+
+    /**
+     * The number of start points at an order is two to the power of the bit length minus the order.
+     */
+    @Test
+    public void getNumberOfStartPointsShouldDecreaseWithTheOrder() {
+        assertEquals(TWO_HUNDRED_FIFTY_SIX, StartPointRange.getNumberOfStartPoints(SHA1_TRUNCATED_TO_12_BITS, FOUR));
+    }
+
+    /**
+     * A range reassigned at another order keeps its start points.
+     */
+    @Test
+    public void withOrderShouldKeepTheStartPoints() {
+        assertEquals(new StartPointRange(THREE, TWO_HUNDRED_FIFTY_SIX, THREE), RANGE.withOrder(THREE));
+    }
+}
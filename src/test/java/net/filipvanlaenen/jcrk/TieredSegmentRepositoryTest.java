@@ -0,0 +1,259 @@
+package net.filipvanlaenen.jcrk;
+
+import static net.filipvanlaenen.jcrk.StandardHashFunction.SHA256;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests on the class <code>TieredSegmentRepository</code>.
+ */
+public class TieredSegmentRepositoryTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The magic number four.
+     */
+    private static final int FOUR = 4;
+    /**
+     * A heap budget with room for three segments of one byte in memory, but not for four.
+     */
+    private static final long SMALL_HEAP_BUDGET = 1200L;
+    /**
+     * The number of segments added to a repository to fill its disk tier.
+     */
+    private static final int NUMBER_OF_SEGMENTS_ON_DISK = 64;
+    /**
+     * The maximum number of runs in a disk tier with sixty-four segments merged in tiers.
+     */
+    private static final int MAXIMUM_NUMBER_OF_DISK_RUNS = 6;
+    /**
+     * The offset between the start points and the end points of the segments added to fill the disk tier.
+     */
+    private static final int END_POINT_OFFSET = 0x40;
+    /**
+     * A heap budget of sixteen kibibytes.
+     */
+    private static final long LARGE_HEAP_BUDGET = 16384L;
+    /**
+     * The hash function SHA-256 truncated to 8 bits.
+     */
+    private static final HashFunction SHA256_TRUNCATED_TO_8_BITS = new TruncatedStandardHashFunction(SHA256, 8);
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final HashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+    /**
+     * The point 0x00.
+     */
+    private static final Point POINT_00 = new Point((byte) 0x00);
+    /**
+     * The point 0x01.
+     */
+    private static final Point POINT_01 = new Point((byte) 0x01);
+    /**
+     * The point 0x02.
+     */
+    private static final Point POINT_02 = new Point((byte) 0x02);
+    /**
+     * The point 0x03.
+     */
+    private static final Point POINT_03 = new Point((byte) 0x03);
+    /**
+     * The point 0x20.
+     */
+    private static final Point POINT_20 = new Point((byte) 0x20);
+    /**
+     * The point 0x40.
+     */
+    private static final Point POINT_40 = new Point((byte) 0x40);
+    /**
+     * The point 0x6E.
+     */
+    private static final Point POINT_6E = new Point((byte) 0x6e);
+    /**
+     * The point 0x9C.
+     */
+    private static final Point POINT_9C = new Point((byte) 0x9c);
+
+    /**
+     * Deletes a directory with the files in it.
+     *
+     * @param directory The directory.
+     * @throws IOException Thrown if the directory can't be deleted.
+     */
+    private static void delete(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Segments beyond the heap budget are demoted to disk, and can still be looked up by start point and end point.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void demotedSegmentsShouldStillBeFound() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        Segment segment0 = new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+        Segment segment1 = new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+        Segment segment2 = new Segment(POINT_03, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+        Segment segment3 = new Segment(POINT_20, POINT_40, 1, 0, SHA256_TRUNCATED_TO_8_BITS);
+        try (TieredSegmentRepository repository =
+                new TieredSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, SMALL_HEAP_BUDGET)) {
+            assertTrue(repository.add(segment0));
+            assertTrue(repository.add(segment1));
+            assertTrue(repository.add(segment2));
+            assertTrue(repository.add(segment3));
+            assertFalse(repository.add(segment0));
+            assertEquals(FOUR, repository.size());
+            assertTrue(repository.getMemoryTierSize() < FOUR);
+            assertTrue(repository.getEstimatedDiskFootprint() > 0L);
+            assertTrue(repository.getEstimatedMemoryFootprint() <= SMALL_HEAP_BUDGET);
+            assertEquals(segment0, repository.getSegmentWithStartPoint(POINT_00));
+            assertEquals(2, repository.getSegmentsWithEndPoint(POINT_02).size());
+            assertTrue(repository.containsSegmentsWithEndPoint(POINT_6E));
+            assertFalse(repository.containsSegmentWithStartPoint(POINT_02));
+            assertEquals(FOUR, repository.getSegments().size());
+        }
+        delete(directory);
+    }
+
+    /**
+     * The most recently looked up segments are kept in memory when segments are demoted.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void recentlyUsedSegmentsShouldStayInMemory() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (TieredSegmentRepository repository =
+                new TieredSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, SMALL_HEAP_BUDGET)) {
+            repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_03, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.getSegmentWithStartPoint(POINT_00);
+            repository.add(new Segment(POINT_20, POINT_40, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            assertEquals(2, repository.getMemoryTierSize());
+            assertEquals(FOUR, repository.size());
+            assertTrue(repository.isInMemoryTier(POINT_00));
+            assertTrue(repository.isInMemoryTier(POINT_20));
+        }
+        delete(directory);
+    }
+
+    /**
+     * Collisions between a segment in memory and a segment on disk, and between segments on disk, are found.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void collisionsShouldBeFoundAcrossTheTiers() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (TieredSegmentRepository repository =
+                new TieredSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, SMALL_HEAP_BUDGET)) {
+            repository.add(new Segment(POINT_00, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_01, POINT_02, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_03, POINT_40, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_9C, POINT_6E, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            assertEquals(1, repository.getEndPointsWithMultipleSegments(2).size());
+            assertEquals(1, repository.getCollisions().size());
+        }
+        delete(directory);
+    }
+
+    /**
+     * Compressing the repository combines the segments in both tiers into segments of the next order.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void compressToNextOrderShouldCombineTheSegmentsInBothTiers() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (TieredSegmentRepository repository =
+                new TieredSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, SMALL_HEAP_BUDGET)) {
+            repository.add(new Segment(POINT_00, POINT_40, 1, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.add(new Segment(POINT_40, POINT_20, 2, 0, SHA256_TRUNCATED_TO_8_BITS));
+            repository.compressToNextOrder();
+            assertEquals(2, repository.size());
+            repository.compressToNextOrder();
+            assertEquals(2, repository.getOrder());
+            assertEquals(1, repository.size());
+            assertEquals(new Segment(POINT_00, POINT_20, THREE, 2, SHA256_TRUNCATED_TO_8_BITS),
+                    repository.getSegmentWithStartPoint(POINT_00));
+        }
+        delete(directory);
+    }
+
+    /**
+     * A collision finder finds a valid collision using a tiered repository, including demotions and compressions.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void collisionFinderShouldFindACollisionWithATieredRepository() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (TieredSegmentRepository repository =
+                new TieredSegmentRepository(SHA1_TRUNCATED_TO_16_BITS, directory, LARGE_HEAP_BUDGET)) {
+            Collision collision = new CollisionFinder(repository,
+                    StandardSegmentRepositoryCompressionCondition.SizeLargerThanHalfOrderPowerOfTwo).findCollision();
+            assertNotNull(collision);
+            Point hashValue = collision.points().get().hash(SHA1_TRUNCATED_TO_16_BITS);
+            for (Point point : collision.points()) {
+                assertEquals(hashValue, point.hash(SHA1_TRUNCATED_TO_16_BITS));
+            }
+        }
+        delete(directory);
+    }
+
+    /**
+     * The disk tier keeps several runs merged in tiers, while only the memory tier is held against the heap budget.
+     *
+     * @throws IOException Thrown if the repository can't be created or closed.
+     */
+    @Test
+    public void diskTierShouldBeMergedInTiers() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        try (TieredSegmentRepository repository =
+                new TieredSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, directory, SMALL_HEAP_BUDGET)) {
+            for (int i = 0; i < NUMBER_OF_SEGMENTS_ON_DISK; i++) {
+                repository.add(new Segment(new Point((byte) i), new Point((byte) (i + END_POINT_OFFSET)), 1, 0,
+                        SHA256_TRUNCATED_TO_8_BITS));
+                assertTrue(repository.getMemoryTierSize() < FOUR);
+            }
+            assertEquals(NUMBER_OF_SEGMENTS_ON_DISK, repository.size());
+            assertTrue(repository.getNumberOfDiskRuns() > 1);
+            assertTrue(repository.getNumberOfDiskRuns() <= MAXIMUM_NUMBER_OF_DISK_RUNS);
+            for (int i = 0; i < NUMBER_OF_SEGMENTS_ON_DISK; i++) {
+                assertNotNull(repository.getSegmentWithStartPoint(new Point((byte) i)));
+                assertTrue(repository.containsSegmentsWithEndPoint(new Point((byte) (i + END_POINT_OFFSET))));
+            }
+        }
+        delete(directory);
+    }
+
+    /**
+     * The heap budget should be positive.
+     */
+    @Test
+    public void constructorShouldRejectANonPositiveHeapBudget() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TieredSegmentRepository(SHA256_TRUNCATED_TO_8_BITS, Path.of("."), 0L));
+    }
+}
@@ -0,0 +1,164 @@
+package net.filipvanlaenen.jcrk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import net.filipvanlaenen.kolektoj.Collection;
+
+/**
+ * Unit tests on the class <code>WorkUnit</code>.
+ */
+public class WorkUnitTest {
+    /**
+     * The magic number three.
+     */
+    private static final int THREE = 3;
+    /**
+     * The magic number four.
+     */
+    private static final int FOUR = 4;
+    /**
+     * The magic number eight.
+     */
+    private static final long EIGHT = 8L;
+    /**
+     * The magic number 256.
+     */
+    private static final long TWO_HUNDRED_FIFTY_SIX = 256L;
+    /**
+     * The hash function SHA-1 truncated to 16 bits.
+     */
+    private static final TruncatedStandardHashFunction SHA1_TRUNCATED_TO_16_BITS =
+            new TruncatedStandardHashFunction(StandardHashFunction.SHA1, 16);
+    /**
+     * A work unit of order 4 with four start points from index 256.
+     */
+    private static final WorkUnit UNIT =
+            new WorkUnit(SHA1_TRUNCATED_TO_16_BITS, new StartPointRange(FOUR, TWO_HUNDRED_FIFTY_SIX, FOUR));
+
+    /**
+     * Deletes a directory with the files in it.
+     *
+     * @param directory The directory.
+     * @throws IOException Thrown if the directory can't be deleted.
+     */
+    private static void delete(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * The file name consists of the hash function, the bit length and the index of the first start point.
+     */
+    @Test
+    public void getFileNameShouldContainTheHashFunctionAndTheFirstIndex() {
+        assertEquals("SHA-1-16-256.unit", UNIT.getFileName());
+    }
+
+    /**
+     * The result file has the same name as the work unit file, but another extension.
+     */
+    @Test
+    public void getResultFileShouldReplaceTheExtension() {
+        assertEquals(Path.of("units", "SHA-1-16-256.result"),
+                WorkUnit.getResultFile(Path.of("units", "SHA-1-16-256.unit")));
+    }
+
+    /**
+     * A work unit written to a file is read back.
+     *
+     * @throws IOException Thrown if the temporary file can't be written or read.
+     */
+    @Test
+    public void readShouldReturnTheWrittenWorkUnit() throws IOException {
+        Path file = Files.createTempFile("jcrk", WorkUnit.UNIT_EXTENSION);
+        UNIT.write(file);
+        WorkUnit unit = WorkUnit.read(file);
+        assertEquals(SHA1_TRUNCATED_TO_16_BITS.toString(), unit.hashFunction().toString());
+        assertEquals(UNIT.range(), unit.range());
+        Files.delete(file);
+    }
+
+    /**
+     * Exporting work units continues after the work units already in the directory.
+     *
+     * @throws IOException Thrown if the temporary directory can't be written or read.
+     */
+    @Test
+    public void exportShouldContinueAfterTheExistingWorkUnits() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        WorkUnit.export(directory, SHA1_TRUNCATED_TO_16_BITS, FOUR, 2, FOUR);
+        Collection<Path> files = WorkUnit.export(directory, SHA1_TRUNCATED_TO_16_BITS, FOUR, 1, FOUR);
+        assertEquals(1, files.size());
+        assertEquals(new StartPointRange(FOUR, EIGHT, FOUR), WorkUnit.read(files.get()).range());
+        delete(directory);
+    }
+
+    /**
+     * A work unit that has been processed already isn't processed again.
+     *
+     * @throws IOException Thrown if the temporary directory can't be written or read.
+     */
+    @Test
+    public void processShouldSkipAProcessedWorkUnit() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        Path resultFile = directory.resolve("unit.result");
+        assertTrue(UNIT.process(resultFile, 0));
+        assertFalse(UNIT.process(resultFile, 0));
+        delete(directory);
+    }
+
+    /**
+     * Processing a work unit leaves a temporary file with the name of the result file alone, e.g. because another node
+     * is processing the same work unit.
+     *
+     * @throws IOException Thrown if the temporary directory can't be written or read.
+     */
+    @Test
+    public void processShouldNotClobberTheTemporaryFileOfAnotherNode() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        Path resultFile = directory.resolve("unit.result");
+        Path otherTemporaryFile = directory.resolve("unit.result.tmp");
+        Files.writeString(otherTemporaryFile, "SHA1", StandardCharsets.UTF_8);
+        assertTrue(UNIT.process(resultFile, 0));
+        assertEquals("SHA1", Files.readString(otherTemporaryFile, StandardCharsets.UTF_8));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2L, files.count());
+        }
+        delete(directory);
+    }
+
+    /**
+     * Importing a result file adds its segments to the segment repository, and importing it again adds nothing.
+     *
+     * @throws IOException Thrown if the temporary directory can't be written or read.
+     */
+    @Test
+    public void importResultShouldBeIdempotent() throws IOException {
+        Path directory = Files.createTempDirectory("jcrk");
+        Path resultFile = directory.resolve("unit.result");
+        UNIT.process(resultFile, 0);
+        InMemorySegmentRepository segmentRepository = new InMemorySegmentRepository(SHA1_TRUNCATED_TO_16_BITS);
+        segmentRepository.setOrder(FOUR);
+        SegmentImporter importer = new SegmentImporter(segmentRepository, repository -> false, new SearchMetrics());
+        WorkUnit.importResult(resultFile, importer, SHA1_TRUNCATED_TO_16_BITS);
+        int size = segmentRepository.size();
+        assertTrue(size >= THREE);
+        WorkUnit.importResult(resultFile, importer, SHA1_TRUNCATED_TO_16_BITS);
+        assertEquals(size, segmentRepository.size());
+        delete(directory);
+    }
+}